@@ -9,6 +9,25 @@
 
 package edu.kit.scc;
 
+import edu.kit.scc.bulk.BulkProgress;
+import edu.kit.scc.bulk.FilesystemImporter;
+import edu.kit.scc.bulk.RecursiveCopier;
+import edu.kit.scc.bulk.RecursiveDeleter;
+import edu.kit.scc.cache.NegativeLookupCache;
+import edu.kit.scc.capability.CapabilityResponseCache;
+import edu.kit.scc.compression.ResponseCompressor;
+import edu.kit.scc.domain.DomainUsage;
+import edu.kit.scc.events.ChangeEvent;
+import edu.kit.scc.events.ChangeFeed;
+import edu.kit.scc.events.QosTransitionWatcher;
+import edu.kit.scc.executor.RequestExecutors;
+import edu.kit.scc.executor.RequestExecutors.Pool;
+import edu.kit.scc.metrics.MetricsSource;
+import edu.kit.scc.query.MetadataIndex;
+import edu.kit.scc.query.MetadataQuery;
+import edu.kit.scc.unitofwork.FlushFailedException;
+import edu.kit.scc.unitofwork.UnitOfWork;
+
 import org.indigo.cdmi.BackEndException;
 import org.indigo.cdmi.CdmiObjectStatus;
 import org.indigo.cdmi.ConfigurableStorageBackend;
@@ -19,15 +38,22 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.dao.AsyncCdmiObjectDao;
 import org.snia.cdmiserver.dao.CapabilityDao;
 import org.snia.cdmiserver.dao.CdmiObjectDao;
 import org.snia.cdmiserver.dao.ContainerDao;
 import org.snia.cdmiserver.dao.DataObjectDao;
+import org.snia.cdmiserver.dao.DomainDao;
+import org.snia.cdmiserver.dao.QueueDao;
+import org.snia.cdmiserver.exception.ConflictException;
+import org.snia.cdmiserver.exception.NotFoundException;
+import org.snia.cdmiserver.exception.PreconditionFailedException;
 import org.snia.cdmiserver.model.Capability;
 import org.snia.cdmiserver.model.CdmiObject;
 import org.snia.cdmiserver.model.Container;
 import org.snia.cdmiserver.model.DataObject;
 import org.snia.cdmiserver.model.Domain;
+import org.snia.cdmiserver.model.Queue;
 import org.snia.cdmiserver.util.MediaTypes;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -38,23 +64,43 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.HandlerMapping;
-
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 import javax.annotation.PostConstruct;
 import javax.security.auth.Subject;
@@ -66,9 +112,15 @@ public class CdmiRestController {
 
   private static final Logger log = LoggerFactory.getLogger(CdmiRestController.class);
 
+  private static final String DOMAIN_SUMMARY = "cdmi_domain_summary";
+
   @Autowired
   private CdmiObjectDao cdmiObjectDao;
 
+  // only the redis profiles have a non-blocking DAO
+  @Autowired(required = false)
+  private AsyncCdmiObjectDao asyncCdmiObjectDao;
+
   @Autowired
   private CapabilityDao capabilityDao;
 
@@ -78,12 +130,69 @@ public class CdmiRestController {
   @Autowired
   private DataObjectDao dataObjectDao;
 
+  @Autowired
+  private DomainDao domainDao;
+
+  @Autowired
+  private QueueDao queueDao;
+
+  @Autowired
+  private FilesystemImporter filesystemImporter;
+
+  @Autowired
+  private RecursiveDeleter recursiveDeleter;
+
+  @Autowired
+  private RecursiveCopier recursiveCopier;
+
+  @Autowired
+  private NegativeLookupCache negativeLookupCache;
+
+  @Autowired
+  private CapabilityResponseCache capabilityResponseCache;
+
+  @Autowired
+  private ResponseCompressor responseCompressor;
+
+  @Autowired
+  private ChangeFeed changeFeed;
+
+  @Autowired
+  private QosTransitionWatcher qosTransitionWatcher;
+
+  @Autowired
+  private MetadataIndex metadataIndex;
+
+  @Autowired
+  private DomainUsage domainUsage;
+
+  @Autowired
+  private RequestExecutors requestExecutors;
+
+  @Autowired
+  private List<MetricsSource> metricsSources;
+
   @Value("${cdmi.data.baseDirectory}")
   private String baseDirectory;
 
   @Value("${cdmi.qos.backend.type}")
   private String backendType;
 
+  @Value("${cdmi.batch.size:10000}")
+  private int batchSize;
+
+  @Value("${cdmi.queue.maxBatch:1000}")
+  private int queueMaxBatch;
+
+  @Value("${cdmi.events.pollTimeout:20000}")
+  private long eventsPollTimeout;
+
+  @Value("${cdmi.events.streamTimeout:3600000}")
+  private long eventsStreamTimeout;
+
+  @Value("${cdmi.query.maxResults:1000}")
+  private int queryMaxResults;
+
   private StorageBackend storageBackend;
 
   @PostConstruct
@@ -100,10 +209,12 @@ public class CdmiRestController {
   }
 
   /**
-   * Domains endpoint.
+   * Domains endpoint. Below each domain, {@code cdmi_domain_summary} serves the domain's usage
+   * totals and, below {@code daily}, {@code weekly}, {@code monthly} and {@code yearly}, the
+   * usage per period, e.g. {@code /cdmi_domains/cdmi_domain_summary/daily/2016-12-31}.
    * 
    * @param request the {@link HttpServletRequest}
-   * @return a JSON serialized {@link Domain} object
+   * @return a JSON serialized {@link Domain} object or domain summary
    */
   @Secured({"ROLE_ADMIN", "ROLE_USER", "ROLE_CLIENT"})
   @RequestMapping(path = "/cdmi_domains/**", method = RequestMethod.GET)
@@ -118,10 +229,180 @@ public class CdmiRestController {
 
     log.debug("Requested domain path {}", path);
 
+    Path domainPath = Paths.get(path).normalize();
+    log.debug("Normalized domain path {}", domainPath.toString());
+
+    List<String> summaryPath = null;
+    for (int i = 1; i < domainPath.getNameCount(); i++) {
+      if (domainPath.getName(i).toString().equals(DOMAIN_SUMMARY)) {
+        summaryPath = new ArrayList<>();
+        for (int j = i + 1; j < domainPath.getNameCount(); j++) {
+          summaryPath.add(domainPath.getName(j).toString());
+        }
+        domainPath = domainPath.getRoot().resolve(domainPath.subpath(0, i));
+        break;
+      }
+    }
+
+    Domain domain = (Domain) domainDao.findByPath(domainPath.toString());
+    if (domain == null) {
+      return new ResponseEntity<String>("Domain not found", responseHeaders, HttpStatus.NOT_FOUND);
+    }
+
+    if (summaryPath != null) {
+      JSONObject summary = domainSummary(domainPath.toString(), summaryPath);
+      if (summary == null) {
+        return new ResponseEntity<String>("Domain summary not found", responseHeaders,
+            HttpStatus.NOT_FOUND);
+      }
+      responseHeaders.setContentType(
+          MediaType.parseMediaType(summary.getString("objectType") + "+json"));
+      return new ResponseEntity<String>(summary.toString(), responseHeaders, HttpStatus.OK);
+    }
+
+    JSONArray children = new JSONArray();
+    if (domain.getChildren() != null) {
+      for (Object child : domain.getChildren()) {
+        children.put(child);
+      }
+    }
+    children.put(DOMAIN_SUMMARY);
+    domain.setChildren(children);
+    domain.setChildrenrange(CdmiObject.getChildrenRange(children));
+
+    String query = request.getQueryString();
+    JSONObject domainJson =
+        query != null ? filterQueryFields(domain.toJson(), query) : domain.toJson();
+    return new ResponseEntity<String>(domainJson.toString(), responseHeaders, HttpStatus.OK);
+  }
+
+  /**
+   * Creates a domain or updates its metadata, its parent domain must exist.
+   * 
+   * @param body the JSON serialized {@link Domain}, only the metadata is used
+   * @param request the {@link HttpServletRequest}
+   * @return a {@link ResponseEntity}
+   */
+  @Secured({"ROLE_ADMIN"})
+  @RequestMapping(path = "/cdmi_domains/**", method = RequestMethod.PUT,
+      consumes = {"application/cdmi-domain", "application/json"})
+  public ResponseEntity<?> putDomain(@RequestBody String body, HttpServletRequest request) {
+
+    HttpHeaders responseHeaders = new HttpHeaders();
+    responseHeaders.add("X-CDMI-Specification-Version", "1.1.1");
+
+    String path =
+        (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
+    Path domainPath = Paths.get(path).normalize();
+    log.debug("Create or update domain {}", domainPath);
+
+    for (Path name : domainPath) {
+      if (name.toString().equals(DOMAIN_SUMMARY)) {
+        return new ResponseEntity<String>("Domain summaries are read-only", responseHeaders,
+            HttpStatus.FORBIDDEN);
+      }
+    }
+
+    try {
+      JSONObject requestJson = new JSONObject(body);
+      Domain domainRequest = new Domain(domainPath.getFileName().toString(),
+          String.valueOf(domainPath.getParent()), "");
+      domainRequest.setMetadata(requestJson.optJSONObject("metadata"));
+      if (domainDao.findByPath(domainPath.toString()) != null) {
+        domainDao.updateByPath(domainPath.toString(), domainRequest,
+            JSONObject.getNames(requestJson));
+      } else if (domainDao.createByPath(domainPath.toString(), domainRequest) == null) {
+        return new ResponseEntity<String>("Domain couldn't be created", responseHeaders,
+            HttpStatus.INTERNAL_SERVER_ERROR);
+      }
+    } catch (JSONException | IllegalArgumentException ex) {
+      log.debug("Invalid domain request for {}, {}", domainPath, ex.getMessage());
+      return new ResponseEntity<String>(ex.getMessage(), responseHeaders, HttpStatus.BAD_REQUEST);
+    } catch (ConflictException ex) {
+      return new ResponseEntity<String>(ex.getMessage(), responseHeaders, HttpStatus.CONFLICT);
+    }
+    return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+  }
+
+  /**
+   * Deletes a domain without subdomains, the root domain is never deleted.
+   * 
+   * @param request the {@link HttpServletRequest}
+   * @return a {@link ResponseEntity}
+   */
+  @Secured({"ROLE_ADMIN"})
+  @RequestMapping(path = "/cdmi_domains/**", method = RequestMethod.DELETE)
+  public ResponseEntity<?> deleteDomain(HttpServletRequest request) {
+
+    HttpHeaders responseHeaders = new HttpHeaders();
+    responseHeaders.add("X-CDMI-Specification-Version", "1.1.1");
+
+    String path =
+        (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
     path = Paths.get(path).normalize().toString();
-    log.debug("Normalized domain path {}", path.toString());
+    log.debug("Delete domain {}", path);
+
+    try {
+      domainDao.deleteByPath(path);
+      domainUsage.clear(path);
+    } catch (NotFoundException ex) {
+      return new ResponseEntity<String>(ex.getMessage(), responseHeaders, HttpStatus.NOT_FOUND);
+    } catch (ConflictException ex) {
+      return new ResponseEntity<String>(ex.getMessage(), responseHeaders, HttpStatus.CONFLICT);
+    }
+    return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+  }
+
+  /**
+   * Gets a part of a domain's summary from the {@link DomainUsage} counters.
+   * 
+   * @param domain the domain's path
+   * @param summaryPath the names below {@code cdmi_domain_summary}
+   * @return the JSON serialized container or data object, {@code null} if there is none
+   */
+  private JSONObject domainSummary(String domain, List<String> summaryPath) {
+    JSONObject json = new JSONObject();
+    json.put("domainURI", domain);
+    if (summaryPath.isEmpty()) {
+      json.put("objectType", MediaTypes.CONTAINER);
+      json.put("objectName", DOMAIN_SUMMARY);
+      json.put("parentURI", domain);
+      json.put("metadata", new JSONObject()
+          .put("cdmi_summary_objects", domainUsage.get(domain, DomainUsage.OBJECTS))
+          .put("cdmi_summary_bytes", domainUsage.get(domain, DomainUsage.BYTES)));
+      JSONArray children = new JSONArray(DomainUsage.PERIODS);
+      json.put("children", children);
+      json.put("childrenrange", CdmiObject.getChildrenRange(children));
+      return json;
+    }
+
+    String period = summaryPath.get(0);
+    if (!DomainUsage.PERIODS.contains(period) || summaryPath.size() > 2) {
+      return null;
+    }
+    SortedSet<String> names = domainUsage.getPeriods(domain, period);
+    if (summaryPath.size() == 1) {
+      json.put("objectType", MediaTypes.CONTAINER);
+      json.put("objectName", period);
+      json.put("parentURI", domain + "/" + DOMAIN_SUMMARY);
+      JSONArray children = new JSONArray(names);
+      json.put("children", children);
+      json.put("childrenrange", CdmiObject.getChildrenRange(children));
+      return json;
+    }
 
-    return new ResponseEntity<String>("Domain not found", responseHeaders, HttpStatus.NOT_FOUND);
+    String name = summaryPath.get(1);
+    if (!names.contains(name)) {
+      return null;
+    }
+    json.put("objectType", MediaTypes.DATA_OBJECT);
+    json.put("objectName", name);
+    json.put("parentURI", domain + "/" + DOMAIN_SUMMARY + "/" + period);
+    json.put("metadata", new JSONObject()
+        .put("cdmi_summary_puts", domainUsage.get(domain, DomainUsage.PUTS, period, name))
+        .put("cdmi_summary_deletes", domainUsage.get(domain, DomainUsage.DELETES, period, name))
+        .put("cdmi_summary_writes", domainUsage.get(domain, DomainUsage.WRITES, period, name)));
+    return json;
   }
 
   /**
@@ -132,7 +413,11 @@ public class CdmiRestController {
    */
   @Secured({"ROLE_ADMIN", "ROLE_USER", "ROLE_CLIENT"})
   @RequestMapping(path = "/cdmi_capabilities/**", method = RequestMethod.GET)
-  public ResponseEntity<?> getCapabilities(HttpServletRequest request) {
+  public CompletableFuture<ResponseEntity<?>> getCapabilities(HttpServletRequest request) {
+    return async(Pool.METADATA, () -> handleGetCapabilities(request));
+  }
+
+  private ResponseEntity<?> handleGetCapabilities(HttpServletRequest request) {
 
     HttpHeaders responseHeaders = new HttpHeaders();
     responseHeaders.setContentType(new MediaType("application", "cdmi-capability+json"));
@@ -148,17 +433,29 @@ public class CdmiRestController {
     String query = request.getQueryString();
     log.debug("Requested capabilities query {}", query);
 
+    // the capability tree doesn't change after start-up, only other paths go to the DAO
+    CapabilityResponseCache.Response response =
+        capabilityResponseCache.get(path, query, this::filterQueryFields);
+    if (response != null) {
+      responseHeaders.setETag(response.getEntityTag());
+      ResponseEntity<?> notModified =
+          notModified(request, response.getEntityTag(), responseHeaders);
+      if (notModified != null) {
+        return notModified;
+      }
+      return encodedResponse(request, response.getBody(), responseHeaders);
+    }
+
     Capability capability = capabilityDao.findByPath(path);
 
     if (capability != null) {
       JSONObject capabilityJson = capability.toJson();
 
       if (query != null) {
-        return new ResponseEntity<String>(filterQueryFields(capabilityJson, query).toString(),
-            responseHeaders, HttpStatus.OK);
+        return encodedResponse(request, filterQueryFields(capabilityJson, query).toString(),
+            responseHeaders);
       } else {
-        return new ResponseEntity<String>(capabilityJson.toString(), responseHeaders,
-            HttpStatus.OK);
+        return encodedResponse(request, capabilityJson.toString(), responseHeaders);
       }
     }
 
@@ -166,6 +463,237 @@ public class CdmiRestController {
         HttpStatus.NOT_FOUND);
   }
 
+  /**
+   * Metrics endpoint.
+   * 
+   * @return the JSON serialized metrics of all {@link MetricsSource}s
+   */
+  @Secured({"ROLE_ADMIN"})
+  @RequestMapping(path = "/cdmi_metrics", method = RequestMethod.GET)
+  public ResponseEntity<?> getMetrics() {
+
+    HttpHeaders responseHeaders = new HttpHeaders();
+    responseHeaders.setContentType(MediaType.APPLICATION_JSON);
+
+    JSONObject metrics = new JSONObject();
+    for (MetricsSource metricsSource : metricsSources) {
+      metrics.put(metricsSource.getMetricsName(), metricsSource.getMetrics());
+    }
+    return new ResponseEntity<String>(metrics.toString(), responseHeaders, HttpStatus.OK);
+  }
+
+  /**
+   * Import endpoint, starts importing a directory tree which has not been created via CDMI.
+   * 
+   * @param request the {@link HttpServletRequest}
+   * @return the JSON serialized import progress
+   */
+  @Secured({"ROLE_ADMIN"})
+  @RequestMapping(path = "/cdmi_import/**", method = RequestMethod.POST)
+  public ResponseEntity<?> startImport(HttpServletRequest request) {
+
+    HttpHeaders responseHeaders = new HttpHeaders();
+    responseHeaders.setContentType(MediaType.APPLICATION_JSON);
+
+    String path =
+        (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
+    path = Paths.get("/", path.replaceFirst("^/?cdmi_import", "")).normalize().toString();
+    log.debug("Import path {}", path);
+
+    BulkProgress progress = filesystemImporter.startImport(path);
+    return new ResponseEntity<String>(progress.toJson().toString(), responseHeaders,
+        HttpStatus.ACCEPTED);
+  }
+
+  /**
+   * Import progress endpoint.
+   * 
+   * @param request the {@link HttpServletRequest}
+   * @return the JSON serialized import progress
+   */
+  @Secured({"ROLE_ADMIN"})
+  @RequestMapping(path = "/cdmi_import/**", method = RequestMethod.GET)
+  public ResponseEntity<?> getImport(HttpServletRequest request) {
+
+    HttpHeaders responseHeaders = new HttpHeaders();
+    responseHeaders.setContentType(MediaType.APPLICATION_JSON);
+
+    String path =
+        (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
+    path = Paths.get("/", path.replaceFirst("^/?cdmi_import", "")).normalize().toString();
+
+    BulkProgress progress = filesystemImporter.getProgress(path);
+    if (progress != null) {
+      return new ResponseEntity<String>(progress.toJson().toString(), responseHeaders,
+          HttpStatus.OK);
+    }
+    return new ResponseEntity<String>("Import not found", responseHeaders, HttpStatus.NOT_FOUND);
+  }
+
+  /**
+   * Recursive delete progress endpoint.
+   * 
+   * @param request the {@link HttpServletRequest}
+   * @return the JSON serialized delete progress
+   */
+  @Secured({"ROLE_ADMIN", "ROLE_USER", "ROLE_CLIENT"})
+  @RequestMapping(path = "/cdmi_delete/**", method = RequestMethod.GET)
+  public ResponseEntity<?> getDelete(HttpServletRequest request) {
+
+    HttpHeaders responseHeaders = new HttpHeaders();
+    responseHeaders.setContentType(MediaType.APPLICATION_JSON);
+
+    String path =
+        (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
+    path = Paths.get("/", path.replaceFirst("^/?cdmi_delete", "")).normalize().toString();
+
+    BulkProgress progress = recursiveDeleter.getProgress(path);
+    if (progress != null) {
+      return new ResponseEntity<String>(progress.toJson().toString(), responseHeaders,
+          HttpStatus.OK);
+    }
+    return new ResponseEntity<String>("Delete not found", responseHeaders, HttpStatus.NOT_FOUND);
+  }
+
+  /**
+   * Change feed endpoint, answers as soon as an object at or below the requested path has changed
+   * after the given position, or with no events after the timeout. A client passes the
+   * {@code next} position of each answer as {@code after} to its next request; without a
+   * position only changes after the request are returned.
+   * 
+   * @param request the {@link HttpServletRequest}
+   * @param after the position of the last seen event
+   * @param timeout the maximum milliseconds to wait, limited by {@code cdmi.events.pollTimeout}
+   * @return the JSON serialized events
+   */
+  @Secured({"ROLE_ADMIN", "ROLE_USER", "ROLE_CLIENT"})
+  @RequestMapping(path = "/cdmi_events/**", method = RequestMethod.GET)
+  public CompletableFuture<ResponseEntity<?>> pollEvents(HttpServletRequest request,
+      @RequestParam(name = "after", required = false) Long after,
+      @RequestParam(name = "timeout", required = false) Long timeout) {
+
+    HttpHeaders responseHeaders = new HttpHeaders();
+    responseHeaders.setContentType(MediaType.APPLICATION_JSON);
+
+    long waitMillis = timeout != null ? Math.min(timeout, eventsPollTimeout) : eventsPollTimeout;
+    return changeFeed
+        .poll(after != null ? after : changeFeed.getSequence(), eventsPath(request), waitMillis)
+        .thenApply(batch -> new ResponseEntity<String>(batch.toJson().toString(),
+            responseHeaders, HttpStatus.OK));
+  }
+
+  /**
+   * Change feed endpoint for Server-Sent Events, streams the changes of objects at or below the
+   * requested path. Each event's id is its position, a reconnecting client continues after the
+   * position in its Last-Event-ID header; a {@code reset} event tells that changes were missed.
+   * 
+   * @param request the {@link HttpServletRequest}
+   * @param after the position of the last seen event
+   * @return the event stream
+   */
+  @Secured({"ROLE_ADMIN", "ROLE_USER", "ROLE_CLIENT"})
+  @RequestMapping(path = "/cdmi_events/**", method = RequestMethod.GET,
+      produces = "text/event-stream")
+  public SseEmitter streamEvents(HttpServletRequest request,
+      @RequestParam(name = "after", required = false) Long after) {
+    String lastEventId = request.getHeader("Last-Event-ID");
+    long position = after != null ? after : changeFeed.getSequence();
+    if (lastEventId != null) {
+      try {
+        position = Long.parseLong(lastEventId.trim());
+      } catch (NumberFormatException ex) {
+        log.debug("Invalid Last-Event-ID {}", lastEventId);
+      }
+    }
+
+    SseEmitter emitter = new SseEmitter(eventsStreamTimeout);
+    ChangeFeed.Subscription subscription =
+        changeFeed.subscribe(eventsPath(request), position, batch -> {
+          if (batch.isReset()) {
+            emitter.send(SseEmitter.event().name("reset").data(String.valueOf(batch.getNext())));
+          }
+          for (ChangeEvent event : batch.getEvents()) {
+            emitter.send(SseEmitter.event().id(String.valueOf(event.getSequence()))
+                .name(event.getType().name().toLowerCase()).data(event.toJson().toString()));
+          }
+          return true;
+        });
+    emitter.onCompletion(subscription::cancel);
+    emitter.onTimeout(subscription::cancel);
+    return emitter;
+  }
+
+  private static String eventsPath(HttpServletRequest request) {
+    String path =
+        (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
+    return Paths.get("/", path.replaceFirst("^/?cdmi_events", "")).normalize().toString();
+  }
+
+  /**
+   * Query endpoint, finds the objects at or below the requested path whose fields and metadata
+   * match the CDMI scope specification in the request body, see {@link MetadataQuery}. The
+   * matching object URIs are streamed in path order, at most {@code limit} of them; a client
+   * passes the {@code next} URI of each answer as {@code after} to get the following ones.
+   * 
+   * @param request the {@link HttpServletRequest}
+   * @param body the JSON serialized query
+   * @param after the URI the results start after
+   * @param limit the maximum number of results, limited by {@code cdmi.query.maxResults}
+   * @return the matching object URIs
+   */
+  @Secured({"ROLE_ADMIN", "ROLE_USER", "ROLE_CLIENT"})
+  @RequestMapping(path = "/cdmi_query/**", method = RequestMethod.POST)
+  public ResponseEntity<StreamingResponseBody> query(HttpServletRequest request,
+      @RequestBody String body, @RequestParam(name = "after", required = false) String after,
+      @RequestParam(name = "limit", required = false) Integer limit) {
+
+    HttpHeaders responseHeaders = new HttpHeaders();
+    responseHeaders.add("X-CDMI-Specification-Version", "1.1.1");
+
+    MetadataQuery query;
+    try {
+      query = MetadataQuery.fromJson(new JSONObject(body));
+    } catch (JSONException | IllegalArgumentException ex) {
+      log.debug("Invalid query {} {}", body, ex.getMessage());
+      byte[] message = ("Invalid query: " + ex.getMessage()).getBytes(StandardCharsets.UTF_8);
+      return new ResponseEntity<StreamingResponseBody>(output -> output.write(message),
+          responseHeaders, HttpStatus.BAD_REQUEST);
+    }
+    String path =
+        (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
+    String scope = Paths.get("/", path.replaceFirst("^/?cdmi_query", "")).normalize().toString();
+    int maxResults =
+        limit != null && limit > 0 ? Math.min(limit, queryMaxResults) : queryMaxResults;
+
+    responseHeaders.setContentType(MediaType.APPLICATION_JSON);
+    StreamingResponseBody results = output -> {
+      SortedSet<String> matches = query.execute(metadataIndex, scope);
+      if (after != null) {
+        matches = matches.tailSet(after + "\0");
+      }
+      Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+      writer.write("{\"objectURIs\":[");
+      int count = 0;
+      String last = null;
+      for (String match : matches) {
+        if (count == maxResults) {
+          break;
+        }
+        writer.write(count > 0 ? "," : "");
+        writer.write(JSONObject.quote(match));
+        last = match;
+        count++;
+      }
+      writer.write("]");
+      if (last != null && count == maxResults && !matches.tailSet(last + "\0").isEmpty()) {
+        writer.write(",\"next\":" + JSONObject.quote(last));
+      }
+      writer.write("}");
+      writer.flush();
+    };
+    return new ResponseEntity<StreamingResponseBody>(results, responseHeaders, HttpStatus.OK);
+  }
+
   /**
    * ObjectId endpoint.
    * 
@@ -174,8 +702,13 @@ public class CdmiRestController {
    */
   @Secured({"ROLE_ADMIN", "ROLE_USER", "ROLE_CLIENT"})
   @RequestMapping(path = "/cdmi_objectid/{objectId}", method = RequestMethod.GET)
-  public ResponseEntity<?> getCdmiObjectById(@PathVariable String objectId,
+  public CompletableFuture<ResponseEntity<?>> getCdmiObjectById(@PathVariable String objectId,
       HttpServletRequest request) {
+    return async(requestsValue(request) ? Pool.STORAGE : Pool.METADATA,
+        () -> handleGetById(objectId, request));
+  }
+
+  private ResponseEntity<?> handleGetById(String objectId, HttpServletRequest request) {
 
     HttpHeaders responseHeaders = new HttpHeaders();
     responseHeaders.add("X-CDMI-Specification-Version", "1.1.1");
@@ -193,7 +726,7 @@ public class CdmiRestController {
       try {
         objectString = generateResponse(cdmiObject, query, responseHeaders);
         if (objectString != null) {
-          return new ResponseEntity<String>(objectString, responseHeaders, HttpStatus.OK);
+          return encodedResponse(request, objectString, responseHeaders);
         }
       } catch (BackEndException e) {
         log.warn(
@@ -212,7 +745,24 @@ public class CdmiRestController {
    */
   @Secured({"ROLE_ADMIN", "ROLE_USER", "ROLE_CLIENT"})
   @RequestMapping(path = "/**", method = RequestMethod.GET)
-  public ResponseEntity<?> getCdmiObjectByPath(HttpServletRequest request) {
+  public CompletableFuture<ResponseEntity<?>> getCdmiObjectByPath(HttpServletRequest request) {
+    // a lookup racing with a create must not cache the path as missing
+    long lookupGeneration = negativeLookupCache.generation();
+    SecurityContext securityContext = SecurityContextHolder.getContext();
+    return async(requestsValue(request) ? Pool.STORAGE : Pool.METADATA, securityContext,
+        () -> handleGetByPath(request)).thenCompose(response -> response != null
+            ? CompletableFuture.completedFuture(response)
+            // not created via CDMI, ask the storage back-end
+            : async(Pool.BACKEND, securityContext,
+                () -> handleGetFromBackend(request, lookupGeneration)));
+  }
+
+  /**
+   * Gets the CDMI object for the requested path.
+   * 
+   * @return the response or {@code null} if the storage back-end has to be asked
+   */
+  private ResponseEntity<?> handleGetByPath(HttpServletRequest request) {
 
     HttpHeaders responseHeaders = new HttpHeaders();
     responseHeaders.add("X-CDMI-Specification-Version", "1.1.1");
@@ -229,69 +779,293 @@ public class CdmiRestController {
     String query = request.getQueryString();
     log.debug("Requested object query {}", query);
 
-    CdmiObject cdmiObject = cdmiObjectDao.getCdmiObjectByPath(path);
+    if (negativeLookupCache.isMissing(path)) {
+      log.debug("Path {} is known to be missing", path);
+      return new ResponseEntity<String>("Object not found", responseHeaders,
+          HttpStatus.NOT_FOUND);
+    }
+
+    // a client which already has the current version gets no body, a queue's values change
+    // without a new version
+    String entityTag = null;
+    CdmiObjectStatus status = null;
+    if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null && !queueDao.isQueue(path)) {
+      String version = cdmiObjectDao.getVersionByPath(path);
+      if (version != null) {
+        try {
+          status = getCurrentStatus(path);
+          entityTag = entityTag(version, query, status);
+        } catch (BackEndException ex) {
+          log.debug("No storage back-end status for {}, {}", path, ex.getMessage());
+        }
+      }
+    }
+    if (entityTag != null) {
+      responseHeaders.setETag(entityTag);
+      ResponseEntity<?> notModified = notModified(request, entityTag, responseHeaders);
+      if (notModified != null) {
+        return notModified;
+      }
+      // the representation of an unchanged version is only compressed once
+      ResponseCompressor.Encoded encoded = responseCompressor.getCached(entityTag,
+          responseCompressor.negotiate(request.getHeader(HttpHeaders.ACCEPT_ENCODING)));
+      if (encoded != null) {
+        return encodedResponse(encoded, responseHeaders);
+      }
+    }
+
+    // only load the requested page of a container's children
+    int[] childrenRange = query != null ? parseChildrenRange(query) : null;
+    CdmiObject cdmiObject = childrenRange != null
+        ? cdmiObjectDao.getCdmiObjectByPath(path, childrenRange[0], childrenRange[1])
+        : cdmiObjectDao.getCdmiObjectByPath(path);
+
+    if (cdmiObject instanceof Queue && query != null && parseQueueCount(query) > 0) {
+      cdmiObject =
+          queueDao.dequeue((Queue) cdmiObject, queueConsumer(query), parseQueueCount(query));
+      if (cdmiObject == null) {
+        return new ResponseEntity<String>("Queue could not be read", responseHeaders,
+            HttpStatus.INTERNAL_SERVER_ERROR);
+      }
+    }
 
     if (cdmiObject != null) {
       String objectString;
       try {
-        objectString = generateResponse(cdmiObject, query, responseHeaders);
+        boolean tagged = cdmiObject instanceof Container || cdmiObject instanceof DataObject;
+        if (tagged && status == null) {
+          status = getCurrentStatus(path);
+        }
+        objectString = generateResponse(cdmiObject, query, responseHeaders, status);
         if (objectString != null) {
-          return new ResponseEntity<String>(objectString, responseHeaders, HttpStatus.OK);
+          if (tagged && entityTag == null) {
+            // tagged from what has just been loaded, the version is only looked up if the DAO
+            // didn't get it along with the object
+            String version = cdmiObject.getVersion() != null ? cdmiObject.getVersion()
+                : cdmiObjectDao.getVersionByPath(path);
+            if (version != null) {
+              responseHeaders.setETag(entityTag(version, query, status));
+            }
+          }
+          return encodedResponse(request, objectString, responseHeaders);
         }
       } catch (BackEndException ex) {
         log.warn(
             "WARNING: could not get current object status from storage back-end {} for object {}",
             backendType, path);
       }
-    } else {
-      // if object exists on storage back-end but has not been created via CDMI
-      //
-      CdmiObject newCdmiObject = null;
-      try {
-        setAuthenticatedSubject();
-        CdmiObjectStatus cdmiObjectStatus = storageBackend.getCurrentStatus(path);
-        log.debug("storage back-end status {}", cdmiObjectStatus.toString());
-        String currentCapabilitiesUri = cdmiObjectStatus.getCurrentCapabilitiesUri();
-
-        if (currentCapabilitiesUri.contains("/cdmi_capabilities/container")) {
-          log.debug("is storage back-end container ...");
-          String body = "{}";
-          String contentType = "application/cdmi-container+json";
-          newCdmiObject = updateOrCreate(null, path, body, contentType);
-        } else if (currentCapabilitiesUri.contains("/cdmi_capabilities/dataobject")) {
-          log.debug("is storage back-end dataobject ...");
-          String body = "{}";
-          String contentType = "application/cdmi-object+json";
-          newCdmiObject = updateOrCreate(null, path, body, contentType);
-        } else {
-          return new ResponseEntity<String>("Unsupported CDMI capabilities URI format",
-              responseHeaders, HttpStatus.NOT_IMPLEMENTED);
-        }
+      return new ResponseEntity<String>("Object not found", responseHeaders,
+          HttpStatus.NOT_FOUND);
+    }
+    return null;
+  }
 
-        String objectString = generateResponse(newCdmiObject, query, responseHeaders);
-        if (objectString != null) {
-          return new ResponseEntity<String>(objectString, responseHeaders, HttpStatus.OK);
-        }
-      } catch (BackEndException ex) {
-        log.warn(
-            "WARNING: could not get current object status from storage back-end {} for object {}",
-            backendType, path);
+  /**
+   * Gets the entity tag of the requested representation of an object, built from the object's
+   * version, the query and the state reported by the storage back-end.
+   * 
+   * @param status the storage back-end's status or {@code null} without a storage back-end
+   * @return the quoted entity tag
+   */
+  private static String entityTag(String version, String query, CdmiObjectStatus status) {
+    int backendState = 0;
+    if (status != null) {
+      backendState = Objects.hash(status.getCurrentCapabilitiesUri(),
+          status.getTargetCapabilitiesUri(), status.getMonitoredAttributes(),
+          status.getExportAttributes(), status.getChildren());
+    }
+    return "\"" + version + "-" + Integer.toHexString(Objects.hash(query, backendState)) + "\"";
+  }
+
+  /**
+   * Gets the storage back-end's status of the object at the given path.
+   * 
+   * @return the status or {@code null} without a storage back-end
+   */
+  private CdmiObjectStatus getCurrentStatus(String path) throws BackEndException {
+    if (storageBackend == null) {
+      return null;
+    }
+    setAuthenticatedSubject();
+    return storageBackend.getCurrentStatus(path);
+  }
+
+  /**
+   * Checks an If-Match header against the object's version, i.e. the part of the entity tag
+   * before the hash of the representation. Weak tags never match.
+   */
+  private static boolean matchesVersion(String ifMatch, String version) {
+    for (String tag : ifMatch.split(",")) {
+      tag = ResponseCompressor.identityEntityTag(tag.trim());
+      if (tag.equals("*")) {
+        return true;
+      }
+      int end = tag.lastIndexOf('-');
+      if (tag.startsWith("\"") && end > 0 && tag.substring(1, end).equals(version)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Answers a GET whose If-None-Match header matches the current entity tag, weak tags are
+   * compared by their value. The matching tag is returned, as it may be the one of a compressed
+   * representation.
+   * 
+   * @return the 304 response or {@code null} if the header doesn't match
+   */
+  private static ResponseEntity<?> notModified(HttpServletRequest request, String entityTag,
+      HttpHeaders responseHeaders) {
+    String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+    if (ifNoneMatch == null) {
+      return null;
+    }
+    for (String tag : ifNoneMatch.split(",")) {
+      tag = tag.trim();
+      if (tag.equals("*")) {
+        return new ResponseEntity<>(responseHeaders, HttpStatus.NOT_MODIFIED);
+      }
+      if (ResponseCompressor.identityEntityTag(tag.replaceFirst("^W/", "")).equals(entityTag)) {
+        responseHeaders.setETag(tag);
+        return new ResponseEntity<>(responseHeaders, HttpStatus.NOT_MODIFIED);
       }
     }
+    return null;
+  }
+
+  /**
+   * Builds a successful response, compressed if the client accepts it and the body is large
+   * enough. The compressed body of a response with an entity tag is cached by that tag.
+   */
+  private ResponseEntity<?> encodedResponse(HttpServletRequest request, String body,
+      HttpHeaders responseHeaders) {
+    if (!responseCompressor.isCompressible(responseHeaders.getContentType())) {
+      return new ResponseEntity<String>(body, responseHeaders, HttpStatus.OK);
+    }
+    String encoding = responseCompressor.negotiate(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+    ResponseCompressor.Encoded encoded = encoding != null ? responseCompressor.encode(
+        body.getBytes(StandardCharsets.UTF_8), responseHeaders.getContentType(), encoding,
+        responseHeaders.getETag()) : null;
+    if (encoded != null) {
+      return encodedResponse(encoded, responseHeaders);
+    }
+    responseHeaders.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    return new ResponseEntity<String>(body, responseHeaders, HttpStatus.OK);
+  }
+
+  private ResponseEntity<?> encodedResponse(HttpServletRequest request, byte[] body,
+      HttpHeaders responseHeaders) {
+    ResponseCompressor.Encoded encoded = responseCompressor.encode(body,
+        responseHeaders.getContentType(),
+        responseCompressor.negotiate(request.getHeader(HttpHeaders.ACCEPT_ENCODING)),
+        responseHeaders.getETag());
+    if (encoded != null) {
+      return encodedResponse(encoded, responseHeaders);
+    }
+    if (responseCompressor.isCompressible(responseHeaders.getContentType())) {
+      responseHeaders.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    }
+    return new ResponseEntity<byte[]>(body, responseHeaders, HttpStatus.OK);
+  }
+
+  private static ResponseEntity<?> encodedResponse(ResponseCompressor.Encoded encoded,
+      HttpHeaders responseHeaders) {
+    responseHeaders.setContentType(encoded.getContentType());
+    responseHeaders.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    responseHeaders.set(HttpHeaders.CONTENT_ENCODING, encoded.getEncoding());
+    if (responseHeaders.getETag() != null) {
+      responseHeaders.setETag(
+          ResponseCompressor.encodedEntityTag(responseHeaders.getETag(), encoded.getEncoding()));
+    }
+    return new ResponseEntity<byte[]>(encoded.getBody(), responseHeaders, HttpStatus.OK);
+  }
+
+  /**
+   * Creates the CDMI object for a path which exists on the storage back-end but has not been
+   * created via CDMI.
+   */
+  private ResponseEntity<?> handleGetFromBackend(HttpServletRequest request,
+      long lookupGeneration) {
+
+    HttpHeaders responseHeaders = new HttpHeaders();
+    responseHeaders.add("X-CDMI-Specification-Version", "1.1.1");
+    responseHeaders.setContentType(new MediaType("application", "cdmi-object+json"));
+
+    String path =
+        (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
+    path = Paths.get(path).normalize().toString();
+    log.debug("Get path {} from storage back-end", path);
+
+    String query = request.getQueryString();
+
+    CdmiObject newCdmiObject = null;
+    try {
+      setAuthenticatedSubject();
+      CdmiObjectStatus cdmiObjectStatus = storageBackend.getCurrentStatus(path);
+      log.debug("storage back-end status {}", cdmiObjectStatus.toString());
+      String currentCapabilitiesUri = cdmiObjectStatus.getCurrentCapabilitiesUri();
+
+      if (currentCapabilitiesUri.contains("/cdmi_capabilities/container")) {
+        log.debug("is storage back-end container ...");
+        String contentType = "application/cdmi-container+json";
+        newCdmiObject = updateOrCreate(null, path, new JSONObject(), contentType, null, null);
+      } else if (currentCapabilitiesUri.contains("/cdmi_capabilities/dataobject")) {
+        log.debug("is storage back-end dataobject ...");
+        String contentType = "application/cdmi-object+json";
+        newCdmiObject = updateOrCreate(null, path, new JSONObject(), contentType, null, null);
+      } else {
+        return new ResponseEntity<String>("Unsupported CDMI capabilities URI format",
+            responseHeaders, HttpStatus.NOT_IMPLEMENTED);
+      }
+
+      String objectString = generateResponse(newCdmiObject, query, responseHeaders);
+      if (objectString != null) {
+        return encodedResponse(request, objectString, responseHeaders);
+      }
+    } catch (BackEndException ex) {
+      log.warn(
+          "WARNING: could not get current object status from storage back-end {} for object {}",
+          backendType, path);
+      negativeLookupCache.markMissing(path, lookupGeneration);
+    }
     return new ResponseEntity<String>("Object not found", responseHeaders, HttpStatus.NOT_FOUND);
   }
 
   /**
-   * Put path endpoint.
+   * Put path endpoint. A new data object with a {@code move} or {@code copy} field is moved or
+   * copied from the given source path on the server, a new container with a {@code copy} field is
+   * copied with its subtree in the background. The values of a queue update with the query
+   * {@code value} are enqueued. With an If-Match header the object is only updated if it still
+   * has the given version.
    * 
    * @param request the {@link HttpServletRequest}
    * @return a JSON serialized {@link Container} or {@link DataObject}
    */
   @Secured({"ROLE_ADMIN", "ROLE_USER", "ROLE_CLIENT"})
   @RequestMapping(path = "/**", method = RequestMethod.PUT,
-      consumes = {"application/cdmi-object", "application/cdmi-container", "application/json"})
-  public ResponseEntity<?> putCdmiObject(@RequestHeader("Content-Type") String contentType,
-      @RequestBody String body, HttpServletRequest request) {
+      consumes = {"application/cdmi-object", "application/cdmi-container", "application/cdmi-queue",
+          "application/json"})
+  public CompletableFuture<ResponseEntity<?>> putCdmiObject(
+      @RequestHeader("Content-Type") String contentType, @RequestBody String body,
+      HttpServletRequest request) {
+    JSONObject requestJson;
+    try {
+      requestJson = new JSONObject(body);
+    } catch (JSONException ex) {
+      log.debug("Invalid request body, {}", ex.getMessage());
+      HttpHeaders responseHeaders = new HttpHeaders();
+      responseHeaders.add("X-CDMI-Specification-Version", "1.1.1");
+      return CompletableFuture.completedFuture(
+          new ResponseEntity<String>(ex.getMessage(), responseHeaders, HttpStatus.BAD_REQUEST));
+    }
+    // a change of QoS waits for the storage back-end
+    return async(requestJson.has("capabilitiesURI") ? Pool.BACKEND : Pool.STORAGE,
+        () -> handlePut(contentType, requestJson, request));
+  }
+
+  private ResponseEntity<?> handlePut(String contentType, JSONObject requestJson,
+      HttpServletRequest request) {
 
     HttpHeaders responseHeaders = new HttpHeaders();
     responseHeaders.add("X-CDMI-Specification-Version", "1.1.1");
@@ -305,10 +1079,45 @@ public class CdmiRestController {
     path = Paths.get(path).normalize().toString();
     log.debug("Normalized path {}", path);
 
-    CdmiObject cdmiObject = cdmiObjectDao.getCdmiObjectByPath(path);
+    CdmiObject cdmiObject = getCdmiObjectWithParent(path);
+
+    if (cdmiObject != null && (requestJson.has("move") || requestJson.has("copy"))) {
+      return new ResponseEntity<String>("Object already exists", responseHeaders,
+          HttpStatus.CONFLICT);
+    }
+
+    String ifMatch = request.getHeader(HttpHeaders.IF_MATCH);
+    String version = null;
+    if (ifMatch != null) {
+      version = cdmiObjectDao.getVersionByPath(path);
+      if (version == null || !matchesVersion(ifMatch, version)) {
+        return new ResponseEntity<String>("Precondition failed", responseHeaders,
+            HttpStatus.PRECONDITION_FAILED);
+      }
+      // loaded after the version has been read, a later update makes the conditional write fail
+      cdmiObject = cdmiObjectDao.getCdmiObjectByPath(path);
+    }
+    if (cdmiObject == null && contentType.contains(MediaTypes.CONTAINER)
+        && requestJson.has("copy")) {
+      // runs in the background, the new container's completionStatus tells the progress
+      BulkProgress progress =
+          recursiveCopier.startCopy(sourcePath(requestJson.getString("copy")), path);
+      responseHeaders.setContentType(MediaType.APPLICATION_JSON);
+      if (progress.getCompletionStatus().equals(BulkProgress.ERROR)) {
+        return new ResponseEntity<String>(progress.toJson().toString(), responseHeaders,
+            HttpStatus.BAD_REQUEST);
+      }
+      responseHeaders.add("Location", progress.getPath());
+      return new ResponseEntity<String>(progress.toJson().toString(), responseHeaders,
+          HttpStatus.ACCEPTED);
+    }
 
     try {
-      CdmiObject newCdmiObject = updateOrCreate(cdmiObject, path, body, contentType);
+      CdmiObject newCdmiObject = updateOrCreate(cdmiObject, path, requestJson, contentType,
+          request.getQueryString(), version);
+      if (cdmiObject == null) {
+        negativeLookupCache.invalidate(path);
+      }
       String objectString = generateResponse(newCdmiObject, null, responseHeaders);
       if (objectString != null) {
         if (newCdmiObject instanceof Container) {
@@ -323,25 +1132,53 @@ public class CdmiRestController {
           }
           // might change in the future
           return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        } else if (newCdmiObject instanceof Queue) {
+          return new ResponseEntity<>(HttpStatus.NO_CONTENT);
         }
       }
+    } catch (IllegalArgumentException ex) {
+      log.debug("Invalid request for {}, {}", path, ex.getMessage());
+      return new ResponseEntity<String>(ex.getMessage(), responseHeaders, HttpStatus.BAD_REQUEST);
     } catch (BackEndException ex) {
       log.warn("WARNING: {} from storage back-end {} for object {}", ex.getMessage(), backendType,
           path);
       return new ResponseEntity<String>(ex.getMessage(), responseHeaders, HttpStatus.CONFLICT);
+    } catch (PreconditionFailedException ex) {
+      log.debug("{} changed since version {}", path, version);
+      return new ResponseEntity<String>("Precondition failed", responseHeaders,
+          HttpStatus.PRECONDITION_FAILED);
     }
     return new ResponseEntity<String>("Bad request", responseHeaders, HttpStatus.BAD_REQUEST);
   }
 
   /**
-   * Delete path endpoint.
+   * Delete path endpoint. With the header {@code X-CDMI-Recursive: true} a container is deleted
+   * with its complete subtree in the background. The query {@code values:<count>} acknowledges
+   * the oldest values dequeued from a queue instead of deleting the queue.
    * 
    * @param request the {@link HttpServletRequest}
    * @return a {@link ResponseEntity}
    */
   @Secured({"ROLE_ADMIN", "ROLE_USER", "ROLE_CLIENT"})
   @RequestMapping(path = "/**", method = RequestMethod.DELETE)
-  public ResponseEntity<?> deleteCdmiObject(HttpServletRequest request) {
+  public CompletableFuture<ResponseEntity<?>> deleteCdmiObject(HttpServletRequest request) {
+    return async(Pool.STORAGE, () -> handleDelete(request));
+  }
+
+  /**
+   * Answers a delete which didn't succeed, with 412 if it expected a version the object no longer
+   * has, otherwise with 409.
+   */
+  private ResponseEntity<String> notDeleted(String message, HttpHeaders responseHeaders,
+      String path, String version) {
+    if (version != null && !version.equals(cdmiObjectDao.getVersionByPath(path))) {
+      return new ResponseEntity<String>("Precondition failed", responseHeaders,
+          HttpStatus.PRECONDITION_FAILED);
+    }
+    return new ResponseEntity<String>(message, responseHeaders, HttpStatus.CONFLICT);
+  }
+
+  private ResponseEntity<?> handleDelete(HttpServletRequest request) {
 
     HttpHeaders responseHeaders = new HttpHeaders();
     responseHeaders.add("X-CDMI-Specification-Version", "1.1.1");
@@ -356,42 +1193,298 @@ public class CdmiRestController {
 
     CdmiObject cdmiObject = cdmiObjectDao.getCdmiObjectByPath(path);
 
+    // with an If-Match header the object is only deleted at the matched version
+    String version = null;
+    String ifMatch = request.getHeader(HttpHeaders.IF_MATCH);
+    if (ifMatch != null) {
+      version = cdmiObjectDao.getVersionByPath(path);
+      if (version == null || !matchesVersion(ifMatch, version)) {
+        return new ResponseEntity<String>("Precondition failed", responseHeaders,
+            HttpStatus.PRECONDITION_FAILED);
+      }
+    }
+
     if (cdmiObject != null) {
+      if (cdmiObject instanceof Container
+          && Boolean.parseBoolean(request.getHeader("X-CDMI-Recursive"))) {
+        // runs in the background, the progress can be requested from /cdmi_delete/<path>
+        BulkProgress progress = recursiveDeleter.startDelete(path);
+        responseHeaders.setContentType(MediaType.APPLICATION_JSON);
+        responseHeaders.add("Location", "/cdmi_delete" + progress.getPath());
+        return new ResponseEntity<String>(progress.toJson().toString(), responseHeaders,
+            HttpStatus.ACCEPTED);
+      }
       if (cdmiObject instanceof Container) {
-        Container container = containerDao.deleteByPath(path);
+        Container container = version != null
+            ? containerDao.deleteByPathIfVersion(path, version) : containerDao.deleteByPath(path);
         if (container != null) {
           return new ResponseEntity<String>("Container deleted", responseHeaders,
               HttpStatus.NO_CONTENT);
         } else {
-          return new ResponseEntity<String>("Container could not be deleted", responseHeaders,
-              HttpStatus.CONFLICT);
+          return notDeleted("Container could not be deleted", responseHeaders, path, version);
         }
       } else if (cdmiObject instanceof DataObject) {
-        DataObject dataObject = dataObjectDao.deleteByPath(path);
+        DataObject dataObject = version != null
+            ? dataObjectDao.deleteByPathIfVersion(path, version)
+            : dataObjectDao.deleteByPath(path);
         if (dataObject != null) {
           return new ResponseEntity<String>("Data object deleted", responseHeaders,
               HttpStatus.NO_CONTENT);
         } else {
-          return new ResponseEntity<String>("Data object could not be deleted", responseHeaders,
-              HttpStatus.CONFLICT);
+          return notDeleted("Data object could not be deleted", responseHeaders, path, version);
         }
+      } else if (cdmiObject instanceof Queue) {
+        String query = request.getQueryString();
+        if (query != null && parseQueueCount(query) > 0) {
+          try {
+            long acknowledged =
+                queueDao.acknowledge(path, queueConsumer(query), parseQueueCount(query));
+            if (acknowledged >= 0) {
+              return new ResponseEntity<String>("Queue values deleted", responseHeaders,
+                  HttpStatus.NO_CONTENT);
+            }
+          } catch (IllegalArgumentException ex) {
+            return new ResponseEntity<String>(ex.getMessage(), responseHeaders,
+                HttpStatus.BAD_REQUEST);
+          }
+        } else if ((version != null ? queueDao.deleteByPathIfVersion(path, version)
+            : queueDao.deleteByPath(path)) != null) {
+          return new ResponseEntity<String>("Queue deleted", responseHeaders,
+              HttpStatus.NO_CONTENT);
+        }
+        return notDeleted("Queue could not be deleted", responseHeaders, path, version);
       }
     }
     return new ResponseEntity<String>("Not found", responseHeaders, HttpStatus.NOT_FOUND);
   }
 
+  /**
+   * Batch endpoint, executes a stream of operations, one JSON object per line, e.g.
+   * {@code {"op":"create","path":"/container/object","type":"application/cdmi-object",
+   * "body":{"value":"..."}}}. Supported operations are create, update, delete and get.
+   * 
+   * <p>
+   * The operations are executed in order, up to {@code cdmi.batch.size} of them in one unit of
+   * work, so each modified object and each container's children are written once per unit of
+   * work. The results are streamed back in the same order, one JSON object per line.
+   * </p>
+   * 
+   * @param request the {@link HttpServletRequest}
+   * @return the results of all operations
+   * @throws IOException if the request body can't be read
+   */
+  @Secured({"ROLE_ADMIN", "ROLE_USER", "ROLE_CLIENT"})
+  @RequestMapping(path = "/cdmi_batch", method = RequestMethod.POST,
+      consumes = "application/x-ndjson")
+  public ResponseEntity<StreamingResponseBody> batch(HttpServletRequest request)
+      throws IOException {
+
+    HttpHeaders responseHeaders = new HttpHeaders();
+    responseHeaders.add("X-CDMI-Specification-Version", "1.1.1");
+    responseHeaders.setContentType(new MediaType("application", "x-ndjson"));
+
+    BufferedReader reader = request.getReader();
+    SecurityContext securityContext = SecurityContextHolder.getContext();
+    StreamingResponseBody results = output -> {
+      SecurityContextHolder.setContext(securityContext);
+      try {
+        executeBatch(reader, output);
+      } finally {
+        SecurityContextHolder.clearContext();
+      }
+    };
+    return new ResponseEntity<StreamingResponseBody>(results, responseHeaders, HttpStatus.OK);
+  }
+
+  private void executeBatch(BufferedReader reader, OutputStream output) throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+    List<String> operations = new ArrayList<>();
+    int index = 0;
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (line.trim().isEmpty()) {
+        continue;
+      }
+      operations.add(line);
+      if (operations.size() >= batchSize) {
+        index = executeOperations(operations, index, writer);
+        operations.clear();
+      }
+    }
+    executeOperations(operations, index, writer);
+    writer.flush();
+  }
+
+  private int executeOperations(List<String> operations, int firstIndex, Writer writer)
+      throws IOException {
+    if (operations.isEmpty()) {
+      return firstIndex;
+    }
+    List<JSONObject> results = new ArrayList<>(operations.size());
+    try {
+      UnitOfWork.execute(() -> {
+        for (int i = 0; i < operations.size(); i++) {
+          UnitOfWork.current().setOperation(i);
+          results.add(executeOperation(operations.get(i), firstIndex + i));
+        }
+        return results;
+      });
+    } catch (FlushFailedException ex) {
+      log.error("Batch operations {} to {}: {}", firstIndex, firstIndex + results.size() - 1,
+          ex.getMessage());
+      // the operations' updates weren't stored
+      for (Object failed : ex.getFailedOperations()) {
+        results.get((Integer) failed).put("status", HttpStatus.INTERNAL_SERVER_ERROR.value())
+            .put("error", "not stored").remove("objectID");
+      }
+    }
+    log.debug("Executed batch operations {} to {}", firstIndex, firstIndex + results.size() - 1);
+    for (JSONObject result : results) {
+      writer.write(result.toString());
+      writer.write('\n');
+    }
+    writer.flush();
+    return firstIndex + results.size();
+  }
+
+  private JSONObject executeOperation(String line, int index) {
+    JSONObject result = new JSONObject();
+    result.put("index", index);
+    try {
+      JSONObject operation = new JSONObject(line);
+      String op = operation.optString("op");
+      result.put("op", op);
+      if (!operation.has("path")) {
+        return result.put("status", HttpStatus.BAD_REQUEST.value()).put("error", "path missing");
+      }
+      String path = Paths.get("/", operation.getString("path")).normalize().toString();
+      result.put("path", path);
+
+      CdmiObject cdmiObject = cdmiObjectDao.getCdmiObjectByPath(path);
+      switch (op) {
+        case "get":
+          if (cdmiObject == null) {
+            return result.put("status", HttpStatus.NOT_FOUND.value());
+          }
+          String objectString =
+              generateResponse(cdmiObject, operation.optString("query", null), new HttpHeaders());
+          if (objectString == null) {
+            return result.put("status", HttpStatus.NOT_FOUND.value());
+          }
+          return result.put("status", HttpStatus.OK.value()).put("object",
+              new JSONObject(objectString));
+        case "create":
+        case "update":
+          if (op.equals("create") && cdmiObject != null) {
+            return result.put("status", HttpStatus.CONFLICT.value()).put("error",
+                "object exists");
+          }
+          if (op.equals("update") && cdmiObject == null) {
+            return result.put("status", HttpStatus.NOT_FOUND.value());
+          }
+          String contentType = operation.optString("type",
+              cdmiObject instanceof Container ? MediaTypes.CONTAINER : MediaTypes.DATA_OBJECT);
+          JSONObject body = operation.optJSONObject("body");
+          CdmiObject newCdmiObject = updateOrCreate(cdmiObject, path,
+              body != null ? body : new JSONObject(), contentType,
+              operation.optString("query", null), null);
+          if (newCdmiObject == null) {
+            return result.put("status", HttpStatus.BAD_REQUEST.value());
+          }
+          if (cdmiObject == null) {
+            negativeLookupCache.invalidate(path);
+            result.put("objectID", newCdmiObject.getObjectId());
+            return result.put("status", HttpStatus.CREATED.value());
+          }
+          return result.put("status", HttpStatus.NO_CONTENT.value());
+        case "delete":
+          if (cdmiObject == null) {
+            return result.put("status", HttpStatus.NOT_FOUND.value());
+          }
+          CdmiObject deleted = cdmiObject instanceof Container ? containerDao.deleteByPath(path)
+              : dataObjectDao.deleteByPath(path);
+          return result.put("status",
+              deleted != null ? HttpStatus.NO_CONTENT.value() : HttpStatus.CONFLICT.value());
+        default:
+          return result.put("status", HttpStatus.BAD_REQUEST.value()).put("error",
+              "unsupported operation " + op);
+      }
+    } catch (BackEndException ex) {
+      return result.put("status", HttpStatus.CONFLICT.value()).put("error", ex.getMessage());
+    } catch (JSONException ex) {
+      return result.put("status", HttpStatus.BAD_REQUEST.value()).put("error", ex.getMessage());
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+      return result.put("status", HttpStatus.INTERNAL_SERVER_ERROR.value()).put("error",
+          ex.getClass().getName());
+    }
+  }
+
+  private CompletableFuture<ResponseEntity<?>> async(Pool pool,
+      Supplier<ResponseEntity<?>> handler) {
+    return async(pool, SecurityContextHolder.getContext(), handler);
+  }
+
+  /**
+   * Runs a handler as unit of work on the given pool, releasing the request thread.
+   * 
+   * @param pool the {@link Pool} for the handler's blocking calls
+   * @param securityContext the request's {@link SecurityContext}
+   * @param handler the handler
+   * @return the handler's response, 503 if the pool is saturated
+   */
+  private CompletableFuture<ResponseEntity<?>> async(Pool pool, SecurityContext securityContext,
+      Supplier<ResponseEntity<?>> handler) {
+    return requestExecutors
+        .<ResponseEntity<?>>supply(pool, securityContext, () -> UnitOfWork.execute(handler))
+        .exceptionally(this::handleFailure);
+  }
+
+  private ResponseEntity<?> handleFailure(Throwable throwable) {
+    Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+        ? throwable.getCause() : throwable;
+    HttpHeaders responseHeaders = new HttpHeaders();
+    responseHeaders.add("X-CDMI-Specification-Version", "1.1.1");
+    if (cause instanceof RejectedExecutionException) {
+      responseHeaders.add("Retry-After", "1");
+      return new ResponseEntity<String>("Service unavailable", responseHeaders,
+          HttpStatus.SERVICE_UNAVAILABLE);
+    }
+    log.error("{} {}", cause.getClass().getName(), cause.getMessage());
+    return new ResponseEntity<String>("Internal server error", responseHeaders,
+        HttpStatus.INTERNAL_SERVER_ERROR);
+  }
+
+  private static boolean requestsValue(HttpServletRequest request) {
+    String query = request.getQueryString();
+    return query != null && query.contains("value");
+  }
+
   private String generateResponse(CdmiObject cdmiObject, String query, HttpHeaders responseHeaders)
       throws BackEndException {
+    return generateResponse(cdmiObject, query, responseHeaders, null);
+  }
+
+  /**
+   * Generates the response for an object with the storage back-end's status already fetched.
+   * 
+   * @param status the storage back-end's status of a container or data object, fetched if
+   *        {@code null}
+   */
+  private String generateResponse(CdmiObject cdmiObject, String query, HttpHeaders responseHeaders,
+      CdmiObjectStatus status) throws BackEndException {
     String objectString = null;
     if (cdmiObject instanceof Container) {
       responseHeaders.setContentType(new MediaType("application", "cdmi-container+json"));
       Container container = (Container) cdmiObject;
 
       // storage back-end integration
-      getCurrentStatusFromStorageBackend(container);
+      getCurrentStatusFromStorageBackend(container, status);
 
       if (query != null) {
-        objectString = filterQueryFields(container.toJson(), query).toString();
+        JSONObject json = filterQueryFields(container.toJson(), query);
+        putExpandedChildren(container, query, json);
+        objectString = json.toString();
       } else {
         objectString = container.toJson().toString();
       }
@@ -400,13 +1493,34 @@ public class CdmiRestController {
       DataObject dataObject = (DataObject) cdmiObject;
 
       // storage back-end integration
-      getCurrentStatusFromStorageBackend(dataObject);
+      getCurrentStatusFromStorageBackend(dataObject, status);
 
       if (query != null) {
-        objectString = filterQueryFields(dataObject.toJson(), query).toString();
+        JSONObject json = filterQueryFields(dataObject.toJson(), query);
+        putValue(dataObject, query, json);
+        objectString = json.toString();
       } else {
         objectString = dataObject.toJson().toString();
       }
+    } else if (cdmiObject instanceof Queue) {
+      responseHeaders.setContentType(new MediaType("application", "cdmi-queue+json"));
+      Queue queue = (Queue) cdmiObject;
+      if (queue.getValue() == null) {
+        String path = Paths.get(queue.getParentUri(), queue.getObjectName()).toString();
+        queue.setQueueValues(queueDao.getQueueValues(path, queueConsumer(query)));
+      }
+
+      if (query != null) {
+        JSONObject json = filterQueryFields(queue.toResponseJson(), query);
+        if (queue.getValue() != null) {
+          json.put("queueValues", queue.getQueueValues());
+          json.putOpt("valuerange", queue.getValuerange());
+          json.put("value", queue.getValue());
+        }
+        objectString = json.toString();
+      } else {
+        objectString = queue.toResponseJson().toString();
+      }
     } else if (cdmiObject instanceof Capability) {
       responseHeaders.setContentType(new MediaType("application", "cdmi-capability+json"));
       Capability capability = (Capability) cdmiObject;
@@ -443,29 +1557,90 @@ public class CdmiRestController {
     }
   }
 
-  private CdmiObject updateOrCreate(CdmiObject cdmiObject, String path, String body,
-      String contentType) throws BackEndException {
+  /**
+   * Publishes the completion of a requested QoS transition to the change feed, the storage
+   * back-end is asked with the requesting user's credentials.
+   */
+  private void watchQosTransition(String path, String capabilitiesUri) {
+    SecurityContext securityContext = SecurityContextHolder.getContext();
+    qosTransitionWatcher.watch(path, capabilitiesUri, () -> {
+      SecurityContextHolder.setContext(securityContext);
+      try {
+        setAuthenticatedSubject();
+        return storageBackend.getCurrentStatus(path);
+      } finally {
+        SecurityContextHolder.clearContext();
+      }
+    });
+  }
+
+  /**
+   * Writes the updated fields of an object, with an expected version only if the object still has
+   * it. The conditional write is atomic with the check, so it has to come before any content
+   * write, which changes the version as well.
+   */
+  private CdmiObject updateFields(CdmiObject cdmiObject, String path, String version,
+      List<String> updatedFields) {
+    String[] fieldNames = updatedFields.toArray(new String[updatedFields.size()]);
+    if (version == null) {
+      return cdmiObjectDao.updateCdmiObjectFields(cdmiObject, fieldNames);
+    }
+    CdmiObject updated =
+        cdmiObjectDao.updateCdmiObjectIfVersion(path, version, cdmiObject, fieldNames);
+    if (updated == null) {
+      throw new PreconditionFailedException(path);
+    }
+    return updated;
+  }
+
+  /**
+   * Gets the object at the given path. With an {@link AsyncCdmiObjectDao} its parent, which a new
+   * object is added to, is looked up at the same time and both are kept in the unit of work.
+   * 
+   * @param path the object's path
+   * @return the {@link CdmiObject} or {@code null} if there is none
+   */
+  private CdmiObject getCdmiObjectWithParent(String path) {
+    Path parentPath = Paths.get(path).getParent();
+    if (asyncCdmiObjectDao == null || parentPath == null) {
+      return cdmiObjectDao.getCdmiObjectByPath(path);
+    }
+    CompletableFuture<CdmiObject> cdmiObject =
+        asyncCdmiObjectDao.getCdmiObjectByPath(path).toCompletableFuture();
+    CompletableFuture<CdmiObject> parent =
+        asyncCdmiObjectDao.getCdmiObjectByPath(parentPath.toString()).toCompletableFuture();
+    UnitOfWork unitOfWork = UnitOfWork.current();
+    unitOfWork.registerLoad(parent.join(), parentPath.toString());
+    unitOfWork.registerLoad(cdmiObject.join(), path);
+    return cdmiObject.join();
+  }
+
+  private CdmiObject updateOrCreate(CdmiObject cdmiObject, String path, JSONObject requestJson,
+      String contentType, String query, String version) throws BackEndException {
     // create or update container
     if (contentType.contains(MediaTypes.CONTAINER)) {
       if (cdmiObject == null) {
         log.warn("Create container...");
-        Container containerRequest = Container.fromJson(new JSONObject(body));
+        Container containerRequest = Container.fromJson(requestJson);
         cdmiObject = containerDao.createByPath(path, containerRequest);
       }
       if (cdmiObject instanceof Container) {
         log.debug("Update container...");
         Container existingContainer = (Container) cdmiObject;
         // update allowed for "metadata" and "capabilitiesURI"
-        JSONObject updateJson = new JSONObject(body);
-        if (updateJson.has("metadata")) {
-          existingContainer.setMetadata(updateJson.getJSONObject("metadata"));
+        List<String> updatedFields = new ArrayList<>();
+        if (requestJson.has("metadata")) {
+          existingContainer.setMetadata(requestJson.getJSONObject("metadata"));
+          updatedFields.add("metadata");
         }
-        if (updateJson.has("capabilitiesURI")) {
+        if (requestJson.has("capabilitiesURI")) {
           // Change of QoS
           try {
             setAuthenticatedSubject();
-            storageBackend.updateCdmiObject(path, updateJson.getString("capabilitiesURI"));
-            existingContainer.setCapabilitiesUri(updateJson.getString("capabilitiesURI"));
+            storageBackend.updateCdmiObject(path, requestJson.getString("capabilitiesURI"));
+            watchQosTransition(path, requestJson.getString("capabilitiesURI"));
+            existingContainer.setCapabilitiesUri(requestJson.getString("capabilitiesURI"));
+            updatedFields.add("capabilitiesURI");
           } catch (BackEndException ex) {
             // ex.printStackTrace();
             log.warn("WARNING: could not trigger QoS change for configured storage back-end {}",
@@ -473,31 +1648,53 @@ public class CdmiRestController {
             throw new BackEndException("could not trigger QoS change");
           }
         }
-        Container updatedContainer = (Container) cdmiObjectDao.updateCdmiObject(existingContainer);
-        return updatedContainer;
+        return (Container) updateFields(existingContainer, path, version, updatedFields);
       }
     }
     // create or update data object
     if (contentType.contains(MediaTypes.DATA_OBJECT)) {
+      // a bare value replaces the whole value, a range overwrites the requested bytes only
+      long[] valueRange = query != null ? parseValueRange(query) : null;
+      if (valueRange != null && valueRange[1] < 0) {
+        valueRange = null;
+      }
+      if (valueRange != null && requestJson.has("value")
+          && requestJson.getString("value").getBytes().length > valueRange[1] - valueRange[0] + 1) {
+        throw new IllegalArgumentException(
+            "Value longer than the range " + valueRange[0] + "-" + valueRange[1]);
+      }
+      boolean created = false;
       if (cdmiObject == null) {
-        log.warn("Create data object...");
-        DataObject dataObjectRequest = DataObject.fromJson(new JSONObject(body));
-        cdmiObject = dataObjectDao.createByPath(path, dataObjectRequest);
+        DataObject dataObjectRequest = DataObject.fromJson(requestJson);
+        if (dataObjectRequest.getMove() != null) {
+          log.debug("Move data object from {}...", dataObjectRequest.getMove());
+          cdmiObject = dataObjectDao.moveByPath(sourcePath(dataObjectRequest.getMove()), path);
+        } else if (dataObjectRequest.getCopy() != null) {
+          log.debug("Copy data object from {}...", dataObjectRequest.getCopy());
+          cdmiObject = dataObjectDao.copyByPath(sourcePath(dataObjectRequest.getCopy()), path);
+        } else {
+          log.warn("Create data object...");
+          cdmiObject = dataObjectDao.createByPath(path, dataObjectRequest);
+          created = true;
+        }
       }
       if (cdmiObject instanceof DataObject) {
         log.debug("Update data object...");
         DataObject existingDataObject = (DataObject) cdmiObject;
         // update allowed for "value", "metadata" and "capabilitiesURI"
-        JSONObject updateJson = new JSONObject(body);
-        if (updateJson.has("metadata")) {
-          existingDataObject.setMetadata(updateJson.getJSONObject("metadata"));
+        List<String> updatedFields = new ArrayList<>();
+        if (requestJson.has("metadata")) {
+          existingDataObject.setMetadata(requestJson.getJSONObject("metadata"));
+          updatedFields.add("metadata");
         }
-        if (updateJson.has("capabilitiesURI")) {
+        if (requestJson.has("capabilitiesURI")) {
           // Change of QoS
           try {
             setAuthenticatedSubject();
-            storageBackend.updateCdmiObject(path, updateJson.getString("capabilitiesURI"));
-            existingDataObject.setCapabilitiesUri(updateJson.getString("capabilitiesURI"));
+            storageBackend.updateCdmiObject(path, requestJson.getString("capabilitiesURI"));
+            watchQosTransition(path, requestJson.getString("capabilitiesURI"));
+            existingDataObject.setCapabilitiesUri(requestJson.getString("capabilitiesURI"));
+            updatedFields.add("capabilitiesURI");
           } catch (BackEndException ex) {
             // ex.printStackTrace();
             log.warn("WARNING: could not trigger QoS change for configured storage back-end {}",
@@ -505,25 +1702,67 @@ public class CdmiRestController {
             throw new BackEndException("could not trigger QoS change");
           }
         }
-        if (updateJson.has("value")) {
-          // Change of content
-          dataObjectDao.updateContent(path, updateJson.getString("value").getBytes());
-        }
         DataObject updatedDataObject =
-            (DataObject) cdmiObjectDao.updateCdmiObject(existingDataObject);
+            (DataObject) updateFields(existingDataObject, path, version, updatedFields);
+        if (requestJson.has("value")) {
+          // Change of content, possibly of the requested range only
+          byte[] value = requestJson.getString("value").getBytes();
+          if (valueRange != null) {
+            dataObjectDao.updateContent(path, valueRange[0], value);
+          } else if (!created) {
+            // a new data object's value is written on creation
+            dataObjectDao.updateContent(path, value);
+          }
+        }
         return updatedDataObject;
       }
     }
+    // create or update queue
+    if (contentType.contains(MediaTypes.QUEUE)) {
+      if (cdmiObject == null) {
+        log.debug("Create queue...");
+        return queueDao.createByPath(path, Queue.fromJson(requestJson));
+      }
+      if (cdmiObject instanceof Queue) {
+        Queue existingQueue = (Queue) cdmiObject;
+        Queue queueRequest = Queue.fromJson(requestJson);
+        // update allowed for "metadata", "value" is enqueued
+        List<String> updatedFields = new ArrayList<>();
+        if (requestJson.has("metadata")) {
+          existingQueue.setMetadata(queueRequest.getMetadata());
+          updatedFields.add("metadata");
+        }
+        if (!updatedFields.isEmpty() || version != null) {
+          existingQueue = (Queue) updateFields(existingQueue, path, version, updatedFields);
+        }
+        if (query != null && Arrays.asList(query.split(";")).contains("value")
+            && queueRequest.getValue() != null) {
+          log.debug("Enqueue {} values...", queueRequest.getValue().length());
+          queueDao.enqueue(path, QueueDao.values(queueRequest.getValue()));
+        }
+        return existingQueue;
+      }
+    }
     return null;
   }
 
-  private void getCurrentStatusFromStorageBackend(DataObject dataObject) throws BackEndException {
+  /**
+   * Gets the path of the source of a copy or move, given as path or as URI.
+   */
+  private static String sourcePath(String source) {
+    String path = URI.create(source.trim()).getPath();
+    return Paths.get("/", path != null ? path : "").normalize().toString();
+  }
+
+  private void getCurrentStatusFromStorageBackend(DataObject dataObject, CdmiObjectStatus status)
+      throws BackEndException {
     // add information from storage back-end
     try {
       if (storageBackend != null) {
-        String path = Paths.get(dataObject.getParentUri(), dataObject.getObjectName()).toString();
-        setAuthenticatedSubject();
-        CdmiObjectStatus status = storageBackend.getCurrentStatus(path);
+        if (status == null) {
+          status = getCurrentStatus(
+              Paths.get(dataObject.getParentUri(), dataObject.getObjectName()).toString());
+        }
         // update monitored attributes
         for (Entry<String, Object> entry : status.getMonitoredAttributes().entrySet()) {
           dataObject.getMetadata().put(entry.getKey(), entry.getValue());
@@ -542,13 +1781,15 @@ public class CdmiRestController {
     }
   }
 
-  private void getCurrentStatusFromStorageBackend(Container container) throws BackEndException {
+  private void getCurrentStatusFromStorageBackend(Container container, CdmiObjectStatus status)
+      throws BackEndException {
     // add information from storage back-end
     try {
       if (storageBackend != null) {
-        String path = Paths.get(container.getParentUri(), container.getObjectName()).toString();
-        setAuthenticatedSubject();
-        CdmiObjectStatus status = storageBackend.getCurrentStatus(path);
+        if (status == null) {
+          status = getCurrentStatus(
+              Paths.get(container.getParentUri(), container.getObjectName()).toString());
+        }
         // update monitored attributes
         for (Entry<String, Object> entry : status.getMonitoredAttributes().entrySet()) {
           container.getMetadata().put(entry.getKey(), entry.getValue());
@@ -583,6 +1824,149 @@ public class CdmiRestController {
     }
   }
 
+  /**
+   * Gets the requested range of children from the query parameters.
+   * 
+   * @param query the given query parameters
+   * @return the indices of the first and the last requested child or {@code null}
+   */
+  private int[] parseChildrenRange(String query) {
+    for (String queryField : query.split(";")) {
+      if (queryField.startsWith("children:")) {
+        try {
+          String[] rangeValues = queryField.split(":")[1].split("-");
+          int rangeStart = Integer.valueOf(rangeValues[0]);
+          int rangeStop = rangeValues.length > 1 ? Integer.valueOf(rangeValues[1]) : rangeStart;
+          return new int[] {rangeStart, rangeStop};
+        } catch (RuntimeException ex) {
+          log.warn("Invalid children range {}", queryField);
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Gets the requested range of a data object's value from the query parameters.
+   * 
+   * @param query the given query parameters
+   * @return the offsets of the first and the last requested byte, the last one is negative if the
+   *         value is requested up to its end, or {@code null} if no value is requested
+   */
+  private long[] parseValueRange(String query) {
+    for (String queryField : query.split(";")) {
+      if (queryField.equals("value")) {
+        return new long[] {0, -1};
+      }
+      if (queryField.startsWith("value:")) {
+        try {
+          String[] rangeValues = queryField.split(":")[1].split("-");
+          long rangeStart = Long.valueOf(rangeValues[0]);
+          long rangeStop = rangeValues.length > 1 ? Long.valueOf(rangeValues[1]) : rangeStart;
+          return new long[] {rangeStart, rangeStop};
+        } catch (RuntimeException ex) {
+          log.warn("Invalid value range {}", queryField);
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Adds the requested fields of the listed children to the response, in the order of the
+   * children. The fields of all children are read in one batch and reflect the stored state, the
+   * storage back-end isn't asked for the children's current status.
+   */
+  private void putExpandedChildren(Container container, String query, JSONObject json) {
+    String[] fieldNames = null;
+    for (String queryField : query.split(";")) {
+      if (queryField.startsWith("expand=")) {
+        fieldNames = queryField.substring("expand=".length()).split(",");
+      }
+    }
+    if (fieldNames == null) {
+      return;
+    }
+    JSONArray children = json.has("children") ? json.getJSONArray("children")
+        : container.getChildren();
+    if (children == null) {
+      return;
+    }
+    String parentPath = Paths.get(container.getParentUri(), container.getObjectName()).toString();
+    List<String> paths = new ArrayList<>(children.length());
+    for (int i = 0; i < children.length(); i++) {
+      paths.add(Paths.get(parentPath, children.getString(i)).toString());
+    }
+    List<JSONObject> fields = cdmiObjectDao.getFieldsByPath(paths, fieldNames);
+    if (fields == null) {
+      return;
+    }
+    JSONArray expandedChildren = new JSONArray();
+    for (int i = 0; i < fields.size(); i++) {
+      JSONObject child = fields.get(i) != null ? fields.get(i) : new JSONObject();
+      child.put("objectName", children.getString(i));
+      expandedChildren.put(child);
+    }
+    json.put("expandedchildren", expandedChildren);
+  }
+
+  /**
+   * Gets the number of values to dequeue from or acknowledge in a queue, {@code value} requests a
+   * single value, {@code values:<count>} up to {@code cdmi.queue.maxBatch} values.
+   * 
+   * @return the number of values or {@code 0} if the query doesn't request values
+   */
+  private int parseQueueCount(String query) {
+    for (String queryField : query.split(";")) {
+      if (queryField.equals("value") || queryField.equals("values")) {
+        return 1;
+      }
+      if (queryField.startsWith("values:")) {
+        try {
+          return (int) Math.min(Long.parseLong(queryField.substring("values:".length())),
+              queueMaxBatch);
+        } catch (NumberFormatException ex) {
+          log.warn("Invalid number of queue values {}", queryField);
+        }
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Gets the queue consumer given by the query field {@code consumer:<name>}.
+   */
+  private static String queueConsumer(String query) {
+    if (query != null) {
+      for (String queryField : query.split(";")) {
+        if (queryField.startsWith("consumer:")) {
+          return queryField.substring("consumer:".length());
+        }
+      }
+    }
+    return "default";
+  }
+
+  /**
+   * Adds the requested range of a data object's value to the response.
+   */
+  private void putValue(DataObject dataObject, String query, JSONObject json) {
+    long[] valueRange = parseValueRange(query);
+    if (valueRange == null) {
+      return;
+    }
+    String path = Paths.get(dataObject.getParentUri(), dataObject.getObjectName()).toString();
+    int length = valueRange[1] < 0 ? -1
+        : (int) Math.min(Math.max(0, valueRange[1] - valueRange[0] + 1), Integer.MAX_VALUE);
+    byte[] value = dataObjectDao.readContent(path, valueRange[0], length);
+    if (value != null) {
+      json.put("value", new String(value));
+      if (value.length > 0) {
+        json.put("valuerange", valueRange[0] + "-" + (valueRange[0] + value.length - 1));
+      }
+    }
+  }
+
   /**
    * Filters the requested JSON object according to the query parameters.
    * 
@@ -596,6 +1980,12 @@ public class CdmiRestController {
 
     JSONArray names = json.names();
     JSONArray children = json.optJSONArray("children");
+    // the children may already be restricted to the range starting at childrenOffset
+    int childrenOffset = 0;
+    String loadedRange = json.optString("childrenrange");
+    if (!loadedRange.isEmpty()) {
+      childrenOffset = Integer.valueOf(loadedRange.split("-")[0]);
+    }
 
     for (int i = 0; i < names.length(); i++) {
       String name = names.getString(i);
@@ -618,14 +2008,14 @@ public class CdmiRestController {
             int rangeStop = Integer.valueOf(rangeValues[1]);
             for (int i = rangeStart; i <= rangeStop; i++) {
               try {
-                returnChildren.put(children.get(i));
+                returnChildren.put(children.get(i - childrenOffset));
               } catch (JSONException ex) {
                 log.warn("Requested range out of bounds, {}", i);
               }
             }
           } else {
             try {
-              returnChildren.put(children.get(rangeStart));
+              returnChildren.put(children.get(rangeStart - childrenOffset));
             } catch (JSONException ex) {
               log.warn("Requested range out of bounds, {}", rangeStart);
             }
@@ -9,6 +9,8 @@
 
 package edu.kit.scc;
 
+import java.nio.charset.StandardCharsets;
+
 public final class Utils {
 
   /*************************************************************************
@@ -61,6 +63,51 @@ public final class Utils {
     return crc;
   }
 
+  /**
+   * Number of hash slots of a Redis cluster.
+   */
+  public static final int CLUSTER_SLOTS = 16384;
+
+  /**
+   * Computes the crc16 checksum in the XMODEM variant, which Redis cluster uses for key hashing.
+   * 
+   * <p>
+   * Note that {@link #crc16(byte[])} computes a different variant.
+   * </p>
+   * 
+   * @param bytes the input {@link byte[]}
+   * @return the crc16 checksum
+   */
+  public static int crc16Xmodem(byte[] bytes) {
+    int crc = 0x0000;
+    for (byte b : bytes) {
+      crc ^= (b & 0xff) << 8;
+      for (int i = 0; i < 8; i++) {
+        crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+      }
+      crc &= 0xffff;
+    }
+    return crc;
+  }
+
+  /**
+   * Computes the Redis cluster hash slot of the given key. If the key contains a hash tag, i.e. a
+   * non-empty substring between the first '{' and the next '}', only the hash tag is hashed.
+   * 
+   * @param key the key
+   * @return the hash slot
+   */
+  public static int keySlot(String key) {
+    int start = key.indexOf('{');
+    if (start >= 0) {
+      int end = key.indexOf('}', start + 1);
+      if (end > start + 1) {
+        key = key.substring(start + 1, end);
+      }
+    }
+    return crc16Xmodem(key.getBytes(StandardCharsets.UTF_8)) % CLUSTER_SLOTS;
+  }
+
   protected static final char[] hexArray = "0123456789ABCDEF".toCharArray();
 
   /**
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.bulk;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the bytes transferred per second, shared by all threads of a bulk operation.
+ *
+ * <p>
+ * Each transfer reserves its share of the bandwidth and waits until the reservations before it
+ * have been used up. Bandwidth not used for up to a second may be used by later transfers.
+ * </p>
+ */
+class BandwidthLimiter {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final long bytesPerSecond;
+
+  private long nextFreeNanos = System.nanoTime();
+
+  /**
+   * Creates a new limiter.
+   *
+   * @param bytesPerSecond the maximum bytes per second, 0 for no limit
+   */
+  BandwidthLimiter(long bytesPerSecond) {
+    this.bytesPerSecond = bytesPerSecond;
+  }
+
+  /**
+   * Waits until the given number of bytes may be transferred.
+   *
+   * @param bytes the number of transferred bytes
+   * @throws InterruptedException if interrupted while waiting
+   */
+  void acquire(long bytes) throws InterruptedException {
+    if (bytesPerSecond <= 0 || bytes <= 0) {
+      return;
+    }
+    long duration = bytes / bytesPerSecond * SECOND + bytes % bytesPerSecond * SECOND
+        / bytesPerSecond;
+    long wait;
+    synchronized (this) {
+      long now = System.nanoTime();
+      nextFreeNanos = Math.max(nextFreeNanos, now - SECOND) + duration;
+      wait = nextFreeNanos - now;
+    }
+    if (wait > 0) {
+      TimeUnit.NANOSECONDS.sleep(wait);
+    }
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.bulk;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe progress of a long-running bulk operation on a CDMI subtree.
+ */
+public class BulkProgress {
+
+  public static final String PROCESSING = "Processing";
+  public static final String COMPLETE = "Complete";
+  public static final String ERROR = "Error";
+
+  private final String operation;
+  private final String path;
+  private final long startTime;
+
+  private final LongAdder containers = new LongAdder();
+  private final LongAdder dataObjects = new LongAdder();
+  private final LongAdder skipped = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LongAdder bytes = new LongAdder();
+
+  private volatile long endTime;
+  private volatile String completionStatus = PROCESSING;
+  private volatile String error;
+
+  /**
+   * Starts tracking a new bulk operation.
+   *
+   * @param operation the operation's name, e.g. import
+   * @param path the CDMI path of the subtree
+   */
+  public BulkProgress(String operation, String path) {
+    this.operation = operation;
+    this.path = path;
+    this.startTime = System.currentTimeMillis();
+  }
+
+  public String getOperation() {
+    return operation;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  public String getCompletionStatus() {
+    return completionStatus;
+  }
+
+  public String getError() {
+    return error;
+  }
+
+  public boolean isDone() {
+    return !PROCESSING.equals(completionStatus);
+  }
+
+  public void incrementContainers() {
+    containers.increment();
+  }
+
+  public void incrementDataObjects() {
+    dataObjects.increment();
+  }
+
+  public void incrementSkipped() {
+    skipped.increment();
+  }
+
+  public void incrementFailed() {
+    failed.increment();
+  }
+
+  public void addBytes(long count) {
+    bytes.add(count);
+  }
+
+  public long getContainers() {
+    return containers.sum();
+  }
+
+  public long getDataObjects() {
+    return dataObjects.sum();
+  }
+
+  public long getSkipped() {
+    return skipped.sum();
+  }
+
+  public long getFailed() {
+    return failed.sum();
+  }
+
+  public long getBytes() {
+    return bytes.sum();
+  }
+
+  /**
+   * Gets the number of processed objects, i.e. created, skipped and failed ones.
+   *
+   * @return the number of processed objects
+   */
+  public long getProcessed() {
+    return getContainers() + getDataObjects() + getSkipped() + getFailed();
+  }
+
+  public long getElapsedMillis() {
+    return (isDone() ? endTime : System.currentTimeMillis()) - startTime;
+  }
+
+  /**
+   * Gets the throughput so far.
+   *
+   * @return the processed objects per second
+   */
+  public double getObjectsPerSecond() {
+    long elapsed = getElapsedMillis();
+    return elapsed > 0 ? getProcessed() * 1000.0 / elapsed : 0;
+  }
+
+  public void complete() {
+    endTime = System.currentTimeMillis();
+    completionStatus = COMPLETE;
+  }
+
+  /**
+   * Marks the operation as failed.
+   *
+   * @param error the error description
+   */
+  public void fail(String error) {
+    this.error = error;
+    endTime = System.currentTimeMillis();
+    completionStatus = ERROR;
+  }
+
+  /**
+   * Serializes the current progress.
+   *
+   * @return a {@link JSONObject}
+   */
+  public JSONObject toJson() {
+    JSONObject json = new JSONObject();
+    json.put("operation", operation);
+    json.put("path", path);
+    json.put("completionStatus", completionStatus);
+    if (error != null) {
+      json.put("error", error);
+    }
+    json.put("containers", getContainers());
+    json.put("dataobjects", getDataObjects());
+    json.put("skipped", getSkipped());
+    json.put("failed", getFailed());
+    json.put("bytes", getBytes());
+    json.put("elapsedMillis", getElapsedMillis());
+    json.put("objectsPerSecond", Math.round(getObjectsPerSecond()));
+    return json;
+  }
+
+  @Override
+  public String toString() {
+    return "BulkProgress " + toJson();
+  }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.bulk;
+
+import edu.kit.scc.cache.NegativeLookupCache;
+
+import org.json.JSONArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.dao.CdmiObjectDao;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+import org.snia.cdmiserver.model.DataObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Imports directories and files which exist below the base directory but have not been created
+ * via CDMI.
+ *
+ * <p>
+ * The subtree is walked in parallel on a fork/join pool, one task per directory whose entries are
+ * split into batches. Metadata is created for every entry without metadata, the children of each
+ * container are written once after all of its entries have been handled. Hidden files, e.g. the
+ * file system profile's metadata files, and the reserved top-level directories are skipped.
+ * </p>
+ */
+@Component
+public class FilesystemImporter {
+
+  private static final Logger log = LoggerFactory.getLogger(FilesystemImporter.class);
+
+  private static final Set<String> RESERVED_NAMES = new HashSet<>(
+      Arrays.asList("cdmi_objectid", "cdmi_capabilities", "cdmi_domains", "cdmi_metadata"));
+
+  @Autowired
+  private CdmiObjectDao cdmiObjectDao;
+
+  @Autowired
+  private NegativeLookupCache negativeLookupCache;
+
+  @Value("${cdmi.data.baseDirectory}")
+  private String baseDirectory;
+
+  @Value("${cdmi.import.parallelism:0}")
+  private int parallelism;
+
+  @Value("${cdmi.import.batchSize:1000}")
+  private int batchSize;
+
+  private final Map<String, BulkProgress> imports = new ConcurrentHashMap<>();
+
+  private ForkJoinPool pool;
+
+  @PostConstruct
+  void init() {
+    pool = new ForkJoinPool(
+        parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+  }
+
+  @PreDestroy
+  void cleanUp() {
+    pool.shutdownNow();
+  }
+
+  /**
+   * Gets the progress of the last import of the given path.
+   *
+   * @param path the CDMI path
+   * @return the {@link BulkProgress} or {@code null} if the path has not been imported
+   */
+  public BulkProgress getProgress(String path) {
+    return imports.get(normalize(path));
+  }
+
+  /**
+   * Starts an asynchronous import of the given subtree.
+   *
+   * @param path the CDMI path of the directory to import
+   * @return the {@link BulkProgress} of the running import, or of an already running import of
+   *         the same path
+   */
+  public BulkProgress startImport(String path) {
+    String normalizedPath = normalize(path);
+    BulkProgress progress = new BulkProgress("import", normalizedPath);
+    BulkProgress running = imports.compute(normalizedPath,
+        (key, previous) -> previous != null && !previous.isDone() ? previous : progress);
+    if (running == progress) {
+      pool.execute(() -> runImport(progress));
+    }
+    return running;
+  }
+
+  /**
+   * Imports the given subtree and waits for the import to finish.
+   *
+   * @param path the CDMI path of the directory to import
+   * @return the {@link BulkProgress} of the finished import
+   */
+  public BulkProgress importTree(String path) {
+    BulkProgress progress = new BulkProgress("import", normalize(path));
+    imports.put(progress.getPath(), progress);
+    runImport(progress);
+    return progress;
+  }
+
+  private void runImport(BulkProgress progress) {
+    String path = progress.getPath();
+    log.debug("Start import of {}", path);
+    try {
+      Path directory = Paths.get(baseDirectory, path);
+      if (!Files.isDirectory(directory)) {
+        progress.fail("not a directory " + path);
+        return;
+      }
+      Container container = adoptContainer(path, progress);
+      if (container == null) {
+        progress.fail("could not create container " + path);
+        return;
+      }
+      pool.invoke(new DirectoryTask(directory, path, container, progress));
+      progress.complete();
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+      progress.fail(ex.getClass().getName() + " " + ex.getMessage());
+    } finally {
+      negativeLookupCache.invalidateSubtree(path);
+    }
+    log.debug("Finished {}", progress);
+  }
+
+  /**
+   * Gets the container for the given path, creating the metadata of the container and of missing
+   * ancestors if necessary.
+   */
+  private Container adoptContainer(String path, BulkProgress progress) {
+    CdmiObject cdmiObject = cdmiObjectDao.getCdmiObjectByPath(path);
+    if (cdmiObject != null) {
+      return cdmiObject instanceof Container ? (Container) cdmiObject : null;
+    }
+    Path parentPath = Paths.get(path).getParent();
+    if (parentPath == null) {
+      return null;
+    }
+    Container parent = adoptContainer(parentPath.toString(), progress);
+    if (parent == null) {
+      return null;
+    }
+    String name = Paths.get(path).getFileName().toString();
+    Container container = new Container(name, parentPath.toString(), parent.getObjectId());
+    container = (Container) cdmiObjectDao.createCdmiObject(container, path);
+    if (container != null) {
+      progress.incrementContainers();
+      writeChildren(parent, parentPath.toString(), Arrays.asList(name));
+    }
+    return container;
+  }
+
+  private void writeChildren(Container container, String path, Collection<String> names) {
+    Set<String> merged = new LinkedHashSet<>();
+    JSONArray children = container.getChildren();
+    if (children != null) {
+      for (int i = 0; i < children.length(); i++) {
+        merged.add(children.getString(i));
+      }
+    }
+    if (!merged.addAll(names)) {
+      return;
+    }
+    JSONArray mergedChildren = new JSONArray(merged);
+    container.setChildren(mergedChildren);
+    container.setChildrenrange(CdmiObject.getChildrenRange(mergedChildren));
+    // writes the object and its path in every back-end
+    cdmiObjectDao.updateCdmiObject(container, path);
+  }
+
+  private static String normalize(String path) {
+    return Paths.get("/", path.trim()).normalize().toString();
+  }
+
+  private boolean isSkipped(Path entry, String parentPath) {
+    String name = entry.getFileName().toString();
+    return name.startsWith(".") || parentPath.equals("/") && RESERVED_NAMES.contains(name);
+  }
+
+  /**
+   * Imports all entries of a single directory and forks a task per sub-directory.
+   */
+  private class DirectoryTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Path directory;
+    private final String path;
+    private final Container container;
+    private final BulkProgress progress;
+
+    DirectoryTask(Path directory, String path, Container container, BulkProgress progress) {
+      this.directory = directory;
+      this.path = path;
+      this.container = container;
+      this.progress = progress;
+    }
+
+    @Override
+    protected void compute() {
+      List<Path> entries = new ArrayList<>();
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+        for (Path entry : stream) {
+          if (!isSkipped(entry, path)) {
+            entries.add(entry);
+          }
+        }
+      } catch (IOException ex) {
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+        progress.incrementFailed();
+        return;
+      }
+
+      List<BatchTask> batches = new ArrayList<>();
+      for (int from = 0; from < entries.size(); from += batchSize) {
+        batches.add(new BatchTask(entries.subList(from, Math.min(from + batchSize, entries.size())),
+            path, container, progress));
+      }
+      invokeAll(batches);
+
+      List<String> names = new ArrayList<>(entries.size());
+      List<DirectoryTask> subdirectories = new ArrayList<>();
+      for (BatchTask batch : batches) {
+        subdirectories.addAll(batch.join());
+        names.addAll(batch.names);
+      }
+      // the children index is written once per directory
+      writeChildren(container, path, names);
+
+      invokeAll(subdirectories);
+    }
+  }
+
+  /**
+   * Creates the metadata for a batch of directory entries.
+   */
+  private class BatchTask extends RecursiveTask<List<DirectoryTask>> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<Path> entries;
+    private final String parentPath;
+    private final Container parent;
+    private final BulkProgress progress;
+
+    private final List<String> names = new ArrayList<>();
+
+    BatchTask(List<Path> entries, String parentPath, Container parent, BulkProgress progress) {
+      this.entries = entries;
+      this.parentPath = parentPath;
+      this.parent = parent;
+      this.progress = progress;
+    }
+
+    @Override
+    protected List<DirectoryTask> compute() {
+      List<DirectoryTask> subdirectories = new ArrayList<>();
+      for (Path entry : entries) {
+        String name = entry.getFileName().toString();
+        String path = Paths.get(parentPath, name).toString();
+        boolean isDirectory = Files.isDirectory(entry);
+
+        CdmiObject cdmiObject = cdmiObjectDao.getCdmiObjectByPath(path);
+        if (cdmiObject != null) {
+          progress.incrementSkipped();
+        } else if (isDirectory) {
+          Container container = new Container(name, parentPath, parent.getObjectId());
+          cdmiObject = cdmiObjectDao.createCdmiObject(container, path);
+          if (cdmiObject != null) {
+            progress.incrementContainers();
+          }
+        } else {
+          DataObject dataObject = new DataObject(name, parentPath, parent.getObjectId());
+          dataObject.setCompletionStatus("Complete");
+          cdmiObject = cdmiObjectDao.createCdmiObject(dataObject, path);
+          if (cdmiObject != null) {
+            progress.incrementDataObjects();
+          }
+        }
+
+        if (cdmiObject == null) {
+          progress.incrementFailed();
+          continue;
+        }
+        names.add(name);
+        if (isDirectory && cdmiObject instanceof Container) {
+          subdirectories.add(new DirectoryTask(entry, path, (Container) cdmiObject, progress));
+        }
+      }
+      return subdirectories;
+    }
+  }
+}
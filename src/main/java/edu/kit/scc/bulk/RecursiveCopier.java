@@ -0,0 +1,418 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.bulk;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.dao.CdmiObjectDao;
+import org.snia.cdmiserver.dao.ContainerDao;
+import org.snia.cdmiserver.dao.DataObjectDao;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+import org.snia.cdmiserver.model.DataObject;
+import org.snia.cdmiserver.util.MediaTypes;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Copies a container with its complete subtree to a new container.
+ *
+ * <p>
+ * The subtree is walked in parallel on a fork/join pool, one task per container whose children
+ * are split into batches. Every copied object gets a new object id, the content of data objects
+ * is copied by the storage without passing through the server's heap and the children of each
+ * new container are written once. The new container's completionStatus and percentComplete
+ * tell the progress of the copy.
+ * </p>
+ */
+@Component
+public class RecursiveCopier {
+
+  private static final Logger log = LoggerFactory.getLogger(RecursiveCopier.class);
+
+  @Autowired
+  private CdmiObjectDao cdmiObjectDao;
+
+  @Autowired
+  private ContainerDao containerDao;
+
+  @Autowired
+  private DataObjectDao dataObjectDao;
+
+  @Value("${cdmi.copy.parallelism:0}")
+  private int parallelism;
+
+  @Value("${cdmi.copy.batchSize:1000}")
+  private int batchSize;
+
+  @Value("${cdmi.copy.bandwidth:0}")
+  private long bandwidth;
+
+  private final Map<String, BulkProgress> copies = new ConcurrentHashMap<>();
+
+  private ForkJoinPool pool;
+
+  private BandwidthLimiter limiter;
+
+  @PostConstruct
+  void init() {
+    pool = new ForkJoinPool(
+        parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    limiter = new BandwidthLimiter(bandwidth);
+  }
+
+  @PreDestroy
+  void cleanUp() {
+    pool.shutdownNow();
+  }
+
+  /**
+   * Gets the progress of the last copy to the given path.
+   *
+   * @param path the CDMI path of the new container
+   * @return the {@link BulkProgress} or {@code null} if nothing has been copied to the path
+   */
+  public BulkProgress getProgress(String path) {
+    return copies.get(normalize(path));
+  }
+
+  /**
+   * Creates the new container and starts an asynchronous copy of the given subtree.
+   *
+   * @param sourcePath the CDMI path of the container to copy
+   * @param path the CDMI path of the new container, it must not exist yet
+   * @return the {@link BulkProgress} of the running copy, or of an already running copy to the
+   *         same path
+   */
+  public BulkProgress startCopy(String sourcePath, String path) {
+    String normalizedPath = normalize(path);
+    Copy copy = new Copy(normalize(sourcePath), new BulkProgress("copy", normalizedPath));
+    BulkProgress running = copies.compute(normalizedPath,
+        (key, previous) -> previous != null && !previous.isDone() ? previous : copy.progress);
+    // the new container exists when the copy has been started
+    if (running == copy.progress && createContainer(copy)) {
+      pool.execute(() -> copyChildren(copy));
+    }
+    return running;
+  }
+
+  /**
+   * Copies the given subtree and waits for the copy to finish.
+   *
+   * @param sourcePath the CDMI path of the container to copy
+   * @param path the CDMI path of the new container, it must not exist yet
+   * @return the {@link BulkProgress} of the finished copy
+   */
+  public BulkProgress copyTree(String sourcePath, String path) {
+    Copy copy = new Copy(normalize(sourcePath), new BulkProgress("copy", normalize(path)));
+    copies.put(copy.path, copy.progress);
+    runCopy(copy);
+    return copy.progress;
+  }
+
+  private void runCopy(Copy copy) {
+    if (createContainer(copy)) {
+      copyChildren(copy);
+    }
+  }
+
+  private boolean createContainer(Copy copy) {
+    BulkProgress progress = copy.progress;
+    log.debug("Start copy of {} to {}", copy.sourcePath, copy.path);
+    try {
+      CdmiObject source = cdmiObjectDao.getCdmiObjectByPath(copy.sourcePath);
+      if (!(source instanceof Container)) {
+        progress.fail("not a container " + copy.sourcePath);
+        return false;
+      }
+      if (copy.sourcePath.equals("/") || copy.path.equals(copy.sourcePath)
+          || copy.path.startsWith(copy.sourcePath + "/")) {
+        progress.fail("can't copy " + copy.sourcePath + " into itself");
+        return false;
+      }
+      if (cdmiObjectDao.getCdmiObjectByPath(copy.path) != null) {
+        progress.fail("already exists " + copy.path);
+        return false;
+      }
+      Container containerRequest = Container.fromJson(new JSONObject());
+      containerRequest.setMetadata(((Container) source).getMetadata());
+      copy.container = containerDao.createByPath(copy.path, containerRequest);
+      if (copy.container == null) {
+        progress.fail("could not create container " + copy.path);
+        return false;
+      }
+      copy.discovered.increment();
+      progress.incrementContainers();
+      writeStatus(copy, BulkProgress.PROCESSING, 0);
+      return true;
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+      progress.fail(ex.getClass().getName() + " " + ex.getMessage());
+    }
+    return false;
+  }
+
+  private void copyChildren(Copy copy) {
+    BulkProgress progress = copy.progress;
+    try {
+      pool.invoke(new ContainerTask(copy.sourcePath, copy.path, copy.container, copy));
+      if (progress.getFailed() > 0) {
+        progress.fail(progress.getFailed() + " objects could not be copied");
+        writeStatus(copy, BulkProgress.ERROR, copy.percentComplete);
+      } else {
+        progress.complete();
+        writeStatus(copy, BulkProgress.COMPLETE, 100);
+      }
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+      progress.fail(ex.getClass().getName() + " " + ex.getMessage());
+      writeStatus(copy, BulkProgress.ERROR, copy.percentComplete);
+    }
+    log.debug("Finished {}", progress);
+  }
+
+  /**
+   * Raises the new container's percentComplete to the share of the objects copied so far. The
+   * share only grows, the total number of objects is known when all containers have been listed.
+   */
+  private void reportProgress(Copy copy) {
+    long discovered = Math.max(1, copy.discovered.sum());
+    int percent = (int) Math.min(99, copy.progress.getProcessed() * 100 / discovered);
+    if (percent > copy.percentComplete) {
+      synchronized (copy) {
+        if (percent > copy.percentComplete && !copy.progress.isDone()) {
+          writeStatus(copy, BulkProgress.PROCESSING, percent);
+        }
+      }
+    }
+  }
+
+  private void writeStatus(Copy copy, String completionStatus, int percent) {
+    synchronized (copy) {
+      copy.percentComplete = percent;
+      CdmiObject cdmiObject = cdmiObjectDao.getCdmiObjectByPath(copy.path);
+      if (cdmiObject instanceof Container) {
+        Container container = (Container) cdmiObject;
+        container.setCompletionStatus(completionStatus);
+        container.setPercentComplete(String.valueOf(percent));
+        cdmiObjectDao.updateCdmiObjectFields(container, "completionStatus", "percentComplete");
+      }
+    }
+  }
+
+  private static String normalize(String path) {
+    return Paths.get("/", path.trim()).normalize().toString();
+  }
+
+  /**
+   * The state of a single copy.
+   */
+  private static class Copy {
+
+    private final String sourcePath;
+    private final String path;
+    private final BulkProgress progress;
+
+    /** all objects found in the source so far. */
+    private final LongAdder discovered = new LongAdder();
+
+    private volatile int percentComplete;
+
+    private Container container;
+
+    Copy(String sourcePath, BulkProgress progress) {
+      this.sourcePath = sourcePath;
+      this.path = progress.getPath();
+      this.progress = progress;
+    }
+  }
+
+  /**
+   * Copies the children of a single container, writes the new container's children at once and
+   * forks a task per sub-container.
+   */
+  private class ContainerTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String sourcePath;
+    private final String path;
+    private final Container container;
+    private final Copy copy;
+
+    ContainerTask(String sourcePath, String path, Container container, Copy copy) {
+      this.sourcePath = sourcePath;
+      this.path = path;
+      this.container = container;
+      this.copy = copy;
+    }
+
+    @Override
+    protected void compute() {
+      CdmiObject source = cdmiObjectDao.getCdmiObjectByPath(sourcePath);
+      if (!(source instanceof Container)) {
+        copy.progress.incrementFailed();
+        return;
+      }
+      List<String> names = new ArrayList<>();
+      JSONArray children = ((Container) source).getChildren();
+      if (children != null) {
+        for (int i = 0; i < children.length(); i++) {
+          names.add(children.getString(i));
+        }
+      }
+      copy.discovered.add(names.size());
+
+      List<BatchTask> batches = new ArrayList<>();
+      for (int from = 0; from < names.size(); from += batchSize) {
+        batches.add(new BatchTask(names.subList(from, Math.min(from + batchSize, names.size())),
+            sourcePath, path, container, copy));
+      }
+      invokeAll(batches);
+
+      List<String> copiedNames = new ArrayList<>(names.size());
+      List<ContainerTask> subcontainers = new ArrayList<>();
+      for (BatchTask batch : batches) {
+        subcontainers.addAll(batch.join());
+        copiedNames.addAll(batch.names);
+      }
+      // the children index is written once per container
+      if (!copiedNames.isEmpty()) {
+        if (path.equals(copy.path)) {
+          // the new root's status is updated concurrently
+          synchronized (copy) {
+            Container current = (Container) cdmiObjectDao.getCdmiObjectByPath(path);
+            cdmiObjectDao.addChildren(current, path, copiedNames);
+          }
+        } else {
+          cdmiObjectDao.addChildren(container, path, copiedNames);
+        }
+      }
+      reportProgress(copy);
+
+      invokeAll(subcontainers);
+    }
+  }
+
+  /**
+   * Copies a batch of children of a container.
+   */
+  private class BatchTask extends RecursiveTask<List<ContainerTask>> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> childNames;
+    private final String sourceParentPath;
+    private final String parentPath;
+    private final Container parent;
+    private final Copy copy;
+
+    private final List<String> names = new ArrayList<>();
+
+    BatchTask(List<String> childNames, String sourceParentPath, String parentPath,
+        Container parent, Copy copy) {
+      this.childNames = childNames;
+      this.sourceParentPath = sourceParentPath;
+      this.parentPath = parentPath;
+      this.parent = parent;
+      this.copy = copy;
+    }
+
+    @Override
+    protected List<ContainerTask> compute() {
+      List<ContainerTask> subcontainers = new ArrayList<>();
+      List<String> sourcePaths = new ArrayList<>(childNames.size());
+      for (String name : childNames) {
+        sourcePaths.add(Paths.get(sourceParentPath, name).toString());
+      }
+      List<JSONObject> fields = cdmiObjectDao.getFieldsByPath(sourcePaths, "objectType",
+          "metadata", "mimetype", "valuetransferencoding");
+      for (int i = 0; i < childNames.size(); i++) {
+        String name = childNames.get(i);
+        String path = Paths.get(parentPath, name).toString();
+        JSONObject source = fields.get(i);
+        String objectType = source != null ? source.optString("objectType", null) : null;
+        if (objectType == null) {
+          copy.progress.incrementSkipped();
+        } else if (objectType.equals(MediaTypes.CONTAINER)) {
+          Container container = copyContainer(source, name, path);
+          if (container != null) {
+            copy.progress.incrementContainers();
+            names.add(name);
+            subcontainers.add(new ContainerTask(sourcePaths.get(i), path, container, copy));
+          } else {
+            copy.progress.incrementFailed();
+          }
+        } else if (copyDataObject(source, name, sourcePaths.get(i), path)) {
+          copy.progress.incrementDataObjects();
+          names.add(name);
+        } else {
+          copy.progress.incrementFailed();
+        }
+      }
+      return subcontainers;
+    }
+
+    private Container copyContainer(JSONObject source, String name, String path) {
+      if (!containerDao.createStorageByPath(path)) {
+        return null;
+      }
+      Container container = new Container(name, parentPath, parent.getObjectId());
+      container.setCompletionStatus("Complete");
+      if (source.optJSONObject("metadata") != null) {
+        container.setMetadata(source.getJSONObject("metadata"));
+      }
+      return (Container) cdmiObjectDao.createCdmiObject(container, path);
+    }
+
+    private boolean copyDataObject(JSONObject source, String name, String sourcePath,
+        String path) {
+      DataObject dataObject = new DataObject(name, parentPath, parent.getObjectId());
+      dataObject.setCompletionStatus("Complete");
+      dataObject.setMimetype(source.optString("mimetype", null));
+      dataObject.setValuetransferencoding(source.optString("valuetransferencoding", null));
+      if (source.optJSONObject("metadata") != null) {
+        dataObject.setMetadata(source.getJSONObject("metadata"));
+      }
+      if (cdmiObjectDao.createCdmiObject(dataObject, path) == null) {
+        return false;
+      }
+      long size = dataObjectDao.copyContentByPath(sourcePath, path);
+      if (size < 0) {
+        dataObjectDao.deleteContentByPath(path);
+        cdmiObjectDao.deleteCdmiObjectByPath(path);
+        return false;
+      }
+      copy.progress.addBytes(size);
+      try {
+        limiter.acquire(size);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      return true;
+    }
+  }
+}
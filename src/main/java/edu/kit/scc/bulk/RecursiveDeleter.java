@@ -0,0 +1,249 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.bulk;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.dao.CdmiObjectDao;
+import org.snia.cdmiserver.dao.ContainerDao;
+import org.snia.cdmiserver.dao.DataObjectDao;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+import org.snia.cdmiserver.util.MediaTypes;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Deletes a container with its complete subtree.
+ *
+ * <p>
+ * The subtree is walked in parallel on a fork/join pool, one task per container whose children
+ * are split into batches. The content of each data object is deleted on its own, the metadata of
+ * all data objects of a batch is deleted at once. A container is deleted after all of its
+ * children.
+ * </p>
+ */
+@Component
+public class RecursiveDeleter {
+
+  private static final Logger log = LoggerFactory.getLogger(RecursiveDeleter.class);
+
+  @Autowired
+  private CdmiObjectDao cdmiObjectDao;
+
+  @Autowired
+  private ContainerDao containerDao;
+
+  @Autowired
+  private DataObjectDao dataObjectDao;
+
+  @Value("${cdmi.delete.parallelism:0}")
+  private int parallelism;
+
+  @Value("${cdmi.delete.batchSize:1000}")
+  private int batchSize;
+
+  private final Map<String, BulkProgress> deletes = new ConcurrentHashMap<>();
+
+  private ForkJoinPool pool;
+
+  @PostConstruct
+  void init() {
+    pool = new ForkJoinPool(
+        parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+  }
+
+  @PreDestroy
+  void cleanUp() {
+    pool.shutdownNow();
+  }
+
+  /**
+   * Gets the progress of the last delete of the given path.
+   *
+   * @param path the CDMI path
+   * @return the {@link BulkProgress} or {@code null} if the path has not been deleted
+   */
+  public BulkProgress getProgress(String path) {
+    return deletes.get(normalize(path));
+  }
+
+  /**
+   * Starts an asynchronous delete of the given subtree.
+   *
+   * @param path the CDMI path of the container to delete
+   * @return the {@link BulkProgress} of the running delete, or of an already running delete of
+   *         the same path
+   */
+  public BulkProgress startDelete(String path) {
+    String normalizedPath = normalize(path);
+    BulkProgress progress = new BulkProgress("delete", normalizedPath);
+    BulkProgress running = deletes.compute(normalizedPath,
+        (key, previous) -> previous != null && !previous.isDone() ? previous : progress);
+    if (running == progress) {
+      pool.execute(() -> runDelete(progress));
+    }
+    return running;
+  }
+
+  /**
+   * Deletes the given subtree and waits for the delete to finish.
+   *
+   * @param path the CDMI path of the container to delete
+   * @return the {@link BulkProgress} of the finished delete
+   */
+  public BulkProgress deleteTree(String path) {
+    BulkProgress progress = new BulkProgress("delete", normalize(path));
+    deletes.put(progress.getPath(), progress);
+    runDelete(progress);
+    return progress;
+  }
+
+  private void runDelete(BulkProgress progress) {
+    String path = progress.getPath();
+    log.debug("Start delete of {}", path);
+    try {
+      CdmiObject cdmiObject = cdmiObjectDao.getCdmiObjectByPath(path);
+      if (!(cdmiObject instanceof Container) || path.equals("/")) {
+        progress.fail("not a container " + path);
+        return;
+      }
+      pool.invoke(new ContainerTask(path, (Container) cdmiObject, progress));
+      if (progress.getFailed() > 0) {
+        progress.fail(progress.getFailed() + " objects could not be deleted");
+      } else {
+        progress.complete();
+      }
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+      progress.fail(ex.getClass().getName() + " " + ex.getMessage());
+    }
+    log.debug("Finished {}", progress);
+  }
+
+  private static String normalize(String path) {
+    return Paths.get("/", path.trim()).normalize().toString();
+  }
+
+  /**
+   * Deletes the children of a single container, forks a task per sub-container and deletes the
+   * container itself at last.
+   */
+  private class ContainerTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String path;
+    private final Container container;
+    private final BulkProgress progress;
+
+    ContainerTask(String path, Container container, BulkProgress progress) {
+      this.path = path;
+      this.container = container;
+      this.progress = progress;
+    }
+
+    @Override
+    protected void compute() {
+      List<String> childPaths = new ArrayList<>();
+      JSONArray children = container.getChildren();
+      if (children != null) {
+        for (int i = 0; i < children.length(); i++) {
+          childPaths.add(Paths.get(path, children.getString(i)).toString());
+        }
+      }
+
+      List<BatchTask> batches = new ArrayList<>();
+      for (int from = 0; from < childPaths.size(); from += batchSize) {
+        batches.add(new BatchTask(
+            childPaths.subList(from, Math.min(from + batchSize, childPaths.size())), progress));
+      }
+      invokeAll(batches);
+
+      List<ContainerTask> subcontainers = new ArrayList<>();
+      for (BatchTask batch : batches) {
+        subcontainers.addAll(batch.join());
+      }
+      invokeAll(subcontainers);
+
+      if (containerDao.deleteByPath(path) != null) {
+        progress.incrementContainers();
+      } else {
+        progress.incrementFailed();
+      }
+    }
+  }
+
+  /**
+   * Deletes the data objects of a batch of children.
+   */
+  private class BatchTask extends RecursiveTask<List<ContainerTask>> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> paths;
+    private final BulkProgress progress;
+
+    BatchTask(List<String> paths, BulkProgress progress) {
+      this.paths = paths;
+      this.progress = progress;
+    }
+
+    @Override
+    protected List<ContainerTask> compute() {
+      List<ContainerTask> subcontainers = new ArrayList<>();
+      List<String> dataObjectPaths = new ArrayList<>();
+      List<JSONObject> fields = cdmiObjectDao.getFieldsByPath(paths, "objectType");
+      for (int i = 0; i < paths.size(); i++) {
+        String path = paths.get(i);
+        String objectType = fields.get(i) != null ? fields.get(i).optString("objectType") : null;
+        if (objectType == null) {
+          progress.incrementSkipped();
+        } else if (objectType.equals(MediaTypes.CONTAINER)) {
+          CdmiObject subcontainer = cdmiObjectDao.getCdmiObjectByPath(path);
+          if (subcontainer instanceof Container) {
+            subcontainers.add(new ContainerTask(path, (Container) subcontainer, progress));
+          } else {
+            progress.incrementSkipped();
+          }
+        } else if (dataObjectDao.deleteContentByPath(path)) {
+          dataObjectPaths.add(path);
+        } else {
+          progress.incrementFailed();
+        }
+      }
+
+      // the metadata of all data objects at once
+      int deleted = cdmiObjectDao.deleteCdmiObjectsByPath(dataObjectPaths);
+      for (int i = 0; i < deleted; i++) {
+        progress.incrementDataObjects();
+      }
+      for (int i = deleted; i < dataObjectPaths.size(); i++) {
+        progress.incrementFailed();
+      }
+      return subcontainers;
+    }
+  }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cache;
+
+import edu.kit.scc.metrics.MetricsSource;
+
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded, in-process cache of serialized values read from a shared store.
+ *
+ * <p>
+ * Every write to the shared store invalidates the written key locally and is announced to the
+ * other server instances, which call {@link #invalidateRemote(String, long)}. As in the
+ * {@link NegativeLookupCache}, reads record the generation before they start and their result is
+ * only cached if no invalidation happened meanwhile. Entries expire after a time-to-live, which
+ * bounds the staleness if an invalidation message gets lost.
+ * </p>
+ */
+public class NearCache implements MetricsSource {
+
+  private final String instanceId = UUID.randomUUID().toString();
+
+  private final int maxSize;
+  private final long ttlMillis;
+
+  private final Map<String, Entry> entries;
+
+  private final AtomicLong generation = new AtomicLong();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder expirations = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder invalidations = new LongAdder();
+  private final LongAdder remoteInvalidations = new LongAdder();
+  private final AtomicLong lastInvalidationLag = new AtomicLong();
+  private final LongAccumulator maxInvalidationLag = new LongAccumulator(Long::max, 0);
+
+  private static final class Entry {
+    private final String value;
+    private final long expiry;
+
+    Entry(String value, long expiry) {
+      this.value = value;
+      this.expiry = expiry;
+    }
+  }
+
+  /**
+   * Creates a new near cache.
+   *
+   * @param maxSize the maximum number of entries, least recently used entries are evicted first
+   * @param ttlMillis the time in milliseconds an entry is served, 0 disables the cache
+   */
+  public NearCache(int maxSize, long ttlMillis) {
+    this.maxSize = maxSize;
+    this.ttlMillis = ttlMillis;
+    this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        if (size() > NearCache.this.maxSize) {
+          evictions.increment();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Gets the id of this server instance, used to ignore its own invalidation messages.
+   *
+   * @return the instance id
+   */
+  public String getInstanceId() {
+    return instanceId;
+  }
+
+  public boolean isEnabled() {
+    return ttlMillis > 0 && maxSize > 0;
+  }
+
+  /**
+   * Gets the current generation, to be passed to {@link #put(String, String, long)}.
+   *
+   * @return the generation
+   */
+  public long generation() {
+    return generation.get();
+  }
+
+  /**
+   * Gets a cached value.
+   *
+   * @param key the key
+   * @return the value or {@code null} if it isn't cached
+   */
+  public String get(String key) {
+    if (!isEnabled()) {
+      return null;
+    }
+    synchronized (entries) {
+      Entry entry = entries.get(key);
+      if (entry != null) {
+        if (entry.expiry > System.currentTimeMillis()) {
+          hits.increment();
+          return entry.value;
+        }
+        entries.remove(key);
+        expirations.increment();
+      }
+    }
+    misses.increment();
+    return null;
+  }
+
+  /**
+   * Caches a value, unless the cache has been invalidated since the read started.
+   *
+   * @param key the key
+   * @param value the value read from the shared store
+   * @param readGeneration the generation when the read started
+   */
+  public void put(String key, String value, long readGeneration) {
+    if (!isEnabled() || value == null) {
+      return;
+    }
+    synchronized (entries) {
+      if (generation.get() == readGeneration) {
+        entries.put(key, new Entry(value, System.currentTimeMillis() + ttlMillis));
+      }
+    }
+  }
+
+  /**
+   * Invalidates a key after it has been written by this instance.
+   *
+   * @param key the key
+   */
+  public void invalidate(String key) {
+    synchronized (entries) {
+      generation.incrementAndGet();
+      entries.remove(key);
+    }
+    invalidations.increment();
+  }
+
+  /**
+   * Invalidates a key after it has been written by another instance.
+   *
+   * @param key the key
+   * @param publishedAt the time in milliseconds the invalidation has been published
+   */
+  public void invalidateRemote(String key, long publishedAt) {
+    invalidate(key);
+    remoteInvalidations.increment();
+    long lag = Math.max(0, System.currentTimeMillis() - publishedAt);
+    lastInvalidationLag.set(lag);
+    maxInvalidationLag.accumulate(lag);
+  }
+
+  /**
+   * Gets the number of cached entries.
+   *
+   * @return the number of entries
+   */
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  @Override
+  public String getMetricsName() {
+    return "nearCache";
+  }
+
+  @Override
+  public JSONObject getMetrics() {
+    long hitCount = hits.sum();
+    long lookups = hitCount + misses.sum();
+    JSONObject metrics = new JSONObject();
+    metrics.put("size", size());
+    metrics.put("hits", hitCount);
+    metrics.put("misses", misses.sum());
+    metrics.put("hitRate", lookups > 0 ? (double) hitCount / lookups : 0.0);
+    metrics.put("expirations", expirations.sum());
+    metrics.put("evictions", evictions.sum());
+    metrics.put("invalidations", invalidations.sum());
+    metrics.put("remoteInvalidations", remoteInvalidations.sum());
+    metrics.put("lastInvalidationLagMillis", lastInvalidationLag.get());
+    metrics.put("maxInvalidationLagMillis", maxInvalidationLag.get());
+    metrics.put("ttlMillis", ttlMillis);
+    return metrics;
+  }
+}
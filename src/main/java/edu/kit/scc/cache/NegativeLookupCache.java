@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cache;
+
+import edu.kit.scc.metrics.MetricsSource;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Short-lived cache of CDMI paths known not to exist, neither as CDMI object nor on the storage
+ * back-end.
+ *
+ * <p>
+ * Lookups record the cache generation before they start, creating an object invalidates its path
+ * and bumps the generation, so a lookup racing with a create never caches the path as missing.
+ * </p>
+ */
+@Component
+public class NegativeLookupCache implements MetricsSource {
+
+  private static final Logger log = LoggerFactory.getLogger(NegativeLookupCache.class);
+
+  @Value("${cdmi.cache.negative.ttl:5000}")
+  private long ttlMillis;
+
+  @Value("${cdmi.cache.negative.maxSize:100000}")
+  private int maxSize;
+
+  private final Map<String, Long> missingPaths = new ConcurrentHashMap<>();
+
+  private final AtomicLong generation = new AtomicLong();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder invalidations = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  public long getTtlMillis() {
+    return ttlMillis;
+  }
+
+  public void setTtlMillis(long ttlMillis) {
+    this.ttlMillis = ttlMillis;
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public void setMaxSize(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  public boolean isEnabled() {
+    return ttlMillis > 0;
+  }
+
+  /**
+   * Gets the current generation, to be passed to {@link #markMissing(String, long)}.
+   *
+   * @return the generation
+   */
+  public long generation() {
+    return generation.get();
+  }
+
+  /**
+   * Checks whether the given path is known not to exist.
+   *
+   * @param path the normalized CDMI path
+   * @return {@code true} if the path doesn't exist and all further lookups can be avoided
+   */
+  public boolean isMissing(String path) {
+    if (!isEnabled()) {
+      return false;
+    }
+    Long expiry = missingPaths.get(path);
+    if (expiry != null) {
+      if (expiry > System.currentTimeMillis()) {
+        hits.increment();
+        return true;
+      }
+      missingPaths.remove(path, expiry);
+    }
+    misses.increment();
+    return false;
+  }
+
+  /**
+   * Remembers the given path as missing, unless an object has been created since the lookup
+   * started.
+   *
+   * @param path the normalized CDMI path
+   * @param lookupGeneration the generation when the lookup started
+   */
+  public void markMissing(String path, long lookupGeneration) {
+    if (!isEnabled()) {
+      return;
+    }
+    if (missingPaths.size() >= maxSize) {
+      evictExpired();
+    }
+    if (missingPaths.size() >= maxSize) {
+      evictions.add(missingPaths.size());
+      missingPaths.clear();
+    }
+    missingPaths.put(path, System.currentTimeMillis() + ttlMillis);
+    if (generation.get() != lookupGeneration) {
+      missingPaths.remove(path);
+    }
+  }
+
+  /**
+   * Invalidates the given path and all of its ancestors, as creating an object may create its
+   * parent containers as well.
+   *
+   * @param path the CDMI path of the created object
+   */
+  public void invalidate(String path) {
+    generation.incrementAndGet();
+    invalidations.increment();
+    Path current = Paths.get("/", path).normalize();
+    while (current != null) {
+      missingPaths.remove(current.toString());
+      current = current.getParent();
+    }
+  }
+
+  /**
+   * Invalidates the given path, its ancestors and all paths below it.
+   *
+   * @param path the CDMI path of the subtree
+   */
+  public void invalidateSubtree(String path) {
+    invalidate(path);
+    String prefix = Paths.get("/", path).normalize().toString();
+    String childPrefix = prefix.endsWith("/") ? prefix : prefix + "/";
+    missingPaths.keySet().removeIf(key -> key.startsWith(childPrefix));
+  }
+
+  private void evictExpired() {
+    long now = System.currentTimeMillis();
+    Iterator<Map.Entry<String, Long>> iterator = missingPaths.entrySet().iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().getValue() <= now) {
+        iterator.remove();
+        evictions.increment();
+      }
+    }
+    log.debug("Evicted expired paths, {} missing paths cached", missingPaths.size());
+  }
+
+  @Override
+  public String getMetricsName() {
+    return "negativeLookupCache";
+  }
+
+  @Override
+  public JSONObject getMetrics() {
+    JSONObject metrics = new JSONObject();
+    metrics.put("size", missingPaths.size());
+    metrics.put("avoidedLookups", hits.sum());
+    metrics.put("misses", misses.sum());
+    metrics.put("invalidations", invalidations.sum());
+    metrics.put("evictions", evictions.sum());
+    return metrics;
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.capability;
+
+import edu.kit.scc.metrics.MetricsSource;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.model.Capability;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * Serves the capability tree from the {@link CapabilitySnapshot} taken on start-up.
+ *
+ * <p>
+ * Each capability's response is serialized once when the snapshot is published, together with a
+ * strong entity tag calculated from the serialized bytes. Responses filtered by a query are
+ * built on first request and kept as well, up to a maximum number of queries per capability, so
+ * that repeated capability lookups neither read from the DAOs nor serialize JSON.
+ * </p>
+ */
+@Component
+public class CapabilityResponseCache implements MetricsSource {
+
+  private static final Logger log = LoggerFactory.getLogger(CapabilityResponseCache.class);
+
+  @Value("${cdmi.cache.capabilities.maxQueries:64}")
+  private int maxQueries;
+
+  private volatile Map<String, Entry> entries = Collections.emptyMap();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * A serialized capability response.
+   */
+  public static final class Response {
+
+    private final byte[] body;
+    private final String entityTag;
+
+    Response(String json) {
+      this.body = json.getBytes(StandardCharsets.UTF_8);
+      this.entityTag = "\"" + CapabilitySnapshot.checksum(json) + "\"";
+    }
+
+    /**
+     * Gets the serialized JSON, the array must not be modified.
+     *
+     * @return the UTF-8 encoded response body
+     */
+    public byte[] getBody() {
+      return body;
+    }
+
+    public String getEntityTag() {
+      return entityTag;
+    }
+  }
+
+  private static final class Entry {
+
+    private final String json;
+    private final Response response;
+    private final Map<String, Response> filtered = new ConcurrentHashMap<>();
+
+    Entry(String json) {
+      this.json = json;
+      this.response = new Response(json);
+    }
+  }
+
+  public int getMaxQueries() {
+    return maxQueries;
+  }
+
+  public void setMaxQueries(int maxQueries) {
+    this.maxQueries = maxQueries;
+  }
+
+  /**
+   * Replaces the served capabilities with the ones of the given snapshot.
+   *
+   * @param snapshot the {@link CapabilitySnapshot}
+   */
+  public void publish(CapabilitySnapshot snapshot) {
+    Map<String, Entry> published = new HashMap<>();
+    for (Map.Entry<String, Capability> capability : snapshot.getCapabilities().entrySet()) {
+      published.put(capability.getKey(), new Entry(capability.getValue().toJson().toString()));
+    }
+    entries = Collections.unmodifiableMap(published);
+    log.debug("Published {} capability responses", published.size());
+  }
+
+  /**
+   * Gets the response for a capability.
+   *
+   * @param path the normalized capability path
+   * @param query the query restricting the returned fields, may be {@code null}
+   * @param filter the function filtering a capability's JSON by the query
+   * @return the {@link Response} or {@code null} if the capability isn't part of the snapshot
+   */
+  public Response get(String path, String query,
+      BiFunction<JSONObject, String, JSONObject> filter) {
+    Entry entry = entries.get(path);
+    if (entry == null) {
+      return null;
+    }
+    if (query == null) {
+      hits.increment();
+      return entry.response;
+    }
+    Response response = entry.filtered.get(query);
+    if (response != null) {
+      hits.increment();
+      return response;
+    }
+    misses.increment();
+    response = new Response(filter.apply(new JSONObject(entry.json), query).toString());
+    // arbitrary queries must not grow the cache without bounds
+    if (entry.filtered.size() < maxQueries) {
+      entry.filtered.putIfAbsent(query, response);
+    }
+    return response;
+  }
+
+  @Override
+  public String getMetricsName() {
+    return "capabilityResponseCache";
+  }
+
+  @Override
+  public JSONObject getMetrics() {
+    int filtered = 0;
+    for (Entry entry : entries.values()) {
+      filtered += entry.filtered.size();
+    }
+    JSONObject metrics = new JSONObject();
+    metrics.put("capabilities", entries.size());
+    metrics.put("filteredResponses", filtered);
+    metrics.put("hits", hits.sum());
+    metrics.put("misses", misses.sum());
+    return metrics;
+  }
+}
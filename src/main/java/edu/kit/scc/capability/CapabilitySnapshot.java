@@ -0,0 +1,166 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.capability;
+
+import edu.kit.scc.Utils;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.model.Capability;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An immutable, versioned snapshot of the complete capability tree below
+ * {@code /cdmi_capabilities}.
+ *
+ * <p>
+ * The serialized form is a header line with the format version, the root container's object id,
+ * the checksum of the back-end capabilities the tree was built from and the checksum of the
+ * payload, followed by the payload itself, a JSON object mapping each capability path to the
+ * capability.
+ * </p>
+ */
+public class CapabilitySnapshot {
+
+  private static final Logger log = LoggerFactory.getLogger(CapabilitySnapshot.class);
+
+  public static final int VERSION = 1;
+
+  private final String rootObjectId;
+  private final String backendChecksum;
+  private final Map<String, Capability> capabilities;
+
+  /**
+   * Creates a new snapshot.
+   *
+   * @param rootObjectId the object id of the root container the tree is attached to
+   * @param backendChecksum the checksum of the back-end capabilities the tree was built from
+   * @param capabilities the capabilities by path, parents before their children
+   */
+  public CapabilitySnapshot(String rootObjectId, String backendChecksum,
+      Map<String, Capability> capabilities) {
+    this.rootObjectId = rootObjectId;
+    this.backendChecksum = backendChecksum;
+    this.capabilities = Collections.unmodifiableMap(new LinkedHashMap<>(capabilities));
+  }
+
+  public String getRootObjectId() {
+    return rootObjectId;
+  }
+
+  public String getBackendChecksum() {
+    return backendChecksum;
+  }
+
+  public Map<String, Capability> getCapabilities() {
+    return capabilities;
+  }
+
+  public Capability getCapability(String path) {
+    return capabilities.get(path);
+  }
+
+  /**
+   * Serializes the snapshot.
+   *
+   * @return the header line followed by the payload
+   */
+  public String serialize() {
+    JSONObject payload = new JSONObject();
+    for (Map.Entry<String, Capability> entry : capabilities.entrySet()) {
+      payload.put(entry.getKey(), entry.getValue().toJson());
+    }
+    String payloadString = payload.toString();
+
+    JSONObject header = new JSONObject();
+    header.put("version", VERSION);
+    header.put("rootObjectID", rootObjectId);
+    header.put("backendChecksum", backendChecksum);
+    header.put("checksum", checksum(payloadString));
+    return header.toString() + "\n" + payloadString;
+  }
+
+  /**
+   * Deserializes and validates a snapshot.
+   *
+   * @param serialized the serialized snapshot
+   * @return the snapshot or {@code null} if it is missing, of another version or corrupted
+   */
+  public static CapabilitySnapshot deserialize(String serialized) {
+    if (serialized == null) {
+      return null;
+    }
+    try {
+      int separator = serialized.indexOf('\n');
+      if (separator < 0) {
+        log.warn("Capability snapshot without payload");
+        return null;
+      }
+      JSONObject header = new JSONObject(serialized.substring(0, separator));
+      String payloadString = serialized.substring(separator + 1);
+
+      if (header.optInt("version") != VERSION) {
+        log.debug("Capability snapshot version {} outdated", header.optInt("version"));
+        return null;
+      }
+      if (!checksum(payloadString).equals(header.optString("checksum"))) {
+        log.warn("Capability snapshot checksum mismatch");
+        return null;
+      }
+
+      JSONObject payload = new JSONObject(payloadString);
+      Map<String, Capability> capabilities = new LinkedHashMap<>();
+      for (String path : sortedByDepth(payload)) {
+        capabilities.put(path, Capability.fromJson(payload.getJSONObject(path)));
+      }
+      return new CapabilitySnapshot(header.getString("rootObjectID"),
+          header.getString("backendChecksum"), capabilities);
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return null;
+  }
+
+  private static Iterable<String> sortedByDepth(JSONObject payload) {
+    return payload.keySet().stream()
+        .sorted((first, second) -> first.split("/").length != second.split("/").length
+            ? Integer.compare(first.split("/").length, second.split("/").length)
+            : first.compareTo(second))
+        ::iterator;
+  }
+
+  /**
+   * Calculates the hex encoded SHA-256 checksum of the given string.
+   *
+   * @param content the string
+   * @return the checksum
+   */
+  public static String checksum(String content) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return Utils.bytesToHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "CapabilitySnapshot [rootObjectId=" + rootObjectId + ", backendChecksum="
+        + backendChecksum + ", capabilities=" + capabilities.keySet() + "]";
+  }
+}
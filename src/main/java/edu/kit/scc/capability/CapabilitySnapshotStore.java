@@ -0,0 +1,30 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.capability;
+
+/**
+ * Persists the serialized {@link CapabilitySnapshot} next to the profile's metadata.
+ */
+public interface CapabilitySnapshotStore {
+
+  /**
+   * Loads the serialized snapshot.
+   * 
+   * @return the snapshot or {@code null} if there is none
+   */
+  String load();
+
+  /**
+   * Stores the serialized snapshot, replacing any previous one.
+   * 
+   * @param snapshot the serialized snapshot
+   */
+  void save(String snapshot);
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.capability;
+
+import org.indigo.cdmi.BackEndException;
+import org.indigo.cdmi.BackendCapability;
+import org.indigo.cdmi.BackendCapability.CapabilityType;
+import org.indigo.cdmi.ConfigurableStorageBackend;
+import org.indigo.cdmi.spi.StorageBackend;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.dao.CdmiObjectDao;
+import org.snia.cdmiserver.model.Capability;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Sets up the root container and the capability tree on start-up.
+ *
+ * <p>
+ * The tree is built in memory from the storage back-end's capabilities and persisted as a
+ * {@link CapabilitySnapshot}. As long as the stored snapshot matches the root container and the
+ * back-end capabilities, start-up only reads the snapshot and doesn't write anything.
+ * </p>
+ */
+public class CapabilityTreeInitializer {
+
+  private static final Logger log = LoggerFactory.getLogger(CapabilityTreeInitializer.class);
+
+  public static final String ROOT_CAPABILITY = "/cdmi_capabilities";
+  public static final String CONTAINER_CAPABILITY = ROOT_CAPABILITY + "/container";
+  public static final String DATAOBJECT_CAPABILITY = ROOT_CAPABILITY + "/dataobject";
+
+  private final CdmiObjectDao cdmiObjectDao;
+  private final CapabilitySnapshotStore snapshotStore;
+
+  private Path capabilityDirectory;
+
+  public CapabilityTreeInitializer(CdmiObjectDao cdmiObjectDao,
+      CapabilitySnapshotStore snapshotStore) {
+    this.cdmiObjectDao = cdmiObjectDao;
+    this.snapshotStore = snapshotStore;
+  }
+
+  public Path getCapabilityDirectory() {
+    return capabilityDirectory;
+  }
+
+  /**
+   * Sets the base directory below which a directory is created for each capability, as the file
+   * system DAOs keep the children's metadata files in their parent's directory.
+   *
+   * @param capabilityDirectory the data base directory
+   */
+  public void setCapabilityDirectory(Path capabilityDirectory) {
+    this.capabilityDirectory = capabilityDirectory;
+  }
+
+  /**
+   * Creates the root container if missing and loads or rebuilds the capability tree.
+   *
+   * @param backendType the storage back-end type
+   * @param backendProperties the storage back-end configuration
+   * @return the current {@link CapabilitySnapshot}
+   */
+  public CapabilitySnapshot initialize(String backendType, Map<String, String> backendProperties) {
+    log.debug("Set-up root container...");
+    CdmiObject rootObject = cdmiObjectDao.getCdmiObjectByPath("/");
+    if (rootObject == null) {
+      CdmiObject object = new CdmiObject();
+      Container rootContainer = new Container("/", "/", object.getObjectId());
+      rootContainer.setObjectId(object.getObjectId());
+      rootObject = cdmiObjectDao.createCdmiObject(rootContainer, "/");
+      log.debug("root container created {}", rootObject);
+    }
+
+    List<BackendCapability> backendCapabilities = null;
+    try {
+      StorageBackend storageBackend =
+          ConfigurableStorageBackend.createStorageBackend(backendType, backendProperties);
+      backendCapabilities = storageBackend.getCapabilities();
+    } catch (IllegalArgumentException | BackEndException ex) {
+      log.warn("ERROR: {}", ex.getMessage());
+    }
+
+    String backendChecksum = backendCapabilities != null
+        ? backendChecksum(backendType, backendCapabilities) : null;
+
+    CapabilitySnapshot snapshot = CapabilitySnapshot.deserialize(snapshotStore.load());
+    // keep serving the last known tree while the back-end is unavailable
+    if (snapshot != null && snapshot.getRootObjectId().equals(rootObject.getObjectId())
+        && (backendChecksum == null || snapshot.getBackendChecksum().equals(backendChecksum))) {
+      log.debug("Loaded {}", snapshot);
+      return snapshot;
+    }
+
+    log.debug("Rebuild capability tree, previous snapshot {}", snapshot);
+    Map<String, CdmiObject> existing = new HashMap<>();
+    CapabilitySnapshot rebuilt = build(rootObject.getObjectId(), backendChecksum,
+        backendCapabilities != null ? backendCapabilities : new ArrayList<>(), existing);
+    write(rebuilt, snapshot, existing);
+
+    // without the back-end capabilities the next start-up has to try again
+    if (backendChecksum != null) {
+      snapshotStore.save(rebuilt.serialize());
+    }
+    log.debug("Built {}", rebuilt);
+    return rebuilt;
+  }
+
+  private CapabilitySnapshot build(String rootObjectId, String backendChecksum,
+      List<BackendCapability> backendCapabilities, Map<String, CdmiObject> existing) {
+    Map<String, Capability> tree = new LinkedHashMap<>();
+    tree.put(ROOT_CAPABILITY, capability(ROOT_CAPABILITY, "/", rootObjectId, existing));
+    tree.put(CONTAINER_CAPABILITY, capability(CONTAINER_CAPABILITY, ROOT_CAPABILITY,
+        tree.get(ROOT_CAPABILITY).getObjectId(), existing));
+    tree.put(DATAOBJECT_CAPABILITY, capability(DATAOBJECT_CAPABILITY, ROOT_CAPABILITY,
+        tree.get(ROOT_CAPABILITY).getObjectId(), existing));
+
+    for (BackendCapability backendCapability : backendCapabilities) {
+      log.debug("Found capability type {} {}", backendCapability.getType().name(),
+          backendCapability.getName());
+
+      String parentPath;
+      if (backendCapability.getType().equals(CapabilityType.CONTAINER)) {
+        parentPath = CONTAINER_CAPABILITY;
+      } else if (backendCapability.getType().equals(CapabilityType.DATAOBJECT)) {
+        parentPath = DATAOBJECT_CAPABILITY;
+      } else {
+        continue;
+      }
+      String path = parentPath + "/" + backendCapability.getName();
+
+      Capability providedCapability =
+          capability(path, parentPath, tree.get(parentPath).getObjectId(), existing);
+      providedCapability.setCapabilities(new JSONObject(backendCapability.getCapabilities()));
+      providedCapability.setMetadata(new JSONObject(backendCapability.getMetadata()));
+      tree.put(path, providedCapability);
+    }
+
+    for (Map.Entry<String, Capability> entry : tree.entrySet()) {
+      JSONArray children = new JSONArray();
+      String prefix = entry.getKey() + "/";
+      for (String path : tree.keySet()) {
+        if (path.startsWith(prefix) && path.indexOf('/', prefix.length()) < 0) {
+          children.put(path.substring(prefix.length()));
+        }
+      }
+      if (children.length() > 0) {
+        entry.getValue().setChildren(children);
+        entry.getValue().setChildrenrange(CdmiObject.getChildrenRange(children));
+      }
+    }
+    return new CapabilitySnapshot(rootObjectId, backendChecksum, tree);
+  }
+
+  private Capability capability(String path, String parentPath, String parentId,
+      Map<String, CdmiObject> existing) {
+    Capability capability =
+        new Capability(path.substring(path.lastIndexOf('/') + 1), parentPath, parentId);
+    // keep the object ids of already stored capabilities
+    CdmiObject stored = cdmiObjectDao.getCdmiObjectByPath(path);
+    if (stored != null) {
+      capability.setObjectId(stored.getObjectId());
+      existing.put(path, stored);
+    }
+    return capability;
+  }
+
+  /**
+   * Writes every capability of the tree exactly once and removes capabilities the back-end no
+   * longer provides. Children created outside of the snapshot, e.g. via the REST API, are kept.
+   */
+  private void write(CapabilitySnapshot snapshot, CapabilitySnapshot previous,
+      Map<String, CdmiObject> existing) {
+    Set<String> removed = new HashSet<>();
+    if (previous != null) {
+      removed.addAll(previous.getCapabilities().keySet());
+      removed.removeAll(snapshot.getCapabilities().keySet());
+    }
+
+    for (Map.Entry<String, Capability> entry : snapshot.getCapabilities().entrySet()) {
+      String path = entry.getKey();
+      Capability capability = entry.getValue();
+      createDirectory(path);
+
+      CdmiObject stored = existing.get(path);
+      if (stored == null) {
+        cdmiObjectDao.createCdmiObject(capability, path);
+        continue;
+      }
+      if (stored instanceof Capability) {
+        mergeChildren(capability, ((Capability) stored).getChildren(), path, snapshot, removed);
+      }
+      cdmiObjectDao.updateCdmiObject(capability);
+      cdmiObjectDao.updateCdmiObject(capability, path);
+    }
+
+    List<String> removedPaths = new ArrayList<>(removed);
+    removedPaths.sort(Comparator.comparing(String::length).reversed());
+    for (String path : removedPaths) {
+      log.debug("Remove capability {}", path);
+      cdmiObjectDao.deleteCdmiObjectByPath(path);
+    }
+  }
+
+  private void createDirectory(String path) {
+    if (capabilityDirectory != null) {
+      try {
+        Files.createDirectories(Paths.get(capabilityDirectory.toString(), path));
+      } catch (IOException ex) {
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+      }
+    }
+  }
+
+  private void mergeChildren(Capability capability, JSONArray existingChildren, String path,
+      CapabilitySnapshot snapshot, Collection<String> removed) {
+    if (existingChildren == null) {
+      return;
+    }
+    JSONArray children =
+        capability.getChildren() != null ? capability.getChildren() : new JSONArray();
+    for (int i = 0; i < existingChildren.length(); i++) {
+      String childPath = path + "/" + existingChildren.getString(i);
+      if (!snapshot.getCapabilities().containsKey(childPath) && !removed.contains(childPath)) {
+        children.put(existingChildren.getString(i));
+      }
+    }
+    if (children.length() > 0) {
+      capability.setChildren(children);
+      capability.setChildrenrange(CdmiObject.getChildrenRange(children));
+    }
+  }
+
+  /**
+   * Calculates a checksum over the back-end type and all back-end capabilities, independent of
+   * the order in which the back-end reports them.
+   *
+   * @param backendType the storage back-end type
+   * @param backendCapabilities the storage back-end capabilities
+   * @return the hex encoded checksum
+   */
+  public static String backendChecksum(String backendType,
+      List<BackendCapability> backendCapabilities) {
+    Map<String, Object> canonical = new TreeMap<>();
+    for (BackendCapability capability : backendCapabilities) {
+      Map<String, Object> entry = new TreeMap<>();
+      entry.put("capabilities", canonical(capability.getCapabilities()));
+      entry.put("metadata", canonical(capability.getMetadata()));
+      canonical.put(capability.getType().name() + "/" + capability.getName(), entry);
+    }
+    return CapabilitySnapshot.checksum(backendType + canonical.toString());
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Object canonical(Object value) {
+    if (value instanceof Map) {
+      Map<String, Object> sorted = new TreeMap<>();
+      for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+        sorted.put(entry.getKey(), canonical(entry.getValue()));
+      }
+      return sorted;
+    }
+    if (value instanceof Collection) {
+      List<Object> list = new ArrayList<>();
+      for (Object item : (Collection<Object>) value) {
+        list.add(canonical(item));
+      }
+      return list;
+    }
+    return value;
+  }
+}
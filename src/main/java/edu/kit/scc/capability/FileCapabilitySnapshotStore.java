@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.capability;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Keeps the capability snapshot in a single file, written via a temporary file and an atomic
+ * rename.
+ */
+public class FileCapabilitySnapshotStore implements CapabilitySnapshotStore {
+
+  private static final Logger log = LoggerFactory.getLogger(FileCapabilitySnapshotStore.class);
+
+  private final Path file;
+
+  public FileCapabilitySnapshotStore(Path file) {
+    this.file = file;
+  }
+
+  @Override
+  public String load() {
+    try {
+      return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    } catch (NoSuchFileException ex) {
+      log.debug("no capability snapshot {}", file);
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return null;
+  }
+
+  @Override
+  public void save(String snapshot) {
+    try {
+      Files.createDirectories(file.getParent());
+      Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+      Files.write(tmp, snapshot.getBytes(StandardCharsets.UTF_8));
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+  }
+}
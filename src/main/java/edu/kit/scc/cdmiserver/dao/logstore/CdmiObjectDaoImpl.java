@@ -0,0 +1,301 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmiserver.dao.logstore;
+
+import edu.kit.scc.logstore.LogStore;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.dao.CdmiObjectDao;
+import org.snia.cdmiserver.model.Capability;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+import org.snia.cdmiserver.model.DataObject;
+import org.snia.cdmiserver.model.Domain;
+import org.snia.cdmiserver.model.Queue;
+import org.snia.cdmiserver.util.MediaTypes;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * {@link CdmiObjectDao} backed by the embedded {@link LogStore}.
+ *
+ * <p>
+ * Every object is stored once under {@code objectid:<id>}, the CDMI path is an alias
+ * {@code path:<path>} pointing to the object id.
+ * </p>
+ */
+public class CdmiObjectDaoImpl implements CdmiObjectDao {
+
+  private static final Logger log = LoggerFactory.getLogger(CdmiObjectDaoImpl.class);
+
+  private static final String OBJECT_ID_PREFIX = "objectid:";
+  private static final String PATH_PREFIX = "path:";
+
+  private LogStore logStore;
+
+  public LogStore getLogStore() {
+    return logStore;
+  }
+
+  public void setLogStore(LogStore logStore) {
+    this.logStore = logStore;
+  }
+
+  private String objectIdKey(String objectId) {
+    return OBJECT_ID_PREFIX + objectId;
+  }
+
+  private String pathKey(String path) {
+    return PATH_PREFIX + Paths.get("/", path.trim()).normalize().toString();
+  }
+
+  @Override
+  public CdmiObject createCdmiObject(CdmiObject cdmiObject) {
+    try {
+      String objectId = cdmiObject.getObjectId();
+      if (logStore.putIfAbsent(objectIdKey(objectId), cdmiObject.toJson().toString())) {
+        log.debug("create new object {}", objectId);
+        return cdmiObject;
+      }
+      log.debug("object id {} already exists", objectId);
+      return getCdmiObject(objectId);
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return null;
+  }
+
+  @Override
+  public CdmiObject createCdmiObject(CdmiObject cdmiObject, String path) {
+    try {
+      String pathKey = pathKey(path);
+      if (logStore.putIfAbsent(pathKey, cdmiObject.getObjectId())) {
+        CdmiObject object = createCdmiObject(cdmiObject);
+        if (object == null) {
+          logStore.delete(pathKey);
+        }
+        log.debug("create new path {} for object {}", path, cdmiObject.getObjectId());
+        return object;
+      }
+      log.debug("path {} already exists", path);
+      return getCdmiObjectByPath(path);
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return null;
+  }
+
+  @Override
+  public CdmiObject createCdmiObject(CdmiObject cdmiObject, String path, Boolean override) {
+    if (!override) {
+      return createCdmiObject(cdmiObject, path);
+    }
+    try {
+      logStore.put(objectIdKey(cdmiObject.getObjectId()), cdmiObject.toJson().toString());
+      logStore.put(pathKey(path), cdmiObject.getObjectId());
+      return cdmiObject;
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return null;
+  }
+
+  @Override
+  public CdmiObject getCdmiObject(String objectId) {
+    try {
+      String object = logStore.get(objectIdKey(objectId));
+      if (object != null) {
+        return fromJson(new JSONObject(object));
+      }
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return null;
+  }
+
+  @Override
+  public CdmiObject updateCdmiObject(CdmiObject cdmiObject) {
+    try {
+      logStore.put(objectIdKey(cdmiObject.getObjectId()), cdmiObject.toJson().toString());
+      log.debug("update object {}", cdmiObject.getObjectId());
+      return cdmiObject;
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return null;
+  }
+
+  @Override
+  public CdmiObject updateCdmiObject(CdmiObject cdmiObject, String path) {
+    CdmiObject object = updateCdmiObject(cdmiObject);
+    if (object != null) {
+      try {
+        logStore.put(pathKey(path), cdmiObject.getObjectId());
+      } catch (Exception ex) {
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+        return null;
+      }
+    }
+    return object;
+  }
+
+  @Override
+  public CdmiObject deleteCdmiObject(String objectId) {
+    CdmiObject cdmiObject = getCdmiObject(objectId);
+    if (cdmiObject != null) {
+      logStore.delete(objectIdKey(objectId));
+      log.debug("delete object {}", objectId);
+    }
+    return cdmiObject;
+  }
+
+  @Override
+  public CdmiObject getCdmiObjectByPath(String path) {
+    try {
+      String objectId = logStore.get(pathKey(path));
+      if (objectId != null) {
+        return getCdmiObject(objectId);
+      }
+      log.debug("no object for path {}", path);
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return null;
+  }
+
+  @Override
+  public String getVersionByPath(String path) {
+    String objectId = logStore.get(pathKey(path));
+    if (objectId == null) {
+      return null;
+    }
+    // each update of the object appends a new record
+    long position = logStore.getPosition(objectIdKey(objectId));
+    return position >= 0 ? objectId + "." + Long.toHexString(position) : null;
+  }
+
+  @Override
+  public CdmiObject updateCdmiObjectIfVersion(String path, String version,
+      CdmiObject cdmiObject, String... fieldNames) {
+    String objectId = cdmiObject.getObjectId();
+    try {
+      if (!version.startsWith(objectId + ".") || !objectId.equals(logStore.get(pathKey(path)))) {
+        return null;
+      }
+      long position = Long.parseLong(version.substring(objectId.length() + 1), 16);
+      // the whole object is appended as new record, which moves the position on
+      if (logStore.putIfPosition(objectIdKey(objectId), position,
+          cdmiObject.toJson().toString())) {
+        log.debug("update object {} at version {}", objectId, version);
+        return cdmiObject;
+      }
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return null;
+  }
+
+  @Override
+  public CdmiObject deleteCdmiObjectByPathIfVersion(String path, String version) {
+    try {
+      String objectId = logStore.get(pathKey(path));
+      if (objectId == null || !version.startsWith(objectId + ".")) {
+        return null;
+      }
+      CdmiObject cdmiObject = getCdmiObject(objectId);
+      long position = Long.parseLong(version.substring(objectId.length() + 1), 16);
+      // fails if the object has been updated since the version was read
+      if (cdmiObject != null && logStore.deleteIfPosition(objectIdKey(objectId), position)) {
+        logStore.delete(pathKey(path));
+        log.debug("delete object {} at version {}", objectId, version);
+        return cdmiObject;
+      }
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return null;
+  }
+
+  @Override
+  public CdmiObject deleteCdmiObjectByPath(String path) {
+    CdmiObject cdmiObject = getCdmiObjectByPath(path);
+    if (cdmiObject != null) {
+      logStore.delete(pathKey(path));
+      deleteCdmiObject(cdmiObject.getObjectId());
+    }
+    return cdmiObject;
+  }
+
+  /**
+   * Moves a data object by re-pointing its path alias.
+   */
+  @Override
+  public CdmiObject moveCdmiObject(String sourcePath, String path) {
+    CdmiObject cdmiObject = getCdmiObjectByPath(sourcePath);
+    Path source = Paths.get(sourcePath.trim());
+    Path target = Paths.get(path.trim());
+    if (!(cdmiObject instanceof DataObject) || source.getParent() == null
+        || target.getParent() == null) {
+      return null;
+    }
+    CdmiObject sourceParent = getCdmiObjectByPath(source.getParent().toString());
+    CdmiObject parent = source.getParent().equals(target.getParent()) ? sourceParent
+        : getCdmiObjectByPath(target.getParent().toString());
+    if (!(sourceParent instanceof Container) || !(parent instanceof Container)) {
+      return null;
+    }
+
+    try {
+      if (!logStore.putIfAbsent(pathKey(path), cdmiObject.getObjectId())) {
+        log.debug("path {} already exists", path);
+        return null;
+      }
+      logStore.delete(pathKey(sourcePath));
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+      return null;
+    }
+
+    DataObject dataObject = (DataObject) cdmiObject;
+    dataObject.setObjectName(target.getFileName().toString());
+    dataObject.setParentUri(target.getParent().toString());
+    dataObject.setParentId(parent.getObjectId());
+    updateCdmiObject(dataObject);
+
+    CdmiObjectDao.moveChild((Container) sourceParent, (Container) parent,
+        source.getFileName().toString(), target.getFileName().toString());
+    updateCdmiObject(sourceParent);
+    if (parent != sourceParent) {
+      updateCdmiObject(parent);
+    }
+    log.debug("move {} to {}", sourcePath, path);
+    return dataObject;
+  }
+
+  private CdmiObject fromJson(JSONObject objectJson) {
+    String objectType = objectJson.optString("objectType");
+
+    if (objectType.equals(MediaTypes.CONTAINER)) {
+      return Container.fromJson(objectJson);
+    } else if (objectType.equals(MediaTypes.DATA_OBJECT)) {
+      return DataObject.fromJson(objectJson);
+    } else if (objectType.equals(MediaTypes.QUEUE)) {
+      return Queue.fromJson(objectJson);
+    } else if (objectType.equals(MediaTypes.ACCOUNT)) {
+      return new Domain(objectJson);
+    } else if (objectType.equals(MediaTypes.CAPABILITY)) {
+      return Capability.fromJson(objectJson);
+    }
+    return CdmiObject.fromJson(objectJson);
+  }
+}
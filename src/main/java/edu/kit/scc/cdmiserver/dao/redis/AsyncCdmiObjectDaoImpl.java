@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmiserver.dao.redis;
+
+import edu.kit.scc.cache.NearCache;
+import edu.kit.scc.redis.RedisCommandBatcher;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.snia.cdmiserver.dao.AsyncCdmiObjectDao;
+import org.snia.cdmiserver.dao.CdmiObjectDao;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.util.MediaTypes;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link AsyncCdmiObjectDao} backed by Redis.
+ *
+ * <p>
+ * Reads are queued on the {@link RedisCommandBatcher}, which sends the reads of all concurrent
+ * callers in shared pipelines. An object's hash and its children are requested at the same time.
+ * Writes, and reads of objects which still have to be migrated, run the blocking
+ * {@link CdmiObjectDao} on the given executor, so they keep invalidating the {@link NearCache}.
+ * </p>
+ */
+public class AsyncCdmiObjectDaoImpl implements AsyncCdmiObjectDao {
+
+  private RedisCommandBatcher batcher;
+
+  private CdmiObjectDao cdmiObjectDao;
+
+  private NearCache nearCache;
+
+  private Executor executor;
+
+  public RedisCommandBatcher getBatcher() {
+    return batcher;
+  }
+
+  public void setBatcher(RedisCommandBatcher batcher) {
+    this.batcher = batcher;
+  }
+
+  public CdmiObjectDao getCdmiObjectDao() {
+    return cdmiObjectDao;
+  }
+
+  public void setCdmiObjectDao(CdmiObjectDao cdmiObjectDao) {
+    this.cdmiObjectDao = cdmiObjectDao;
+  }
+
+  public NearCache getNearCache() {
+    return nearCache;
+  }
+
+  public void setNearCache(NearCache nearCache) {
+    this.nearCache = nearCache;
+  }
+
+  public Executor getExecutor() {
+    return executor;
+  }
+
+  public void setExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
+  @Override
+  public CompletionStage<CdmiObject> getCdmiObject(String objectId) {
+    long readGeneration = 0;
+    if (nearCache != null) {
+      String cached = nearCache.get(CdmiObjectDaoImpl.objectCacheKey(objectId));
+      if (cached != null) {
+        return CompletableFuture.completedFuture(
+            CdmiObjectDaoImpl.fromJson(new JSONObject(cached)));
+      }
+      readGeneration = nearCache.generation();
+    }
+    final long generation = readGeneration;
+
+    String key = CdmiObjectDaoImpl.objectKey(objectId);
+    CompletableFuture<Map<String, String>> fields =
+        batcher.submit(key, connection -> connection.hGetAll(key));
+    String childrenKey = CdmiObjectDaoImpl.childrenKey(objectId);
+    CompletableFuture<Set<String>> children =
+        batcher.submit(childrenKey, connection -> connection.zRange(childrenKey, 0, -1));
+
+    return fields.thenCombine(children, (objectFields, objectChildren) -> {
+      if (objectFields == null || objectFields.isEmpty() || objectFields.containsKey("children")) {
+        return null;
+      }
+      JSONObject objectJson = CdmiObjectDaoImpl.decode(objectFields);
+      if (MediaTypes.CONTAINER.equals(objectJson.optString("objectType"))) {
+        objectJson.put("children", new JSONArray(objectChildren));
+        objectJson.put("childrenrange",
+            CdmiObjectDaoImpl.childrenRange(0, objectChildren.size()));
+      }
+      if (nearCache != null) {
+        nearCache.put(CdmiObjectDaoImpl.objectCacheKey(objectId), objectJson.toString(),
+            generation);
+      }
+      return objectJson;
+    }).thenCompose(objectJson -> objectJson != null
+        ? CompletableFuture.completedFuture(CdmiObjectDaoImpl.fromJson(objectJson))
+        // missing, or written before objects were hashes
+        : CompletableFuture.supplyAsync(() -> cdmiObjectDao.getCdmiObject(objectId), executor));
+  }
+
+  @Override
+  public CompletionStage<CdmiObject> getCdmiObjectByPath(String path) {
+    long readGeneration = 0;
+    if (nearCache != null) {
+      String cached = nearCache.get(CdmiObjectDaoImpl.pathCacheKey(path));
+      if (cached != null) {
+        return getCdmiObject(cached);
+      }
+      readGeneration = nearCache.generation();
+    }
+    final long generation = readGeneration;
+
+    CompletableFuture<String> alias = batcher.submit(path, connection -> connection.get(path));
+    return alias.thenCompose(objectId -> {
+      if (objectId == null) {
+        return CompletableFuture.completedFuture(null);
+      }
+      if (objectId.startsWith("{")) {
+        // the path still holds a copy of the object
+        return CompletableFuture.supplyAsync(() -> cdmiObjectDao.getCdmiObjectByPath(path),
+            executor);
+      }
+      if (nearCache != null) {
+        nearCache.put(CdmiObjectDaoImpl.pathCacheKey(path), objectId, generation);
+      }
+      return getCdmiObject(objectId);
+    });
+  }
+
+  @Override
+  public CompletionStage<CdmiObject> createCdmiObject(CdmiObject cdmiObject, String path) {
+    return CompletableFuture.supplyAsync(() -> cdmiObjectDao.createCdmiObject(cdmiObject, path),
+        executor);
+  }
+
+  @Override
+  public CompletionStage<CdmiObject> updateCdmiObject(CdmiObject cdmiObject, String path) {
+    return CompletableFuture.supplyAsync(() -> cdmiObjectDao.updateCdmiObject(cdmiObject, path),
+        executor);
+  }
+
+  @Override
+  public CompletionStage<CdmiObject> deleteCdmiObjectByPath(String path) {
+    return CompletableFuture.supplyAsync(() -> cdmiObjectDao.deleteCdmiObjectByPath(path),
+        executor);
+  }
+}
@@ -9,7 +9,13 @@
 
 package edu.kit.scc.cdmiserver.dao.redis;
 
+import edu.kit.scc.cache.NearCache;
+import edu.kit.scc.redis.NearCacheInvalidationListener;
+import edu.kit.scc.redis.RedisShards;
+
+import org.json.JSONArray;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snia.cdmiserver.dao.CdmiObjectDao;
@@ -18,30 +24,187 @@ import org.snia.cdmiserver.model.CdmiObject;
 import org.snia.cdmiserver.model.Container;
 import org.snia.cdmiserver.model.DataObject;
 import org.snia.cdmiserver.model.Domain;
+import org.snia.cdmiserver.model.Queue;
 import org.snia.cdmiserver.util.MediaTypes;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
+/**
+ * {@link CdmiObjectDao} backed by Redis.
+ *
+ * <p>
+ * Every object is stored once as a hash under {@code objectid:{<id>}}, one hash field per
+ * top-level JSON field holding the field's JSON value. The CDMI path is an alias key holding the
+ * object id, so single fields can be read and written with {@link #getFields(String, String...)}
+ * and {@link #updateCdmiObjectFields(CdmiObject, String...)} without transferring the whole
+ * object.
+ * </p>
+ *
+ * <p>
+ * A container's children are kept in the sorted set {@code children:{<id>}}, ordered by name.
+ * Children are added with {@code ZADD}, only deleting the child removes it again, and a range of
+ * children is read with {@code ZRANGE}.
+ * </p>
+ *
+ * <p>
+ * The object id in braces is a Redis cluster hash tag, so all keys of an object are stored on the
+ * same node of the {@link RedisShards}. The path alias is hashed on its own, as the object id
+ * isn't known before the alias has been resolved.
+ * </p>
+ *
+ * <p>
+ * With a {@link NearCache} set, complete objects and path aliases are additionally cached in
+ * memory. Every write invalidates the affected entries locally and publishes them on
+ * {@link NearCacheInvalidationListener#CHANNEL}, so other server instances drop them, too.
+ * </p>
+ */
 public class CdmiObjectDaoImpl implements CdmiObjectDao {
 
   private static final Logger log = LoggerFactory.getLogger(CdmiObjectDaoImpl.class);
 
-  private StringRedisTemplate redisTemplate;
+  private static final String OBJECT_ID_PREFIX = "objectid:";
+  private static final String CHILDREN_PREFIX = "children:";
+  private static final String VERSION_PREFIX = "version:";
+
+  // sets and removes fields of an existing object, adds children and increments the version
+  private static final RedisScript<Long> UPDATE_FIELDS = new DefaultRedisScript<>(
+      "if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end "
+          + "local set = tonumber(ARGV[1]) local first = 2 * set + 3 "
+          + "local last = first + tonumber(ARGV[first - 1]) - 1 "
+          + "for i = 2, 2 * set, 2 do redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1]) end "
+          + "for i = first, last do redis.call('HDEL', KEYS[1], ARGV[i]) end "
+          + "for i = last + 1, #ARGV do redis.call('ZADD', KEYS[3], 0, ARGV[i]) end "
+          + "redis.call('INCR', KEYS[2]) return 1",
+      Long.class);
+
+  private RedisShards redisShards;
+
+  private NearCache nearCache;
+
+  public RedisShards getRedisShards() {
+    return redisShards;
+  }
+
+  public void setRedisShards(RedisShards redisShards) {
+    this.redisShards = redisShards;
+  }
+
+  public NearCache getNearCache() {
+    return nearCache;
+  }
+
+  public void setNearCache(NearCache nearCache) {
+    this.nearCache = nearCache;
+  }
+
+  /**
+   * Gets the key of an object's hash. All keys of an object share the object id as hash tag.
+   *
+   * @param objectId the object's id
+   * @return the key
+   */
+  public static String objectKey(String objectId) {
+    return OBJECT_ID_PREFIX + "{" + objectId + "}";
+  }
+
+  /**
+   * Gets the key of a container's sorted set of children.
+   *
+   * @param objectId the container's object id
+   * @return the key
+   */
+  public static String childrenKey(String objectId) {
+    return CHILDREN_PREFIX + "{" + objectId + "}";
+  }
+
+  /**
+   * Gets the key of an object's version counter, which is incremented on every update of the
+   * object, its children or its content.
+   *
+   * @param objectId the object's id
+   * @return the key
+   */
+  public static String versionKey(String objectId) {
+    return VERSION_PREFIX + "{" + objectId + "}";
+  }
+
+  private StringRedisTemplate template(String key) {
+    return redisShards.forKey(key);
+  }
+
+  private HashOperations<String, String, String> hashOperations(String key) {
+    return template(key).opsForHash();
+  }
+
+  /**
+   * Invalidates the given near cache keys here and on all other server instances.
+   */
+  private void invalidate(String... keys) {
+    if (nearCache == null) {
+      return;
+    }
+    for (String key : keys) {
+      nearCache.invalidate(key);
+    }
+    try {
+      redisShards.getTemplates().get(0).convertAndSend(NearCacheInvalidationListener.CHANNEL,
+          NearCacheInvalidationListener.message(nearCache.getInstanceId(), keys));
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+  }
+
+  private void incrementVersion(String... objectIds) {
+    for (String objectId : objectIds) {
+      template(versionKey(objectId)).opsForValue().increment(versionKey(objectId), 1);
+    }
+  }
 
-  public StringRedisTemplate getRedisTemplate() {
-    return redisTemplate;
+  static String objectCacheKey(String objectId) {
+    return NearCacheInvalidationListener.OBJECT_PREFIX + objectId;
   }
 
-  public void setRedisTemplate(StringRedisTemplate redisTemplate) {
-    this.redisTemplate = redisTemplate;
+  static String pathCacheKey(String path) {
+    return NearCacheInvalidationListener.PATH_PREFIX + path;
   }
 
   @Override
   public CdmiObject createCdmiObject(CdmiObject cdmiObject) {
     String objectId = cdmiObject.getObjectId();
-    String objectJson = cdmiObject.toJson().toString();
+    String key = objectKey(objectId);
+    JSONObject objectJson = cdmiObject.toJson();
+    JSONArray children = removeChildren(cdmiObject, objectJson);
+    Map<String, String> fields = encode(objectJson);
 
-    if (redisTemplate.opsForValue().setIfAbsent("objectid:" + objectId, objectJson)) {
-      log.debug("set {} {}", "objectid:" + objectId, objectJson);
+    // the object id field marks the hash as taken
+    if (hashOperations(key).putIfAbsent(key, "objectID", fields.remove("objectID"))) {
+      if (!fields.isEmpty()) {
+        hashOperations(key).putAll(key, fields);
+      }
+      storeChildren(objectId, children);
+      incrementVersion(objectId);
+      log.debug("create {}", key);
       return cdmiObject;
     }
 
@@ -51,9 +214,11 @@ public class CdmiObjectDaoImpl implements CdmiObjectDao {
 
   @Override
   public CdmiObject createCdmiObject(CdmiObject cdmiObject, String path) {
-    if (redisTemplate.opsForValue().setIfAbsent(path, cdmiObject.toJson().toString())) {
+    if (template(path).opsForValue().setIfAbsent(path, cdmiObject.getObjectId())) {
+      // other instances may remember the path as missing
+      invalidate(pathCacheKey(path));
       CdmiObject object = createCdmiObject(cdmiObject);
-      log.debug("set {} {}", path, object.toJson().toString());
+      log.debug("set {} {}", path, object);
       return cdmiObject;
     }
 
@@ -63,33 +228,59 @@ public class CdmiObjectDaoImpl implements CdmiObjectDao {
 
   @Override
   public CdmiObject createCdmiObject(CdmiObject cdmiObject, String path, Boolean override) {
-    redisTemplate.opsForValue().set(path, cdmiObject.toJson().toString());
-    CdmiObject object = createCdmiObject(cdmiObject);
-    log.debug("set {} {}", path, object.toJson().toString());
+    template(path).opsForValue().set(path, cdmiObject.getObjectId());
+    invalidate(pathCacheKey(path));
+    CdmiObject object = updateCdmiObject(cdmiObject);
+    log.debug("set {} {}", path, object);
     return cdmiObject;
   }
 
   @Override
   public CdmiObject getCdmiObject(String objectId) {
-    String object = redisTemplate.opsForValue().get("objectid:" + objectId);
+    return getCdmiObject(objectId, 0, -1, true);
+  }
 
+  private CdmiObject getCdmiObject(String objectId, long childrenStart, long childrenEnd,
+      boolean allChildren) {
+    long readGeneration = 0;
+    if (allChildren && nearCache != null) {
+      String cached = nearCache.get(objectCacheKey(objectId));
+      if (cached != null) {
+        return fromJson(new JSONObject(cached));
+      }
+      readGeneration = nearCache.generation();
+    }
     try {
-      JSONObject objectJson = new JSONObject(object);
-      String objectType = objectJson.optString("objectType");
-
-      if (objectType != null) {
-        if (objectType.equals(MediaTypes.CONTAINER)) {
-          return Container.fromJson(objectJson);
-        } else if (objectType.equals(MediaTypes.DATA_OBJECT)) {
-          return DataObject.fromJson(objectJson);
-        } else if (objectType.equals(MediaTypes.ACCOUNT)) {
-          return new Domain(objectJson);
-        } else if (objectType.equals(MediaTypes.CAPABILITY)) {
-          return Capability.fromJson(objectJson);
-        } else {
-          return CdmiObject.fromJson(objectJson);
+      String key = objectKey(objectId);
+      Map<String, String> fields = hashOperations(key).entries(key);
+      if (fields.isEmpty()) {
+        fields = migrate(objectId);
+      }
+      if (fields == null || fields.isEmpty()) {
+        return null;
+      }
+      JSONObject objectJson = decode(fields);
+      if (MediaTypes.CONTAINER.equals(objectJson.optString("objectType"))) {
+        if (objectJson.has("children")) {
+          // children written before they were kept in a sorted set
+          storeChildren(objectId, (JSONArray) objectJson.remove("children"));
+          objectJson.remove("childrenrange");
+          hashOperations(key).delete(key, "children", "childrenrange");
         }
+        long start = allChildren ? 0 : childrenStart;
+        Set<String> children = allChildren
+            ? template(key).opsForZSet().range(childrenKey(objectId), 0, -1)
+            : childrenEnd >= childrenStart
+                ? template(key).opsForZSet().range(childrenKey(objectId), childrenStart,
+                    childrenEnd)
+                : new HashSet<>();
+        objectJson.put("children", new JSONArray(children));
+        objectJson.put("childrenrange", childrenRange(start, children.size()));
       }
+      if (allChildren && nearCache != null) {
+        nearCache.put(objectCacheKey(objectId), objectJson.toString(), readGeneration);
+      }
+      return fromJson(objectJson);
     } catch (Exception ex) {
       // ex.printStackTrace();
       log.error("{} {}", ex.getClass().getName(), ex.getMessage());
@@ -97,55 +288,369 @@ public class CdmiObjectDaoImpl implements CdmiObjectDao {
     return null;
   }
 
+  /**
+   * Gets single fields of an object.
+   *
+   * @param objectId the object's id
+   * @param fieldNames the names of the top-level JSON fields
+   * @return a {@link JSONObject} with the fields which are set or {@code null} in case of errors
+   */
+  public JSONObject getFields(String objectId, String... fieldNames) {
+    try {
+      String key = objectKey(objectId);
+      List<String> values = hashOperations(key).multiGet(key, Arrays.asList(fieldNames));
+      JSONObject fields = new JSONObject();
+      for (int i = 0; i < fieldNames.length; i++) {
+        if (values.get(i) != null) {
+          fields.put(fieldNames[i], new JSONTokener(values.get(i)).nextValue());
+        }
+      }
+      return fields;
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return null;
+  }
+
+  /**
+   * Resolves all paths with one {@code MGET} and reads the fields with one pipeline of
+   * {@code HMGET}s per node.
+   */
   @Override
-  public CdmiObject updateCdmiObject(CdmiObject cdmiObject) {
+  public List<JSONObject> getFieldsByPath(List<String> paths, String... fieldNames) {
+    try {
+      String[] objectIds = new String[paths.size()];
+      for (Map.Entry<Integer, List<Integer>> shard : groupByShard(paths).entrySet()) {
+        List<String> keys = new ArrayList<>();
+        for (int index : shard.getValue()) {
+          keys.add(paths.get(index));
+        }
+        List<String> aliases =
+            redisShards.getTemplates().get(shard.getKey()).opsForValue().multiGet(keys);
+        for (int i = 0; i < keys.size(); i++) {
+          String alias = aliases.get(i);
+          objectIds[shard.getValue().get(i)] =
+              alias != null && alias.startsWith("{") ? getObjectId(keys.get(i)) : alias;
+        }
+      }
+
+      List<String> objectKeys = new ArrayList<>();
+      for (String objectId : objectIds) {
+        objectKeys.add(objectId != null ? objectKey(objectId) : null);
+      }
+      // the object id tells existing objects without the requested fields from missing ones
+      String[] hashFields = new String[fieldNames.length + 1];
+      hashFields[0] = "objectID";
+      System.arraycopy(fieldNames, 0, hashFields, 1, fieldNames.length);
+
+      JSONObject[] objects = new JSONObject[paths.size()];
+      for (Map.Entry<Integer, List<Integer>> shard : groupByShard(objectKeys).entrySet()) {
+        List<Object> results = redisShards.getTemplates().get(shard.getKey())
+            .executePipelined((RedisCallback<Object>) connection -> {
+              for (int index : shard.getValue()) {
+                ((StringRedisConnection) connection).hMGet(objectKeys.get(index), hashFields);
+              }
+              return null;
+            });
+        for (int i = 0; i < results.size(); i++) {
+          int index = shard.getValue().get(i);
+          @SuppressWarnings("unchecked")
+          List<String> values = (List<String>) results.get(i);
+          if (values.get(0) == null) {
+            // not yet migrated to a hash
+            objects[index] = CdmiObjectDao.selectFields(getCdmiObject(objectIds[index]),
+                fieldNames);
+            continue;
+          }
+          JSONObject fields = new JSONObject();
+          for (int field = 0; field < fieldNames.length; field++) {
+            if (values.get(field + 1) != null) {
+              fields.put(fieldNames[field], new JSONTokener(values.get(field + 1)).nextValue());
+            }
+          }
+          objects[index] = fields;
+        }
+      }
+      return Arrays.asList(objects);
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return null;
+  }
+
+  /**
+   * Groups the indices of the given keys by the node responsible for the key, {@code null} keys
+   * are skipped.
+   */
+  private Map<Integer, List<Integer>> groupByShard(List<String> keys) {
+    Map<Integer, List<Integer>> shards = new TreeMap<>();
+    for (int index = 0; index < keys.size(); index++) {
+      if (keys.get(index) != null) {
+        shards.computeIfAbsent(redisShards.shardOf(keys.get(index)), shard -> new ArrayList<>())
+            .add(index);
+      }
+    }
+    return shards;
+  }
+
+  @Override
+  public CdmiObject updateCdmiObjectFields(CdmiObject cdmiObject, String... fieldNames) {
+    try {
+      JSONObject objectJson = cdmiObject.toJson();
+      JSONArray children = removeChildren(cdmiObject, objectJson);
+      List<String> fields = new ArrayList<>();
+      List<String> removedFields = new ArrayList<>();
+      List<String> childNames = new ArrayList<>();
+      for (String name : fieldNames) {
+        if (name.equals("children")) {
+          for (int i = 0; children != null && i < children.length(); i++) {
+            childNames.add(children.getString(i));
+          }
+        } else if (objectJson.has(name)) {
+          fields.add(name);
+          fields.add(JSONObject.valueToString(objectJson.get(name)));
+        } else if (!name.equals("childrenrange") || !(cdmiObject instanceof Container)) {
+          removedFields.add(name);
+        }
+      }
+      List<String> args = new ArrayList<>();
+      args.add(String.valueOf(fields.size() / 2));
+      args.addAll(fields);
+      args.add(String.valueOf(removedFields.size()));
+      args.addAll(removedFields);
+      args.addAll(childNames);
+
+      // the fields and the version are written in one step, only if the object still exists
+      String objectId = cdmiObject.getObjectId();
+      String key = objectKey(objectId);
+      Long updated = template(key).execute(UPDATE_FIELDS,
+          Arrays.asList(key, versionKey(objectId), childrenKey(objectId)),
+          args.toArray());
+      if (updated == null || updated == 0) {
+        log.debug("object id {} doesn't exist", objectId);
+        return null;
+      }
+      invalidate(objectCacheKey(objectId));
+      log.debug("update {} fields {}", key, Arrays.asList(fieldNames));
+      return cdmiObject;
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return null;
+  }
+
+  @Override
+  public CdmiObject updateCdmiObjectIfVersion(String path, String version,
+      CdmiObject cdmiObject, String... fieldNames) {
     String objectId = cdmiObject.getObjectId();
-    String objectJson = cdmiObject.toJson().toString();
+    try {
+      if (!version.startsWith(objectId + ".") || !objectId.equals(getObjectId(path))) {
+        return null;
+      }
+      String expected = version.substring(objectId.length() + 1);
+      String key = objectKey(objectId);
+      String versionKey = versionKey(objectId);
+      JSONObject objectJson = cdmiObject.toJson();
+      removeChildren(cdmiObject, objectJson);
+      Map<String, String> fields = new HashMap<>();
+      List<Object> removedFields = new ArrayList<>();
+      for (String name : fieldNames) {
+        if (objectJson.has(name)) {
+          fields.put(name, JSONObject.valueToString(objectJson.get(name)));
+        } else if (!name.equals("children") && !name.equals("childrenrange")) {
+          removedFields.add(name);
+        }
+      }
+
+      // the transaction is discarded if the version changes after it has been compared
+      List<Object> results = template(key).execute(new SessionCallback<List<Object>>() {
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public List<Object> execute(RedisOperations operations) {
+          operations.watch(versionKey);
+          Object current = operations.opsForValue().get(versionKey);
+          if (!expected.equals(current != null ? current : "0")) {
+            operations.unwatch();
+            return null;
+          }
+          operations.multi();
+          if (!fields.isEmpty()) {
+            operations.opsForHash().putAll(key, fields);
+          }
+          if (!removedFields.isEmpty()) {
+            operations.opsForHash().delete(key, removedFields.toArray());
+          }
+          operations.opsForValue().increment(versionKey, 1);
+          return operations.exec();
+        }
+      });
+      if (results == null || results.isEmpty()) {
+        log.debug("object id {} is not at version {}", objectId, version);
+        return null;
+      }
+      invalidate(objectCacheKey(objectId));
+      log.debug("update {} fields {} at version {}", key, Arrays.asList(fieldNames), version);
+      return cdmiObject;
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return null;
+  }
+
+  @Override
+  public CdmiObject updateCdmiObject(CdmiObject cdmiObject) {
+    String key = objectKey(cdmiObject.getObjectId());
+    JSONObject objectJson = cdmiObject.toJson();
+    JSONArray children = removeChildren(cdmiObject, objectJson);
+    Map<String, String> fields = encode(objectJson);
 
-    redisTemplate.opsForValue().set("objectid:" + objectId, objectJson);
-    log.debug("set {} {}", "objectid:" + objectId, objectJson);
+    // fields the object no longer has must not survive the update
+    template(key).execute(new SessionCallback<List<Object>>() {
+      @Override
+      @SuppressWarnings({"unchecked", "rawtypes"})
+      public List<Object> execute(RedisOperations operations) {
+        operations.multi();
+        operations.delete(key);
+        operations.opsForHash().putAll(key, fields);
+        operations.opsForValue().increment(versionKey(cdmiObject.getObjectId()), 1);
+        return operations.exec();
+      }
+    });
+    storeChildren(cdmiObject.getObjectId(), children);
+    invalidate(objectCacheKey(cdmiObject.getObjectId()));
+    log.debug("set {} {}", key, fields.keySet());
     return cdmiObject;
   }
 
   @Override
   public CdmiObject updateCdmiObject(CdmiObject cdmiObject, String path) {
-    redisTemplate.opsForValue().set(path, cdmiObject.toJson().toString());
-    log.debug("set {} {}", path, cdmiObject.toJson().toString());
+    template(path).opsForValue().set(path, cdmiObject.getObjectId());
+    invalidate(pathCacheKey(path));
+    updateCdmiObject(cdmiObject);
+    log.debug("set {} {}", path, cdmiObject.getObjectId());
     return cdmiObject;
   }
 
+  @Override
+  public CdmiObject addChild(Container container, String path, String childName) {
+    String key = childrenKey(container.getObjectId());
+    template(key).opsForZSet().add(key, childName, 0);
+    incrementVersion(container.getObjectId());
+    invalidate(objectCacheKey(container.getObjectId()));
+    // keep an already loaded list of children up to date
+    JSONArray children = container.getChildren();
+    if (children != null && children.length() > 0) {
+      for (int i = 0; i < children.length(); i++) {
+        if (children.get(i).equals(childName)) {
+          return container;
+        }
+      }
+      children.put(childName);
+      container.setChildrenrange(CdmiObject.getChildrenRange(children));
+    }
+    log.debug("add child {} to {}", childName, path);
+    return container;
+  }
+
+  @Override
+  public CdmiObject addChildren(Container container, String path,
+      Collection<String> childNames) {
+    if (childNames.isEmpty()) {
+      return container;
+    }
+    String key = childrenKey(container.getObjectId());
+    Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>();
+    for (String childName : childNames) {
+      tuples.add(new DefaultTypedTuple<>(childName, 0.0));
+    }
+    template(key).opsForZSet().add(key, tuples);
+    incrementVersion(container.getObjectId());
+    invalidate(objectCacheKey(container.getObjectId()));
+    // keep an already loaded list of children up to date
+    JSONArray children = container.getChildren();
+    if (children != null && children.length() > 0) {
+      Set<Object> existing = new HashSet<>();
+      for (int i = 0; i < children.length(); i++) {
+        existing.add(children.get(i));
+      }
+      for (String childName : childNames) {
+        if (existing.add(childName)) {
+          children.put(childName);
+        }
+      }
+      container.setChildrenrange(CdmiObject.getChildrenRange(children));
+    }
+    log.debug("add {} children to {}", childNames.size(), path);
+    return container;
+  }
+
   @Override
   public CdmiObject deleteCdmiObject(String objectId) {
     CdmiObject cdmiObject = getCdmiObject(objectId);
 
-    redisTemplate.delete("objectid:" + objectId);
+    template(objectKey(objectId)).delete(
+        Arrays.asList(objectKey(objectId), childrenKey(objectId), versionKey(objectId)));
+    invalidate(objectCacheKey(objectId));
 
     return cdmiObject;
   }
 
   @Override
   public CdmiObject getCdmiObjectByPath(String path) {
-    String object = redisTemplate.opsForValue().get(path);
+    String objectId = getObjectId(path);
+    return objectId != null ? getCdmiObject(objectId) : null;
+  }
+
+  @Override
+  public CdmiObject getCdmiObjectByPath(String path, int childrenStart, int childrenEnd) {
+    String objectId = getObjectId(path);
+    return objectId != null ? getCdmiObject(objectId, childrenStart, childrenEnd, false) : null;
+  }
 
+  @Override
+  public String getVersionByPath(String path) {
+    String objectId = getObjectId(path);
+    if (objectId == null) {
+      return null;
+    }
     try {
-      JSONObject objectJson = new JSONObject(object);
-      String objectType = objectJson.optString("objectType");
-
-      if (objectType != null) {
-        if (objectType.equals(MediaTypes.CONTAINER)) {
-          return Container.fromJson(objectJson);
-        } else if (objectType.equals(MediaTypes.DATA_OBJECT)) {
-          return DataObject.fromJson(objectJson);
-        } else if (objectType.equals(MediaTypes.ACCOUNT)) {
-          return new Domain(objectJson);
-        } else if (objectType.equals(MediaTypes.CAPABILITY)) {
-          return Capability.fromJson(objectJson);
-        } else {
-          return CdmiObject.fromJson(objectJson);
-        }
+      String version = template(versionKey(objectId)).opsForValue().get(versionKey(objectId));
+      // objects written before versions were counted start at 0
+      return objectId + "." + (version != null ? version : "0");
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return null;
+  }
+
+  /**
+   * Resolves a CDMI path to the object id it is an alias for.
+   *
+   * @param path the CDMI path
+   * @return the object id or {@code null} if there is no object at the path
+   */
+  public String getObjectId(String path) {
+    long readGeneration = 0;
+    if (nearCache != null) {
+      String cached = nearCache.get(pathCacheKey(path));
+      if (cached != null) {
+        return cached;
+      }
+      readGeneration = nearCache.generation();
+    }
+    try {
+      String alias = template(path).opsForValue().get(path);
+      if (alias != null && alias.startsWith("{")) {
+        // the path still holds a copy of the object, written before objects were hashes
+        String objectId = new JSONObject(alias).getString("objectID");
+        template(path).opsForValue().set(path, objectId);
+        return objectId;
+      }
+      if (alias != null && nearCache != null) {
+        nearCache.put(pathCacheKey(path), alias, readGeneration);
       }
+      return alias;
     } catch (Exception ex) {
-      // ex.printStackTrace();
       log.error("{} {}", ex.getClass().getName(), ex.getMessage());
     }
     return null;
@@ -153,13 +658,301 @@ public class CdmiObjectDaoImpl implements CdmiObjectDao {
 
   @Override
   public CdmiObject deleteCdmiObjectByPath(String path) {
-    CdmiObject cdmiObject = getCdmiObjectByPath(path);
-
-    deleteCdmiObject(cdmiObject.getObjectId());
+    CdmiObject cdmiObject = getCdmiObjectByPath(path, 0, -1);
 
-    redisTemplate.delete(path);
+    template(path).delete(path);
+    if (cdmiObject == null) {
+      invalidate(pathCacheKey(path));
+      return null;
+    }
+    String objectId = cdmiObject.getObjectId();
+    template(objectKey(objectId)).delete(
+        Arrays.asList(objectKey(objectId), childrenKey(objectId), versionKey(objectId)));
+    removeFromParent(cdmiObject, path);
 
     return cdmiObject;
   }
 
+  @Override
+  public CdmiObject deleteCdmiObjectByPathIfVersion(String path, String version) {
+    try {
+      CdmiObject cdmiObject = getCdmiObjectByPath(path, 0, -1);
+      if (cdmiObject == null || !version.startsWith(cdmiObject.getObjectId() + ".")) {
+        return null;
+      }
+      String objectId = cdmiObject.getObjectId();
+      String expected = version.substring(objectId.length() + 1);
+      String key = objectKey(objectId);
+      String versionKey = versionKey(objectId);
+
+      // the transaction is discarded if the version changes after it has been compared
+      List<Object> results = template(key).execute(new SessionCallback<List<Object>>() {
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public List<Object> execute(RedisOperations operations) {
+          operations.watch(versionKey);
+          Object current = operations.opsForValue().get(versionKey);
+          if (!expected.equals(current != null ? current : "0")) {
+            operations.unwatch();
+            return null;
+          }
+          operations.multi();
+          operations.delete(Arrays.asList(key, childrenKey(objectId), versionKey));
+          return operations.exec();
+        }
+      });
+      if (results == null || results.isEmpty()) {
+        log.debug("object id {} is not at version {}", objectId, version);
+        return null;
+      }
+      // the path may be on another shard, it is removed unless it was taken in the meantime
+      if (objectId.equals(template(path).opsForValue().get(path))) {
+        template(path).delete(path);
+      }
+      removeFromParent(cdmiObject, path);
+      log.debug("delete {} at version {}", key, version);
+      return cdmiObject;
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return null;
+  }
+
+  /**
+   * Removes a deleted object from its parent's children and invalidates the cached keys.
+   */
+  private void removeFromParent(CdmiObject cdmiObject, String path) {
+    String objectId = cdmiObject.getObjectId();
+    String parentId = null;
+    String objectName = null;
+    if (cdmiObject instanceof Container) {
+      parentId = ((Container) cdmiObject).getParentId();
+      objectName = ((Container) cdmiObject).getObjectName();
+    } else if (cdmiObject instanceof DataObject) {
+      parentId = ((DataObject) cdmiObject).getParentId();
+      objectName = ((DataObject) cdmiObject).getObjectName();
+    }
+    if (parentId != null && objectName != null) {
+      template(childrenKey(parentId)).opsForZSet().remove(childrenKey(parentId), objectName);
+      incrementVersion(parentId);
+      invalidate(pathCacheKey(path), objectCacheKey(objectId), objectCacheKey(parentId));
+    } else {
+      invalidate(pathCacheKey(path), objectCacheKey(objectId));
+    }
+  }
+
+  @Override
+  public int deleteCdmiObjectsByPath(List<String> paths) {
+    if (paths.isEmpty()) {
+      return 0;
+    }
+    try {
+      String[] objectIds = new String[paths.size()];
+      for (Map.Entry<Integer, List<Integer>> shard : groupByShard(paths).entrySet()) {
+        List<String> keys = new ArrayList<>();
+        for (int index : shard.getValue()) {
+          keys.add(paths.get(index));
+        }
+        List<String> aliases =
+            redisShards.getTemplates().get(shard.getKey()).opsForValue().multiGet(keys);
+        for (int i = 0; i < keys.size(); i++) {
+          String alias = aliases.get(i);
+          objectIds[shard.getValue().get(i)] =
+              alias != null && alias.startsWith("{") ? getObjectId(keys.get(i)) : alias;
+        }
+      }
+
+      // the objects' keys and their children's names per parent
+      List<String> keys = new ArrayList<>(paths);
+      List<String> cacheKeys = new ArrayList<>();
+      Map<String, List<String>> childNames = new HashMap<>();
+      int deleted = 0;
+      for (int index = 0; index < paths.size(); index++) {
+        String path = paths.get(index);
+        cacheKeys.add(pathCacheKey(path));
+        if (objectIds[index] == null) {
+          continue;
+        }
+        deleted++;
+        keys.add(objectKey(objectIds[index]));
+        keys.add(childrenKey(objectIds[index]));
+        keys.add(versionKey(objectIds[index]));
+        cacheKeys.add(objectCacheKey(objectIds[index]));
+        Path parentPath = Paths.get(path).getParent();
+        if (parentPath != null) {
+          childNames.computeIfAbsent(parentPath.toString(), parent -> new ArrayList<>())
+              .add(Paths.get(path).getFileName().toString());
+        }
+      }
+      for (Map.Entry<Integer, List<Integer>> shard : groupByShard(keys).entrySet()) {
+        List<String> shardKeys = new ArrayList<>();
+        for (int index : shard.getValue()) {
+          shardKeys.add(keys.get(index));
+        }
+        redisShards.getTemplates().get(shard.getKey()).delete(shardKeys);
+      }
+      for (Map.Entry<String, List<String>> parent : childNames.entrySet()) {
+        String parentId = getObjectId(parent.getKey());
+        if (parentId != null) {
+          String key = childrenKey(parentId);
+          template(key).opsForZSet().remove(key, parent.getValue().toArray());
+          incrementVersion(parentId);
+          cacheKeys.add(objectCacheKey(parentId));
+        }
+      }
+      invalidate(cacheKeys.toArray(new String[cacheKeys.size()]));
+      log.debug("delete {} objects", deleted);
+      return deleted;
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return 0;
+  }
+
+  @Override
+  public CdmiObject moveCdmiObject(String sourcePath, String path) {
+    Path source = Paths.get(sourcePath);
+    Path target = Paths.get(path);
+    if (source.getParent() == null || target.getParent() == null) {
+      return null;
+    }
+    try {
+      CdmiObject cdmiObject = getCdmiObjectByPath(sourcePath, 0, -1);
+      String sourceParentId = getObjectId(source.getParent().toString());
+      String parentId = getObjectId(target.getParent().toString());
+      if (!(cdmiObject instanceof DataObject) || sourceParentId == null || parentId == null) {
+        return null;
+      }
+      String objectId = cdmiObject.getObjectId();
+      if (!template(path).opsForValue().setIfAbsent(path, objectId)) {
+        log.debug("path {} already exists", path);
+        return null;
+      }
+      template(sourcePath).delete(sourcePath);
+
+      DataObject dataObject = (DataObject) cdmiObject;
+      dataObject.setObjectName(target.getFileName().toString());
+      dataObject.setParentUri(target.getParent().toString());
+      dataObject.setParentId(parentId);
+      updateCdmiObjectFields(dataObject, "objectName", "parentURI", "parentID");
+
+      String sourceName = source.getFileName().toString();
+      String name = target.getFileName().toString();
+      String sourceKey = childrenKey(sourceParentId);
+      String key = childrenKey(parentId);
+      if (sourceKey.equals(key)) {
+        // a rename within the container is a single transaction
+        template(key).execute(new SessionCallback<List<Object>>() {
+          @Override
+          @SuppressWarnings({"unchecked", "rawtypes"})
+          public List<Object> execute(RedisOperations operations) {
+            operations.multi();
+            operations.opsForZSet().remove(key, sourceName);
+            operations.opsForZSet().add(key, name, 0);
+            return operations.exec();
+          }
+        });
+      } else {
+        template(key).opsForZSet().add(key, name, 0);
+        template(sourceKey).opsForZSet().remove(sourceKey, sourceName);
+      }
+      incrementVersion(sourceKey.equals(key) ? new String[] {parentId}
+          : new String[] {sourceParentId, parentId});
+      invalidate(pathCacheKey(sourcePath), pathCacheKey(path), objectCacheKey(objectId),
+          objectCacheKey(sourceParentId), objectCacheKey(parentId));
+      log.debug("move {} to {}", sourcePath, path);
+      return dataObject;
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return null;
+  }
+
+  /**
+   * Takes the children of a container out of the JSON which is written to the object's hash.
+   */
+  private static JSONArray removeChildren(CdmiObject cdmiObject, JSONObject objectJson) {
+    if (!(cdmiObject instanceof Container)) {
+      return null;
+    }
+    objectJson.remove("childrenrange");
+    return (JSONArray) objectJson.remove("children");
+  }
+
+  private void storeChildren(String objectId, JSONArray children) {
+    if (children == null || children.length() == 0) {
+      return;
+    }
+    Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>();
+    for (int i = 0; i < children.length(); i++) {
+      tuples.add(new DefaultTypedTuple<>(children.getString(i), 0.0));
+    }
+    template(childrenKey(objectId)).opsForZSet().add(childrenKey(objectId), tuples);
+  }
+
+  static String childrenRange(long start, int count) {
+    if (count == 0) {
+      return "";
+    }
+    if (count == 1) {
+      return String.valueOf(start);
+    }
+    return start + "-" + (start + count - 1);
+  }
+
+  /**
+   * Moves an object stored by an earlier version under {@code objectid:<id>}, either as JSON
+   * string or as hash, to its hash tagged key.
+   */
+  private Map<String, String> migrate(String objectId) {
+    String legacyKey = OBJECT_ID_PREFIX + objectId;
+    StringRedisTemplate legacyTemplate = template(legacyKey);
+    DataType type = legacyTemplate.type(legacyKey);
+    Map<String, String> fields;
+    if (type == DataType.STRING) {
+      fields = encode(new JSONObject(legacyTemplate.opsForValue().get(legacyKey)));
+    } else if (type == DataType.HASH) {
+      fields = legacyTemplate.<String, String>opsForHash().entries(legacyKey);
+    } else {
+      return null;
+    }
+    String key = objectKey(objectId);
+    hashOperations(key).putAll(key, fields);
+    legacyTemplate.delete(legacyKey);
+    log.debug("migrated {} to {}", legacyKey, key);
+    return fields;
+  }
+
+  private static Map<String, String> encode(JSONObject objectJson) {
+    Map<String, String> fields = new HashMap<>();
+    for (String name : objectJson.keySet()) {
+      fields.put(name, JSONObject.valueToString(objectJson.get(name)));
+    }
+    return fields;
+  }
+
+  static JSONObject decode(Map<String, String> fields) {
+    JSONObject objectJson = new JSONObject();
+    for (Map.Entry<String, String> field : fields.entrySet()) {
+      objectJson.put(field.getKey(), new JSONTokener(field.getValue()).nextValue());
+    }
+    return objectJson;
+  }
+
+  static CdmiObject fromJson(JSONObject objectJson) {
+    String objectType = objectJson.optString("objectType");
+
+    if (objectType.equals(MediaTypes.CONTAINER)) {
+      return Container.fromJson(objectJson);
+    } else if (objectType.equals(MediaTypes.DATA_OBJECT)) {
+      return DataObject.fromJson(objectJson);
+    } else if (objectType.equals(MediaTypes.QUEUE)) {
+      return Queue.fromJson(objectJson);
+    } else if (objectType.equals(MediaTypes.ACCOUNT)) {
+      return new Domain(objectJson);
+    } else if (objectType.equals(MediaTypes.CAPABILITY)) {
+      return Capability.fromJson(objectJson);
+    }
+    return CdmiObject.fromJson(objectJson);
+  }
 }
@@ -9,7 +9,6 @@
 
 package edu.kit.scc.cdmiserver.dao.redis;
 
-import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,7 +49,7 @@ public class ContainerDaoImpl implements ContainerDao {
 
     // create the container meta-data files
     Container parentContainer =
-        (Container) cdmiObjectDao.getCdmiObjectByPath(parentPath.toString());
+        (Container) cdmiObjectDao.getCdmiObjectByPath(parentPath.toString(), 0, -1);
 
     if (parentContainer == null) {
       parentContainer =
@@ -60,32 +59,13 @@ public class ContainerDaoImpl implements ContainerDao {
     Container container = new Container(urlPath.getFileName().toString(), parentPath.toString(),
         parentContainer.getObjectId());
 
-    if (parentContainer.getChildren() == null) {
-      parentContainer.setChildren(new JSONArray());
-    }
-
-    JSONArray children = parentContainer.getChildren();
-    JSONArray filteredChildren = new JSONArray();
-
-    for (int i = 0; i < children.length(); i++) {
-      if (!children.get(i).equals(container.getObjectName())) {
-        filteredChildren.put(children.get(i));
-      }
-    }
-
-    filteredChildren.put(container.getObjectName());
-    parentContainer.setChildren(filteredChildren);
-
-    String childrenRange = CdmiObject.getChildrenRange(parentContainer.getChildren());
-    parentContainer.setChildrenrange(childrenRange);
-
     container.setCompletionStatus("Complete");
     container.setMetadata(containerRequest.getMetadata());
     // container.setCapabilitiesUri(containerRequest.getCapabilitiesUri());
 
     container = (Container) cdmiObjectDao.createCdmiObject(container, urlPath.toString());
-    cdmiObjectDao.updateCdmiObject(parentContainer);
-    cdmiObjectDao.updateCdmiObject(parentContainer, parentPath.toString());
+    cdmiObjectDao.addChild(parentContainer, parentPath.toString(),
+        urlPath.getFileName().toString());
 
     return container;
   }
@@ -99,12 +79,8 @@ public class ContainerDaoImpl implements ContainerDao {
       container = (Container) cdmiObjectDao.getCdmiObjectByPath(path.trim());
 
       if (container != null) {
-
-        cdmiObjectDao.deleteCdmiObject(container.getObjectId());
+        // also removes the container from its parent's children
         cdmiObjectDao.deleteCdmiObjectByPath(path.trim());
-
-        // removeChild(containerPath.getFileName().toString(),
-        // containerPath.getParent().toString());
       }
     } catch (Exception ex) {
       log.error("ERROR: {}", ex.getMessage());
@@ -112,6 +88,14 @@ public class ContainerDaoImpl implements ContainerDao {
     return container;
   }
 
+  @Override
+  public Container deleteByPathIfVersion(String path, String version) {
+    log.debug("delete container {} at version {}", path.trim(), version);
+
+    CdmiObject deleted = cdmiObjectDao.deleteCdmiObjectByPathIfVersion(path.trim(), version);
+    return deleted instanceof Container ? (Container) deleted : null;
+  }
+
   @Override
   public Container findByObjectId(String objectId) {
     return (Container) cdmiObjectDao.getCdmiObject(objectId);
@@ -122,6 +106,12 @@ public class ContainerDaoImpl implements ContainerDao {
     return (Container) cdmiObjectDao.getCdmiObjectByPath(path.trim());
   }
 
+  @Override
+  public boolean createStorageByPath(String path) {
+    // a container is only metadata
+    return true;
+  }
+
   @Override
   public boolean isContainer(String path) {
     try {
@@ -9,7 +9,8 @@
 
 package edu.kit.scc.cdmiserver.dao.redis;
 
-import org.json.JSONArray;
+import edu.kit.scc.redis.RedisShards;
+
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,18 +20,102 @@ import org.snia.cdmiserver.dao.DataObjectDao;
 import org.snia.cdmiserver.model.CdmiObject;
 import org.snia.cdmiserver.model.Container;
 import org.snia.cdmiserver.model.DataObject;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
 
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link DataObjectDao} backed by Redis.
+ *
+ * <p>
+ * The content of a data object is described by the hash {@code value:{<id>}}. Content up to the
+ * inline size is stored inline in the hash's data field. Larger content is split into chunks of
+ * the chunk size stored under {@code chunk:{<id>}:<index>}, so a range is read with
+ * {@code GETRANGE} and written with {@code SETRANGE} on the affected chunks only, without moving
+ * the whole content. The chunks of a range are read by a single script.
+ * </p>
+ */
 public class DataObjectDaoImpl implements DataObjectDao {
 
   private static final Logger log = LoggerFactory.getLogger(DataObjectDaoImpl.class);
 
+  public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+  public static final int DEFAULT_INLINE_SIZE = 64 * 1024;
+
+  private static final String VALUE_PREFIX = "value:";
+  private static final String CHUNK_PREFIX = "chunk:";
+
+  private static final byte[] LENGTH_FIELD = bytes("length");
+  private static final byte[] CHUNK_SIZE_FIELD = bytes("chunkSize");
+  private static final byte[] DATA_FIELD = bytes("data");
+
+  private static final byte[] READ_CHUNKS = bytes("local chunks = {} for i, key in ipairs(KEYS) do "
+      + "chunks[i] = redis.call('GETRANGE', key, ARGV[2 * i - 1], ARGV[2 * i]) end return chunks");
+
   private CdmiObjectDao cdmiObjectDao;
 
   private ContainerDao containerDao;
 
+  private RedisShards redisShards;
+
+  private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+  private int inlineSize = DEFAULT_INLINE_SIZE;
+
+  /**
+   * The layout of a data object's content.
+   */
+  private static final class ContentInfo {
+    private final long length;
+    // 0 for inline content
+    private final int chunkSize;
+    private final byte[] data;
+
+    ContentInfo(long length, int chunkSize, byte[] data) {
+      this.length = length;
+      this.chunkSize = chunkSize;
+      this.data = data;
+    }
+
+    long chunks() {
+      return chunkSize > 0 ? (length + chunkSize - 1) / chunkSize : 0;
+    }
+  }
+
+  public RedisShards getRedisShards() {
+    return redisShards;
+  }
+
+  public void setRedisShards(RedisShards redisShards) {
+    this.redisShards = redisShards;
+  }
+
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  public void setChunkSize(int chunkSize) {
+    this.chunkSize = chunkSize;
+  }
+
+  public int getInlineSize() {
+    return inlineSize;
+  }
+
+  public void setInlineSize(int inlineSize) {
+    this.inlineSize = inlineSize;
+  }
+
   public ContainerDao getContainerDao() {
     return containerDao;
   }
@@ -58,7 +143,7 @@ public class DataObjectDaoImpl implements DataObjectDao {
 
     // create the data object meta-data files
     Container parentContainer =
-        (Container) cdmiObjectDao.getCdmiObjectByPath(parentPath.toString());
+        (Container) cdmiObjectDao.getCdmiObjectByPath(parentPath.toString(), 0, -1);
 
     if (parentContainer == null) {
       parentContainer = containerDao.createByPath(parentPath.toString(),
@@ -68,32 +153,20 @@ public class DataObjectDaoImpl implements DataObjectDao {
     DataObject dataObject = new DataObject(urlPath.getFileName().toString(), parentPath.toString(),
         parentContainer.getObjectId());
 
-    if (parentContainer.getChildren() == null) {
-      parentContainer.setChildren(new JSONArray());
-    }
-
-    JSONArray children = parentContainer.getChildren();
-    JSONArray filteredChildren = new JSONArray();
-
-    for (int i = 0; i < children.length(); i++) {
-      if (!children.get(i).equals(dataObject.getObjectName())) {
-        filteredChildren.put(children.get(i));
-      }
-    }
-
-    filteredChildren.put(dataObject.getObjectName());
-    parentContainer.setChildren(filteredChildren);
-
-    String childrenRange = CdmiObject.getChildrenRange(parentContainer.getChildren());
-    parentContainer.setChildrenrange(childrenRange);
-
     dataObject.setCompletionStatus("Complete");
     dataObject.setMetadata(dataObjectRequest.getMetadata());
+    if (dataObjectRequest.getDomainUri() != null) {
+      dataObject.setDomainUri(dataObjectRequest.getDomainUri());
+    }
     // dataObject.setCapabilitiesUri(dataObjectRequest.getCapabilitiesUri());
 
     dataObject = (DataObject) cdmiObjectDao.createCdmiObject(dataObject, urlPath.toString());
-    cdmiObjectDao.updateCdmiObject(parentContainer);
-    cdmiObjectDao.updateCdmiObject(parentContainer, parentPath.toString());
+    cdmiObjectDao.addChild(parentContainer, parentPath.toString(),
+        urlPath.getFileName().toString());
+
+    if (dataObject != null && dataObjectRequest.getValue() != null) {
+      writeContent(dataObject.getObjectId(), dataObjectRequest.getValue().getBytes());
+    }
 
     return dataObject;
   }
@@ -111,7 +184,128 @@ public class DataObjectDaoImpl implements DataObjectDao {
 
   @Override
   public DataObject updateContent(String path, byte[] content) {
-    throw new UnsupportedOperationException("DataObjectDaoImpl.updateContent()");
+    DataObject dataObject = findByPath(path);
+    if (dataObject != null) {
+      try {
+        writeContent(dataObject.getObjectId(), content);
+        incrementVersion(dataObject.getObjectId());
+      } catch (Exception ex) {
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+        return null;
+      }
+    }
+    return dataObject;
+  }
+
+  @Override
+  public DataObject updateContent(String path, long offset, byte[] content) {
+    DataObject dataObject = findByPath(path);
+    if (dataObject != null) {
+      try {
+        writeContent(dataObject.getObjectId(), offset, content);
+        incrementVersion(dataObject.getObjectId());
+      } catch (Exception ex) {
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+        return null;
+      }
+    }
+    return dataObject;
+  }
+
+  @Override
+  public DataObject appendContent(String path, byte[] content) {
+    DataObject dataObject = findByPath(path);
+    if (dataObject != null) {
+      try {
+        writeContent(dataObject.getObjectId(), -1, content);
+        incrementVersion(dataObject.getObjectId());
+      } catch (Exception ex) {
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+        return null;
+      }
+    }
+    return dataObject;
+  }
+
+  @Override
+  public long sizeByPath(String path) {
+    CdmiObject cdmiObject = cdmiObjectDao.getCdmiObjectByPath(path.trim(), 0, -1);
+    if (cdmiObject == null) {
+      return 0;
+    }
+    String objectId = cdmiObject.getObjectId();
+    byte[] length =
+        execute(objectId, connection -> connection.hGet(bytes(valueKey(objectId)), LENGTH_FIELD));
+    return length != null ? Long.parseLong(new String(length, StandardCharsets.UTF_8)) : 0;
+  }
+
+  @Override
+  public boolean deleteContentByPath(String path) {
+    CdmiObject cdmiObject = cdmiObjectDao.getCdmiObjectByPath(path.trim(), 0, -1);
+    if (cdmiObject == null) {
+      return true;
+    }
+    try {
+      deleteContent(cdmiObject.getObjectId());
+      return true;
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return false;
+  }
+
+  @Override
+  public byte[] readContent(String path, long offset, int length) {
+    DataObject dataObject = findByPath(path);
+    if (dataObject != null) {
+      try {
+        return readValue(dataObject.getObjectId(), offset, length);
+      } catch (Exception ex) {
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public DataObject moveByPath(String sourcePath, String path) {
+    // the content is stored by object id and stays where it is
+    return (DataObject) cdmiObjectDao.moveCdmiObject(sourcePath.trim(), path.trim());
+  }
+
+  @Override
+  public DataObject copyByPath(String sourcePath, String path) {
+    CdmiObject source = cdmiObjectDao.getCdmiObjectByPath(sourcePath.trim(), 0, -1);
+    if (!(source instanceof DataObject)
+        || cdmiObjectDao.getCdmiObjectByPath(path.trim(), 0, -1) != null) {
+      return null;
+    }
+    DataObject dataObjectRequest = DataObject.fromJson(new JSONObject());
+    dataObjectRequest.setMetadata(((DataObject) source).getMetadata());
+    DataObject dataObject = createByPath(path, dataObjectRequest);
+    if (dataObject != null && copyContentByPath(sourcePath, path) < 0) {
+      deleteByPath(path);
+      return null;
+    }
+    return dataObject;
+  }
+
+  @Override
+  public long copyContentByPath(String sourcePath, String path) {
+    CdmiObject source = cdmiObjectDao.getCdmiObjectByPath(sourcePath.trim(), 0, -1);
+    CdmiObject target = cdmiObjectDao.getCdmiObjectByPath(path.trim(), 0, -1);
+    if (source == null || target == null) {
+      return -1;
+    }
+    try {
+      deleteContent(target.getObjectId());
+      long length = copyContent(source.getObjectId(), target.getObjectId());
+      incrementVersion(target.getObjectId());
+      return length;
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return -1;
   }
 
   @Override
@@ -123,7 +317,8 @@ public class DataObjectDaoImpl implements DataObjectDao {
       dataObject = (DataObject) cdmiObjectDao.getCdmiObjectByPath(path.trim());
 
       if (dataObject != null) {
-        cdmiObjectDao.deleteCdmiObject(dataObject.getObjectId());
+        deleteContent(dataObject.getObjectId());
+        // also removes the data object from its parent's children
         cdmiObjectDao.deleteCdmiObjectByPath(path.trim());
       }
     } catch (Exception e) {
@@ -132,6 +327,23 @@ public class DataObjectDaoImpl implements DataObjectDao {
     return dataObject;
   }
 
+  @Override
+  public DataObject deleteByPathIfVersion(String path, String version) {
+    try {
+      log.debug("delete data object {} at version {}", path.trim(), version);
+
+      // the content is only removed if the metadata was still at the version
+      CdmiObject deleted = cdmiObjectDao.deleteCdmiObjectByPathIfVersion(path.trim(), version);
+      if (deleted instanceof DataObject) {
+        deleteContent(deleted.getObjectId());
+        return (DataObject) deleted;
+      }
+    } catch (Exception e) {
+      log.error("ERROR: {}", e.getMessage());
+    }
+    return null;
+  }
+
   @Override
   public DataObject findByObjectId(String objectId) {
     DataObject dataObject = (DataObject) cdmiObjectDao.getCdmiObject(objectId);
@@ -144,4 +356,256 @@ public class DataObjectDaoImpl implements DataObjectDao {
     return dataObject;
   }
 
+  public static String valueKey(String objectId) {
+    return VALUE_PREFIX + "{" + objectId + "}";
+  }
+
+  public static String chunkKey(String objectId, long index) {
+    return CHUNK_PREFIX + "{" + objectId + "}:" + index;
+  }
+
+  private static byte[] bytes(String string) {
+    return string.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Executes the callback on a raw connection to the object's node, as a string connection
+   * wouldn't keep binary content intact.
+   */
+  private <T> T execute(String objectId, RedisCallback<T> callback) {
+    StringRedisTemplate template = redisShards.forKey(valueKey(objectId));
+    RedisConnection connection = template.getConnectionFactory().getConnection();
+    try {
+      return callback.doInRedis(connection);
+    } finally {
+      connection.close();
+    }
+  }
+
+  private void incrementVersion(String objectId) {
+    String key = CdmiObjectDaoImpl.versionKey(objectId);
+    redisShards.forKey(key).opsForValue().increment(key, 1);
+  }
+
+  private ContentInfo getContentInfo(String objectId) {
+    return execute(objectId, connection -> getContentInfo(connection, objectId));
+  }
+
+  private ContentInfo getContentInfo(RedisConnection connection, String objectId) {
+    List<byte[]> fields =
+        connection.hMGet(bytes(valueKey(objectId)), LENGTH_FIELD, CHUNK_SIZE_FIELD, DATA_FIELD);
+    if (fields == null || fields.get(0) == null) {
+      return new ContentInfo(0, 0, new byte[0]);
+    }
+    return new ContentInfo(Long.parseLong(new String(fields.get(0), StandardCharsets.UTF_8)),
+        fields.get(1) != null ? Integer.parseInt(new String(fields.get(1), StandardCharsets.UTF_8))
+            : 0,
+        fields.get(2));
+  }
+
+  private void deleteChunks(RedisConnection connection, String objectId, long from, long to) {
+    for (long index = from; index < to; index++) {
+      connection.del(bytes(chunkKey(objectId, index)));
+    }
+  }
+
+  /**
+   * A change of the content, queued into a transaction.
+   */
+  private interface ContentUpdate {
+    void queue(RedisConnection connection, ContentInfo previous);
+  }
+
+  /**
+   * Runs a change of the content as an optimistic transaction. The content's hash is watched
+   * while its layout is read, every write changes the hash, so the change is retried if another
+   * write got in between.
+   */
+  private void update(String objectId, ContentUpdate update) {
+    byte[] valueKey = bytes(valueKey(objectId));
+    execute(objectId, connection -> {
+      List<Object> results;
+      do {
+        connection.watch(valueKey);
+        ContentInfo previous = getContentInfo(connection, objectId);
+        connection.multi();
+        update.queue(connection, previous);
+        results = connection.exec();
+      } while (results == null);
+      return results;
+    });
+  }
+
+  /**
+   * Replaces the whole content.
+   */
+  private void writeContent(String objectId, byte[] content) {
+    update(objectId, (connection, previous) -> replaceContent(connection, objectId, content,
+        previous));
+    log.debug("set {} {} bytes", valueKey(objectId), content.length);
+  }
+
+  /**
+   * Writes a range of the content, inline content is converted to chunks when it outgrows the
+   * inline size.
+   *
+   * @param offset the offset of the first written byte, negative to append
+   */
+  private void writeContent(String objectId, long offset, byte[] content) {
+    update(objectId, (connection, previous) -> {
+      long start = offset < 0 ? previous.length : offset;
+      long length = Math.max(previous.length, start + content.length);
+
+      if (previous.chunkSize == 0 && length <= inlineSize) {
+        // small enough to rewrite the inline content
+        byte[] data = Arrays.copyOf(previous.data != null ? previous.data : new byte[0],
+            (int) length);
+        System.arraycopy(content, 0, data, (int) start, content.length);
+        replaceContent(connection, objectId, data, previous);
+        return;
+      }
+
+      int size = previous.chunkSize > 0 ? previous.chunkSize : Math.max(1, chunkSize);
+      byte[] valueKey = bytes(valueKey(objectId));
+      if (previous.chunkSize == 0 && previous.data != null) {
+        for (int from = 0; from < previous.data.length; from += size) {
+          connection.set(bytes(chunkKey(objectId, from / size)), Arrays.copyOfRange(previous.data,
+              from, Math.min(from + size, previous.data.length)));
+        }
+        connection.hDel(valueKey, DATA_FIELD);
+      }
+      // only the chunks overlapping the range are touched
+      int written = 0;
+      while (written < content.length) {
+        long position = start + written;
+        long index = position / size;
+        int chunkOffset = (int) (position % size);
+        int count = Math.min(content.length - written, size - chunkOffset);
+        connection.setRange(bytes(chunkKey(objectId, index)),
+            Arrays.copyOfRange(content, written, written + count), chunkOffset);
+        written += count;
+      }
+      Map<byte[], byte[]> fields = new HashMap<>();
+      fields.put(LENGTH_FIELD, bytes(String.valueOf(length)));
+      fields.put(CHUNK_SIZE_FIELD, bytes(String.valueOf(size)));
+      connection.hMSet(valueKey, fields);
+    });
+    log.debug("set {} range {} bytes at {}", valueKey(objectId), content.length, offset);
+  }
+
+  private void replaceContent(RedisConnection connection, String objectId, byte[] content,
+      ContentInfo previous) {
+    byte[] valueKey = bytes(valueKey(objectId));
+    int size = Math.max(1, chunkSize);
+    connection.del(valueKey);
+    Map<byte[], byte[]> fields = new HashMap<>();
+    fields.put(LENGTH_FIELD, bytes(String.valueOf(content.length)));
+    long chunks = 0;
+    if (content.length <= inlineSize) {
+      fields.put(DATA_FIELD, content);
+    } else {
+      fields.put(CHUNK_SIZE_FIELD, bytes(String.valueOf(size)));
+      for (int from = 0; from < content.length; from += size) {
+        connection.set(bytes(chunkKey(objectId, chunks++)),
+            Arrays.copyOfRange(content, from, Math.min(from + size, content.length)));
+      }
+    }
+    deleteChunks(connection, objectId, chunks, previous.chunkSize > 0 ? previous.chunks() : 0);
+    connection.hMSet(valueKey, fields);
+  }
+
+  /**
+   * Reads a range of the content, the chunks overlapping the range are read in one call.
+   */
+  private byte[] readValue(String objectId, long offset, int length) {
+    ContentInfo info = getContentInfo(objectId);
+    long start = Math.max(0, offset);
+    long end = length < 0 ? info.length : Math.min(info.length, start + length);
+    if (start >= end) {
+      return new byte[0];
+    }
+    byte[] content = new byte[(int) Math.min(end - start, Integer.MAX_VALUE)];
+    end = start + content.length;
+    if (info.chunkSize == 0) {
+      if (info.data != null) {
+        System.arraycopy(info.data, (int) start, content, 0,
+            (int) Math.min(content.length, Math.max(0, info.data.length - start)));
+      }
+      return content;
+    }
+
+    long firstChunk = start / info.chunkSize;
+    long lastChunk = (end - 1) / info.chunkSize;
+    List<byte[]> keysAndArgs = new ArrayList<>();
+    List<byte[]> ranges = new ArrayList<>();
+    for (long index = firstChunk; index <= lastChunk; index++) {
+      long chunkStart = index * info.chunkSize;
+      long chunkEnd = Math.min(end, chunkStart + info.chunkSize);
+      keysAndArgs.add(bytes(chunkKey(objectId, index)));
+      ranges.add(bytes(String.valueOf(Math.max(start, chunkStart) - chunkStart)));
+      ranges.add(bytes(String.valueOf(chunkEnd - chunkStart - 1)));
+    }
+    keysAndArgs.addAll(ranges);
+    // Jedis pipelines decode binary GETRANGE replies as numbers, so the chunks are read by a
+    // single script instead, which also keeps the connection free of unread replies
+    List<byte[]> chunks = execute(objectId, connection -> connection.eval(READ_CHUNKS,
+        ReturnType.MULTI, (int) (lastChunk - firstChunk + 1),
+        keysAndArgs.toArray(new byte[keysAndArgs.size()][])));
+    for (long index = firstChunk; index <= lastChunk; index++) {
+      // missing chunks of sparse content read as zeros
+      byte[] chunk = chunks.get((int) (index - firstChunk));
+      if (chunk != null && chunk.length > 0) {
+        long position = Math.max(start, index * info.chunkSize);
+        System.arraycopy(chunk, 0, content, (int) (position - start),
+            Math.min(chunk.length, content.length - (int) (position - start)));
+      }
+    }
+    return content;
+  }
+
+  /**
+   * Copies the content's keys with DUMP and RESTORE, the content is neither decoded nor split
+   * again, and the copy may live on another node.
+   */
+  private long copyContent(String sourceId, String objectId) {
+    ContentInfo info = getContentInfo(sourceId);
+    List<String> sourceKeys = new ArrayList<>();
+    List<String> keys = new ArrayList<>();
+    sourceKeys.add(valueKey(sourceId));
+    keys.add(valueKey(objectId));
+    for (long index = 0; info.chunkSize > 0 && index < info.chunks(); index++) {
+      sourceKeys.add(chunkKey(sourceId, index));
+      keys.add(chunkKey(objectId, index));
+    }
+
+    List<Object> dumps = execute(sourceId, connection -> {
+      connection.openPipeline();
+      for (String key : sourceKeys) {
+        connection.dump(bytes(key));
+      }
+      return connection.closePipeline();
+    });
+    execute(objectId, connection -> {
+      connection.openPipeline();
+      for (int i = 0; i < keys.size(); i++) {
+        // missing chunks of sparse content stay missing
+        if (dumps.get(i) instanceof byte[]) {
+          connection.restore(bytes(keys.get(i)), 0, (byte[]) dumps.get(i));
+        }
+      }
+      return connection.closePipeline();
+    });
+    log.debug("copy {} to {}, {} keys", valueKey(sourceId), valueKey(objectId), keys.size());
+    return info.length;
+  }
+
+  private void deleteContent(String objectId) {
+    ContentInfo info = getContentInfo(objectId);
+    execute(objectId, connection -> {
+      connection.openPipeline();
+      deleteChunks(connection, objectId, 0, info.chunks());
+      connection.del(bytes(valueKey(objectId)));
+      return connection.closePipeline();
+    });
+  }
 }
@@ -1,39 +1,132 @@
 package edu.kit.scc.cdmiserver.dao.redis;
 
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.dao.CdmiObjectDao;
 import org.snia.cdmiserver.dao.DomainDao;
+import org.snia.cdmiserver.exception.ConflictException;
+import org.snia.cdmiserver.exception.NotFoundException;
 import org.snia.cdmiserver.model.CdmiObject;
 import org.snia.cdmiserver.model.Domain;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * {@link DomainDao} backed by Redis. The domains are stored like any other CDMI object, their
+ * children, the subdomains, are kept in the domain's hash.
+ */
 public class DomainDaoImpl implements DomainDao {
 
+  private static final Logger log = LoggerFactory.getLogger(DomainDaoImpl.class);
+
+  private CdmiObjectDao cdmiObjectDao;
+
+  public CdmiObjectDao getCdmiObjectDao() {
+    return cdmiObjectDao;
+  }
+
+  public void setCdmiObjectDao(CdmiObjectDao cdmiObjectDao) {
+    this.cdmiObjectDao = cdmiObjectDao;
+  }
+
   @Override
   public CdmiObject createByPath(String path, Domain domainRequest) {
-    // TODO Auto-generated method stub
-    return null;
+    log.debug("create domain {} {}", path.trim(), domainRequest);
+    Path domainPath = Paths.get(path.trim()).normalize();
+    if (cdmiObjectDao.getCdmiObjectByPath(domainPath.toString()) != null) {
+      throw new ConflictException("Object " + domainPath + " already exists");
+    }
+
+    Domain parent = null;
+    String parentId = "";
+    if (domainPath.toString().equals(ROOT_DOMAIN)) {
+      // the root domain hangs below the root container
+      CdmiObject rootContainer = cdmiObjectDao.getCdmiObjectByPath("/");
+      if (rootContainer != null) {
+        parentId = rootContainer.getObjectId();
+      }
+    } else if (domainPath.startsWith(ROOT_DOMAIN)) {
+      parent = (Domain) findByPath(domainPath.getParent().toString());
+      if (parent == null) {
+        throw new IllegalArgumentException("Parent domain " + domainPath.getParent()
+            + " doesn't exist");
+      }
+      parentId = parent.getObjectId();
+    } else {
+      throw new IllegalArgumentException("Domain " + domainPath + " isn't below " + ROOT_DOMAIN);
+    }
+
+    Domain domain = new Domain(domainPath.getFileName().toString(),
+        domainPath.getParent().toString(), parentId);
+    if (domainRequest.getMetadata() != null) {
+      domain.setMetadata(domainRequest.getMetadata());
+    }
+    domain = (Domain) cdmiObjectDao.createCdmiObject(domain, domainPath.toString());
+    if (domain != null && parent != null) {
+      JSONArray children = parent.getChildren() != null ? parent.getChildren() : new JSONArray();
+      children.put(domain.getObjectName());
+      updateChildren(parent, children);
+    }
+    return domain;
   }
 
   @Override
   public void deleteByPath(String path) {
-    // TODO Auto-generated method stub
-    
+    log.debug("delete domain {}", path.trim());
+    Path domainPath = Paths.get(path.trim()).normalize();
+    Domain domain = (Domain) findByPath(domainPath.toString());
+    if (domain == null) {
+      throw new NotFoundException("Domain " + domainPath + " not found");
+    }
+    if (domainPath.toString().equals(ROOT_DOMAIN)
+        || (domain.getChildren() != null && domain.getChildren().length() > 0)) {
+      throw new ConflictException("Domain " + domainPath + " has subdomains");
+    }
+
+    cdmiObjectDao.deleteCdmiObjectByPath(domainPath.toString());
+
+    Domain parent = (Domain) findByPath(domainPath.getParent().toString());
+    if (parent != null && parent.getChildren() != null) {
+      JSONArray children = new JSONArray();
+      for (int i = 0; i < parent.getChildren().length(); i++) {
+        if (!parent.getChildren().get(i).equals(domain.getObjectName())) {
+          children.put(parent.getChildren().get(i));
+        }
+      }
+      updateChildren(parent, children);
+    }
   }
 
   @Override
   public CdmiObject findByObjectId(String objectId) {
-    // TODO Auto-generated method stub
-    return null;
+    CdmiObject cdmiObject = cdmiObjectDao.getCdmiObject(objectId);
+    return cdmiObject instanceof Domain ? cdmiObject : null;
   }
 
   @Override
   public CdmiObject findByPath(String path) {
-    // TODO Auto-generated method stub
-    return null;
+    CdmiObject cdmiObject = cdmiObjectDao.getCdmiObjectByPath(path.trim());
+    return cdmiObject instanceof Domain ? cdmiObject : null;
   }
 
   @Override
   public CdmiObject updateByPath(String path, Domain domain, String[] requestedFields) {
-    // TODO Auto-generated method stub
-    return null;
+    Domain existingDomain = (Domain) findByPath(path);
+    if (existingDomain == null) {
+      throw new NotFoundException("Domain " + path.trim() + " not found");
+    }
+    // the metadata is the only field a client can change
+    JSONObject metadata = domain.getMetadata() != null ? domain.getMetadata() : new JSONObject();
+    existingDomain.setMetadata(metadata);
+    return cdmiObjectDao.updateCdmiObjectFields(existingDomain, "metadata");
   }
 
+  private void updateChildren(Domain domain, JSONArray children) {
+    domain.setChildren(children);
+    domain.setChildrenrange(CdmiObject.getChildrenRange(children));
+    cdmiObjectDao.updateCdmiObjectFields(domain, "children", "childrenrange");
+  }
 }
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.compression;
+
+import edu.kit.scc.metrics.MetricsSource;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses CDMI JSON responses with the content coding the client accepts.
+ *
+ * <p>
+ * Only {@code application/cdmi-*+json} bodies of at least the minimum size are compressed.
+ * Compressed bodies with an entity tag are cached by tag and content coding, as the tag changes
+ * with the object's version, unchanged objects are served without compressing them again. The
+ * cache is bounded by the total size of the cached bodies, the least recently used bodies are
+ * evicted first.
+ * </p>
+ */
+@Component
+public class ResponseCompressor implements MetricsSource {
+
+  private static final Logger log = LoggerFactory.getLogger(ResponseCompressor.class);
+
+  public static final String GZIP = "gzip";
+  public static final String DEFLATE = "deflate";
+
+  @Value("${cdmi.compression.enabled:true}")
+  private boolean enabled;
+
+  @Value("${cdmi.compression.minSize:2048}")
+  private int minSize;
+
+  @Value("${cdmi.compression.level:6}")
+  private int level;
+
+  @Value("${cdmi.compression.cache.maxBytes:67108864}")
+  private long maxCacheBytes;
+
+  private final LinkedHashMap<String, Encoded> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+  private long cacheBytes;
+
+  private final LongAdder compressed = new LongAdder();
+  private final LongAdder uncompressedBytes = new LongAdder();
+  private final LongAdder compressedBytes = new LongAdder();
+  private final LongAdder compressionNanos = new LongAdder();
+  private final LongAdder cacheHits = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * A compressed response body.
+   */
+  public static final class Encoded {
+
+    private final String encoding;
+    private final MediaType contentType;
+    private final byte[] body;
+    private final int uncompressedLength;
+
+    Encoded(String encoding, MediaType contentType, byte[] body, int uncompressedLength) {
+      this.encoding = encoding;
+      this.contentType = contentType;
+      this.body = body;
+      this.uncompressedLength = uncompressedLength;
+    }
+
+    public String getEncoding() {
+      return encoding;
+    }
+
+    public MediaType getContentType() {
+      return contentType;
+    }
+
+    /**
+     * Gets the compressed body, the array must not be modified.
+     *
+     * @return the compressed body
+     */
+    public byte[] getBody() {
+      return body;
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public int getMinSize() {
+    return minSize;
+  }
+
+  public void setMinSize(int minSize) {
+    this.minSize = minSize;
+  }
+
+  public int getLevel() {
+    return level;
+  }
+
+  public void setLevel(int level) {
+    this.level = level;
+  }
+
+  public long getMaxCacheBytes() {
+    return maxCacheBytes;
+  }
+
+  public void setMaxCacheBytes(long maxCacheBytes) {
+    this.maxCacheBytes = maxCacheBytes;
+  }
+
+  /**
+   * Checks whether responses of the given content type are compressed at all, i.e. whether they
+   * vary by the Accept-Encoding request header.
+   *
+   * @param contentType the response's content type
+   * @return {@code true} for {@code application/cdmi-*+json}
+   */
+  public boolean isCompressible(MediaType contentType) {
+    return enabled && contentType != null && contentType.getType().equals("application")
+        && contentType.getSubtype().startsWith("cdmi-")
+        && contentType.getSubtype().endsWith("+json");
+  }
+
+  /**
+   * Selects the content coding from an Accept-Encoding request header, gzip is preferred over
+   * deflate if both are accepted with the same quality.
+   *
+   * @param acceptEncoding the Accept-Encoding header, may be {@code null}
+   * @return {@link #GZIP}, {@link #DEFLATE} or {@code null} if the response isn't compressed
+   */
+  public String negotiate(String acceptEncoding) {
+    if (!enabled || acceptEncoding == null) {
+      return null;
+    }
+    String selected = null;
+    double selectedQuality = 0;
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parameters = coding.trim().split(";");
+      String name = parameters[0].trim().toLowerCase();
+      double quality = 1;
+      for (int i = 1; i < parameters.length; i++) {
+        String parameter = parameters[i].trim();
+        if (parameter.startsWith("q=")) {
+          try {
+            quality = Double.parseDouble(parameter.substring(2));
+          } catch (NumberFormatException ex) {
+            quality = 0;
+          }
+        }
+      }
+      if (name.equals("*")) {
+        name = GZIP;
+      }
+      if ((name.equals(GZIP) || name.equals(DEFLATE)) && (quality > selectedQuality
+          || quality == selectedQuality && quality > 0 && name.equals(GZIP))) {
+        selected = name;
+        selectedQuality = quality;
+      }
+    }
+    return selected;
+  }
+
+  /**
+   * Gets a cached compressed body.
+   *
+   * @param entityTag the entity tag of the uncompressed response
+   * @param encoding the negotiated content coding, may be {@code null}
+   * @return the {@link Encoded} body or {@code null} if it isn't cached
+   */
+  public Encoded getCached(String entityTag, String encoding) {
+    if (entityTag == null || encoding == null) {
+      return null;
+    }
+    Encoded encoded;
+    synchronized (cache) {
+      encoded = cache.get(encodedEntityTag(entityTag, encoding));
+    }
+    if (encoded != null) {
+      cacheHits.increment();
+      uncompressedBytes.add(encoded.uncompressedLength);
+      compressedBytes.add(encoded.body.length);
+    }
+    return encoded;
+  }
+
+  /**
+   * Compresses a response body.
+   *
+   * @param body the uncompressed body
+   * @param contentType the response's content type
+   * @param encoding the negotiated content coding, may be {@code null}
+   * @param entityTag the entity tag of the uncompressed response, {@code null} if the compressed
+   *        body must not be cached
+   * @return the {@link Encoded} body or {@code null} if the body isn't compressed
+   */
+  public Encoded encode(byte[] body, MediaType contentType, String encoding, String entityTag) {
+    if (encoding == null || body.length < minSize || !isCompressible(contentType)) {
+      return null;
+    }
+    long start = System.nanoTime();
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream(body.length / 4 + 64);
+    try (OutputStream out = open(buffer, encoding)) {
+      out.write(body);
+    } catch (IOException ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+      return null;
+    }
+    compressionNanos.add(System.nanoTime() - start);
+    compressed.increment();
+    uncompressedBytes.add(body.length);
+    Encoded encoded = new Encoded(encoding, contentType, buffer.toByteArray(), body.length);
+    compressedBytes.add(encoded.body.length);
+
+    if (entityTag != null && encoded.body.length <= maxCacheBytes) {
+      put(encodedEntityTag(entityTag, encoding), encoded);
+    }
+    return encoded;
+  }
+
+  private OutputStream open(OutputStream out, String encoding) throws IOException {
+    if (encoding.equals(GZIP)) {
+      return new GZIPOutputStream(out) {
+        {
+          def.setLevel(level);
+        }
+      };
+    }
+    return new DeflaterOutputStream(out, new Deflater(level)) {
+      @Override
+      public void close() throws IOException {
+        super.close();
+        def.end();
+      }
+    };
+  }
+
+  private void put(String key, Encoded encoded) {
+    synchronized (cache) {
+      Encoded previous = cache.put(key, encoded);
+      cacheBytes += encoded.body.length - (previous != null ? previous.body.length : 0);
+      Iterator<Encoded> iterator = cache.values().iterator();
+      while (cacheBytes > maxCacheBytes && iterator.hasNext()) {
+        cacheBytes -= iterator.next().body.length;
+        iterator.remove();
+        evictions.increment();
+      }
+    }
+  }
+
+  /**
+   * Gets the entity tag of a compressed representation, which differs from the uncompressed
+   * one's as required for strong entity tags.
+   *
+   * @param entityTag the quoted entity tag of the uncompressed response
+   * @param encoding the content coding
+   * @return the quoted entity tag of the compressed response
+   */
+  public static String encodedEntityTag(String entityTag, String encoding) {
+    return entityTag.substring(0, entityTag.length() - 1) + "-" + encoding + "\"";
+  }
+
+  /**
+   * Gets the entity tag of the uncompressed representation, so that request headers with the tag
+   * of a compressed response can be compared to it.
+   *
+   * @param entityTag a quoted entity tag from a request header
+   * @return the entity tag without content coding
+   */
+  public static String identityEntityTag(String entityTag) {
+    for (String encoding : new String[] {GZIP, DEFLATE}) {
+      String suffix = "-" + encoding + "\"";
+      if (entityTag.endsWith(suffix)) {
+        return entityTag.substring(0, entityTag.length() - suffix.length()) + "\"";
+      }
+    }
+    return entityTag;
+  }
+
+  @Override
+  public String getMetricsName() {
+    return "responseCompressor";
+  }
+
+  @Override
+  public JSONObject getMetrics() {
+    JSONObject metrics = new JSONObject();
+    metrics.put("compressed", compressed.sum());
+    metrics.put("uncompressedBytes", uncompressedBytes.sum());
+    metrics.put("compressedBytes", compressedBytes.sum());
+    metrics.put("compressionMillis", compressionNanos.sum() / 1000000);
+    metrics.put("cacheHits", cacheHits.sum());
+    metrics.put("evictions", evictions.sum());
+    synchronized (cache) {
+      metrics.put("cacheSize", cache.size());
+      metrics.put("cacheBytes", cacheBytes);
+    }
+    return metrics;
+  }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.domain;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.dao.DomainDao;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.temporal.IsoFields;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The usage summaries of the CDMI domains, maintained incrementally as data objects are created,
+ * written and deleted, so reading them never walks the object tree.
+ *
+ * <p>
+ * Each domain has the totals {@link #OBJECTS} and {@link #BYTES} and, per daily, weekly, monthly
+ * and yearly period, the number of {@link #PUTS}, {@link #DELETES} and the bytes written
+ * ({@link #WRITES}). A change is counted for the object's domain and all domains above it. The
+ * changes are collected in {@link LongAdder}s, which spread concurrent updates over striped
+ * cells, and are added to the {@link DomainUsageStore} at every checkpoint. A value is the sum of
+ * the checkpointed value and the changes since.
+ * </p>
+ */
+public class DomainUsage {
+
+  private static final Logger log = LoggerFactory.getLogger(DomainUsage.class);
+
+  public static final String OBJECTS = "objects";
+  public static final String BYTES = "bytes";
+  public static final String PUTS = "puts";
+  public static final String DELETES = "deletes";
+  public static final String WRITES = "writes";
+
+  public static final List<String> PERIODS = Arrays.asList("daily", "weekly", "monthly", "yearly");
+
+  private static final char SEPARATOR = '|';
+
+  private final DomainUsageStore store;
+  private final long checkpointInterval;
+  private final Clock clock;
+
+  private final NavigableMap<String, Long> checkpointed = new ConcurrentSkipListMap<>();
+  private final NavigableMap<String, LongAdder> pending = new ConcurrentSkipListMap<>();
+
+  private ScheduledExecutorService scheduler;
+
+  /**
+   * Creates new domain usage summaries, call {@link #open()} before using them.
+   *
+   * @param store the {@link DomainUsageStore} the counters are checkpointed to
+   * @param checkpointInterval the interval in seconds the counters are checkpointed at
+   */
+  public DomainUsage(DomainUsageStore store, long checkpointInterval) {
+    this(store, checkpointInterval, Clock.systemUTC());
+  }
+
+  DomainUsage(DomainUsageStore store, long checkpointInterval, Clock clock) {
+    this.store = store;
+    this.checkpointInterval = checkpointInterval;
+    this.clock = clock;
+  }
+
+  /**
+   * Reads the checkpointed counters and starts checkpointing periodically.
+   */
+  public void open() {
+    try {
+      checkpointed.putAll(store.load());
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+
+    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "domain-usage-checkpoint");
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.scheduleWithFixedDelay(this::checkpoint, checkpointInterval, checkpointInterval,
+        TimeUnit.SECONDS);
+  }
+
+  /**
+   * Stops the periodic checkpoints and writes the final one.
+   */
+  public void close() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+      checkpoint();
+    }
+  }
+
+  /**
+   * Adds the changes since the last checkpoint to the store and reads back the stored values,
+   * which include the changes of other CDMI server instances sharing the store.
+   */
+  public synchronized void checkpoint() {
+    Map<String, Long> deltas = new HashMap<>();
+    for (Map.Entry<String, LongAdder> entry : pending.entrySet()) {
+      long delta = entry.getValue().sumThenReset();
+      if (delta != 0) {
+        deltas.put(entry.getKey(), delta);
+        checkpointed.merge(entry.getKey(), delta, Long::sum);
+      }
+    }
+    if (!deltas.isEmpty()) {
+      try {
+        store.add(deltas);
+        log.debug("Checkpointed {} domain usage counters", deltas.size());
+      } catch (Exception ex) {
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+        // the changes are retried at the next checkpoint
+        for (Map.Entry<String, Long> delta : deltas.entrySet()) {
+          checkpointed.merge(delta.getKey(), -delta.getValue(), Long::sum);
+          pending.computeIfAbsent(delta.getKey(), key -> new LongAdder()).add(delta.getValue());
+        }
+        return;
+      }
+    }
+    try {
+      checkpointed.putAll(store.load());
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+  }
+
+  /**
+   * Counts a new data object.
+   *
+   * @param domainUri the data object's domain URI
+   * @param bytes the size of its content
+   */
+  public void created(String domainUri, long bytes) {
+    record(domainUri, 1, bytes, 1, 0, bytes);
+  }
+
+  /**
+   * Counts a write to a data object's content.
+   *
+   * @param domainUri the data object's domain URI
+   * @param sizeChange the change of the content's size
+   * @param written the number of written bytes
+   */
+  public void written(String domainUri, long sizeChange, long written) {
+    record(domainUri, 0, sizeChange, 1, 0, written);
+  }
+
+  /**
+   * Counts a deleted data object.
+   *
+   * @param domainUri the data object's domain URI
+   * @param bytes the size of its content
+   */
+  public void deleted(String domainUri, long bytes) {
+    record(domainUri, -1, -bytes, 0, 1, 0);
+  }
+
+  /**
+   * Resets the counters of a deleted domain, so that a domain created again at the same path
+   * starts from zero. The counters of the domains above are kept.
+   *
+   * @param domain the domain's path
+   */
+  public synchronized void clear(String domain) {
+    String prefix = key(domain(domain), "");
+    Set<String> keys =
+        new HashSet<>(checkpointed.subMap(prefix, prefix + Character.MAX_VALUE).keySet());
+    keys.addAll(pending.subMap(prefix, prefix + Character.MAX_VALUE).keySet());
+    // the store only adds changes, the values are reset by subtracting them
+    for (String key : keys) {
+      add(key, -value(key));
+    }
+  }
+
+  /**
+   * Gets a domain's total.
+   *
+   * @param domain the domain's path
+   * @param counter {@link #OBJECTS} or {@link #BYTES}
+   * @return the current value
+   */
+  public long get(String domain, String counter) {
+    return value(key(domain(domain), counter));
+  }
+
+  /**
+   * Gets a domain's counter for a period.
+   *
+   * @param domain the domain's path
+   * @param counter {@link #PUTS}, {@link #DELETES} or {@link #WRITES}
+   * @param period one of the {@link #PERIODS}
+   * @param name the period's name, e.g. 2016-12-31, 2016-W52, 2016-12 or 2016
+   * @return the value, {@code 0} for periods without changes
+   */
+  public long get(String domain, String counter, String period, String name) {
+    return value(key(domain(domain), counter) + SEPARATOR + period + "/" + name);
+  }
+
+  /**
+   * Gets the names of the periods a domain has changed in.
+   *
+   * @param domain the domain's path
+   * @param period one of the {@link #PERIODS}
+   * @return the sorted names, the oldest first, without periods whose counters are all zero
+   */
+  public SortedSet<String> getPeriods(String domain, String period) {
+    SortedSet<String> names = new TreeSet<>();
+    for (String counter : Arrays.asList(PUTS, DELETES, WRITES)) {
+      String prefix = key(domain(domain), counter) + SEPARATOR + period + "/";
+      Set<String> keys =
+          new HashSet<>(checkpointed.subMap(prefix, prefix + Character.MAX_VALUE).keySet());
+      keys.addAll(pending.subMap(prefix, prefix + Character.MAX_VALUE).keySet());
+      for (String key : keys) {
+        // the counters of a cleared domain are kept at zero
+        if (value(key) != 0) {
+          names.add(key.substring(prefix.length()));
+        }
+      }
+    }
+    return names;
+  }
+
+  /**
+   * Normalizes a domain URI to the domain's path, data objects of other or no domains count for
+   * the root domain.
+   *
+   * @param domainUri the domain URI
+   * @return the domain's path
+   */
+  public static String domain(String domainUri) {
+    if (domainUri == null || domainUri.isEmpty()) {
+      return DomainDao.ROOT_DOMAIN;
+    }
+    Path path = Paths.get(domainUri).normalize();
+    return path.startsWith(DomainDao.ROOT_DOMAIN) ? path.toString() : DomainDao.ROOT_DOMAIN;
+  }
+
+  private void record(String domainUri, long objects, long bytes, long puts, long deletes,
+      long writes) {
+    LocalDate today = LocalDate.now(clock);
+    String[] periods = {"daily/" + today,
+        String.format("weekly/%d-W%02d", today.get(IsoFields.WEEK_BASED_YEAR),
+            today.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR)),
+        String.format("monthly/%d-%02d", today.getYear(), today.getMonthValue()),
+        "yearly/" + today.getYear()};
+    for (Path domain = Paths.get(domain(domainUri)); domain.startsWith(DomainDao.ROOT_DOMAIN);
+        domain = domain.getParent()) {
+      String prefix = domain.toString() + SEPARATOR;
+      add(prefix + OBJECTS, objects);
+      add(prefix + BYTES, bytes);
+      for (String period : periods) {
+        add(prefix + PUTS + SEPARATOR + period, puts);
+        add(prefix + DELETES + SEPARATOR + period, deletes);
+        add(prefix + WRITES + SEPARATOR + period, writes);
+      }
+    }
+  }
+
+  private void add(String key, long delta) {
+    if (delta != 0) {
+      pending.computeIfAbsent(key, name -> new LongAdder()).add(delta);
+    }
+  }
+
+  private long value(String key) {
+    LongAdder changes = pending.get(key);
+    return checkpointed.getOrDefault(key, 0L) + (changes != null ? changes.sum() : 0);
+  }
+
+  private static String key(String domain, String counter) {
+    return domain + SEPARATOR + counter;
+  }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.domain;
+
+import org.snia.cdmiserver.dao.DataObjectDao;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Wraps the profile's {@link DataObjectDao} into a {@link DomainUsageDataObjectDao}, so the REST
+ * API and the recursive copies and deletes are counted alike.
+ */
+@Component
+public class DomainUsageBeanPostProcessor implements BeanPostProcessor {
+
+  @Autowired
+  private DomainUsage domainUsage;
+
+  @Override
+  public Object postProcessBeforeInitialization(Object bean, String beanName)
+      throws BeansException {
+    return bean;
+  }
+
+  @Override
+  public Object postProcessAfterInitialization(Object bean, String beanName)
+      throws BeansException {
+    if (bean instanceof DataObjectDao && !(bean instanceof DomainUsageDataObjectDao)) {
+      return new DomainUsageDataObjectDao((DataObjectDao) bean, domainUsage);
+    }
+    return bean;
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.domain;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.dao.DataObjectDao;
+import org.snia.cdmiserver.model.DataObject;
+
+/**
+ * {@link DataObjectDao} decorator which counts every created, written and deleted data object in
+ * the {@link DomainUsage} of its domain. The size changes are taken from the content's size
+ * before and after the write, which the back-ends get without reading the content. If a size
+ * can't be determined the operation is counted without a change of the bytes.
+ */
+public class DomainUsageDataObjectDao implements DataObjectDao {
+
+  private static final Logger log = LoggerFactory.getLogger(DomainUsageDataObjectDao.class);
+
+  private static final long UNKNOWN = -1;
+
+  private final DataObjectDao delegate;
+  private final DomainUsage domainUsage;
+
+  public DomainUsageDataObjectDao(DataObjectDao delegate, DomainUsage domainUsage) {
+    this.delegate = delegate;
+    this.domainUsage = domainUsage;
+  }
+
+  public DataObjectDao getDelegate() {
+    return delegate;
+  }
+
+  @Override
+  public DataObject createByPath(String path, DataObject dataObj) {
+    return created(delegate.createByPath(path, dataObj), path);
+  }
+
+  @Override
+  public DataObject createNonCdmiByPath(String path, String contentType, DataObject dataObj) {
+    return created(delegate.createNonCdmiByPath(path, contentType, dataObj), path);
+  }
+
+  @Override
+  public DataObject createById(String objectId, DataObject dataObj) {
+    DataObject dataObject = delegate.createById(objectId, dataObj);
+    if (dataObject != null) {
+      domainUsage.created(dataObject.getDomainUri(), 0);
+    }
+    return dataObject;
+  }
+
+  @Override
+  public DataObject updateContent(String path, byte[] content) {
+    long size = size(path);
+    return written(delegate.updateContent(path, content), path, size, content.length);
+  }
+
+  @Override
+  public DataObject updateContent(String path, long offset, byte[] content) {
+    long size = size(path);
+    return written(delegate.updateContent(path, offset, content), path, size, content.length);
+  }
+
+  @Override
+  public DataObject appendContent(String path, byte[] content) {
+    long size = size(path);
+    return written(delegate.appendContent(path, content), path, size, content.length);
+  }
+
+  @Override
+  public byte[] readContent(String path, long offset, int length) {
+    return delegate.readContent(path, offset, length);
+  }
+
+  @Override
+  public long sizeByPath(String path) {
+    return delegate.sizeByPath(path);
+  }
+
+  @Override
+  public boolean deleteContentByPath(String path) {
+    // the recursive deletes remove the metadata of many data objects at once afterwards
+    DataObject dataObject = findByPath(path);
+    long size = size(path);
+    boolean deleted = delegate.deleteContentByPath(path);
+    if (deleted && dataObject != null) {
+      domainUsage.deleted(dataObject.getDomainUri(), known(size));
+    }
+    return deleted;
+  }
+
+  @Override
+  public DataObject moveByPath(String sourcePath, String path) {
+    // the data object keeps its domain
+    return delegate.moveByPath(sourcePath, path);
+  }
+
+  @Override
+  public DataObject copyByPath(String sourcePath, String path) {
+    return created(delegate.copyByPath(sourcePath, path), path);
+  }
+
+  @Override
+  public long copyContentByPath(String sourcePath, String path) {
+    // the recursive copies create the new data object's metadata directly before
+    long copied = delegate.copyContentByPath(sourcePath, path);
+    if (copied >= 0) {
+      DataObject dataObject = findByPath(path);
+      if (dataObject != null) {
+        domainUsage.created(dataObject.getDomainUri(), copied);
+      }
+    }
+    return copied;
+  }
+
+  @Override
+  public DataObject deleteByPath(String path) {
+    long size = size(path);
+    DataObject dataObject = delegate.deleteByPath(path);
+    if (dataObject != null) {
+      domainUsage.deleted(dataObject.getDomainUri(), known(size));
+    }
+    return dataObject;
+  }
+
+  @Override
+  public DataObject deleteByPathIfVersion(String path, String version) {
+    long size = size(path);
+    DataObject dataObject = delegate.deleteByPathIfVersion(path, version);
+    if (dataObject != null) {
+      domainUsage.deleted(dataObject.getDomainUri(), known(size));
+    }
+    return dataObject;
+  }
+
+  @Override
+  public DataObject findByObjectId(String objectId) {
+    return delegate.findByObjectId(objectId);
+  }
+
+  @Override
+  public DataObject findByPath(String path) {
+    return delegate.findByPath(path);
+  }
+
+  private DataObject created(DataObject dataObject, String path) {
+    if (dataObject != null) {
+      domainUsage.created(dataObject.getDomainUri(), known(size(path)));
+    }
+    return dataObject;
+  }
+
+  private DataObject written(DataObject dataObject, String path, long previousSize,
+      long written) {
+    if (dataObject != null) {
+      long size = size(path);
+      domainUsage.written(dataObject.getDomainUri(),
+          size != UNKNOWN && previousSize != UNKNOWN ? size - previousSize : 0, written);
+    }
+    return dataObject;
+  }
+
+  /**
+   * Gets the content's size, {@link #UNKNOWN} if the back-end can't tell it.
+   */
+  private long size(String path) {
+    try {
+      long size = delegate.sizeByPath(path);
+      if (size >= 0) {
+        return size;
+      }
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    log.warn("Size of {} unknown, its bytes aren't counted", path);
+    return UNKNOWN;
+  }
+
+  private static long known(long size) {
+    return size != UNKNOWN ? size : 0;
+  }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.domain;
+
+import java.util.Map;
+
+/**
+ * Persists the checkpointed {@link DomainUsage} counters next to the profile's metadata.
+ */
+public interface DomainUsageStore {
+
+  /**
+   * Loads the checkpointed counters.
+   *
+   * @return the counters' values by key, empty if there are none
+   */
+  Map<String, Long> load();
+
+  /**
+   * Adds the changes of the counters since the last checkpoint to the stored values.
+   *
+   * @param deltas the changes by key
+   */
+  void add(Map<String, Long> deltas);
+}
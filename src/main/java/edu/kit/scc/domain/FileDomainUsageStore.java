@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.domain;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the checkpointed counters in a JSON file, for the file system based profiles. The file is
+ * replaced via a temporary file and an atomic rename.
+ */
+public class FileDomainUsageStore implements DomainUsageStore {
+
+  private static final Logger log = LoggerFactory.getLogger(FileDomainUsageStore.class);
+
+  private final Path checkpointFile;
+
+  private Map<String, Long> values;
+
+  public FileDomainUsageStore(Path checkpointFile) {
+    this.checkpointFile = checkpointFile;
+  }
+
+  @Override
+  public synchronized Map<String, Long> load() {
+    if (values == null) {
+      values = new HashMap<>();
+      try {
+        JSONObject json = new JSONObject(
+            new String(Files.readAllBytes(checkpointFile), StandardCharsets.UTF_8));
+        for (String key : json.keySet()) {
+          values.put(key, json.getLong(key));
+        }
+        log.debug("Read {} domain usage counters from {}", values.size(), checkpointFile);
+      } catch (NoSuchFileException ex) {
+        log.debug("no domain usage checkpoint {}", checkpointFile);
+      } catch (Exception ex) {
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+      }
+    }
+    return new HashMap<>(values);
+  }
+
+  @Override
+  public synchronized void add(Map<String, Long> deltas) {
+    Map<String, Long> updated = load();
+    for (Map.Entry<String, Long> delta : deltas.entrySet()) {
+      updated.merge(delta.getKey(), delta.getValue(), Long::sum);
+    }
+    try {
+      Files.createDirectories(checkpointFile.toAbsolutePath().getParent());
+      Path tmp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+      Files.write(tmp, new JSONObject(updated).toString().getBytes(StandardCharsets.UTF_8));
+      Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    values = updated;
+    log.debug("Wrote {} domain usage counters to {}", updated.size(), checkpointFile);
+  }
+}
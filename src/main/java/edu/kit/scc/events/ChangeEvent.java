@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.events;
+
+import org.json.JSONObject;
+
+/**
+ * A change of a CDMI object, as published in the {@link ChangeFeed}.
+ */
+public class ChangeEvent {
+
+  public enum Type {
+    CREATED, UPDATED, DELETED, QOS_COMPLETE
+  }
+
+  private final long sequence;
+  private final Type type;
+  private final String path;
+  private final String objectId;
+  private final String capabilitiesUri;
+  private final long timestamp;
+
+  /**
+   * Creates a new event.
+   *
+   * @param sequence the event's position in the feed
+   * @param type the kind of change
+   * @param path the changed object's path
+   * @param objectId the changed object's id, may be {@code null}
+   * @param capabilitiesUri the reached capabilities URI of a completed QoS transition, may be
+   *        {@code null}
+   */
+  public ChangeEvent(long sequence, Type type, String path, String objectId,
+      String capabilitiesUri) {
+    this.sequence = sequence;
+    this.type = type;
+    this.path = path;
+    this.objectId = objectId;
+    this.capabilitiesUri = capabilitiesUri;
+    this.timestamp = System.currentTimeMillis();
+  }
+
+  public long getSequence() {
+    return sequence;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  public String getObjectId() {
+    return objectId;
+  }
+
+  public String getCapabilitiesUri() {
+    return capabilitiesUri;
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * Checks whether the event concerns the given path or an object below it.
+   *
+   * @param prefix the path prefix, {@code null} or "/" for all objects
+   * @return {@code true} if the event's path is the prefix or lies below it
+   */
+  public boolean matches(String prefix) {
+    if (prefix == null || prefix.equals("/")) {
+      return true;
+    }
+    return path.equals(prefix) || path.startsWith(prefix + "/");
+  }
+
+  /**
+   * Serializes the event.
+   *
+   * @return the {@link JSONObject}
+   */
+  public JSONObject toJson() {
+    JSONObject json = new JSONObject();
+    json.put("sequence", sequence);
+    json.put("type", type.name().toLowerCase());
+    json.put("path", path);
+    if (objectId != null) {
+      json.put("objectID", objectId);
+    }
+    if (capabilitiesUri != null) {
+      json.put("capabilitiesURI", capabilitiesUri);
+    }
+    json.put("timestamp", timestamp);
+    return json;
+  }
+
+  @Override
+  public String toString() {
+    return "ChangeEvent [sequence=" + sequence + ", type=" + type + ", path=" + path + "]";
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.events;
+
+import edu.kit.scc.unitofwork.UnitOfWorkCdmiObjectDao;
+
+import org.snia.cdmiserver.dao.CdmiObjectDao;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+
+/**
+ * Wraps the profile's {@link CdmiObjectDao} into a {@link ChangeEventCdmiObjectDao}. As an
+ * ordered post processor it runs before the unit of work's one, which wraps the result.
+ */
+@Component
+public class ChangeEventBeanPostProcessor implements BeanPostProcessor, Ordered {
+
+  @Autowired
+  private ChangeFeed changeFeed;
+
+  @Override
+  public int getOrder() {
+    return Ordered.LOWEST_PRECEDENCE;
+  }
+
+  @Override
+  public Object postProcessBeforeInitialization(Object bean, String beanName)
+      throws BeansException {
+    return bean;
+  }
+
+  @Override
+  public Object postProcessAfterInitialization(Object bean, String beanName)
+      throws BeansException {
+    if (bean instanceof CdmiObjectDao && !(bean instanceof ChangeEventCdmiObjectDao)
+        && !(bean instanceof UnitOfWorkCdmiObjectDao)) {
+      return new ChangeEventCdmiObjectDao((CdmiObjectDao) bean, changeFeed);
+    }
+    return bean;
+  }
+}
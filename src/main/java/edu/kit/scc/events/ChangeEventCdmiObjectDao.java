@@ -0,0 +1,176 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.events;
+
+import org.json.JSONObject;
+import org.snia.cdmiserver.dao.CdmiObjectDao;
+import org.snia.cdmiserver.dao.CdmiObjectDaoDecorator;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+import org.snia.cdmiserver.model.DataObject;
+
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * {@link CdmiObjectDao} decorator which publishes every written change of a container or data
+ * object to the {@link ChangeFeed}. It sits below the unit of work, so deferred updates are
+ * published when they are actually written.
+ */
+public class ChangeEventCdmiObjectDao implements CdmiObjectDaoDecorator {
+
+  private final CdmiObjectDao delegate;
+  private final ChangeFeed changeFeed;
+
+  public ChangeEventCdmiObjectDao(CdmiObjectDao delegate, ChangeFeed changeFeed) {
+    this.delegate = delegate;
+    this.changeFeed = changeFeed;
+  }
+
+  @Override
+  public CdmiObjectDao getDelegate() {
+    return delegate;
+  }
+
+  @Override
+  public CdmiObject createCdmiObject(CdmiObject cdmiObject) {
+    return publish(ChangeEvent.Type.CREATED, delegate.createCdmiObject(cdmiObject), null);
+  }
+
+  @Override
+  public CdmiObject createCdmiObject(CdmiObject cdmiObject, String path) {
+    return publish(ChangeEvent.Type.CREATED, delegate.createCdmiObject(cdmiObject, path), path);
+  }
+
+  @Override
+  public CdmiObject createCdmiObject(CdmiObject cdmiObject, String path, Boolean override) {
+    return publish(ChangeEvent.Type.CREATED,
+        delegate.createCdmiObject(cdmiObject, path, override), path);
+  }
+
+  @Override
+  public CdmiObject getCdmiObject(String objectId) {
+    return delegate.getCdmiObject(objectId);
+  }
+
+  @Override
+  public CdmiObject updateCdmiObject(CdmiObject cdmiObject) {
+    return publish(ChangeEvent.Type.UPDATED, delegate.updateCdmiObject(cdmiObject), null);
+  }
+
+  @Override
+  public CdmiObject updateCdmiObject(CdmiObject cdmiObject, String path) {
+    return publish(ChangeEvent.Type.UPDATED, delegate.updateCdmiObject(cdmiObject, path), path);
+  }
+
+  @Override
+  public CdmiObject updateCdmiObjectFields(CdmiObject cdmiObject, String... fieldNames) {
+    return publish(ChangeEvent.Type.UPDATED,
+        delegate.updateCdmiObjectFields(cdmiObject, fieldNames), null);
+  }
+
+  @Override
+  public CdmiObject updateCdmiObjectIfVersion(String path, String version,
+      CdmiObject cdmiObject, String... fieldNames) {
+    return publish(ChangeEvent.Type.UPDATED,
+        delegate.updateCdmiObjectIfVersion(path, version, cdmiObject, fieldNames), path);
+  }
+
+  @Override
+  public CdmiObject deleteCdmiObject(String objectId) {
+    // the path is deleted separately, which publishes the event
+    return delegate.deleteCdmiObject(objectId);
+  }
+
+  @Override
+  public CdmiObject getCdmiObjectByPath(String path) {
+    return delegate.getCdmiObjectByPath(path);
+  }
+
+  @Override
+  public CdmiObject getCdmiObjectByPath(String path, int childrenStart, int childrenEnd) {
+    return delegate.getCdmiObjectByPath(path, childrenStart, childrenEnd);
+  }
+
+  @Override
+  public List<JSONObject> getFieldsByPath(List<String> paths, String... fieldNames) {
+    return delegate.getFieldsByPath(paths, fieldNames);
+  }
+
+  @Override
+  public String getVersionByPath(String path) {
+    return delegate.getVersionByPath(path);
+  }
+
+  @Override
+  public CdmiObject addChild(Container container, String path, String childName) {
+    return publish(ChangeEvent.Type.UPDATED, delegate.addChild(container, path, childName),
+        path);
+  }
+
+  @Override
+  public CdmiObject addChildren(Container container, String path,
+      Collection<String> childNames) {
+    return publish(ChangeEvent.Type.UPDATED, delegate.addChildren(container, path, childNames),
+        path);
+  }
+
+  @Override
+  public CdmiObject deleteCdmiObjectByPath(String path) {
+    return publish(ChangeEvent.Type.DELETED, delegate.deleteCdmiObjectByPath(path), path);
+  }
+
+  @Override
+  public CdmiObject deleteCdmiObjectByPathIfVersion(String path, String version) {
+    return publish(ChangeEvent.Type.DELETED,
+        delegate.deleteCdmiObjectByPathIfVersion(path, version), path);
+  }
+
+  @Override
+  public int deleteCdmiObjectsByPath(List<String> paths) {
+    int deleted = delegate.deleteCdmiObjectsByPath(paths);
+    for (String path : paths) {
+      changeFeed.publish(ChangeEvent.Type.DELETED, path, null, null);
+    }
+    return deleted;
+  }
+
+  @Override
+  public CdmiObject moveCdmiObject(String sourcePath, String path) {
+    CdmiObject moved = delegate.moveCdmiObject(sourcePath, path);
+    if (moved != null) {
+      changeFeed.publish(ChangeEvent.Type.DELETED, sourcePath, moved.getObjectId(), null);
+      publish(ChangeEvent.Type.CREATED, moved, path);
+    }
+    return moved;
+  }
+
+  /**
+   * Publishes the change of a container or data object, other objects such as capabilities are
+   * not part of the feed.
+   */
+  private CdmiObject publish(ChangeEvent.Type type, CdmiObject cdmiObject, String path) {
+    if (cdmiObject instanceof Container) {
+      Container container = (Container) cdmiObject;
+      changeFeed.publish(type, path != null ? path : path(container.getParentUri(),
+          container.getObjectName()), container.getObjectId(), null);
+    } else if (cdmiObject instanceof DataObject) {
+      DataObject dataObject = (DataObject) cdmiObject;
+      changeFeed.publish(type, path != null ? path : path(dataObject.getParentUri(),
+          dataObject.getObjectName()), dataObject.getObjectId(), null);
+    }
+    return cdmiObject;
+  }
+
+  private static String path(String parentUri, String objectName) {
+    return Paths.get(parentUri != null ? parentUri : "/", objectName).normalize().toString();
+  }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.events;
+
+import edu.kit.scc.metrics.MetricsSource;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Bounded feed of the latest changes of CDMI objects, replacing the polling of objects by their
+ * clients.
+ *
+ * <p>
+ * Events are numbered in the order they are published and kept in a ring buffer of fixed
+ * capacity, so publishing never blocks on subscribers. Subscribers read from the position after
+ * the last event they have seen, optionally restricted to a path prefix; a subscriber that fell
+ * behind by more than the capacity is told to reset and continues with the oldest kept event.
+ * A single dispatcher thread delivers new events to the subscribers.
+ * </p>
+ */
+@Component
+public class ChangeFeed implements MetricsSource {
+
+  private static final Logger log = LoggerFactory.getLogger(ChangeFeed.class);
+
+  @Value("${cdmi.events.capacity:10000}")
+  private int capacity;
+
+  @Value("${cdmi.events.maxBatch:1000}")
+  private int maxBatch;
+
+  private ChangeEvent[] ring;
+
+  private long sequence;
+
+  private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+  private final AtomicBoolean dispatchScheduled = new AtomicBoolean();
+
+  private ScheduledExecutorService dispatcher;
+
+  private final LongAdder published = new LongAdder();
+  private final LongAdder delivered = new LongAdder();
+  private final LongAdder resets = new LongAdder();
+
+  /**
+   * Receives the events of a subscription.
+   */
+  public interface Listener {
+
+    /**
+     * Called on the dispatcher thread with new events or a reset.
+     *
+     * @param batch the {@link Batch}
+     * @return {@code true} to stay subscribed
+     * @throws IOException if the events couldn't be delivered, which ends the subscription
+     */
+    boolean onChanges(Batch batch) throws IOException;
+  }
+
+  /**
+   * Events read from the feed.
+   */
+  public static final class Batch {
+
+    private final List<ChangeEvent> events;
+    private final long next;
+    private final boolean reset;
+
+    Batch(List<ChangeEvent> events, long next, boolean reset) {
+      this.events = events;
+      this.next = next;
+      this.reset = reset;
+    }
+
+    public List<ChangeEvent> getEvents() {
+      return events;
+    }
+
+    /**
+     * Gets the position to continue reading from.
+     *
+     * @return the sequence number of the last read event
+     */
+    public long getNext() {
+      return next;
+    }
+
+    /**
+     * Checks whether events have been missed, as they have already been overwritten.
+     *
+     * @return {@code true} if the subscriber has to reload the objects it watches
+     */
+    public boolean isReset() {
+      return reset;
+    }
+
+    /**
+     * Serializes the batch.
+     *
+     * @return the {@link JSONObject}
+     */
+    public JSONObject toJson() {
+      JSONArray array = new JSONArray();
+      for (ChangeEvent event : events) {
+        array.put(event.toJson());
+      }
+      JSONObject json = new JSONObject();
+      json.put("events", array);
+      json.put("next", next);
+      json.put("reset", reset);
+      return json;
+    }
+  }
+
+  /**
+   * A registered {@link Listener}.
+   */
+  public final class Subscription {
+
+    private final String prefix;
+    private final Listener listener;
+    private long after;
+
+    private Subscription(String prefix, long after, Listener listener) {
+      this.prefix = prefix;
+      this.after = after;
+      this.listener = listener;
+    }
+
+    public void cancel() {
+      subscriptions.remove(this);
+    }
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public void setCapacity(int capacity) {
+    this.capacity = capacity;
+  }
+
+  public int getMaxBatch() {
+    return maxBatch;
+  }
+
+  public void setMaxBatch(int maxBatch) {
+    this.maxBatch = maxBatch;
+  }
+
+  /**
+   * Allocates the ring buffer and the dispatcher thread delivering the changes.
+   */
+  @PostConstruct
+  public void init() {
+    ring = new ChangeEvent[capacity];
+    dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "change-feed");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @PreDestroy
+  public void cleanUp() {
+    dispatcher.shutdownNow();
+  }
+
+  /**
+   * Publishes a change.
+   *
+   * @param type the kind of change
+   * @param path the changed object's path
+   * @param objectId the changed object's id, may be {@code null}
+   * @param capabilitiesUri the reached capabilities URI of a completed QoS transition, may be
+   *        {@code null}
+   * @return the published {@link ChangeEvent}
+   */
+  public ChangeEvent publish(ChangeEvent.Type type, String path, String objectId,
+      String capabilitiesUri) {
+    ChangeEvent event;
+    synchronized (this) {
+      sequence++;
+      event = new ChangeEvent(sequence, type, path, objectId, capabilitiesUri);
+      ring[(int) (sequence % ring.length)] = event;
+    }
+    published.increment();
+    log.debug("Published {}", event);
+    if (!subscriptions.isEmpty()) {
+      scheduleDispatch();
+    }
+    return event;
+  }
+
+  /**
+   * Gets the sequence number of the latest event.
+   *
+   * @return the sequence number, 0 if no event has been published yet
+   */
+  public synchronized long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * Reads the events after the given position, up to the maximum batch size.
+   *
+   * @param after the sequence number of the last event already seen
+   * @param prefix the path prefix, {@code null} for all objects
+   * @return the {@link Batch}
+   */
+  public synchronized Batch read(long after, String prefix) {
+    long oldest = Math.max(1, sequence - ring.length + 1);
+    // a position from before a restart is reset as well
+    boolean reset = after < oldest - 1 || after > sequence;
+    long current = reset ? oldest - 1 : after;
+    List<ChangeEvent> events = new ArrayList<>();
+    while (current < sequence && events.size() < maxBatch) {
+      current++;
+      ChangeEvent event = ring[(int) (current % ring.length)];
+      if (event.matches(prefix)) {
+        events.add(event);
+      }
+    }
+    return new Batch(events, current, reset);
+  }
+
+  /**
+   * Subscribes to the events after the given position.
+   *
+   * @param prefix the path prefix, {@code null} for all objects
+   * @param after the sequence number of the last event already seen
+   * @param listener the {@link Listener}
+   * @return the {@link Subscription}
+   */
+  public Subscription subscribe(String prefix, long after, Listener listener) {
+    Subscription subscription = new Subscription(prefix, after, listener);
+    subscriptions.add(subscription);
+    // events published before the subscription was added
+    scheduleDispatch();
+    return subscription;
+  }
+
+  /**
+   * Waits for the events after the given position, without blocking the calling thread.
+   *
+   * @param after the sequence number of the last event already seen
+   * @param prefix the path prefix, {@code null} for all objects
+   * @param timeoutMillis the maximum time to wait for an event
+   * @return the future {@link Batch}, without events if none arrived in time
+   */
+  public CompletableFuture<Batch> poll(long after, String prefix, long timeoutMillis) {
+    Batch batch = read(after, prefix);
+    if (!batch.getEvents().isEmpty() || batch.isReset() || timeoutMillis <= 0) {
+      return CompletableFuture.completedFuture(batch);
+    }
+    CompletableFuture<Batch> future = new CompletableFuture<>();
+    Subscription subscription = subscribe(prefix, batch.getNext(), changes -> {
+      future.complete(changes);
+      return false;
+    });
+    // runs on the dispatcher thread, like the delivery of events
+    dispatcher.schedule(() -> {
+      subscription.cancel();
+      future.complete(new Batch(Collections.emptyList(), subscription.after, false));
+    }, timeoutMillis, TimeUnit.MILLISECONDS);
+    return future;
+  }
+
+  private void scheduleDispatch() {
+    if (dispatchScheduled.compareAndSet(false, true)) {
+      dispatcher.execute(this::dispatch);
+    }
+  }
+
+  private void dispatch() {
+    dispatchScheduled.set(false);
+    long latest = getSequence();
+    boolean behind = false;
+    for (Subscription subscription : subscriptions) {
+      Batch batch = read(subscription.after, subscription.prefix);
+      subscription.after = batch.getNext();
+      behind |= batch.getNext() < latest;
+      if (batch.getEvents().isEmpty() && !batch.isReset()) {
+        continue;
+      }
+      if (batch.isReset()) {
+        resets.increment();
+      }
+      boolean subscribed;
+      try {
+        subscribed = subscription.listener.onChanges(batch);
+        delivered.add(batch.getEvents().size());
+      } catch (IOException | RuntimeException ex) {
+        log.debug("Subscription ended, {} {}", ex.getClass().getName(), ex.getMessage());
+        subscribed = false;
+      }
+      if (!subscribed) {
+        subscription.cancel();
+      }
+    }
+    if (behind) {
+      scheduleDispatch();
+    }
+  }
+
+  @Override
+  public String getMetricsName() {
+    return "changeFeed";
+  }
+
+  @Override
+  public JSONObject getMetrics() {
+    JSONObject metrics = new JSONObject();
+    metrics.put("sequence", getSequence());
+    metrics.put("published", published.sum());
+    metrics.put("delivered", delivered.sum());
+    metrics.put("resets", resets.sum());
+    metrics.put("subscriptions", subscriptions.size());
+    return metrics;
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.events;
+
+import org.indigo.cdmi.CdmiObjectStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Polls the storage back-end for pending QoS transitions and publishes a
+ * {@link ChangeEvent.Type#QOS_COMPLETE} event once a transition is done, so that only the server
+ * polls the back-end, once per transition instead of once per waiting client.
+ */
+@Component
+public class QosTransitionWatcher {
+
+  private static final Logger log = LoggerFactory.getLogger(QosTransitionWatcher.class);
+
+  @Value("${cdmi.events.qos.pollInterval:1000}")
+  private long pollInterval;
+
+  @Value("${cdmi.events.qos.timeout:3600000}")
+  private long timeout;
+
+  @Autowired
+  private ChangeFeed changeFeed;
+
+  private final Map<String, ScheduledFuture<?>> transitions = new ConcurrentHashMap<>();
+
+  private ScheduledExecutorService scheduler;
+
+  public long getPollInterval() {
+    return pollInterval;
+  }
+
+  public void setPollInterval(long pollInterval) {
+    this.pollInterval = pollInterval;
+  }
+
+  /**
+   * Starts the thread polling the storage back-end for the watched transitions.
+   */
+  @PostConstruct
+  public void init() {
+    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "qos-watcher");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @PreDestroy
+  public void cleanUp() {
+    scheduler.shutdownNow();
+  }
+
+  /**
+   * Watches the QoS transition of an object, replacing an earlier watch of the same object.
+   *
+   * @param path the object's path
+   * @param targetCapabilitiesUri the requested capabilities URI
+   * @param status gets the object's current status from the storage back-end
+   */
+  public void watch(String path, String targetCapabilitiesUri,
+      Callable<CdmiObjectStatus> status) {
+    long deadline = System.currentTimeMillis() + timeout;
+    Runnable check = () -> check(path, targetCapabilitiesUri, status, deadline);
+    ScheduledFuture<?> previous = transitions.put(path,
+        scheduler.scheduleWithFixedDelay(check, pollInterval, pollInterval, TimeUnit.MILLISECONDS));
+    if (previous != null) {
+      previous.cancel(false);
+    }
+  }
+
+  /**
+   * Gets the number of watched transitions.
+   *
+   * @return the number of pending transitions
+   */
+  public int getPending() {
+    return transitions.size();
+  }
+
+  private void check(String path, String targetCapabilitiesUri,
+      Callable<CdmiObjectStatus> status, long deadline) {
+    try {
+      CdmiObjectStatus current = status.call();
+      if (current.getTargetCapabilitiesUri() == null
+          || targetCapabilitiesUri.equals(current.getCurrentCapabilitiesUri())) {
+        log.debug("QoS transition of {} to {} complete", path, targetCapabilitiesUri);
+        changeFeed.publish(ChangeEvent.Type.QOS_COMPLETE, path, null,
+            current.getCurrentCapabilitiesUri());
+        stop(path);
+        return;
+      }
+    } catch (Exception ex) {
+      log.warn("QoS transition of {} not watched anymore, {} {}", path, ex.getClass().getName(),
+          ex.getMessage());
+      stop(path);
+      return;
+    }
+    if (System.currentTimeMillis() > deadline) {
+      log.warn("QoS transition of {} to {} timed out", path, targetCapabilitiesUri);
+      stop(path);
+    }
+  }
+
+  private void stop(String path) {
+    ScheduledFuture<?> transition = transitions.remove(path);
+    if (transition != null) {
+      transition.cancel(false);
+    }
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.executor;
+
+import edu.kit.scc.metrics.MetricsSource;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Bounded thread pools the REST endpoints run their blocking work on, so that request threads
+ * are released while waiting for I/O.
+ *
+ * <p>
+ * Each kind of work has its own pool, a slow storage back-end can only fill the back-end pool and
+ * doesn't delay metadata requests. When a pool's queue is full, the work is rejected instead of
+ * queued without limit. The authenticated user is passed on to the pool's threads.
+ * </p>
+ */
+@Component
+public class RequestExecutors implements MetricsSource {
+
+  private static final Logger log = LoggerFactory.getLogger(RequestExecutors.class);
+
+  /**
+   * The kinds of work with a pool of their own.
+   */
+  public enum Pool {
+    /** data object content and deletes. */
+    STORAGE,
+    /** CDMI object and capability metadata. */
+    METADATA,
+    /** calls to the QoS storage back-end. */
+    BACKEND
+  }
+
+  @Value("${cdmi.executor.storage.threads:16}")
+  private int storageThreads;
+
+  @Value("${cdmi.executor.storage.queueSize:1000}")
+  private int storageQueueSize;
+
+  @Value("${cdmi.executor.metadata.threads:16}")
+  private int metadataThreads;
+
+  @Value("${cdmi.executor.metadata.queueSize:1000}")
+  private int metadataQueueSize;
+
+  @Value("${cdmi.executor.backend.threads:8}")
+  private int backendThreads;
+
+  @Value("${cdmi.executor.backend.queueSize:200}")
+  private int backendQueueSize;
+
+  private final Map<Pool, ThreadPoolExecutor> executors = new EnumMap<>(Pool.class);
+  private final Map<Pool, AtomicInteger> largestQueued = new EnumMap<>(Pool.class);
+  private final Map<Pool, LongAdder> rejected = new EnumMap<>(Pool.class);
+
+  @PostConstruct
+  void init() {
+    executors.put(Pool.STORAGE, createExecutor(Pool.STORAGE, storageThreads, storageQueueSize));
+    executors.put(Pool.METADATA,
+        createExecutor(Pool.METADATA, metadataThreads, metadataQueueSize));
+    executors.put(Pool.BACKEND, createExecutor(Pool.BACKEND, backendThreads, backendQueueSize));
+    for (Pool pool : Pool.values()) {
+      largestQueued.put(pool, new AtomicInteger());
+      rejected.put(pool, new LongAdder());
+    }
+  }
+
+  @PreDestroy
+  void cleanUp() {
+    for (ThreadPoolExecutor executor : executors.values()) {
+      executor.shutdownNow();
+    }
+  }
+
+  private static ThreadPoolExecutor createExecutor(Pool pool, int threads, int queueSize) {
+    String prefix = "cdmi-" + pool.name().toLowerCase() + "-";
+    AtomicInteger count = new AtomicInteger();
+    ThreadFactory threadFactory = runnable -> {
+      Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(queueSize), threadFactory);
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * Runs the given work on the given pool as the currently authenticated user.
+   *
+   * @param pool the {@link Pool}
+   * @param work the work
+   * @return the result, completed exceptionally with a {@link RejectedExecutionException} if the
+   *         pool is saturated
+   */
+  public <T> CompletableFuture<T> supply(Pool pool, Supplier<T> work) {
+    return supply(pool, SecurityContextHolder.getContext(), work);
+  }
+
+  /**
+   * Runs the given work on the given pool with the given security context, e.g. for work
+   * continuing on another pool.
+   *
+   * @param pool the {@link Pool}
+   * @param securityContext the {@link SecurityContext} of the request
+   * @param work the work
+   * @return the result, completed exceptionally with a {@link RejectedExecutionException} if the
+   *         pool is saturated
+   */
+  public <T> CompletableFuture<T> supply(Pool pool, SecurityContext securityContext,
+      Supplier<T> work) {
+    ThreadPoolExecutor executor = executors.get(pool);
+    try {
+      CompletableFuture<T> result = CompletableFuture.supplyAsync(() -> {
+        SecurityContextHolder.setContext(securityContext);
+        try {
+          return work.get();
+        } finally {
+          SecurityContextHolder.clearContext();
+        }
+      }, executor);
+      largestQueued.get(pool).accumulateAndGet(executor.getQueue().size(), Math::max);
+      return result;
+    } catch (RejectedExecutionException ex) {
+      log.warn("{} pool saturated, {} queued", pool, executor.getQueue().size());
+      rejected.get(pool).increment();
+      CompletableFuture<T> result = new CompletableFuture<>();
+      result.completeExceptionally(ex);
+      return result;
+    }
+  }
+
+  @Override
+  public String getMetricsName() {
+    return "requestExecutors";
+  }
+
+  @Override
+  public JSONObject getMetrics() {
+    JSONObject metrics = new JSONObject();
+    for (Map.Entry<Pool, ThreadPoolExecutor> entry : executors.entrySet()) {
+      ThreadPoolExecutor executor = entry.getValue();
+      JSONObject poolMetrics = new JSONObject();
+      poolMetrics.put("threads", executor.getMaximumPoolSize());
+      poolMetrics.put("active", executor.getActiveCount());
+      poolMetrics.put("queued", executor.getQueue().size());
+      poolMetrics.put("largestQueued", largestQueued.get(entry.getKey()).get());
+      poolMetrics.put("queueCapacity",
+          executor.getQueue().size() + executor.getQueue().remainingCapacity());
+      poolMetrics.put("completed", executor.getCompletedTaskCount());
+      poolMetrics.put("rejected", rejected.get(entry.getKey()).sum());
+      metrics.put(entry.getKey().name().toLowerCase(), poolMetrics);
+    }
+    return metrics;
+  }
+}
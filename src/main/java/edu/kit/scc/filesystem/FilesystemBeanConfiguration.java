@@ -9,6 +9,11 @@
 
 package edu.kit.scc.filesystem;
 
+import edu.kit.scc.domain.DomainUsage;
+import edu.kit.scc.domain.FileDomainUsageStore;
+import edu.kit.scc.query.InMemoryMetadataIndex;
+import edu.kit.scc.query.MetadataIndex;
+
 import org.snia.cdmiserver.dao.CapabilityDao;
 import org.snia.cdmiserver.dao.CdmiObjectDao;
 import org.snia.cdmiserver.dao.ContainerDao;
@@ -24,6 +29,8 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 
+import java.nio.file.Paths;
+
 @Configuration
 @Profile({"filesystem", "filesystem-test"})
 public class FilesystemBeanConfiguration {
@@ -34,6 +41,18 @@ public class FilesystemBeanConfiguration {
   @Value("${cdmi.data.objectIdPrefix}")
   private String objectIdPrefix;
 
+  @Value("${cdmi.query.snapshotFile:cdmi_state/index.json}")
+  private String indexSnapshotFile;
+
+  @Value("${cdmi.query.snapshotInterval:60}")
+  private long indexSnapshotInterval;
+
+  @Value("${cdmi.domains.checkpointFile:cdmi_state/domain_usage.json}")
+  private String domainUsageCheckpointFile;
+
+  @Value("${cdmi.domains.checkpointInterval:60}")
+  private long domainUsageCheckpointInterval;
+
   /**
    * Initializes the file system version of the CDMI object DAO interface.
    * 
@@ -105,4 +124,30 @@ public class FilesystemBeanConfiguration {
     return domainDaoImpl;
   }
 
+  /**
+   * Initializes the in-memory {@link MetadataIndex} from its snapshot.
+   * 
+   * @return a {@link MetadataIndex}
+   */
+  @Bean(destroyMethod = "close")
+  public MetadataIndex metadataIndex() {
+    InMemoryMetadataIndex metadataIndex =
+        new InMemoryMetadataIndex(Paths.get(indexSnapshotFile), indexSnapshotInterval);
+    metadataIndex.open();
+    return metadataIndex;
+  }
+
+  /**
+   * Initializes the {@link DomainUsage} from its last checkpoint.
+   * 
+   * @return a {@link DomainUsage}
+   */
+  @Bean(destroyMethod = "close")
+  public DomainUsage domainUsage() {
+    DomainUsage domainUsage = new DomainUsage(
+        new FileDomainUsageStore(Paths.get(domainUsageCheckpointFile)),
+        domainUsageCheckpointInterval);
+    domainUsage.open();
+    return domainUsage;
+  }
 }
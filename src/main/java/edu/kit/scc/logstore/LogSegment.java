@@ -0,0 +1,251 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.logstore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * A single memory-mapped, pre-allocated segment file of a {@link LogStore}.
+ *
+ * <p>
+ * Records are laid out as {@code [crc32][keyLength][valueLength][key][value]}, a value length of
+ * {@code -1} marks a tombstone. The unused tail of a segment is zero-filled, so a key length of
+ * {@code 0} marks the end of the written records.
+ * </p>
+ */
+public class LogSegment implements Closeable {
+
+  static final int HEADER_SIZE = 12;
+
+  static final int TOMBSTONE = -1;
+
+  private final long id;
+  private final Path file;
+  private final FileChannel channel;
+  private final MappedByteBuffer buffer;
+  private final ByteBuffer writeBuffer;
+  private final int capacity;
+
+  private final AtomicLong deadBytes = new AtomicLong();
+
+  private volatile int writePosition;
+
+  /**
+   * Opens or creates the segment file with the given id.
+   *
+   * @param directory the log directory
+   * @param id the segment's sequence number
+   * @param capacity the segment's size in bytes
+   * @throws IOException in case the segment file couldn't be mapped
+   */
+  public LogSegment(Path directory, long id, int capacity) throws IOException {
+    this.id = id;
+    this.capacity = capacity;
+    this.file = directory.resolve(fileName(id));
+    this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    this.buffer = channel.map(MapMode.READ_WRITE, 0, capacity);
+    this.writeBuffer = buffer.duplicate();
+  }
+
+  static String fileName(long id) {
+    return String.format("%020d.log", id);
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public Path getFile() {
+    return file;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public int getWritePosition() {
+    return writePosition;
+  }
+
+  public long getDeadBytes() {
+    return deadBytes.get();
+  }
+
+  void addDeadBytes(long bytes) {
+    deadBytes.addAndGet(bytes);
+  }
+
+  static int recordLength(byte[] key, byte[] value) {
+    return HEADER_SIZE + key.length + (value != null ? value.length : 0);
+  }
+
+  /**
+   * Checks whether a record of the given length fits into the remaining space.
+   *
+   * @param length the record length in bytes
+   * @return {@code true} if the record fits
+   */
+  boolean hasRoom(int length) {
+    return writePosition + length <= capacity;
+  }
+
+  /**
+   * Appends a record. Callers have to serialize writes.
+   *
+   * @param key the record key
+   * @param value the record value or {@code null} for a tombstone
+   * @return the offset of the written record
+   */
+  int append(byte[] key, byte[] value) {
+    int offset = writePosition;
+
+    writeBuffer.position(offset + HEADER_SIZE);
+    writeBuffer.put(key);
+    if (value != null) {
+      writeBuffer.put(value);
+    }
+    writeBuffer.putInt(offset + 4, key.length);
+    writeBuffer.putInt(offset + 8, value != null ? value.length : TOMBSTONE);
+    // the checksum is written last, a torn record never validates
+    writeBuffer.putInt(offset, checksum(key, value));
+
+    writePosition = offset + recordLength(key, value);
+    return offset;
+  }
+
+  /**
+   * Reads the value of the record at the given offset.
+   *
+   * @param offset the record offset
+   * @return the value bytes or {@code null} for a tombstone
+   */
+  byte[] readValue(int offset) {
+    ByteBuffer readBuffer = buffer.duplicate();
+    int keyLength = readBuffer.getInt(offset + 4);
+    int valueLength = readBuffer.getInt(offset + 8);
+    if (valueLength == TOMBSTONE) {
+      return null;
+    }
+    byte[] value = new byte[valueLength];
+    readBuffer.position(offset + HEADER_SIZE + keyLength);
+    readBuffer.get(value);
+    return value;
+  }
+
+  /**
+   * Reads and validates the record at the given offset.
+   *
+   * @param offset the record offset
+   * @return the record or {@code null} if there is no valid record at this offset
+   */
+  Record readRecord(int offset) {
+    if (offset + HEADER_SIZE > capacity) {
+      return null;
+    }
+    ByteBuffer readBuffer = buffer.duplicate();
+    int keyLength = readBuffer.getInt(offset + 4);
+    int valueLength = readBuffer.getInt(offset + 8);
+
+    if (keyLength <= 0 || valueLength < TOMBSTONE) {
+      return null;
+    }
+    long length = (long) HEADER_SIZE + keyLength + Math.max(valueLength, 0);
+    if (offset + length > capacity) {
+      return null;
+    }
+
+    byte[] key = new byte[keyLength];
+    readBuffer.position(offset + HEADER_SIZE);
+    readBuffer.get(key);
+    byte[] value = null;
+    if (valueLength != TOMBSTONE) {
+      value = new byte[valueLength];
+      readBuffer.get(value);
+    }
+    if (checksum(key, value) != readBuffer.getInt(offset)) {
+      return null;
+    }
+    return new Record(new String(key, StandardCharsets.UTF_8), value, offset, (int) length);
+  }
+
+  /**
+   * Positions the write pointer after the last valid record, used during recovery.
+   *
+   * @param position the first free offset
+   */
+  void setWritePosition(int position) {
+    this.writePosition = position;
+  }
+
+  void force() {
+    buffer.force();
+  }
+
+  void delete() throws IOException {
+    close();
+    Files.deleteIfExists(file);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (channel.isOpen()) {
+      force();
+      channel.close();
+    }
+  }
+
+  private static int checksum(byte[] key, byte[] value) {
+    CRC32 crc = new CRC32();
+    crc.update(key);
+    if (value != null) {
+      crc.update(value);
+    }
+    return (int) crc.getValue();
+  }
+
+  @Override
+  public String toString() {
+    return "LogSegment [id=" + id + ", writePosition=" + writePosition + ", deadBytes="
+        + deadBytes.get() + "]";
+  }
+
+  /**
+   * A record read back from a segment.
+   */
+  static final class Record {
+    final String key;
+    final byte[] value;
+    final int offset;
+    final int length;
+
+    Record(String key, byte[] value, int offset, int length) {
+      this.key = key;
+      this.value = value;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    boolean isTombstone() {
+      return value == null;
+    }
+  }
+}
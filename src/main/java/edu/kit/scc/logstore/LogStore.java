@@ -0,0 +1,449 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.logstore;
+
+import edu.kit.scc.logstore.LogSegment.Record;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An embedded, append-only key-value store.
+ *
+ * <p>
+ * All writes are sequential appends to the active memory-mapped {@link LogSegment}, overwritten and
+ * deleted entries just become dead bytes. An in-memory index maps every live key to its record, it
+ * is rebuilt on start-up by scanning all segments in order. A background task compacts the sealed
+ * segments once their share of dead bytes exceeds the configured threshold.
+ * </p>
+ */
+public class LogStore implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(LogStore.class);
+
+  private final Path directory;
+  private final int segmentSize;
+  private final double compactionThreshold;
+
+  private final ConcurrentNavigableMap<Long, LogSegment> segments = new ConcurrentSkipListMap<>();
+  private final Map<String, Location> index = new ConcurrentHashMap<>();
+
+  private final Object writeLock = new Object();
+  private final Object compactionLock = new Object();
+
+  private volatile LogSegment activeSegment;
+
+  private ScheduledExecutorService scheduler;
+
+  /**
+   * Creates a new log store, call {@link #open()} before using it.
+   *
+   * @param directory the directory holding the segment files
+   * @param segmentSize the size of a single segment file in bytes
+   * @param compactionThreshold the share of dead bytes in sealed segments that triggers compaction
+   */
+  public LogStore(Path directory, int segmentSize, double compactionThreshold) {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.compactionThreshold = compactionThreshold;
+  }
+
+  /**
+   * Opens the store and rebuilds the index from the existing segments.
+   *
+   * @throws IOException in case the segments couldn't be read
+   */
+  public void open() throws IOException {
+    Files.createDirectories(directory);
+
+    List<Long> segmentIds = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.log")) {
+      for (Path file : stream) {
+        String name = file.getFileName().toString();
+        segmentIds.add(Long.valueOf(name.substring(0, name.length() - ".log".length())));
+      }
+    }
+    segmentIds.sort(null);
+
+    long start = System.currentTimeMillis();
+    for (Long segmentId : segmentIds) {
+      LogSegment segment = new LogSegment(directory, segmentId, segmentSize);
+      segments.put(segmentId, segment);
+      recover(segment);
+    }
+
+    if (segments.isEmpty()) {
+      activeSegment = new LogSegment(directory, 0, segmentSize);
+      segments.put(activeSegment.getId(), activeSegment);
+    } else {
+      activeSegment = segments.lastEntry().getValue();
+    }
+    log.debug("Opened log store {} with {} segments and {} keys in {} ms", directory,
+        segments.size(), index.size(), System.currentTimeMillis() - start);
+  }
+
+  private void recover(LogSegment segment) {
+    int position = 0;
+    Record record;
+    while ((record = segment.readRecord(position)) != null) {
+      Location location = new Location(segment.getId(), record.offset, record.length);
+      if (record.isTombstone()) {
+        markDead(index.remove(record.key));
+        segment.addDeadBytes(record.length);
+      } else {
+        markDead(index.put(record.key, location));
+      }
+      position += record.length;
+    }
+    segment.setWritePosition(position);
+    log.debug("Recovered {}", segment);
+  }
+
+  /**
+   * Starts the background compaction, which also forces the active segment to disk.
+   *
+   * @param intervalSeconds the interval between two compaction runs
+   */
+  public void startCompaction(long intervalSeconds) {
+    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "logstore-compaction");
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.scheduleWithFixedDelay(() -> {
+      try {
+        activeSegment.force();
+        if (needsCompaction()) {
+          compact();
+        }
+      } catch (Exception ex) {
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+      }
+    }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Gets the value stored for the given key.
+   *
+   * @param key the key
+   * @return the value or {@code null} if the key doesn't exist
+   */
+  public String get(String key) {
+    byte[] value = getBytes(key);
+    return value != null ? new String(value, StandardCharsets.UTF_8) : null;
+  }
+
+  /**
+   * Gets the raw value stored for the given key.
+   *
+   * @param key the key
+   * @return the value or {@code null} if the key doesn't exist
+   */
+  public byte[] getBytes(String key) {
+    while (true) {
+      Location location = index.get(key);
+      if (location == null) {
+        return null;
+      }
+      LogSegment segment = segments.get(location.segmentId);
+      if (segment != null) {
+        return segment.readValue(location.offset);
+      }
+      // the segment has been compacted away concurrently, the index already moved on
+    }
+  }
+
+  /**
+   * Gets the position of the given key's current record. Every write of the key appends a record
+   * at a new position, a compaction may move the record, too.
+   *
+   * @param key the key
+   * @return the position or {@code -1} if the key doesn't exist
+   */
+  public long getPosition(String key) {
+    Location location = index.get(key);
+    return location != null ? location.segmentId << 32 | location.offset : -1;
+  }
+
+  /**
+   * Checks whether the given key exists.
+   *
+   * @param key the key
+   * @return {@code true} if the key exists
+   */
+  public boolean contains(String key) {
+    return index.containsKey(key);
+  }
+
+  /**
+   * Stores the value for the given key.
+   *
+   * @param key the key
+   * @param value the value
+   */
+  public void put(String key, String value) {
+    putBytes(key, value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Stores the raw value for the given key.
+   *
+   * @param key the key
+   * @param value the value
+   */
+  public void putBytes(String key, byte[] value) {
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    synchronized (writeLock) {
+      Location location = append(keyBytes, value);
+      markDead(index.put(key, location));
+    }
+  }
+
+  /**
+   * Stores the value only if the key's current record is still at the given position.
+   *
+   * @param key the key
+   * @param position the expected position as returned by {@link #getPosition(String)}
+   * @param value the value
+   * @return {@code true} if the value has been stored
+   */
+  public boolean putIfPosition(String key, long position, String value) {
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    synchronized (writeLock) {
+      if (getPosition(key) != position) {
+        return false;
+      }
+      markDead(index.put(key, append(keyBytes, value.getBytes(StandardCharsets.UTF_8))));
+      return true;
+    }
+  }
+
+  /**
+   * Stores the value only if the key doesn't exist yet.
+   *
+   * @param key the key
+   * @param value the value
+   * @return {@code true} if the value has been stored
+   */
+  public boolean putIfAbsent(String key, String value) {
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    synchronized (writeLock) {
+      if (index.containsKey(key)) {
+        return false;
+      }
+      index.put(key, append(keyBytes, value.getBytes(StandardCharsets.UTF_8)));
+      return true;
+    }
+  }
+
+  /**
+   * Deletes the given key by appending a tombstone.
+   *
+   * @param key the key
+   * @return {@code true} if the key existed
+   */
+  public boolean delete(String key) {
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    synchronized (writeLock) {
+      Location previous = index.remove(key);
+      if (previous == null) {
+        return false;
+      }
+      markDead(previous);
+      Location tombstone = append(keyBytes, null);
+      segments.get(tombstone.segmentId).addDeadBytes(tombstone.length);
+      return true;
+    }
+  }
+
+  /**
+   * Deletes the given key only if its current record is still at the given position.
+   *
+   * @param key the key
+   * @param position the expected position as returned by {@link #getPosition(String)}
+   * @return {@code true} if the key has been deleted
+   */
+  public boolean deleteIfPosition(String key, long position) {
+    synchronized (writeLock) {
+      if (getPosition(key) != position) {
+        return false;
+      }
+      return delete(key);
+    }
+  }
+
+  public int size() {
+    return index.size();
+  }
+
+  public int getSegmentCount() {
+    return segments.size();
+  }
+
+  private Location append(byte[] key, byte[] value) {
+    int length = LogSegment.recordLength(key, value);
+    if (length > segmentSize) {
+      throw new IllegalArgumentException(
+          "record of " + length + " bytes exceeds the segment size " + segmentSize);
+    }
+    if (!activeSegment.hasRoom(length)) {
+      roll();
+    }
+    int offset = activeSegment.append(key, value);
+    return new Location(activeSegment.getId(), offset, length);
+  }
+
+  private void roll() {
+    activeSegment.force();
+    long nextId = activeSegment.getId() + 1;
+    try {
+      LogSegment segment = new LogSegment(directory, nextId, segmentSize);
+      segments.put(nextId, segment);
+      activeSegment = segment;
+      log.debug("Rolled log store {} to segment {}", directory, nextId);
+    } catch (IOException ex) {
+      throw new IllegalStateException("could not create log segment " + nextId, ex);
+    }
+  }
+
+  private void markDead(Location location) {
+    if (location != null) {
+      LogSegment segment = segments.get(location.segmentId);
+      if (segment != null) {
+        segment.addDeadBytes(location.length);
+      }
+    }
+  }
+
+  /**
+   * Checks whether the sealed segments exceed the configured share of dead bytes.
+   *
+   * @return {@code true} if a compaction would be worthwhile
+   */
+  public boolean needsCompaction() {
+    long written = 0;
+    long dead = 0;
+    for (LogSegment segment : segments.headMap(activeSegment.getId()).values()) {
+      written += segment.getWritePosition();
+      dead += segment.getDeadBytes();
+    }
+    return written > 0 && (double) dead / written >= compactionThreshold;
+  }
+
+  /**
+   * Compacts all sealed segments, i.e. re-appends their live records and removes the segment
+   * files. As all sealed segments are dropped together their tombstones can be dropped as well.
+   *
+   * @throws IOException in case a segment file couldn't be deleted
+   */
+  public void compact() throws IOException {
+    synchronized (compactionLock) {
+      long start = System.currentTimeMillis();
+      List<LogSegment> sealed =
+          new ArrayList<>(segments.headMap(activeSegment.getId()).values());
+      int moved = moveLiveRecords(sealed);
+
+      // the moved records have to be durable before their old copies are gone
+      synchronized (writeLock) {
+        activeSegment.force();
+      }
+      for (LogSegment segment : sealed) {
+        segments.remove(segment.getId());
+        segment.delete();
+      }
+      log.debug("Compacted {} segments of log store {}, moved {} records in {} ms", sealed.size(),
+          directory, moved, System.currentTimeMillis() - start);
+    }
+  }
+
+  /**
+   * Re-appends the records of the given segments which are still live to the active segment.
+   *
+   * @return the number of moved records
+   */
+  private int moveLiveRecords(List<LogSegment> sealed) {
+    int moved = 0;
+    for (LogSegment segment : sealed) {
+      int position = 0;
+      Record record;
+      while ((record = segment.readRecord(position)) != null) {
+        Location current = new Location(segment.getId(), record.offset, record.length);
+        if (!record.isTombstone()) {
+          synchronized (writeLock) {
+            if (current.equals(index.get(record.key))) {
+              index.put(record.key,
+                  append(record.key.getBytes(StandardCharsets.UTF_8), record.value));
+              moved++;
+            }
+          }
+        }
+        position += record.length;
+      }
+    }
+    return moved;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+    synchronized (writeLock) {
+      for (LogSegment segment : segments.values()) {
+        segment.close();
+      }
+    }
+  }
+
+  /**
+   * Position of a live record.
+   */
+  static final class Location {
+    final long segmentId;
+    final int offset;
+    final int length;
+
+    Location(long segmentId, int offset, int length) {
+      this.segmentId = segmentId;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Location)) {
+        return false;
+      }
+      Location other = (Location) obj;
+      return segmentId == other.segmentId && offset == other.offset;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(segmentId) * 31 + offset;
+    }
+  }
+}
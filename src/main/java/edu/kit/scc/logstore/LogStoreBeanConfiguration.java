@@ -0,0 +1,176 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.logstore;
+
+import edu.kit.scc.cdmiserver.dao.logstore.CdmiObjectDaoImpl;
+import edu.kit.scc.domain.DomainUsage;
+import edu.kit.scc.domain.FileDomainUsageStore;
+import edu.kit.scc.query.InMemoryMetadataIndex;
+import edu.kit.scc.query.MetadataIndex;
+
+import org.snia.cdmiserver.dao.CapabilityDao;
+import org.snia.cdmiserver.dao.CdmiObjectDao;
+import org.snia.cdmiserver.dao.ContainerDao;
+import org.snia.cdmiserver.dao.DataObjectDao;
+import org.snia.cdmiserver.dao.DomainDao;
+import org.snia.cdmiserver.dao.filesystem.CapabilityDaoImpl;
+import org.snia.cdmiserver.dao.filesystem.ContainerDaoImpl;
+import org.snia.cdmiserver.dao.filesystem.DataObjectDaoImpl;
+import org.snia.cdmiserver.dao.filesystem.DomainDaoImpl;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Metadata is kept in the embedded {@link LogStore}, data objects and containers stay files and
+ * directories below the base directory. The container, data object, capability and domain DAOs
+ * therefore are the file system ones, wired to the log store {@link CdmiObjectDao}.
+ */
+@Configuration
+@Profile({"logstore", "logstore-test"})
+public class LogStoreBeanConfiguration {
+
+  @Value("${cdmi.data.baseDirectory}")
+  private String baseDirectory;
+
+  @Value("${cdmi.logstore.directory}")
+  private String logDirectory;
+
+  @Value("${cdmi.logstore.segmentSize}")
+  private int segmentSize;
+
+  @Value("${cdmi.logstore.compactionThreshold}")
+  private double compactionThreshold;
+
+  @Value("${cdmi.logstore.compactionInterval}")
+  private long compactionInterval;
+
+  @Value("${cdmi.query.snapshotFile:cdmi_state/index.json}")
+  private String indexSnapshotFile;
+
+  @Value("${cdmi.query.snapshotInterval:60}")
+  private long indexSnapshotInterval;
+
+  @Value("${cdmi.domains.checkpointFile:cdmi_state/domain_usage.json}")
+  private String domainUsageCheckpointFile;
+
+  @Value("${cdmi.domains.checkpointInterval:60}")
+  private long domainUsageCheckpointInterval;
+
+  /**
+   * Opens the log store and rebuilds its index.
+   *
+   * @return the opened {@link LogStore}
+   * @throws IOException in case the log segments couldn't be read
+   */
+  @Bean(destroyMethod = "close")
+  public LogStore logStore() throws IOException {
+    LogStore logStore = new LogStore(Paths.get(logDirectory), segmentSize, compactionThreshold);
+    logStore.open();
+    logStore.startCompaction(compactionInterval);
+    return logStore;
+  }
+
+  /**
+   * Initializes the log store version of the CDMI object DAO interface.
+   *
+   * @return a {@link CdmiObjectDao}
+   */
+  @Bean
+  public CdmiObjectDao cdmiObjectDao(LogStore logStore) {
+    CdmiObjectDaoImpl cdmiObjectDaoImpl = new CdmiObjectDaoImpl();
+    cdmiObjectDaoImpl.setLogStore(logStore);
+    return cdmiObjectDaoImpl;
+  }
+
+  /**
+   * Initializes the {@link ContainerDao} on top of the log store meta-data.
+   *
+   * @return a {@link ContainerDao}
+   */
+  @Bean
+  public ContainerDao containerDao(CdmiObjectDao cdmiObjectDao) {
+    ContainerDaoImpl containerDaoImpl = new ContainerDaoImpl();
+    containerDaoImpl.setBaseDirectoryName(baseDirectory);
+    containerDaoImpl.setCdmiObjectDao(cdmiObjectDao);
+    return containerDaoImpl;
+  }
+
+  /**
+   * Initializes the {@link DataObjectDao} on top of the log store meta-data.
+   *
+   * @return a {@link DataObjectDao}
+   */
+  @Bean
+  public DataObjectDao dataObjectDao(CdmiObjectDao cdmiObjectDao, ContainerDao containerDao) {
+    DataObjectDaoImpl dataObjectDaoImpl = new DataObjectDaoImpl();
+    dataObjectDaoImpl.setBaseDirectoryName(baseDirectory);
+    dataObjectDaoImpl.setCdmiObjectDao(cdmiObjectDao);
+    dataObjectDaoImpl.setContainerDao(containerDao);
+    return dataObjectDaoImpl;
+  }
+
+  /**
+   * Initializes the {@link CapabilityDao} on top of the log store meta-data.
+   *
+   * @return a {@link CapabilityDao}
+   */
+  @Bean
+  public CapabilityDao capabilityDao(CdmiObjectDao cdmiObjectDao) {
+    CapabilityDaoImpl capabilityDaoImpl = new CapabilityDaoImpl();
+    capabilityDaoImpl.setBaseDirectory(baseDirectory);
+    capabilityDaoImpl.setCdmiObjectDao(cdmiObjectDao);
+    return capabilityDaoImpl;
+  }
+
+  /**
+   * Initializes the {@link DomainDao} on top of the log store meta-data.
+   *
+   * @return a {@link DomainDao}
+   */
+  @Bean
+  public DomainDao domainDao(CdmiObjectDao cdmiObjectDao) {
+    DomainDaoImpl domainDaoImpl = new DomainDaoImpl();
+    domainDaoImpl.setBaseDirectoryName(baseDirectory);
+    domainDaoImpl.setCdmiObjectDao(cdmiObjectDao);
+    return domainDaoImpl;
+  }
+
+  /**
+   * Initializes the in-memory {@link MetadataIndex} from its snapshot.
+   *
+   * @return a {@link MetadataIndex}
+   */
+  @Bean(destroyMethod = "close")
+  public MetadataIndex metadataIndex() {
+    InMemoryMetadataIndex metadataIndex =
+        new InMemoryMetadataIndex(Paths.get(indexSnapshotFile), indexSnapshotInterval);
+    metadataIndex.open();
+    return metadataIndex;
+  }
+
+  /**
+   * Initializes the {@link DomainUsage} from its last checkpoint.
+   *
+   * @return a {@link DomainUsage}
+   */
+  @Bean(destroyMethod = "close")
+  public DomainUsage domainUsage() {
+    DomainUsage domainUsage = new DomainUsage(
+        new FileDomainUsageStore(Paths.get(domainUsageCheckpointFile)),
+        domainUsageCheckpointInterval);
+    domainUsage.open();
+    return domainUsage;
+  }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.logstore;
+
+import edu.kit.scc.capability.CapabilitySnapshotStore;
+
+/**
+ * Keeps the capability snapshot as a single record of the {@link LogStore}.
+ */
+public class LogStoreCapabilitySnapshotStore implements CapabilitySnapshotStore {
+
+  public static final String SNAPSHOT_KEY = "snapshot:cdmi_capabilities";
+
+  private final LogStore logStore;
+
+  public LogStoreCapabilitySnapshotStore(LogStore logStore) {
+    this.logStore = logStore;
+  }
+
+  @Override
+  public String load() {
+    return logStore.get(SNAPSHOT_KEY);
+  }
+
+  @Override
+  public void save(String snapshot) {
+    logStore.put(SNAPSHOT_KEY, snapshot);
+  }
+}
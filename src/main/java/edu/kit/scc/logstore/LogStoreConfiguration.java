@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.logstore;
+
+import edu.kit.scc.capability.CapabilityResponseCache;
+import edu.kit.scc.capability.CapabilitySnapshot;
+import edu.kit.scc.capability.CapabilityTreeInitializer;
+
+import org.snia.cdmiserver.dao.CdmiObjectDao;
+import org.snia.cdmiserver.dao.DomainDao;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Paths;
+import java.util.HashMap;
+
+import javax.annotation.PostConstruct;
+
+@Component
+@Profile({"logstore", "logstore-test"})
+public class LogStoreConfiguration {
+
+  @Value("${cdmi.data.baseDirectory}")
+  private String baseDirectory;
+
+  @Value("${cdmi.qos.backend.type}")
+  private String backendType;
+
+  @Autowired
+  private CdmiObjectDao cdmiObjectDao;
+
+  @Autowired
+  private DomainDao domainDao;
+
+  @Autowired
+  private LogStore logStore;
+
+  @Autowired
+  private CapabilityResponseCache capabilityResponseCache;
+
+  private CapabilitySnapshot capabilitySnapshot;
+
+  public CapabilitySnapshot getCapabilitySnapshot() {
+    return capabilitySnapshot;
+  }
+
+  /**
+   * Configuration for CDMI log store version.
+   * 
+   */
+  @PostConstruct
+  public void init() {
+    HashMap<String, String> backendProperties = new HashMap<String, String>();
+    backendProperties.put("baseDirectory", baseDirectory);
+
+    CapabilityTreeInitializer initializer =
+        new CapabilityTreeInitializer(cdmiObjectDao, new LogStoreCapabilitySnapshotStore(logStore));
+    // the file system capability DAO still keeps a directory per capability
+    initializer.setCapabilityDirectory(Paths.get(baseDirectory));
+    capabilitySnapshot = initializer.initialize(backendType, backendProperties);
+    capabilityResponseCache.publish(capabilitySnapshot);
+    domainDao.createRootDomain();
+  }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.metrics;
+
+import org.json.JSONObject;
+
+/**
+ * A component exposing its counters via the {@code /cdmi_metrics} endpoint.
+ */
+public interface MetricsSource {
+
+  /**
+   * Gets the name the metrics are listed under.
+   *
+   * @return the name
+   */
+  String getMetricsName();
+
+  /**
+   * Gets a snapshot of the current metrics.
+   *
+   * @return the metrics as {@link JSONObject}
+   */
+  JSONObject getMetrics();
+}
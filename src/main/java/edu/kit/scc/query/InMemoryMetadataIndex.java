@@ -0,0 +1,288 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.query;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MetadataIndex} kept in memory, for the file system based profiles.
+ *
+ * <p>
+ * Each field has a sorted map from its values to the objects' paths, which serves exact and
+ * prefix lookups, and a sorted map from its numeric values, which serves range lookups. Updates
+ * are serialized, lookups run concurrently with them. The indexed terms of all objects are
+ * written to a snapshot file periodically and on shutdown and read back on start-up.
+ * </p>
+ */
+public class InMemoryMetadataIndex implements MetadataIndex {
+
+  private static final Logger log = LoggerFactory.getLogger(InMemoryMetadataIndex.class);
+
+  private final Path snapshotFile;
+  private final long snapshotInterval;
+
+  private final NavigableMap<String, Map<String, Set<String>>> documents =
+      new ConcurrentSkipListMap<>();
+  private final Map<String, NavigableMap<String, Set<String>>> values =
+      new ConcurrentHashMap<>();
+  private final Map<String, NavigableMap<Double, Set<String>>> numbers =
+      new ConcurrentHashMap<>();
+
+  private volatile boolean modified;
+
+  private ScheduledExecutorService scheduler;
+
+  /**
+   * Creates a new index, call {@link #open()} before using it.
+   *
+   * @param snapshotFile the snapshot file, {@code null} to keep the index in memory only
+   * @param snapshotInterval the interval in seconds the snapshot is written at if the index has
+   *        been modified
+   */
+  public InMemoryMetadataIndex(Path snapshotFile, long snapshotInterval) {
+    this.snapshotFile = snapshotFile;
+    this.snapshotInterval = snapshotInterval;
+  }
+
+  /**
+   * Reads the snapshot and starts writing it periodically.
+   */
+  public void open() {
+    if (snapshotFile == null) {
+      return;
+    }
+    try {
+      JSONObject snapshot =
+          new JSONObject(new String(Files.readAllBytes(snapshotFile), StandardCharsets.UTF_8));
+      for (String path : snapshot.keySet()) {
+        index(path, MetadataIndex.terms(snapshot.getJSONObject(path)));
+      }
+      modified = false;
+      log.debug("Read {} indexed objects from {}", documents.size(), snapshotFile);
+    } catch (NoSuchFileException ex) {
+      log.debug("no metadata index snapshot {}", snapshotFile);
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+
+    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "metadata-index-snapshot");
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.scheduleWithFixedDelay(() -> {
+      if (modified) {
+        save();
+      }
+    }, snapshotInterval, snapshotInterval, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Stops the periodic snapshots and writes the final one.
+   */
+  public void close() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+      save();
+    }
+  }
+
+  /**
+   * Writes the snapshot via a temporary file and an atomic rename.
+   */
+  public synchronized void save() {
+    modified = false;
+    JSONObject snapshot = new JSONObject();
+    for (Entry<String, Map<String, Set<String>>> document : documents.entrySet()) {
+      snapshot.put(document.getKey(), new JSONObject(document.getValue()));
+    }
+    try {
+      Files.createDirectories(snapshotFile.toAbsolutePath().getParent());
+      Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+      Files.write(tmp, snapshot.toString().getBytes(StandardCharsets.UTF_8));
+      Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      log.debug("Wrote {} indexed objects to {}", snapshot.length(), snapshotFile);
+    } catch (Exception ex) {
+      modified = true;
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+  }
+
+  @Override
+  public synchronized void index(String path, Map<String, Set<String>> terms) {
+    Map<String, Set<String>> previous = documents.get(path);
+    if (terms.equals(previous)) {
+      return;
+    }
+    Map<String, Set<String>> copy = new HashMap<>();
+    for (Entry<String, Set<String>> term : terms.entrySet()) {
+      copy.put(term.getKey(), Collections.unmodifiableSet(new TreeSet<>(term.getValue())));
+    }
+    if (previous != null) {
+      removeTerms(path, previous, copy);
+    }
+    for (Entry<String, Set<String>> term : copy.entrySet()) {
+      Set<String> previousValues = previous != null ? previous.get(term.getKey()) : null;
+      for (String value : term.getValue()) {
+        if (previousValues == null || !previousValues.contains(value)) {
+          add(path, term.getKey(), value);
+        }
+      }
+    }
+    documents.put(path, Collections.unmodifiableMap(copy));
+    modified = true;
+  }
+
+  @Override
+  public synchronized void remove(String path) {
+    removeDocument(path);
+    String prefix = path.endsWith("/") ? path : path + "/";
+    NavigableMap<String, Map<String, Set<String>>> descendants =
+        documents.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    for (String descendant : new TreeSet<>(descendants.keySet())) {
+      removeDocument(descendant);
+    }
+  }
+
+  private void removeDocument(String path) {
+    Map<String, Set<String>> previous = documents.remove(path);
+    if (previous != null) {
+      removeTerms(path, previous, Collections.emptyMap());
+      modified = true;
+    }
+  }
+
+  private void add(String path, String field, String value) {
+    values.computeIfAbsent(field, key -> new ConcurrentSkipListMap<>())
+        .computeIfAbsent(value, key -> new ConcurrentSkipListSet<>()).add(path);
+    Double number = MetadataIndex.number(value);
+    if (number != null) {
+      numbers.computeIfAbsent(field, key -> new ConcurrentSkipListMap<>())
+          .computeIfAbsent(number, key -> new ConcurrentSkipListSet<>()).add(path);
+    }
+  }
+
+  /**
+   * Removes the previous terms of an object which aren't part of its current ones.
+   */
+  private void removeTerms(String path, Map<String, Set<String>> previous,
+      Map<String, Set<String>> current) {
+    for (Entry<String, Set<String>> term : previous.entrySet()) {
+      Set<String> currentValues = current.get(term.getKey());
+      for (String value : term.getValue()) {
+        if (currentValues == null || !currentValues.contains(value)) {
+          removeValue(values.get(term.getKey()), value, path);
+          Double number = MetadataIndex.number(value);
+          if (number != null) {
+            removeValue(numbers.get(term.getKey()), number, path);
+          }
+        }
+      }
+    }
+  }
+
+  private static <K> void removeValue(NavigableMap<K, Set<String>> map, K key, String path) {
+    if (map == null) {
+      return;
+    }
+    Set<String> paths = map.get(key);
+    if (paths != null) {
+      paths.remove(path);
+      if (paths.isEmpty()) {
+        map.remove(key);
+      }
+    }
+  }
+
+  @Override
+  public Map<String, Set<String>> getTerms(String path) {
+    Map<String, Set<String>> terms = documents.get(path);
+    return terms != null ? terms : Collections.emptyMap();
+  }
+
+  @Override
+  public SortedSet<String> equal(String field, String value) {
+    NavigableMap<String, Set<String>> fieldValues = values.get(field);
+    Set<String> paths = fieldValues != null ? fieldValues.get(value) : null;
+    return paths != null ? new TreeSet<>(paths) : new TreeSet<>();
+  }
+
+  @Override
+  public SortedSet<String> prefix(String field, String prefix) {
+    SortedSet<String> paths = new TreeSet<>();
+    NavigableMap<String, Set<String>> fieldValues = values.get(field);
+    if (fieldValues != null) {
+      for (Set<String> valuePaths : fieldValues
+          .subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+        paths.addAll(valuePaths);
+      }
+    }
+    return paths;
+  }
+
+  @Override
+  public SortedSet<String> range(String field, double min, boolean minInclusive, double max,
+      boolean maxInclusive) {
+    SortedSet<String> paths = new TreeSet<>();
+    NavigableMap<Double, Set<String>> fieldNumbers = numbers.get(field);
+    if (fieldNumbers != null && (min < max || min == max && minInclusive && maxInclusive)) {
+      for (Set<String> valuePaths : fieldNumbers.subMap(min, minInclusive, max, maxInclusive)
+          .values()) {
+        paths.addAll(valuePaths);
+      }
+    }
+    return paths;
+  }
+
+  @Override
+  public SortedSet<String> exists(String field) {
+    SortedSet<String> paths = new TreeSet<>();
+    NavigableMap<String, Set<String>> fieldValues = values.get(field);
+    if (fieldValues != null) {
+      for (Set<String> valuePaths : fieldValues.values()) {
+        paths.addAll(valuePaths);
+      }
+    }
+    return paths;
+  }
+
+  @Override
+  public SortedSet<String> all() {
+    return new TreeSet<>(documents.keySet());
+  }
+
+  @Override
+  public long size() {
+    return documents.size();
+  }
+}
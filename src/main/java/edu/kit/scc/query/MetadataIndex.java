@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.query;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Inverted index from the fields and metadata of CDMI objects to their paths.
+ *
+ * <p>
+ * An object is indexed by its terms, the values of each of its indexed fields, see
+ * {@link MetadataIndexCdmiObjectDao#terms(org.snia.cdmiserver.model.CdmiObject)}. Values are
+ * looked up exactly or by prefix, values which are numbers additionally by range. All lookups
+ * return the matching paths in their natural order, which is the order query results are paged
+ * in.
+ * </p>
+ */
+public interface MetadataIndex {
+
+  /**
+   * Indexes an object, replacing the terms it was indexed with before.
+   *
+   * @param path the object's path
+   * @param terms the values of each of the object's fields
+   */
+  public void index(String path, Map<String, Set<String>> terms);
+
+  /**
+   * Removes an object and all objects below it from the index.
+   *
+   * @param path the object's path
+   */
+  public void remove(String path);
+
+  /**
+   * Gets the terms an object is indexed with.
+   *
+   * @param path the object's path
+   * @return the terms, empty if the object isn't indexed
+   */
+  public Map<String, Set<String>> getTerms(String path);
+
+  /**
+   * Finds the objects having a field with the given value.
+   *
+   * @param field the field's name
+   * @param value the value
+   * @return the objects' paths
+   */
+  public SortedSet<String> equal(String field, String value);
+
+  /**
+   * Finds the objects having a field with a value starting with the given prefix.
+   *
+   * @param field the field's name
+   * @param prefix the prefix
+   * @return the objects' paths
+   */
+  public SortedSet<String> prefix(String field, String prefix);
+
+  /**
+   * Finds the objects having a field with a numeric value within the given range.
+   *
+   * @param field the field's name
+   * @param min the lower bound
+   * @param minInclusive whether the lower bound is part of the range
+   * @param max the upper bound
+   * @param maxInclusive whether the upper bound is part of the range
+   * @return the objects' paths
+   */
+  public SortedSet<String> range(String field, double min, boolean minInclusive, double max,
+      boolean maxInclusive);
+
+  /**
+   * Finds the objects having the given field.
+   *
+   * @param field the field's name
+   * @return the objects' paths
+   */
+  public SortedSet<String> exists(String field);
+
+  /**
+   * Gets all indexed objects.
+   *
+   * @return the objects' paths
+   */
+  public SortedSet<String> all();
+
+  /**
+   * Gets the number of indexed objects.
+   *
+   * @return the number of objects
+   */
+  public long size();
+
+  /**
+   * Parses a value of the numeric index.
+   *
+   * @param value the value
+   * @return the number or {@code null} if the value isn't a finite number
+   */
+  public static Double number(String value) {
+    String trimmed = value.trim();
+    if (trimmed.isEmpty() || !(Character.isDigit(trimmed.charAt(trimmed.length() - 1))
+        || trimmed.charAt(trimmed.length() - 1) == '.')) {
+      // rules out NaN, Infinity and the float and double suffixes
+      return null;
+    }
+    try {
+      double number = Double.parseDouble(trimmed);
+      return Double.isInfinite(number) ? null : number;
+    } catch (NumberFormatException ex) {
+      return null;
+    }
+  }
+
+  /**
+   * Reads terms serialized as JSON object of value arrays.
+   *
+   * @param json the JSON serialized terms
+   * @return the terms
+   */
+  public static Map<String, Set<String>> terms(JSONObject json) {
+    Map<String, Set<String>> terms = new HashMap<>();
+    for (String field : json.keySet()) {
+      JSONArray fieldValues = json.getJSONArray(field);
+      Set<String> values = new TreeSet<>();
+      for (int i = 0; i < fieldValues.length(); i++) {
+        values.add(fieldValues.getString(i));
+      }
+      terms.put(field, values);
+    }
+    return terms;
+  }
+}
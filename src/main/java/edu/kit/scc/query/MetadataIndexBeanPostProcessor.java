@@ -0,0 +1,53 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.query;
+
+import edu.kit.scc.events.ChangeEventCdmiObjectDao;
+import edu.kit.scc.unitofwork.UnitOfWorkCdmiObjectDao;
+
+import org.snia.cdmiserver.dao.CdmiObjectDao;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+
+/**
+ * Wraps the profile's {@link CdmiObjectDao} into a {@link MetadataIndexCdmiObjectDao}. It runs
+ * before the change event and unit of work post processors, which wrap the result in turn.
+ */
+@Component
+public class MetadataIndexBeanPostProcessor implements BeanPostProcessor, Ordered {
+
+  @Autowired
+  private MetadataIndex metadataIndex;
+
+  @Override
+  public int getOrder() {
+    return Ordered.LOWEST_PRECEDENCE - 1;
+  }
+
+  @Override
+  public Object postProcessBeforeInitialization(Object bean, String beanName)
+      throws BeansException {
+    return bean;
+  }
+
+  @Override
+  public Object postProcessAfterInitialization(Object bean, String beanName)
+      throws BeansException {
+    if (bean instanceof CdmiObjectDao && !(bean instanceof MetadataIndexCdmiObjectDao)
+        && !(bean instanceof ChangeEventCdmiObjectDao)
+        && !(bean instanceof UnitOfWorkCdmiObjectDao)) {
+      return new MetadataIndexCdmiObjectDao((CdmiObjectDao) bean, metadataIndex);
+    }
+    return bean;
+  }
+}
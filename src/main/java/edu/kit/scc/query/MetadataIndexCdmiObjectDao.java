@@ -0,0 +1,285 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.query;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.dao.CdmiObjectDao;
+import org.snia.cdmiserver.dao.CdmiObjectDaoDecorator;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+import org.snia.cdmiserver.model.DataObject;
+import org.snia.cdmiserver.model.Queue;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * {@link CdmiObjectDao} decorator which keeps the {@link MetadataIndex} up to date with every
+ * written container, data object and queue. Like the change events it sits below the unit of
+ * work, so deferred updates are indexed when they are actually written.
+ */
+public class MetadataIndexCdmiObjectDao implements CdmiObjectDaoDecorator {
+
+  private static final Logger log = LoggerFactory.getLogger(MetadataIndexCdmiObjectDao.class);
+
+  private static final Set<String> INDEXED_FIELDS = new HashSet<>(
+      Arrays.asList("objectType", "objectID", "objectName", "parentURI", "metadata"));
+
+  private final CdmiObjectDao delegate;
+  private final MetadataIndex metadataIndex;
+
+  public MetadataIndexCdmiObjectDao(CdmiObjectDao delegate, MetadataIndex metadataIndex) {
+    this.delegate = delegate;
+    this.metadataIndex = metadataIndex;
+  }
+
+  @Override
+  public CdmiObjectDao getDelegate() {
+    return delegate;
+  }
+
+  @Override
+  public CdmiObject createCdmiObject(CdmiObject cdmiObject) {
+    return index(delegate.createCdmiObject(cdmiObject), null);
+  }
+
+  @Override
+  public CdmiObject createCdmiObject(CdmiObject cdmiObject, String path) {
+    return index(delegate.createCdmiObject(cdmiObject, path), path);
+  }
+
+  @Override
+  public CdmiObject createCdmiObject(CdmiObject cdmiObject, String path, Boolean override) {
+    return index(delegate.createCdmiObject(cdmiObject, path, override), path);
+  }
+
+  @Override
+  public CdmiObject getCdmiObject(String objectId) {
+    return delegate.getCdmiObject(objectId);
+  }
+
+  @Override
+  public CdmiObject updateCdmiObject(CdmiObject cdmiObject) {
+    return index(delegate.updateCdmiObject(cdmiObject), null);
+  }
+
+  @Override
+  public CdmiObject updateCdmiObject(CdmiObject cdmiObject, String path) {
+    return index(delegate.updateCdmiObject(cdmiObject, path), path);
+  }
+
+  @Override
+  public CdmiObject updateCdmiObjectFields(CdmiObject cdmiObject, String... fieldNames) {
+    CdmiObject updated = delegate.updateCdmiObjectFields(cdmiObject, fieldNames);
+    return indexesAny(fieldNames) ? index(updated, null) : updated;
+  }
+
+  @Override
+  public CdmiObject updateCdmiObjectIfVersion(String path, String version,
+      CdmiObject cdmiObject, String... fieldNames) {
+    CdmiObject updated =
+        delegate.updateCdmiObjectIfVersion(path, version, cdmiObject, fieldNames);
+    return indexesAny(fieldNames) ? index(updated, path) : updated;
+  }
+
+  @Override
+  public CdmiObject deleteCdmiObject(String objectId) {
+    // the path is deleted separately, which removes the object from the index
+    return delegate.deleteCdmiObject(objectId);
+  }
+
+  @Override
+  public CdmiObject getCdmiObjectByPath(String path) {
+    return delegate.getCdmiObjectByPath(path);
+  }
+
+  @Override
+  public CdmiObject getCdmiObjectByPath(String path, int childrenStart, int childrenEnd) {
+    return delegate.getCdmiObjectByPath(path, childrenStart, childrenEnd);
+  }
+
+  @Override
+  public List<JSONObject> getFieldsByPath(List<String> paths, String... fieldNames) {
+    return delegate.getFieldsByPath(paths, fieldNames);
+  }
+
+  @Override
+  public String getVersionByPath(String path) {
+    return delegate.getVersionByPath(path);
+  }
+
+  @Override
+  public CdmiObject addChild(Container container, String path, String childName) {
+    // only the children change, which aren't indexed
+    return delegate.addChild(container, path, childName);
+  }
+
+  @Override
+  public CdmiObject addChildren(Container container, String path,
+      Collection<String> childNames) {
+    return delegate.addChildren(container, path, childNames);
+  }
+
+  @Override
+  public CdmiObject deleteCdmiObjectByPath(String path) {
+    CdmiObject deleted = delegate.deleteCdmiObjectByPath(path);
+    if (deleted != null) {
+      remove(path);
+    }
+    return deleted;
+  }
+
+  @Override
+  public CdmiObject deleteCdmiObjectByPathIfVersion(String path, String version) {
+    CdmiObject deleted = delegate.deleteCdmiObjectByPathIfVersion(path, version);
+    if (deleted != null) {
+      remove(path);
+    }
+    return deleted;
+  }
+
+  @Override
+  public int deleteCdmiObjectsByPath(List<String> paths) {
+    int deleted = delegate.deleteCdmiObjectsByPath(paths);
+    for (String path : paths) {
+      remove(path);
+    }
+    return deleted;
+  }
+
+  @Override
+  public CdmiObject moveCdmiObject(String sourcePath, String path) {
+    CdmiObject moved = delegate.moveCdmiObject(sourcePath, path);
+    if (moved != null) {
+      remove(sourcePath);
+      index(moved, path);
+    }
+    return moved;
+  }
+
+  /**
+   * Gets the terms a CDMI object is indexed with: its type, id, name and parent and each of its
+   * metadata values below {@link MetadataQuery#METADATA_PREFIX}. The elements of array values are
+   * indexed separately, nested objects as their JSON serialization.
+   *
+   * @param cdmiObject the {@link CdmiObject}
+   * @return the terms, {@code null} for objects which aren't indexed, e.g. capabilities
+   */
+  public static Map<String, Set<String>> terms(CdmiObject cdmiObject) {
+    String objectType;
+    String objectName;
+    String parentUri;
+    JSONObject metadata;
+    if (cdmiObject instanceof Container) {
+      Container container = (Container) cdmiObject;
+      objectType = container.getObjectType();
+      objectName = container.getObjectName();
+      parentUri = container.getParentUri();
+      metadata = container.getMetadata();
+    } else if (cdmiObject instanceof DataObject) {
+      DataObject dataObject = (DataObject) cdmiObject;
+      objectType = dataObject.getObjectType();
+      objectName = dataObject.getObjectName();
+      parentUri = dataObject.getParentUri();
+      metadata = dataObject.getMetadata();
+    } else if (cdmiObject instanceof Queue) {
+      Queue queue = (Queue) cdmiObject;
+      objectType = queue.getObjectType();
+      objectName = queue.getObjectName();
+      parentUri = queue.getParentUri();
+      metadata = queue.getMetadata();
+    } else {
+      return null;
+    }
+
+    Map<String, Set<String>> terms = new HashMap<>();
+    addTerm(terms, "objectType", objectType);
+    addTerm(terms, "objectID", cdmiObject.getObjectId());
+    addTerm(terms, "objectName", objectName);
+    addTerm(terms, "parentURI", parentUri);
+    if (metadata != null) {
+      for (String key : metadata.keySet()) {
+        Object value = metadata.get(key);
+        if (value instanceof JSONArray) {
+          for (Object element : (JSONArray) value) {
+            addTerm(terms, MetadataQuery.METADATA_PREFIX + key, termValue(element));
+          }
+        } else {
+          addTerm(terms, MetadataQuery.METADATA_PREFIX + key, termValue(value));
+        }
+      }
+    }
+    return terms;
+  }
+
+  private static void addTerm(Map<String, Set<String>> terms, String field, String value) {
+    if (value != null) {
+      terms.computeIfAbsent(field, key -> new TreeSet<>()).add(value);
+    }
+  }
+
+  private static String termValue(Object value) {
+    return value instanceof String ? (String) value : JSONObject.valueToString(value);
+  }
+
+  private static boolean indexesAny(String... fieldNames) {
+    for (String fieldName : fieldNames) {
+      if (INDEXED_FIELDS.contains(fieldName)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private CdmiObject index(CdmiObject cdmiObject, String path) {
+    Map<String, Set<String>> terms = terms(cdmiObject);
+    if (terms == null) {
+      return cdmiObject;
+    }
+    String indexPath = path != null ? path : path(terms);
+    if (indexPath == null) {
+      return cdmiObject;
+    }
+    try {
+      metadataIndex.index(Paths.get(indexPath).normalize().toString(), terms);
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return cdmiObject;
+  }
+
+  private void remove(String path) {
+    try {
+      metadataIndex.remove(Paths.get(path).normalize().toString());
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+  }
+
+  private static String path(Map<String, Set<String>> terms) {
+    Set<String> objectName = terms.get("objectName");
+    if (objectName == null) {
+      return null;
+    }
+    Set<String> parentUri = terms.get("parentURI");
+    return Paths.get(parentUri != null ? parentUri.iterator().next() : "/",
+        objectName.iterator().next()).toString();
+  }
+}
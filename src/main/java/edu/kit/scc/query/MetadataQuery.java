@@ -0,0 +1,223 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.query;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * A query in the style of the scope specification of CDMI query queues, executed against a
+ * {@link MetadataIndex}.
+ *
+ * <p>
+ * The query's {@code cdmi_scope_specification} is an array of scopes; an object matches if it
+ * matches any of them, and it matches a scope if it matches all of the scope's conditions. A
+ * condition is given per field as {@code "<operator> <value>"}, for the fields objectType,
+ * objectID, objectName and parentURI and, below {@code metadata}, for the user and system
+ * metadata. The operators are {@code ==}, {@code !=}, {@code starts}, the numeric comparisons
+ * {@code <}, {@code <=}, {@code >} and {@code >=}, and {@code exists} and {@code !exists}
+ * without value:
+ * </p>
+ *
+ * <pre>
+ * {"cdmi_scope_specification": [{"parentURI": "starts /data",
+ *     "metadata": {"color": "== red", "cdmi_size": "&gt;= 1024"}}]}
+ * </pre>
+ */
+public class MetadataQuery {
+
+  public static final String METADATA_PREFIX = "metadata.";
+
+  private static final Set<String> FIELDS =
+      new HashSet<>(Arrays.asList("objectType", "objectID", "objectName", "parentURI"));
+
+  private final List<List<Condition>> scopes;
+
+  private MetadataQuery(List<List<Condition>> scopes) {
+    this.scopes = scopes;
+  }
+
+  /**
+   * Parses a query.
+   *
+   * @param json the JSON serialized query
+   * @return the {@link MetadataQuery}
+   * @throws IllegalArgumentException in case of an unsupported field or condition
+   * @throws org.json.JSONException in case of a malformed query
+   */
+  public static MetadataQuery fromJson(JSONObject json) {
+    JSONArray scopeSpecification = json.optJSONArray("cdmi_scope_specification");
+    if (scopeSpecification == null) {
+      throw new IllegalArgumentException("missing cdmi_scope_specification");
+    }
+    List<List<Condition>> scopes = new ArrayList<>();
+    for (int i = 0; i < scopeSpecification.length(); i++) {
+      JSONObject scope = scopeSpecification.getJSONObject(i);
+      List<Condition> conditions = new ArrayList<>();
+      for (String field : scope.keySet()) {
+        if (field.equals("metadata")) {
+          JSONObject metadata = scope.getJSONObject(field);
+          for (String key : metadata.keySet()) {
+            conditions.add(Condition.parse(METADATA_PREFIX + key, metadata.getString(key)));
+          }
+        } else if (FIELDS.contains(field)) {
+          conditions.add(Condition.parse(field, scope.getString(field)));
+        } else {
+          throw new IllegalArgumentException("unsupported scope field " + field);
+        }
+      }
+      // the most selective conditions are evaluated first
+      conditions.sort((first, second) -> first.operator.compareTo(second.operator));
+      scopes.add(conditions);
+    }
+    return new MetadataQuery(scopes);
+  }
+
+  /**
+   * Finds the objects at or below a path matching the query.
+   *
+   * @param index the {@link MetadataIndex}
+   * @param path the path the results are restricted to
+   * @return the objects' paths
+   */
+  public SortedSet<String> execute(MetadataIndex index, String path) {
+    SortedSet<String> results = new TreeSet<>();
+    for (List<Condition> conditions : scopes) {
+      results.addAll(match(index, conditions));
+    }
+    if (path.equals("/")) {
+      return results;
+    }
+    SortedSet<String> below = new TreeSet<>(results.subSet(path + "/", path + "0"));
+    if (results.contains(path)) {
+      below.add(path);
+    }
+    return below;
+  }
+
+  private static SortedSet<String> match(MetadataIndex index, List<Condition> conditions) {
+    if (conditions.isEmpty()) {
+      return index.all();
+    }
+    SortedSet<String> matches = null;
+    for (Condition condition : conditions) {
+      SortedSet<String> conditionMatches = condition.evaluate(index);
+      if (matches == null) {
+        matches = conditionMatches;
+      } else {
+        matches.retainAll(conditionMatches);
+      }
+      if (matches.isEmpty()) {
+        break;
+      }
+    }
+    return matches;
+  }
+
+  /**
+   * The condition on a single field.
+   */
+  private static final class Condition {
+
+    /**
+     * The operators, ordered by the selectivity of their conditions.
+     */
+    private enum Operator {
+      EQUAL("=="), STARTS("starts"), LESS("<"), LESS_OR_EQUAL("<="), GREATER(">"),
+      GREATER_OR_EQUAL(">="), EXISTS("exists"), NOT_EQUAL("!="), NOT_EXISTS("!exists");
+
+      private final String symbol;
+
+      Operator(String symbol) {
+        this.symbol = symbol;
+      }
+    }
+
+    private final String field;
+    private final Operator operator;
+    private final String value;
+    private final double number;
+
+    private Condition(String field, Operator operator, String value, double number) {
+      this.field = field;
+      this.operator = operator;
+      this.value = value;
+      this.number = number;
+    }
+
+    static Condition parse(String field, String expression) {
+      int separator = expression.indexOf(' ');
+      String symbol = separator >= 0 ? expression.substring(0, separator) : expression;
+      String value = separator >= 0 ? expression.substring(separator + 1) : "";
+      for (Operator operator : Operator.values()) {
+        if (!operator.symbol.equals(symbol)) {
+          continue;
+        }
+        switch (operator) {
+          case EXISTS:
+          case NOT_EXISTS:
+            if (!value.trim().isEmpty()) {
+              throw new IllegalArgumentException(symbol + " takes no value for " + field);
+            }
+            return new Condition(field, operator, null, 0);
+          case LESS:
+          case LESS_OR_EQUAL:
+          case GREATER:
+          case GREATER_OR_EQUAL:
+            Double number = MetadataIndex.number(value);
+            if (number == null) {
+              throw new IllegalArgumentException("no number " + value + " for " + field);
+            }
+            return new Condition(field, operator, value, number);
+          default:
+            return new Condition(field, operator, value, 0);
+        }
+      }
+      throw new IllegalArgumentException("unsupported condition " + expression + " for " + field);
+    }
+
+    SortedSet<String> evaluate(MetadataIndex index) {
+      switch (operator) {
+        case EQUAL:
+          return index.equal(field, value);
+        case STARTS:
+          return index.prefix(field, value);
+        case LESS:
+          return index.range(field, Double.NEGATIVE_INFINITY, true, number, false);
+        case LESS_OR_EQUAL:
+          return index.range(field, Double.NEGATIVE_INFINITY, true, number, true);
+        case GREATER:
+          return index.range(field, number, false, Double.POSITIVE_INFINITY, true);
+        case GREATER_OR_EQUAL:
+          return index.range(field, number, true, Double.POSITIVE_INFINITY, true);
+        case EXISTS:
+          return index.exists(field);
+        case NOT_EQUAL:
+          SortedSet<String> different = index.exists(field);
+          different.removeAll(index.equal(field, value));
+          return different;
+        case NOT_EXISTS:
+          SortedSet<String> missing = index.all();
+          missing.removeAll(index.exists(field));
+          return missing;
+        default:
+          return new TreeSet<>();
+      }
+    }
+  }
+}
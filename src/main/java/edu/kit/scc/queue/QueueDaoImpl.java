@@ -0,0 +1,317 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.queue;
+
+import edu.kit.scc.metrics.MetricsSource;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.dao.CdmiObjectDao;
+import org.snia.cdmiserver.dao.QueueDao;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+import org.snia.cdmiserver.model.Queue;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * {@link QueueDao} keeping each queue's values in its own {@link QueueLog} below the queue
+ * directory, named by the queue's object id. The queue's metadata is a regular CDMI object of
+ * the configured {@link CdmiObjectDao}, enqueuing and dequeuing values don't touch it.
+ */
+@Component
+public class QueueDaoImpl implements QueueDao, MetricsSource {
+
+  private static final Logger log = LoggerFactory.getLogger(QueueDaoImpl.class);
+
+  static final String PATH_FILE = "queue.path";
+
+  @Autowired
+  private CdmiObjectDao cdmiObjectDao;
+
+  @Value("${cdmi.queue.directory:cdmi_state/queues}")
+  private String directory;
+
+  @Value("${cdmi.queue.segmentSize:8388608}")
+  private int segmentSize;
+
+  @Value("${cdmi.queue.flushInterval:1}")
+  private long flushInterval;
+
+  private final Map<String, QueueLog> queues = new ConcurrentHashMap<>();
+
+  private ScheduledExecutorService scheduler;
+
+  private final LongAdder enqueued = new LongAdder();
+  private final LongAdder dequeued = new LongAdder();
+  private final LongAdder acknowledged = new LongAdder();
+
+  public String getDirectory() {
+    return directory;
+  }
+
+  public void setDirectory(String directory) {
+    this.directory = directory;
+  }
+
+  public int getSegmentSize() {
+    return segmentSize;
+  }
+
+  public void setSegmentSize(int segmentSize) {
+    this.segmentSize = segmentSize;
+  }
+
+  /**
+   * Opens the logs of all existing queues and starts forcing them to disk periodically.
+   *
+   * @throws IOException in case a queue log couldn't be opened
+   */
+  @PostConstruct
+  public void init() throws IOException {
+    Path queueDirectory = Paths.get(directory);
+    if (Files.isDirectory(queueDirectory)) {
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(queueDirectory)) {
+        for (Path queueLogDirectory : stream) {
+          Path pathFile = queueLogDirectory.resolve(PATH_FILE);
+          if (Files.exists(pathFile)) {
+            QueueLog queueLog = new QueueLog(queueLogDirectory, segmentSize);
+            queueLog.open();
+            queues.put(new String(Files.readAllBytes(pathFile), StandardCharsets.UTF_8),
+                queueLog);
+          }
+        }
+      }
+    }
+    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "queue-flush");
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.scheduleWithFixedDelay(() -> {
+      for (QueueLog queueLog : queues.values()) {
+        queueLog.force();
+      }
+    }, flushInterval, flushInterval, TimeUnit.SECONDS);
+    log.debug("Opened {} queues in {}", queues.size(), directory);
+  }
+
+  /**
+   * Closes all queue logs.
+   */
+  @PreDestroy
+  public void cleanUp() {
+    scheduler.shutdownNow();
+    for (QueueLog queueLog : queues.values()) {
+      try {
+        queueLog.close();
+      } catch (IOException ex) {
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+      }
+    }
+  }
+
+  @Override
+  public Queue createByPath(String path, Queue queueRequest) {
+    Path urlPath = Paths.get(path.trim());
+    Path parentPath = urlPath.getParent();
+    if (parentPath == null) {
+      return null;
+    }
+    CdmiObject parent = cdmiObjectDao.getCdmiObjectByPath(parentPath.toString());
+    if (!(parent instanceof Container)) {
+      log.debug("No parent container for queue {}", path);
+      return null;
+    }
+
+    Queue queue = new Queue(urlPath.getFileName().toString(), parentPath.toString(),
+        parent.getObjectId());
+    queue.setCompletionStatus("Complete");
+    queue.setMetadata(queueRequest.getMetadata());
+    CdmiObject created = cdmiObjectDao.createCdmiObject(queue, urlPath.toString());
+    if (!(created instanceof Queue)) {
+      return null;
+    }
+    queue = (Queue) created;
+
+    try {
+      QueueLog stale = queues.remove(urlPath.toString());
+      if (stale != null) {
+        // left over from a queue whose metadata is gone
+        stale.delete();
+      }
+      QueueLog queueLog = new QueueLog(Paths.get(directory, queue.getObjectId()), segmentSize);
+      queueLog.open();
+      Files.write(queueLog.getDirectory().resolve(PATH_FILE),
+          urlPath.toString().getBytes(StandardCharsets.UTF_8));
+      queues.put(urlPath.toString(), queueLog);
+    } catch (IOException ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+      cdmiObjectDao.deleteCdmiObjectByPath(urlPath.toString());
+      return null;
+    }
+    cdmiObjectDao.addChild((Container) parent, parentPath.toString(), queue.getObjectName());
+
+    if (queueRequest.getValue() != null) {
+      enqueue(urlPath.toString(), QueueDao.values(queueRequest.getValue()));
+    }
+    return queue;
+  }
+
+  @Override
+  public Queue deleteByPath(String path) {
+    Queue queue = findByPath(path);
+    if (queue != null) {
+      cdmiObjectDao.deleteCdmiObjectByPath(path.trim());
+      deleteLog(path);
+    }
+    return queue;
+  }
+
+  @Override
+  public Queue deleteByPathIfVersion(String path, String version) {
+    // the values are only removed if the metadata was still at the version
+    CdmiObject deleted = cdmiObjectDao.deleteCdmiObjectByPathIfVersion(path.trim(), version);
+    if (deleted instanceof Queue) {
+      deleteLog(path);
+      return (Queue) deleted;
+    }
+    return null;
+  }
+
+  private void deleteLog(String path) {
+    QueueLog queueLog = queues.remove(path.trim());
+    if (queueLog != null) {
+      try {
+        queueLog.delete();
+      } catch (IOException ex) {
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+      }
+    }
+  }
+
+  @Override
+  public Queue findByObjectId(String objectId) {
+    CdmiObject cdmiObject = cdmiObjectDao.getCdmiObject(objectId);
+    return cdmiObject instanceof Queue ? (Queue) cdmiObject : null;
+  }
+
+  @Override
+  public Queue findByPath(String path) {
+    CdmiObject cdmiObject = cdmiObjectDao.getCdmiObjectByPath(path.trim());
+    return cdmiObject instanceof Queue ? (Queue) cdmiObject : null;
+  }
+
+  @Override
+  public boolean isQueue(String path) {
+    return queues.containsKey(path);
+  }
+
+  @Override
+  public long enqueue(String path, List<byte[]> values) {
+    QueueLog queueLog = queues.get(path);
+    if (queueLog == null) {
+      return -1;
+    }
+    long first = queueLog.enqueue(values);
+    enqueued.add(values.size());
+    return first;
+  }
+
+  @Override
+  public Queue dequeue(Queue queue, String consumer, int count) {
+    String path = Paths.get(queue.getParentUri(), queue.getObjectName()).toString();
+    QueueLog queueLog = queues.get(path);
+    if (queueLog == null) {
+      return null;
+    }
+    QueueLog.Batch batch;
+    try {
+      batch = queueLog.dequeue(consumer, count);
+    } catch (IOException ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+      return null;
+    }
+    JSONArray value = new JSONArray();
+    for (byte[] bytes : batch.getValues()) {
+      value.put(new String(bytes, StandardCharsets.UTF_8));
+    }
+    queue.setValue(value);
+    if (!batch.getValues().isEmpty()) {
+      queue.setValuerange(batch.getFirstPosition() + "-"
+          + (batch.getFirstPosition() + batch.getValues().size() - 1));
+    }
+    queue.setQueueValues(queueLog.getPending(consumer));
+    dequeued.add(batch.getValues().size());
+    return queue;
+  }
+
+  @Override
+  public long acknowledge(String path, String consumer, long count) {
+    QueueLog queueLog = queues.get(path);
+    if (queueLog == null) {
+      return -1;
+    }
+    try {
+      long acknowledgedValues = queueLog.acknowledge(consumer, count);
+      acknowledged.add(acknowledgedValues);
+      return acknowledgedValues;
+    } catch (IOException ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+      return -1;
+    }
+  }
+
+  @Override
+  public long getQueueValues(String path, String consumer) {
+    QueueLog queueLog = queues.get(path);
+    return queueLog != null ? queueLog.getPending(consumer) : 0;
+  }
+
+  @Override
+  public String getMetricsName() {
+    return "queues";
+  }
+
+  @Override
+  public JSONObject getMetrics() {
+    long segments = 0;
+    for (QueueLog queueLog : queues.values()) {
+      segments += queueLog.getSegmentCount();
+    }
+    JSONObject metrics = new JSONObject();
+    metrics.put("queues", queues.size());
+    metrics.put("segments", segments);
+    metrics.put("enqueued", enqueued.sum());
+    metrics.put("dequeued", dequeued.sum());
+    metrics.put("acknowledged", acknowledged.sum());
+    return metrics;
+  }
+}
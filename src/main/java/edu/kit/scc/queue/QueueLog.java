@@ -0,0 +1,336 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.queue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * The append-only value log of a single CDMI queue.
+ *
+ * <p>
+ * Enqueued values are appended to the active memory-mapped {@link QueueSegment} and numbered by
+ * their position in the queue. Each named consumer has its own offsets: values are dequeued in
+ * batches from the consumer's delivered offset and acknowledged cumulatively, only the
+ * acknowledged offset is persisted, so values delivered but not acknowledged before a restart
+ * are delivered again. Segments acknowledged by all consumers are deleted.
+ * </p>
+ */
+public class QueueLog implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(QueueLog.class);
+
+  private static final Pattern CONSUMER_NAME = Pattern.compile("[A-Za-z0-9_.-]{1,64}");
+
+  private final Path directory;
+  private final int segmentSize;
+
+  private final NavigableMap<Long, QueueSegment> segments = new TreeMap<>();
+  private final Map<String, Consumer> consumers = new HashMap<>();
+
+  private QueueSegment activeSegment;
+
+  /**
+   * Values read from the queue.
+   */
+  public static final class Batch {
+
+    private final long firstPosition;
+    private final List<byte[]> values;
+
+    Batch(long firstPosition, List<byte[]> values) {
+      this.firstPosition = firstPosition;
+      this.values = values;
+    }
+
+    public long getFirstPosition() {
+      return firstPosition;
+    }
+
+    public List<byte[]> getValues() {
+      return values;
+    }
+  }
+
+  /**
+   * Creates a new queue log, call {@link #open()} before using it.
+   *
+   * @param directory the directory holding the queue's segment and offset files
+   * @param segmentSize the size of a single segment file in bytes
+   */
+  public QueueLog(Path directory, int segmentSize) {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+  }
+
+  public Path getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Opens the log and recovers the values and consumer offsets from the existing files.
+   *
+   * @throws IOException in case the files couldn't be read
+   */
+  public synchronized void open() throws IOException {
+    Files.createDirectories(directory);
+
+    List<Long> firstPositions = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.log")) {
+      for (Path file : stream) {
+        String name = file.getFileName().toString();
+        firstPositions.add(Long.valueOf(name.substring(0, name.length() - ".log".length())));
+      }
+    }
+    firstPositions.sort(null);
+    for (Long firstPosition : firstPositions) {
+      QueueSegment segment = new QueueSegment(directory, firstPosition, segmentSize);
+      segment.recover();
+      segments.put(firstPosition, segment);
+    }
+    if (segments.isEmpty()) {
+      activeSegment = new QueueSegment(directory, 0, segmentSize);
+      segments.put(activeSegment.getFirstPosition(), activeSegment);
+    } else {
+      activeSegment = segments.lastEntry().getValue();
+    }
+
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.offset")) {
+      for (Path file : stream) {
+        String name = file.getFileName().toString();
+        Consumer consumer = new Consumer(file);
+        consumers.put(name.substring(0, name.length() - ".offset".length()), consumer);
+      }
+    }
+    log.debug("Opened queue log {} with {} segments up to position {} and {} consumers",
+        directory, segments.size(), getEndPosition(), consumers.size());
+  }
+
+  /**
+   * Appends values to the queue.
+   *
+   * @param values the values
+   * @return the position of the first appended value
+   */
+  public synchronized long enqueue(List<byte[]> values) {
+    long first = getEndPosition();
+    for (byte[] value : values) {
+      int length = QueueSegment.recordLength(value);
+      if (length > segmentSize) {
+        throw new IllegalArgumentException(
+            "value of " + length + " bytes exceeds the segment size " + segmentSize);
+      }
+      if (!activeSegment.hasRoom(length)) {
+        roll();
+      }
+      activeSegment.append(value);
+    }
+    return first;
+  }
+
+  /**
+   * Reads the next values for a consumer and advances its delivered offset.
+   *
+   * @param consumerName the consumer's name
+   * @param max the maximum number of values
+   * @return the {@link Batch}, without values if the consumer has read all values
+   * @throws IOException in case a new consumer's offset file couldn't be created
+   */
+  public synchronized Batch dequeue(String consumerName, int max) throws IOException {
+    Consumer consumer = consumer(consumerName);
+    long first = Math.max(consumer.delivered, getStartPosition());
+    long end = Math.min(getEndPosition(), first + max);
+    List<byte[]> values = new ArrayList<>((int) (end - first));
+    for (long position = first; position < end; position++) {
+      QueueSegment segment = segments.floorEntry(position).getValue();
+      values.add(segment.read((int) (position - segment.getFirstPosition())));
+    }
+    consumer.delivered = end;
+    return new Batch(first, values);
+  }
+
+  /**
+   * Acknowledges the oldest delivered values of a consumer, values can't be acknowledged before
+   * they have been delivered.
+   *
+   * @param consumerName the consumer's name
+   * @param count the number of acknowledged values
+   * @return the number of values actually acknowledged
+   * @throws IOException in case a new consumer's offset file couldn't be created
+   */
+  public synchronized long acknowledge(String consumerName, long count) throws IOException {
+    Consumer consumer = consumer(consumerName);
+    long acknowledged = Math.min(consumer.getAcknowledged() + count, consumer.delivered);
+    long previous = consumer.getAcknowledged();
+    consumer.setAcknowledged(acknowledged);
+    deleteAcknowledgedSegments();
+    return acknowledged - previous;
+  }
+
+  /**
+   * Gets the number of values a consumer hasn't acknowledged yet.
+   *
+   * @param consumerName the consumer's name
+   * @return the number of values
+   */
+  public synchronized long getPending(String consumerName) {
+    Consumer consumer = consumers.get(consumerName);
+    long acknowledged = consumer != null ? consumer.getAcknowledged() : 0;
+    return getEndPosition() - Math.max(acknowledged, getStartPosition());
+  }
+
+  /**
+   * Gets the position of the oldest value still kept.
+   *
+   * @return the position
+   */
+  public synchronized long getStartPosition() {
+    return segments.firstKey();
+  }
+
+  /**
+   * Gets the position the next enqueued value will get.
+   *
+   * @return the position
+   */
+  public synchronized long getEndPosition() {
+    return activeSegment.getEndPosition();
+  }
+
+  public synchronized int getSegmentCount() {
+    return segments.size();
+  }
+
+  private Consumer consumer(String name) throws IOException {
+    Consumer consumer = consumers.get(name);
+    if (consumer == null) {
+      if (!CONSUMER_NAME.matcher(name).matches()) {
+        throw new IllegalArgumentException("invalid consumer name " + name);
+      }
+      consumer = new Consumer(directory.resolve(name + ".offset"));
+      // a new consumer starts with the oldest kept value
+      consumer.setAcknowledged(getStartPosition());
+      consumers.put(name, consumer);
+    }
+    return consumer;
+  }
+
+  private void roll() {
+    activeSegment.force();
+    long firstPosition = activeSegment.getEndPosition();
+    try {
+      QueueSegment segment = new QueueSegment(directory, firstPosition, segmentSize);
+      segments.put(firstPosition, segment);
+      activeSegment = segment;
+      log.debug("Rolled queue log {} to segment {}", directory, firstPosition);
+    } catch (IOException ex) {
+      throw new IllegalStateException("could not create queue segment " + firstPosition, ex);
+    }
+  }
+
+  private void deleteAcknowledgedSegments() throws IOException {
+    long acknowledged = Long.MAX_VALUE;
+    for (Consumer consumer : consumers.values()) {
+      acknowledged = Math.min(acknowledged, consumer.getAcknowledged());
+    }
+    while (segments.size() > 1 && segments.firstEntry().getValue() != activeSegment
+        && segments.firstEntry().getValue().getEndPosition() <= acknowledged) {
+      QueueSegment segment = segments.pollFirstEntry().getValue();
+      segment.delete();
+      log.debug("Deleted acknowledged segment {} of queue log {}", segment, directory);
+    }
+  }
+
+  /**
+   * Forces the active segment and the consumer offsets to disk.
+   */
+  public synchronized void force() {
+    activeSegment.force();
+    for (Consumer consumer : consumers.values()) {
+      consumer.offset.force();
+    }
+  }
+
+  /**
+   * Closes the log and deletes all of its files.
+   *
+   * @throws IOException in case a file couldn't be deleted
+   */
+  public synchronized void delete() throws IOException {
+    close();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+      for (Path file : stream) {
+        Files.delete(file);
+      }
+    }
+    Files.deleteIfExists(directory);
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    for (QueueSegment segment : segments.values()) {
+      segment.close();
+    }
+    for (Consumer consumer : consumers.values()) {
+      consumer.close();
+    }
+  }
+
+  /**
+   * A consumer's offsets, the acknowledged offset is kept in a memory-mapped file.
+   */
+  private static final class Consumer implements Closeable {
+
+    private final FileChannel channel;
+    private final MappedByteBuffer offset;
+    private long delivered;
+
+    Consumer(Path file) throws IOException {
+      this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+          StandardOpenOption.WRITE);
+      this.offset = channel.map(MapMode.READ_WRITE, 0, Long.BYTES);
+      this.delivered = getAcknowledged();
+    }
+
+    long getAcknowledged() {
+      return offset.getLong(0);
+    }
+
+    void setAcknowledged(long acknowledged) {
+      offset.putLong(0, acknowledged);
+      delivered = Math.max(delivered, acknowledged);
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (channel.isOpen()) {
+        offset.force();
+        channel.close();
+      }
+    }
+  }
+}
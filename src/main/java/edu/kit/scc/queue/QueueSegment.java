@@ -0,0 +1,202 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.queue;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * A single memory-mapped, pre-allocated segment file of a {@link QueueLog}.
+ *
+ * <p>
+ * Values are laid out as {@code [crc32][length][value]}, the checksum covers the length as well,
+ * so the zero-filled unused tail of a segment never validates. A segment is named after the
+ * position of its first value, the offsets of its values are kept in memory and rebuilt by
+ * scanning the segment on start-up.
+ * </p>
+ */
+public class QueueSegment implements Closeable {
+
+  static final int HEADER_SIZE = 8;
+
+  private final long firstPosition;
+  private final Path file;
+  private final FileChannel channel;
+  private final MappedByteBuffer buffer;
+  private final ByteBuffer writeBuffer;
+  private final int capacity;
+
+  private int[] offsets = new int[64];
+  private volatile int count;
+
+  private int writePosition;
+
+  /**
+   * Opens or creates the segment file starting at the given position.
+   *
+   * @param directory the queue's directory
+   * @param firstPosition the position of the segment's first value
+   * @param capacity the segment's size in bytes
+   * @throws IOException in case the segment file couldn't be mapped
+   */
+  public QueueSegment(Path directory, long firstPosition, int capacity) throws IOException {
+    this.firstPosition = firstPosition;
+    this.capacity = capacity;
+    this.file = directory.resolve(fileName(firstPosition));
+    this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    this.buffer = channel.map(MapMode.READ_WRITE, 0, capacity);
+    this.writeBuffer = buffer.duplicate();
+  }
+
+  static String fileName(long firstPosition) {
+    return String.format("%020d.log", firstPosition);
+  }
+
+  public long getFirstPosition() {
+    return firstPosition;
+  }
+
+  /**
+   * Gets the position after the segment's last value.
+   *
+   * @return the position the next value appended to this segment would get
+   */
+  public long getEndPosition() {
+    return firstPosition + count;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  public int getWritePosition() {
+    return writePosition;
+  }
+
+  static int recordLength(byte[] value) {
+    return HEADER_SIZE + value.length;
+  }
+
+  /**
+   * Checks whether a value of the given length fits into the remaining space.
+   *
+   * @param length the record length in bytes
+   * @return {@code true} if the record fits
+   */
+  boolean hasRoom(int length) {
+    return writePosition + length <= capacity;
+  }
+
+  /**
+   * Appends a value. Callers have to serialize writes.
+   *
+   * @param value the value
+   */
+  void append(byte[] value) {
+    int offset = writePosition;
+    writeBuffer.position(offset + HEADER_SIZE);
+    writeBuffer.put(value);
+    writeBuffer.putInt(offset + 4, value.length);
+    // the checksum is written last, a torn record never validates
+    writeBuffer.putInt(offset, checksum(value.length, value));
+
+    addOffset(offset);
+    writePosition = offset + recordLength(value);
+  }
+
+  /**
+   * Reads the value at the given index of this segment.
+   *
+   * @param index the index, i.e. the value's position minus the segment's first position
+   * @return the value
+   */
+  byte[] read(int index) {
+    ByteBuffer readBuffer = buffer.duplicate();
+    int offset = offsets[index];
+    byte[] value = new byte[readBuffer.getInt(offset + 4)];
+    readBuffer.position(offset + HEADER_SIZE);
+    readBuffer.get(value);
+    return value;
+  }
+
+  /**
+   * Scans the segment for valid values and positions the write pointer after the last one.
+   */
+  void recover() {
+    ByteBuffer readBuffer = buffer.duplicate();
+    int offset = 0;
+    while (offset + HEADER_SIZE <= capacity) {
+      int length = readBuffer.getInt(offset + 4);
+      if (length < 0 || offset + HEADER_SIZE + (long) length > capacity) {
+        break;
+      }
+      byte[] value = new byte[length];
+      readBuffer.position(offset + HEADER_SIZE);
+      readBuffer.get(value);
+      if (checksum(length, value) != readBuffer.getInt(offset)) {
+        break;
+      }
+      addOffset(offset);
+      offset += HEADER_SIZE + length;
+    }
+    writePosition = offset;
+  }
+
+  private void addOffset(int offset) {
+    if (count == offsets.length) {
+      offsets = Arrays.copyOf(offsets, offsets.length * 2);
+    }
+    offsets[count] = offset;
+    count++;
+  }
+
+  void force() {
+    buffer.force();
+  }
+
+  void delete() throws IOException {
+    close();
+    Files.deleteIfExists(file);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (channel.isOpen()) {
+      force();
+      channel.close();
+    }
+  }
+
+  private static int checksum(int length, byte[] value) {
+    CRC32 crc = new CRC32();
+    crc.update(length >>> 24);
+    crc.update(length >>> 16);
+    crc.update(length >>> 8);
+    crc.update(length);
+    crc.update(value);
+    return (int) crc.getValue();
+  }
+
+  @Override
+  public String toString() {
+    return "QueueSegment [firstPosition=" + firstPosition + ", count=" + count
+        + ", writePosition=" + writePosition + "]";
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.redis;
+
+import edu.kit.scc.cache.NearCache;
+import edu.kit.scc.cache.NegativeLookupCache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Applies the invalidations published by other server instances sharing the same Redis.
+ *
+ * <p>
+ * A message consists of lines, the publishing instance's id, the publishing time in milliseconds
+ * and one invalidated near cache key per line. Keys of path aliases, {@code p:<path>}, also
+ * invalidate the path in the {@link NegativeLookupCache}.
+ * </p>
+ */
+public class NearCacheInvalidationListener implements MessageListener {
+
+  private static final Logger log = LoggerFactory.getLogger(NearCacheInvalidationListener.class);
+
+  public static final String CHANNEL = "cdmi:invalidation";
+
+  public static final String OBJECT_PREFIX = "o:";
+  public static final String PATH_PREFIX = "p:";
+
+  private final NearCache nearCache;
+  private final NegativeLookupCache negativeLookupCache;
+
+  public NearCacheInvalidationListener(NearCache nearCache,
+      NegativeLookupCache negativeLookupCache) {
+    this.nearCache = nearCache;
+    this.negativeLookupCache = negativeLookupCache;
+  }
+
+  /**
+   * Creates an invalidation message.
+   *
+   * @param instanceId the publishing instance's id
+   * @param keys the invalidated near cache keys
+   * @return the message
+   */
+  public static String message(String instanceId, String... keys) {
+    StringBuilder message = new StringBuilder(instanceId);
+    message.append('\n').append(System.currentTimeMillis());
+    for (String key : keys) {
+      message.append('\n').append(key);
+    }
+    return message.toString();
+  }
+
+  @Override
+  public void onMessage(Message message, byte[] pattern) {
+    try {
+      String[] lines = new String(message.getBody(), StandardCharsets.UTF_8).split("\n");
+      if (lines.length < 2 || lines[0].equals(nearCache.getInstanceId())) {
+        return;
+      }
+      long publishedAt = Long.parseLong(lines[1]);
+      for (int i = 2; i < lines.length; i++) {
+        nearCache.invalidateRemote(lines[i], publishedAt);
+        if (lines[i].startsWith(PATH_PREFIX) && negativeLookupCache != null) {
+          negativeLookupCache.invalidate(lines[i].substring(PATH_PREFIX.length()));
+        }
+      }
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+  }
+}
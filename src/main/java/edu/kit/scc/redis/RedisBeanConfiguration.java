@@ -9,12 +9,18 @@
 
 package edu.kit.scc.redis;
 
+import edu.kit.scc.cache.NearCache;
+import edu.kit.scc.cache.NegativeLookupCache;
+import edu.kit.scc.cdmiserver.dao.redis.AsyncCdmiObjectDaoImpl;
 import edu.kit.scc.cdmiserver.dao.redis.CapabilityDaoImpl;
 import edu.kit.scc.cdmiserver.dao.redis.CdmiObjectDaoImpl;
 import edu.kit.scc.cdmiserver.dao.redis.ContainerDaoImpl;
 import edu.kit.scc.cdmiserver.dao.redis.DataObjectDaoImpl;
 import edu.kit.scc.cdmiserver.dao.redis.DomainDaoImpl;
+import edu.kit.scc.domain.DomainUsage;
+import edu.kit.scc.query.MetadataIndex;
 
+import org.snia.cdmiserver.dao.AsyncCdmiObjectDao;
 import org.snia.cdmiserver.dao.CapabilityDao;
 import org.snia.cdmiserver.dao.CdmiObjectDao;
 import org.snia.cdmiserver.dao.ContainerDao;
@@ -26,6 +32,15 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PreDestroy;
 
 @Configuration
 @Profile({"redis", "redis-embedded"})
@@ -37,6 +52,34 @@ public class RedisBeanConfiguration {
   @Value("${spring.redis.host}")
   private String host;
 
+  @Value("${cdmi.redis.shards:}")
+  private String shards;
+
+  @Value("${cdmi.cache.near.maxSize:10000}")
+  private int nearCacheMaxSize;
+
+  @Value("${cdmi.cache.near.ttl:60000}")
+  private long nearCacheTtl;
+
+  @Value("${cdmi.redis.content.chunkSize:1048576}")
+  private int contentChunkSize;
+
+  @Value("${cdmi.redis.content.inlineSize:65536}")
+  private int contentInlineSize;
+
+  @Value("${cdmi.redis.async.maxBatchSize:512}")
+  private int asyncMaxBatchSize;
+
+  @Value("${cdmi.redis.async.threads:4}")
+  private int asyncThreads;
+
+  @Value("${cdmi.domains.checkpointInterval:60}")
+  private long domainUsageCheckpointInterval;
+
+  private ExecutorService asyncExecutor;
+
+  private final List<JedisConnectionFactory> shardConnectionFactories = new ArrayList<>();
+
   /**
    * Initializes the redis server connection.
    * 
@@ -60,18 +103,112 @@ public class RedisBeanConfiguration {
     return new StringRedisTemplate(jedisConnectionFactory);
   }
 
+  /**
+   * Initializes the redis nodes the objects are distributed over. The node given by
+   * spring.redis.host and spring.redis.port is the first one, cdmi.redis.shards lists the further
+   * nodes as comma separated host:port pairs.
+   * 
+   * @return the {@link RedisShards}
+   */
+  @Bean
+  RedisShards redisShards(StringRedisTemplate redisTemplate) {
+    List<StringRedisTemplate> templates = new ArrayList<>();
+    templates.add(redisTemplate);
+    for (String shard : shards.split(",")) {
+      if (shard.trim().isEmpty()) {
+        continue;
+      }
+      String[] hostAndPort = shard.trim().split(":");
+      JedisConnectionFactory shardConnectionFactory = new JedisConnectionFactory();
+      shardConnectionFactory.setHostName(hostAndPort[0]);
+      shardConnectionFactory.setPort(Integer.parseInt(hostAndPort[1]));
+      shardConnectionFactory.afterPropertiesSet();
+      shardConnectionFactories.add(shardConnectionFactory);
+      templates.add(new StringRedisTemplate(shardConnectionFactory));
+    }
+    return new RedisShards(templates);
+  }
+
+  @PreDestroy
+  void cleanUp() {
+    if (asyncExecutor != null) {
+      asyncExecutor.shutdownNow();
+    }
+    for (JedisConnectionFactory shardConnectionFactory : shardConnectionFactories) {
+      shardConnectionFactory.destroy();
+    }
+  }
+
+  /**
+   * Initializes the in-process cache of objects read from redis.
+   * 
+   * @return a {@link NearCache}
+   */
+  @Bean
+  NearCache nearCache() {
+    return new NearCache(nearCacheMaxSize, nearCacheTtl);
+  }
+
+  /**
+   * Subscribes to the invalidations published by other server instances.
+   * 
+   * @return a {@link RedisMessageListenerContainer}
+   */
+  @Bean
+  RedisMessageListenerContainer nearCacheListenerContainer(
+      JedisConnectionFactory jedisConnectionFactory, NearCache nearCache,
+      NegativeLookupCache negativeLookupCache) {
+    RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+    container.setConnectionFactory(jedisConnectionFactory);
+    container.addMessageListener(
+        new NearCacheInvalidationListener(nearCache, negativeLookupCache),
+        new ChannelTopic(NearCacheInvalidationListener.CHANNEL));
+    return container;
+  }
+
   /**
    * Initializes the redis version of {@link CdmiObjectDao}.
    * 
    * @return a {@link CdmiObjectDao}
    */
   @Bean
-  CdmiObjectDao cdmiObjectDao(StringRedisTemplate redisTemplate) {
+  CdmiObjectDao cdmiObjectDao(RedisShards redisShards, NearCache nearCache) {
     CdmiObjectDaoImpl cdmiObjectDaoImpl = new CdmiObjectDaoImpl();
-    cdmiObjectDaoImpl.setRedisTemplate(redisTemplate);
+    cdmiObjectDaoImpl.setRedisShards(redisShards);
+    cdmiObjectDaoImpl.setNearCache(nearCache);
     return cdmiObjectDaoImpl;
   }
 
+  /**
+   * Initializes the pipelines shared by all asynchronous redis reads.
+   * 
+   * @return a started {@link RedisCommandBatcher}
+   */
+  @Bean(destroyMethod = "shutdown")
+  RedisCommandBatcher redisCommandBatcher(RedisShards redisShards) {
+    RedisCommandBatcher redisCommandBatcher =
+        new RedisCommandBatcher(redisShards, asyncMaxBatchSize);
+    redisCommandBatcher.start();
+    return redisCommandBatcher;
+  }
+
+  /**
+   * Initializes the asynchronous redis version of {@link CdmiObjectDao}.
+   * 
+   * @return an {@link AsyncCdmiObjectDao}
+   */
+  @Bean
+  AsyncCdmiObjectDao asyncCdmiObjectDao(RedisCommandBatcher redisCommandBatcher,
+      CdmiObjectDao cdmiObjectDao, NearCache nearCache) {
+    asyncExecutor = Executors.newFixedThreadPool(asyncThreads);
+    AsyncCdmiObjectDaoImpl asyncCdmiObjectDaoImpl = new AsyncCdmiObjectDaoImpl();
+    asyncCdmiObjectDaoImpl.setBatcher(redisCommandBatcher);
+    asyncCdmiObjectDaoImpl.setCdmiObjectDao(cdmiObjectDao);
+    asyncCdmiObjectDaoImpl.setNearCache(nearCache);
+    asyncCdmiObjectDaoImpl.setExecutor(asyncExecutor);
+    return asyncCdmiObjectDaoImpl;
+  }
+
   /**
    * Initializes the redis version of {@link CapabilityDao}.
    * 
@@ -102,13 +239,16 @@ public class RedisBeanConfiguration {
    * @return a {@link DataObjectDao}
    */
   @Bean
-  DataObjectDao dataObjectDao(CdmiObjectDao cdmiObjectDao) {
+  DataObjectDao dataObjectDao(CdmiObjectDao cdmiObjectDao, RedisShards redisShards) {
     ContainerDaoImpl containerDaoImpl = new ContainerDaoImpl();
     containerDaoImpl.setCdmiObjectDao(cdmiObjectDao);
 
     DataObjectDaoImpl dataObjectDaoImpl = new DataObjectDaoImpl();
     dataObjectDaoImpl.setCdmiObjectDao(cdmiObjectDao);
     dataObjectDaoImpl.setContainerDao(containerDaoImpl);
+    dataObjectDaoImpl.setRedisShards(redisShards);
+    dataObjectDaoImpl.setChunkSize(contentChunkSize);
+    dataObjectDaoImpl.setInlineSize(contentInlineSize);
     return dataObjectDaoImpl;
   }
 
@@ -120,6 +260,30 @@ public class RedisBeanConfiguration {
   @Bean
   DomainDao domainDao(CdmiObjectDao cdmiObjectDao) {
     DomainDaoImpl domainDaoImpl = new DomainDaoImpl();
+    domainDaoImpl.setCdmiObjectDao(cdmiObjectDao);
     return domainDaoImpl;
   }
+
+  /**
+   * Initializes the redis version of {@link MetadataIndex}.
+   * 
+   * @return a {@link MetadataIndex}
+   */
+  @Bean
+  MetadataIndex metadataIndex(RedisShards redisShards) {
+    return new RedisMetadataIndex(redisShards);
+  }
+
+  /**
+   * Initializes the {@link DomainUsage}, checkpointed to a hash shared by all instances.
+   * 
+   * @return a {@link DomainUsage}
+   */
+  @Bean(destroyMethod = "close")
+  DomainUsage domainUsage(RedisShards redisShards) {
+    DomainUsage domainUsage =
+        new DomainUsage(new RedisDomainUsageStore(redisShards), domainUsageCheckpointInterval);
+    domainUsage.open();
+    return domainUsage;
+  }
 }
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.redis;
+
+import edu.kit.scc.capability.CapabilitySnapshotStore;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * Keeps the capability snapshot in a single redis key shared by all CDMI server instances.
+ */
+public class RedisCapabilitySnapshotStore implements CapabilitySnapshotStore {
+
+  public static final String SNAPSHOT_KEY = "snapshot:cdmi_capabilities";
+
+  private final StringRedisTemplate redisTemplate;
+
+  public RedisCapabilitySnapshotStore(StringRedisTemplate redisTemplate) {
+    this.redisTemplate = redisTemplate;
+  }
+
+  @Override
+  public String load() {
+    return redisTemplate.opsForValue().get(SNAPSHOT_KEY);
+  }
+
+  @Override
+  public void save(String snapshot) {
+    redisTemplate.opsForValue().set(SNAPSHOT_KEY, snapshot);
+  }
+}
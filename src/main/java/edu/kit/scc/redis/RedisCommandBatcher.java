@@ -0,0 +1,200 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.redis;
+
+import edu.kit.scc.metrics.MetricsSource;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Sends Redis commands submitted by any number of threads in pipelines.
+ *
+ * <p>
+ * Each node of the {@link RedisShards} has a queue and a dispatcher thread. The dispatcher takes
+ * all commands queued meanwhile, up to the maximum batch size, sends them in a single pipeline and
+ * completes their futures with the replies. Callers never wait on a socket, so many concurrent
+ * lookups are served by a few threads and a few round trips. Dependent stages without an executor
+ * run on the dispatcher thread and must not block.
+ * </p>
+ */
+public class RedisCommandBatcher implements MetricsSource {
+
+  private static final Logger log = LoggerFactory.getLogger(RedisCommandBatcher.class);
+
+  private final RedisShards redisShards;
+  private final int maxBatchSize;
+
+  private final List<BlockingQueue<Command>> queues = new ArrayList<>();
+  private final List<Thread> dispatchers = new ArrayList<>();
+
+  private volatile boolean running;
+
+  private final LongAdder commands = new LongAdder();
+  private final LongAdder batches = new LongAdder();
+  private final LongAdder failedBatches = new LongAdder();
+  private final LongAccumulator largestBatch = new LongAccumulator(Long::max, 0);
+
+  private static final class Command {
+    private final Consumer<StringRedisConnection> command;
+    private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+    Command(Consumer<StringRedisConnection> command) {
+      this.command = command;
+    }
+  }
+
+  /**
+   * Creates a new batcher, the dispatchers are started by {@link #start()}.
+   *
+   * @param redisShards the Redis nodes
+   * @param maxBatchSize the maximum number of commands sent in one pipeline
+   */
+  public RedisCommandBatcher(RedisShards redisShards, int maxBatchSize) {
+    this.redisShards = redisShards;
+    this.maxBatchSize = Math.max(1, maxBatchSize);
+    for (int shard = 0; shard < redisShards.size(); shard++) {
+      queues.add(new LinkedBlockingQueue<>());
+    }
+  }
+
+  /**
+   * Starts one dispatcher thread per node.
+   */
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+    running = true;
+    for (int shard = 0; shard < queues.size(); shard++) {
+      final int node = shard;
+      Thread dispatcher = new Thread(() -> dispatch(node), "redis-batcher-" + node);
+      dispatcher.setDaemon(true);
+      dispatcher.start();
+      dispatchers.add(dispatcher);
+    }
+  }
+
+  /**
+   * Stops the dispatchers, commands still queued fail.
+   */
+  public synchronized void shutdown() {
+    running = false;
+    for (Thread dispatcher : dispatchers) {
+      dispatcher.interrupt();
+    }
+    dispatchers.clear();
+    for (BlockingQueue<Command> queue : queues) {
+      List<Command> pending = new ArrayList<>();
+      queue.drainTo(pending);
+      for (Command command : pending) {
+        command.future.completeExceptionally(new IllegalStateException("batcher stopped"));
+      }
+    }
+  }
+
+  /**
+   * Queues a command for the node responsible for the given key.
+   *
+   * @param key the key the command operates on
+   * @param command issues exactly one command on the pipelined connection
+   * @return the future reply, as converted by the {@link StringRedisConnection}
+   */
+  @SuppressWarnings("unchecked")
+  public <T> CompletableFuture<T> submit(String key, Consumer<StringRedisConnection> command) {
+    Command queued = new Command(command);
+    if (!running) {
+      queued.future.completeExceptionally(new IllegalStateException("batcher not running"));
+    } else {
+      queues.get(redisShards.shardOf(key)).add(queued);
+    }
+    return (CompletableFuture<T>) queued.future;
+  }
+
+  private void dispatch(int shard) {
+    BlockingQueue<Command> queue = queues.get(shard);
+    while (running) {
+      List<Command> batch = new ArrayList<>();
+      try {
+        Command first = queue.poll(1, TimeUnit.SECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      queue.drainTo(batch, maxBatchSize - 1);
+      execute(shard, batch);
+    }
+  }
+
+  private void execute(int shard, List<Command> batch) {
+    List<Object> replies;
+    try {
+      replies = redisShards.getTemplates().get(shard)
+          .executePipelined((RedisCallback<Object>) connection -> {
+            for (Command command : batch) {
+              command.command.accept((StringRedisConnection) connection);
+            }
+            return null;
+          });
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+      failedBatches.increment();
+      for (Command command : batch) {
+        command.future.completeExceptionally(ex);
+      }
+      return;
+    }
+    commands.add(batch.size());
+    batches.increment();
+    largestBatch.accumulate(batch.size());
+    for (int i = 0; i < batch.size(); i++) {
+      batch.get(i).future.complete(i < replies.size() ? replies.get(i) : null);
+    }
+  }
+
+  @Override
+  public String getMetricsName() {
+    return "redisBatcher";
+  }
+
+  @Override
+  public JSONObject getMetrics() {
+    int queued = 0;
+    for (BlockingQueue<Command> queue : queues) {
+      queued += queue.size();
+    }
+    long batchCount = batches.sum();
+    JSONObject metrics = new JSONObject();
+    metrics.put("commands", commands.sum());
+    metrics.put("batches", batchCount);
+    metrics.put("failedBatches", failedBatches.sum());
+    metrics.put("averageBatchSize", batchCount > 0 ? (double) commands.sum() / batchCount : 0.0);
+    metrics.put("largestBatchSize", largestBatch.get());
+    metrics.put("queued", queued);
+    return metrics;
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.redis;
+
+import edu.kit.scc.domain.DomainUsageStore;
+
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the domain usage counters in a single redis hash shared by all CDMI server instances.
+ * Each instance adds its changes with HINCRBY, so concurrent checkpoints don't overwrite each
+ * other.
+ */
+public class RedisDomainUsageStore implements DomainUsageStore {
+
+  public static final String USAGE_KEY = "cdmi_domain_usage";
+
+  private final StringRedisTemplate redisTemplate;
+
+  public RedisDomainUsageStore(RedisShards redisShards) {
+    this.redisTemplate = redisShards.forKey(USAGE_KEY);
+  }
+
+  @Override
+  public Map<String, Long> load() {
+    Map<String, Long> values = new HashMap<>();
+    for (Map.Entry<Object, Object> entry : redisTemplate.opsForHash().entries(USAGE_KEY)
+        .entrySet()) {
+      values.put((String) entry.getKey(), Long.parseLong((String) entry.getValue()));
+    }
+    return values;
+  }
+
+  @Override
+  public void add(Map<String, Long> deltas) {
+    redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      StringRedisConnection stringConnection = (StringRedisConnection) connection;
+      for (Map.Entry<String, Long> delta : deltas.entrySet()) {
+        stringConnection.hIncrBy(USAGE_KEY, delta.getKey(), delta.getValue());
+      }
+      return null;
+    });
+  }
+}
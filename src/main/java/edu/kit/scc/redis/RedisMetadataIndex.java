@@ -0,0 +1,248 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.redis;
+
+import edu.kit.scc.query.MetadataIndex;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisZSetCommands.Range;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * {@link MetadataIndex} kept in redis, shared by all server instances.
+ *
+ * <p>
+ * Each field has a sorted set of {@code value\0path} members, all with the same score, which
+ * serves exact and prefix lookups as lexicographical ranges, and a sorted set of the same
+ * members scored by their numeric values, which serves range lookups. The indexed terms of each
+ * object and the sorted set of all indexed paths are kept to update and remove objects. All keys
+ * share the {@code {index}} hash tag, so they live on the same node and an object's update is a
+ * single transaction.
+ * </p>
+ */
+public class RedisMetadataIndex implements MetadataIndex {
+
+  private static final Logger log = LoggerFactory.getLogger(RedisMetadataIndex.class);
+
+  static final String KEY_PREFIX = "cdmi_index:{index}:";
+  static final String PATHS_KEY = KEY_PREFIX + "paths";
+
+  private static final int MAX_ATTEMPTS = 10;
+  private static final byte[] LEX_END = {(byte) 0xff};
+
+  private final StringRedisTemplate template;
+
+  public RedisMetadataIndex(RedisShards redisShards) {
+    this.template = redisShards.forKey(PATHS_KEY);
+  }
+
+  static String termsKey(String path) {
+    return KEY_PREFIX + "terms:" + path;
+  }
+
+  static String valuesKey(String field) {
+    return KEY_PREFIX + "values:" + field;
+  }
+
+  static String numbersKey(String field) {
+    return KEY_PREFIX + "numbers:" + field;
+  }
+
+  @Override
+  public void index(String path, Map<String, Set<String>> terms) {
+    update(path, terms);
+  }
+
+  @Override
+  public void remove(String path) {
+    update(path, null);
+    String prefix = path.endsWith("/") ? path : path + "/";
+    byte[] min = bytes(prefix);
+    for (String descendant : lexRange(PATHS_KEY, min, concat(min, LEX_END))) {
+      update(descendant, null);
+    }
+  }
+
+  /**
+   * Replaces the terms of an object, watching its previous terms so concurrent updates of the
+   * same object by other instances are retried.
+   *
+   * @param path the object's path
+   * @param terms the object's terms, {@code null} to remove the object
+   */
+  private void update(String path, Map<String, Set<String>> terms) {
+    String termsKey = termsKey(path);
+    for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+      List<Object> results = template.execute(new SessionCallback<List<Object>>() {
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public List<Object> execute(RedisOperations operations) {
+          operations.watch(termsKey);
+          Object previousJson = operations.opsForValue().get(termsKey);
+          Map<String, Set<String>> previous = previousJson != null
+              ? MetadataIndex.terms(new JSONObject((String) previousJson))
+              : Collections.emptyMap();
+          if (terms != null ? terms.equals(previous) : previousJson == null) {
+            operations.unwatch();
+            return Collections.singletonList(Boolean.TRUE);
+          }
+          Map<String, Set<String>> current = terms != null ? terms : Collections.emptyMap();
+
+          operations.multi();
+          for (Entry<String, Set<String>> term : previous.entrySet()) {
+            Set<String> currentValues = current.get(term.getKey());
+            for (String value : term.getValue()) {
+              if (currentValues == null || !currentValues.contains(value)) {
+                String member = member(value, path);
+                operations.opsForZSet().remove(valuesKey(term.getKey()), member);
+                if (MetadataIndex.number(value) != null) {
+                  operations.opsForZSet().remove(numbersKey(term.getKey()), member);
+                }
+              }
+            }
+          }
+          for (Entry<String, Set<String>> term : current.entrySet()) {
+            Set<String> previousValues = previous.get(term.getKey());
+            for (String value : term.getValue()) {
+              if (previousValues == null || !previousValues.contains(value)) {
+                String member = member(value, path);
+                operations.opsForZSet().add(valuesKey(term.getKey()), member, 0);
+                Double number = MetadataIndex.number(value);
+                if (number != null) {
+                  operations.opsForZSet().add(numbersKey(term.getKey()), member, number);
+                }
+              }
+            }
+          }
+          if (terms != null) {
+            operations.opsForValue().set(termsKey, new JSONObject(terms).toString());
+            operations.opsForZSet().add(PATHS_KEY, path, 0);
+          } else {
+            operations.delete(termsKey);
+            operations.opsForZSet().remove(PATHS_KEY, path);
+          }
+          return operations.exec();
+        }
+      });
+      if (results != null && !results.isEmpty()) {
+        return;
+      }
+      log.debug("Terms of {} changed concurrently, retrying", path);
+    }
+    log.error("Could not update the metadata index of {}", path);
+  }
+
+  @Override
+  public Map<String, Set<String>> getTerms(String path) {
+    String json = template.opsForValue().get(termsKey(path));
+    return json != null ? MetadataIndex.terms(new JSONObject(json)) : Collections.emptyMap();
+  }
+
+  @Override
+  public SortedSet<String> equal(String field, String value) {
+    return memberPaths(
+        lexRange(valuesKey(field), bytes(value + "\0"), bytes(value + "\u0001")));
+  }
+
+  @Override
+  public SortedSet<String> prefix(String field, String prefix) {
+    return memberPaths(
+        lexRange(valuesKey(field), bytes(prefix), concat(bytes(prefix), LEX_END)));
+  }
+
+  @Override
+  public SortedSet<String> range(String field, double min, boolean minInclusive, double max,
+      boolean maxInclusive) {
+    SortedSet<String> paths = new TreeSet<>();
+    Set<TypedTuple<String>> tuples =
+        template.opsForZSet().rangeByScoreWithScores(numbersKey(field), min, max);
+    if (tuples != null) {
+      for (TypedTuple<String> tuple : tuples) {
+        double score = tuple.getScore();
+        if ((minInclusive || score > min) && (maxInclusive || score < max)) {
+          paths.add(memberPath(tuple.getValue()));
+        }
+      }
+    }
+    return paths;
+  }
+
+  @Override
+  public SortedSet<String> exists(String field) {
+    Set<String> members = template.opsForZSet().range(valuesKey(field), 0, -1);
+    return memberPaths(members != null ? members : Collections.emptySet());
+  }
+
+  @Override
+  public SortedSet<String> all() {
+    Set<String> paths = template.opsForZSet().range(PATHS_KEY, 0, -1);
+    return paths != null ? new TreeSet<>(paths) : new TreeSet<>();
+  }
+
+  @Override
+  public long size() {
+    Long size = template.opsForZSet().zCard(PATHS_KEY);
+    return size != null ? size : 0;
+  }
+
+  private List<String> lexRange(String key, byte[] min, byte[] max) {
+    byte[] rawKey = bytes(key);
+    Set<byte[]> members = template.execute((RedisCallback<Set<byte[]>>) connection -> connection
+        .zRangeByLex(rawKey, Range.range().gte(min).lt(max)));
+    String[] strings = new String[members != null ? members.size() : 0];
+    int index = 0;
+    for (byte[] member : members != null ? members : Collections.<byte[]>emptySet()) {
+      strings[index++] = new String(member, StandardCharsets.UTF_8);
+    }
+    return Arrays.asList(strings);
+  }
+
+  private static SortedSet<String> memberPaths(Iterable<String> members) {
+    SortedSet<String> paths = new TreeSet<>();
+    for (String member : members) {
+      paths.add(memberPath(member));
+    }
+    return paths;
+  }
+
+  private static String memberPath(String member) {
+    return member.substring(member.lastIndexOf('\0') + 1);
+  }
+
+  private static String member(String value, String path) {
+    return value + "\0" + path;
+  }
+
+  private static byte[] bytes(String string) {
+    return string.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] concat(byte[] first, byte[] second) {
+    byte[] bytes = Arrays.copyOf(first, first.length + second.length);
+    System.arraycopy(second, 0, bytes, first.length, second.length);
+    return bytes;
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.redis;
+
+import edu.kit.scc.Utils;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Distributes the key space over one or more Redis nodes.
+ *
+ * <p>
+ * Keys are mapped to Redis cluster hash slots, see {@link Utils#keySlot(String)}, and the slots
+ * are split into contiguous, equally sized ranges, one per node. Keys sharing a hash tag always
+ * end up on the same node, so multi-key commands and transactions on them remain possible. The
+ * mapping depends on the number of nodes only; changing it requires the data to be re-imported.
+ * </p>
+ */
+public class RedisShards {
+
+  private final List<StringRedisTemplate> templates;
+
+  /**
+   * Creates the shards.
+   *
+   * @param templates the {@link StringRedisTemplate} of each node, in slot order
+   */
+  public RedisShards(List<StringRedisTemplate> templates) {
+    if (templates.isEmpty()) {
+      throw new IllegalArgumentException("no redis nodes");
+    }
+    this.templates = Collections.unmodifiableList(new ArrayList<>(templates));
+  }
+
+  /**
+   * Creates a single node shard.
+   *
+   * @param template the {@link StringRedisTemplate} of the node
+   */
+  public RedisShards(StringRedisTemplate template) {
+    this(Collections.singletonList(template));
+  }
+
+  public List<StringRedisTemplate> getTemplates() {
+    return templates;
+  }
+
+  public int size() {
+    return templates.size();
+  }
+
+  /**
+   * Gets the index of the node responsible for the given key.
+   *
+   * @param key the key
+   * @return the node's index
+   */
+  public int shardOf(String key) {
+    return Utils.keySlot(key) * templates.size() / Utils.CLUSTER_SLOTS;
+  }
+
+  /**
+   * Gets the template of the node responsible for the given key.
+   *
+   * @param key the key
+   * @return the node's {@link StringRedisTemplate}
+   */
+  public StringRedisTemplate forKey(String key) {
+    return templates.get(shardOf(key));
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.unitofwork;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Thrown by {@link UnitOfWork#execute(java.util.function.Supplier)} if some of the deferred updates
+ * couldn't be written.
+ */
+public class FlushFailedException extends RuntimeException {
+
+  /**
+   * Generated serial version UID.
+   */
+  private static final long serialVersionUID = 4781290125873354069L;
+
+  private final Set<Object> failedOperations;
+
+  /**
+   * Creates a new exception for the given failed operations.
+   *
+   * @param message the message
+   * @param failedOperations the operations, see {@link UnitOfWork#setOperation(Object)}, whose
+   *        updates couldn't be written
+   */
+  public FlushFailedException(String message, Set<Object> failedOperations) {
+    super(message);
+    this.failedOperations = Collections.unmodifiableSet(failedOperations);
+  }
+
+  /**
+   * Gets the operations whose updates couldn't be written.
+   *
+   * @return the failed operations, empty if the work wasn't split into operations
+   */
+  public Set<Object> getFailedOperations() {
+    return failedOperations;
+  }
+}
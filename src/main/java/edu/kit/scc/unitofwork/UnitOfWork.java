@@ -0,0 +1,346 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.unitofwork;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.dao.CdmiObjectDao;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+import org.snia.cdmiserver.model.DataObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * A thread-bound unit of work spanning a single CDMI operation.
+ *
+ * <p>
+ * While a unit of work is active the {@link UnitOfWorkCdmiObjectDao} loads every object at most
+ * once and defers all updates. Each modified object is written once when the outermost
+ * {@link #execute(Supplier)} returns; if the work fails the pending updates are discarded. Children
+ * added to a container are collected, too, and added with a single update per container.
+ * </p>
+ *
+ * <p>
+ * An update writes the object as it was when it was marked as modified, later changes to the
+ * instance, e.g. the storage back-end's status added to a response, aren't written. If an update
+ * can't be written the work fails with a {@link FlushFailedException}.
+ * </p>
+ */
+public final class UnitOfWork {
+
+  private static final Logger log = LoggerFactory.getLogger(UnitOfWork.class);
+
+  private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<>();
+
+  private final Map<String, CdmiObject> objects = new HashMap<>();
+  private final Map<String, String> paths = new HashMap<>();
+  private final Map<String, PendingUpdate> pendingUpdates = new LinkedHashMap<>();
+  private final Map<String, PendingChildren> pendingChildren = new LinkedHashMap<>();
+  private final Set<Object> failedOperations = new LinkedHashSet<>();
+
+  private Object operation;
+  private int failedUpdates;
+  private int loads;
+  private int flushedUpdates;
+
+  private UnitOfWork() {}
+
+  /**
+   * Gets the unit of work bound to the current thread.
+   *
+   * @return the {@link UnitOfWork} or {@code null} if there is none
+   */
+  public static UnitOfWork current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Executes the given work within a unit of work, joining the current one if there is any.
+   *
+   * @param work the work to execute
+   * @return the work's result
+   * @throws FlushFailedException if some of the updates couldn't be written
+   */
+  public static <T> T execute(Supplier<T> work) {
+    if (CURRENT.get() != null) {
+      return work.get();
+    }
+    UnitOfWork unitOfWork = new UnitOfWork();
+    CURRENT.set(unitOfWork);
+    try {
+      T result = work.get();
+      unitOfWork.flush();
+      if (unitOfWork.failedUpdates > 0) {
+        throw new FlushFailedException("Could not write " + unitOfWork.failedUpdates + " updates",
+            unitOfWork.failedOperations);
+      }
+      return result;
+    } finally {
+      CURRENT.remove();
+    }
+  }
+
+  /**
+   * Labels the following updates, e.g. with the index of a batch operation. A
+   * {@link FlushFailedException} reports the labels of the updates which couldn't be written.
+   *
+   * @param operation the label or {@code null}
+   */
+  public void setOperation(Object operation) {
+    this.operation = operation;
+  }
+
+  CdmiObject getObject(String objectId) {
+    return objects.get(objectId);
+  }
+
+  CdmiObject getObjectByPath(String path) {
+    String objectId = paths.get(path);
+    return objectId != null ? objects.get(objectId) : null;
+  }
+
+  void register(CdmiObject cdmiObject, String path) {
+    if (cdmiObject == null || cdmiObject.getObjectId() == null) {
+      return;
+    }
+    objects.put(cdmiObject.getObjectId(), cdmiObject);
+    if (path != null) {
+      paths.put(path, cdmiObject.getObjectId());
+    }
+  }
+
+  /**
+   * Registers an object loaded without the {@link UnitOfWorkCdmiObjectDao}, e.g. by an
+   * {@link org.snia.cdmiserver.dao.AsyncCdmiObjectDao}, later reads get the same instance.
+   *
+   * @param cdmiObject the loaded {@link CdmiObject} or {@code null} if there is none
+   * @param path the object's path
+   */
+  public void registerLoad(CdmiObject cdmiObject, String path) {
+    loads++;
+    register(cdmiObject, path);
+  }
+
+  void markDirty(CdmiObjectDao dao, CdmiObject cdmiObject, String path) {
+    PendingUpdate pendingUpdate = pendingUpdate(dao, cdmiObject, path);
+    pendingUpdate.fields = null;
+    if (path != null) {
+      pendingUpdate.paths.add(path);
+    }
+  }
+
+  void markDirtyFields(CdmiObjectDao dao, CdmiObject cdmiObject, String... fieldNames) {
+    boolean pending = pendingUpdates.containsKey(cdmiObject.getObjectId());
+    PendingUpdate pendingUpdate = pendingUpdate(dao, cdmiObject, null);
+    if (!pending) {
+      pendingUpdate.fields = new LinkedHashSet<>();
+    }
+    // an update of the whole object covers all fields
+    if (pendingUpdate.fields != null) {
+      pendingUpdate.fields.addAll(Arrays.asList(fieldNames));
+    }
+  }
+
+  private PendingUpdate pendingUpdate(CdmiObjectDao dao, CdmiObject cdmiObject, String path) {
+    register(cdmiObject, path);
+    PendingUpdate pendingUpdate = pendingUpdates.get(cdmiObject.getObjectId());
+    if (pendingUpdate == null) {
+      pendingUpdate = new PendingUpdate(dao);
+      pendingUpdates.put(cdmiObject.getObjectId(), pendingUpdate);
+    }
+    pendingUpdate.cdmiObject = snapshot(cdmiObject);
+    if (operation != null) {
+      pendingUpdate.operations.add(operation);
+    }
+    return pendingUpdate;
+  }
+
+  /**
+   * Copies containers and data objects with their metadata, the instances are shared within the
+   * unit of work and changed by the responses.
+   */
+  private static CdmiObject snapshot(CdmiObject cdmiObject) {
+    CdmiObject snapshot;
+    if (cdmiObject instanceof Container) {
+      Container container = (Container) cdmiObject;
+      Container copy = Container.fromJson(container.toJson());
+      copy.setMetadata(copy(container.getMetadata()));
+      copy.setExports(copy(container.getExports()));
+      copy.setChildren(container.getChildren() != null
+          ? new JSONArray(container.getChildren().toList()) : null);
+      snapshot = copy;
+    } else if (cdmiObject instanceof DataObject) {
+      DataObject dataObject = (DataObject) cdmiObject;
+      DataObject copy = DataObject.fromJson(dataObject.toJson());
+      copy.setMetadata(copy(dataObject.getMetadata()));
+      snapshot = copy;
+    } else {
+      return cdmiObject;
+    }
+    snapshot.setVersion(cdmiObject.getVersion());
+    return snapshot;
+  }
+
+  private static JSONObject copy(JSONObject json) {
+    return json != null ? new JSONObject(json.toMap()) : null;
+  }
+
+  void addChildren(CdmiObjectDao dao, Container container, String path,
+      Collection<String> childNames) {
+    PendingChildren children = pendingChildren.get(container.getObjectId());
+    if (children == null) {
+      children = new PendingChildren(dao, (Container) snapshot(container), path);
+      pendingChildren.put(container.getObjectId(), children);
+    }
+    children.childNames.addAll(childNames);
+    if (operation != null) {
+      children.operations.add(operation);
+    }
+
+    // reads within the unit of work see the new children
+    CdmiObject known = objects.get(container.getObjectId());
+    if (known instanceof Container && known != container) {
+      Container knownContainer = (Container) known;
+      JSONArray knownChildren = knownContainer.getChildren() != null
+          ? knownContainer.getChildren() : new JSONArray();
+      Set<Object> existing = new HashSet<>();
+      for (int i = 0; i < knownChildren.length(); i++) {
+        existing.add(knownChildren.get(i));
+      }
+      for (String childName : childNames) {
+        if (existing.add(childName)) {
+          knownChildren.put(childName);
+        }
+      }
+      knownContainer.setChildren(knownChildren);
+      knownContainer.setChildrenrange(CdmiObject.getChildrenRange(knownChildren));
+    }
+  }
+
+  void evict(String objectId) {
+    objects.remove(objectId);
+    pendingUpdates.remove(objectId);
+    pendingChildren.remove(objectId);
+    paths.values().removeIf(objectId::equals);
+  }
+
+  void evictPath(String path) {
+    paths.remove(path);
+  }
+
+  /**
+   * Writes all pending updates, each modified object once. Failed updates are recorded, the work
+   * fails when it is finished.
+   */
+  void flush() {
+    List<PendingChildren> children = new ArrayList<>(pendingChildren.values());
+    pendingChildren.clear();
+    for (PendingChildren child : children) {
+      if (child.flush()) {
+        flushedUpdates++;
+      } else {
+        failed(child.operations);
+      }
+    }
+
+    List<PendingUpdate> updates = new ArrayList<>(pendingUpdates.values());
+    pendingUpdates.clear();
+    for (PendingUpdate update : updates) {
+      if (update.flush()) {
+        flushedUpdates++;
+      } else {
+        failed(update.operations);
+      }
+    }
+    log.debug("Unit of work loaded {} objects, flushed {} updates", loads, flushedUpdates);
+  }
+
+  private void failed(Set<Object> operations) {
+    failedUpdates++;
+    failedOperations.addAll(operations);
+  }
+
+  int getLoads() {
+    return loads;
+  }
+
+  int getPendingUpdates() {
+    return pendingUpdates.size();
+  }
+
+  int getPendingChildren() {
+    return pendingChildren.size();
+  }
+
+  private static final class PendingChildren {
+    private final CdmiObjectDao dao;
+    private final Container container;
+    private final String path;
+    private final Set<String> childNames = new LinkedHashSet<>();
+    private final Set<Object> operations = new LinkedHashSet<>();
+
+    PendingChildren(CdmiObjectDao dao, Container container, String path) {
+      this.dao = dao;
+      this.container = container;
+      this.path = path;
+    }
+
+    boolean flush() {
+      if (dao.addChildren(container, path, childNames) == null) {
+        log.error("Could not add {} children to {}", childNames.size(), path);
+        return false;
+      }
+      return true;
+    }
+  }
+
+  private static final class PendingUpdate {
+    private final CdmiObjectDao dao;
+    private final Set<String> paths = new LinkedHashSet<>();
+    private final Set<Object> operations = new LinkedHashSet<>();
+    private CdmiObject cdmiObject;
+    // null if the whole object is modified
+    private Set<String> fields;
+
+    PendingUpdate(CdmiObjectDao dao) {
+      this.dao = dao;
+    }
+
+    boolean flush() {
+      CdmiObject updated = fields != null
+          ? dao.updateCdmiObjectFields(cdmiObject, fields.toArray(new String[fields.size()]))
+          : dao.updateCdmiObject(cdmiObject);
+      if (updated == null) {
+        log.error("Could not flush object {}", cdmiObject.getObjectId());
+        return false;
+      }
+      for (String path : paths) {
+        if (dao.updateCdmiObject(cdmiObject, path) == null) {
+          log.error("Could not flush object {} at {}", cdmiObject.getObjectId(), path);
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
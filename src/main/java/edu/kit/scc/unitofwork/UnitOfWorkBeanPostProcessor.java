@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.unitofwork;
+
+import org.snia.cdmiserver.dao.CdmiObjectDao;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Wraps the profile's {@link CdmiObjectDao} into a {@link UnitOfWorkCdmiObjectDao}, so all other
+ * DAOs share the identity map of the current unit of work.
+ */
+@Component
+public class UnitOfWorkBeanPostProcessor implements BeanPostProcessor {
+
+  @Override
+  public Object postProcessBeforeInitialization(Object bean, String beanName)
+      throws BeansException {
+    return bean;
+  }
+
+  @Override
+  public Object postProcessAfterInitialization(Object bean, String beanName)
+      throws BeansException {
+    if (bean instanceof CdmiObjectDao && !(bean instanceof UnitOfWorkCdmiObjectDao)) {
+      return new UnitOfWorkCdmiObjectDao((CdmiObjectDao) bean);
+    }
+    return bean;
+  }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.unitofwork;
+
+import org.json.JSONObject;
+import org.snia.cdmiserver.dao.CdmiObjectDao;
+import org.snia.cdmiserver.dao.CdmiObjectDaoDecorator;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link CdmiObjectDao} decorator which serves reads from and defers updates to the current
+ * {@link UnitOfWork}. Without an active unit of work all calls go straight to the delegate.
+ */
+public class UnitOfWorkCdmiObjectDao implements CdmiObjectDaoDecorator {
+
+  private final CdmiObjectDao delegate;
+
+  public UnitOfWorkCdmiObjectDao(CdmiObjectDao delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public CdmiObjectDao getDelegate() {
+    return delegate;
+  }
+
+  @Override
+  public CdmiObject createCdmiObject(CdmiObject cdmiObject) {
+    CdmiObject created = delegate.createCdmiObject(cdmiObject);
+    register(created, null);
+    return created;
+  }
+
+  @Override
+  public CdmiObject createCdmiObject(CdmiObject cdmiObject, String path) {
+    CdmiObject created = delegate.createCdmiObject(cdmiObject, path);
+    register(created, path);
+    return created;
+  }
+
+  @Override
+  public CdmiObject createCdmiObject(CdmiObject cdmiObject, String path, Boolean override) {
+    CdmiObject created = delegate.createCdmiObject(cdmiObject, path, override);
+    register(created, path);
+    return created;
+  }
+
+  @Override
+  public CdmiObject getCdmiObject(String objectId) {
+    UnitOfWork unitOfWork = UnitOfWork.current();
+    if (unitOfWork == null) {
+      return delegate.getCdmiObject(objectId);
+    }
+    CdmiObject cdmiObject = unitOfWork.getObject(objectId);
+    if (cdmiObject == null) {
+      cdmiObject = delegate.getCdmiObject(objectId);
+      unitOfWork.registerLoad(cdmiObject, null);
+    }
+    return cdmiObject;
+  }
+
+  @Override
+  public CdmiObject updateCdmiObject(CdmiObject cdmiObject) {
+    UnitOfWork unitOfWork = UnitOfWork.current();
+    if (unitOfWork == null) {
+      return delegate.updateCdmiObject(cdmiObject);
+    }
+    unitOfWork.markDirty(delegate, cdmiObject, null);
+    return cdmiObject;
+  }
+
+  @Override
+  public CdmiObject updateCdmiObject(CdmiObject cdmiObject, String path) {
+    UnitOfWork unitOfWork = UnitOfWork.current();
+    if (unitOfWork == null) {
+      return delegate.updateCdmiObject(cdmiObject, path);
+    }
+    unitOfWork.markDirty(delegate, cdmiObject, path);
+    return cdmiObject;
+  }
+
+  @Override
+  public CdmiObject updateCdmiObjectFields(CdmiObject cdmiObject, String... fieldNames) {
+    UnitOfWork unitOfWork = UnitOfWork.current();
+    if (unitOfWork == null) {
+      return delegate.updateCdmiObjectFields(cdmiObject, fieldNames);
+    }
+    unitOfWork.markDirtyFields(delegate, cdmiObject, fieldNames);
+    return cdmiObject;
+  }
+
+  @Override
+  public CdmiObject deleteCdmiObject(String objectId) {
+    UnitOfWork unitOfWork = UnitOfWork.current();
+    if (unitOfWork != null) {
+      unitOfWork.evict(objectId);
+    }
+    return delegate.deleteCdmiObject(objectId);
+  }
+
+  @Override
+  public CdmiObject getCdmiObjectByPath(String path) {
+    UnitOfWork unitOfWork = UnitOfWork.current();
+    if (unitOfWork == null || path == null) {
+      return delegate.getCdmiObjectByPath(path);
+    }
+    CdmiObject cdmiObject = unitOfWork.getObjectByPath(path);
+    if (cdmiObject == null) {
+      cdmiObject = delegate.getCdmiObjectByPath(path);
+      // keep the instance already known by id, it may carry pending updates
+      CdmiObject known = cdmiObject != null ? unitOfWork.getObject(cdmiObject.getObjectId()) : null;
+      if (known != null) {
+        cdmiObject = known;
+      }
+      unitOfWork.registerLoad(cdmiObject, path);
+    }
+    return cdmiObject;
+  }
+
+  @Override
+  public CdmiObject getCdmiObjectByPath(String path, int childrenStart, int childrenEnd) {
+    UnitOfWork unitOfWork = UnitOfWork.current();
+    CdmiObject cdmiObject = unitOfWork != null ? unitOfWork.getObjectByPath(path) : null;
+    // partially loaded objects are not registered, they must not be written back
+    return cdmiObject != null ? cdmiObject
+        : delegate.getCdmiObjectByPath(path, childrenStart, childrenEnd);
+  }
+
+  @Override
+  public List<JSONObject> getFieldsByPath(List<String> paths, String... fieldNames) {
+    // like range reads, batch reads are not registered
+    return delegate.getFieldsByPath(paths, fieldNames);
+  }
+
+  @Override
+  public String getVersionByPath(String path) {
+    UnitOfWork unitOfWork = UnitOfWork.current();
+    if (unitOfWork != null) {
+      // the stored version must reflect the pending updates, later reads see the stored object
+      unitOfWork.flush();
+      evict(unitOfWork, path);
+    }
+    return delegate.getVersionByPath(path);
+  }
+
+  @Override
+  public CdmiObject updateCdmiObjectIfVersion(String path, String version,
+      CdmiObject cdmiObject, String... fieldNames) {
+    UnitOfWork unitOfWork = UnitOfWork.current();
+    if (unitOfWork != null) {
+      // the version is compared with the stored object
+      unitOfWork.flush();
+      evict(unitOfWork, path);
+    }
+    return delegate.updateCdmiObjectIfVersion(path, version, cdmiObject, fieldNames);
+  }
+
+  @Override
+  public CdmiObject addChild(Container container, String path, String childName) {
+    if (UnitOfWork.current() == null) {
+      return delegate.addChild(container, path, childName);
+    }
+    return addChildren(container, path, Collections.singletonList(childName));
+  }
+
+  @Override
+  public CdmiObject addChildren(Container container, String path,
+      Collection<String> childNames) {
+    UnitOfWork unitOfWork = UnitOfWork.current();
+    if (unitOfWork == null) {
+      return delegate.addChildren(container, path, childNames);
+    }
+    unitOfWork.addChildren(delegate, container, path, childNames);
+    return container;
+  }
+
+  @Override
+  public CdmiObject deleteCdmiObjectByPath(String path) {
+    UnitOfWork unitOfWork = UnitOfWork.current();
+    if (unitOfWork != null) {
+      CdmiObject cdmiObject = unitOfWork.getObjectByPath(path);
+      if (cdmiObject != null) {
+        unitOfWork.evict(cdmiObject.getObjectId());
+      }
+      unitOfWork.evictPath(path);
+    }
+    return delegate.deleteCdmiObjectByPath(path);
+  }
+
+  @Override
+  public CdmiObject deleteCdmiObjectByPathIfVersion(String path, String version) {
+    UnitOfWork unitOfWork = UnitOfWork.current();
+    if (unitOfWork != null) {
+      // the version is compared with the stored object
+      unitOfWork.flush();
+      evict(unitOfWork, path);
+    }
+    return delegate.deleteCdmiObjectByPathIfVersion(path, version);
+  }
+
+  @Override
+  public int deleteCdmiObjectsByPath(List<String> paths) {
+    UnitOfWork unitOfWork = UnitOfWork.current();
+    if (unitOfWork != null) {
+      for (String path : paths) {
+        CdmiObject cdmiObject = unitOfWork.getObjectByPath(path);
+        if (cdmiObject != null) {
+          unitOfWork.evict(cdmiObject.getObjectId());
+        }
+        unitOfWork.evictPath(path);
+      }
+    }
+    return delegate.deleteCdmiObjectsByPath(paths);
+  }
+
+  @Override
+  public CdmiObject moveCdmiObject(String sourcePath, String path) {
+    UnitOfWork unitOfWork = UnitOfWork.current();
+    if (unitOfWork != null) {
+      // the move is written at once and must see the pending updates of both parents
+      unitOfWork.flush();
+      for (String knownPath : new String[] {sourcePath, path}) {
+        evictWithParent(unitOfWork, Paths.get(knownPath));
+      }
+    }
+    return delegate.moveCdmiObject(sourcePath, path);
+  }
+
+  private static void evict(UnitOfWork unitOfWork, String path) {
+    CdmiObject cdmiObject = unitOfWork.getObjectByPath(path);
+    if (cdmiObject != null) {
+      unitOfWork.evict(cdmiObject.getObjectId());
+    }
+    unitOfWork.evictPath(path);
+  }
+
+  private static void evictWithParent(UnitOfWork unitOfWork, Path path) {
+    List<Path> knownPaths = new ArrayList<>();
+    knownPaths.add(path);
+    if (path.getParent() != null) {
+      knownPaths.add(path.getParent());
+    }
+    for (Path knownPath : knownPaths) {
+      CdmiObject cdmiObject = unitOfWork.getObjectByPath(knownPath.toString());
+      if (cdmiObject != null) {
+        unitOfWork.evict(cdmiObject.getObjectId());
+      }
+      unitOfWork.evictPath(knownPath.toString());
+    }
+  }
+
+  private void register(CdmiObject cdmiObject, String path) {
+    UnitOfWork unitOfWork = UnitOfWork.current();
+    if (unitOfWork != null) {
+      unitOfWork.register(cdmiObject, path);
+    }
+  }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.snia.cdmiserver.dao;
+
+import org.snia.cdmiserver.model.CdmiObject;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Non-blocking variant of the {@link CdmiObjectDao}. Independent calls, e.g. for an object and
+ * its parent, may be issued before waiting for any of them, so they overlap.
+ * 
+ * <p>
+ * Calls bypass the current unit of work. Stages complete with {@code null} if there is no object.
+ * </p>
+ */
+public interface AsyncCdmiObjectDao {
+
+  public CompletionStage<CdmiObject> getCdmiObject(String objectId);
+
+  public CompletionStage<CdmiObject> getCdmiObjectByPath(String path);
+
+  public CompletionStage<CdmiObject> createCdmiObject(CdmiObject cdmiObject, String path);
+
+  public CompletionStage<CdmiObject> updateCdmiObject(CdmiObject cdmiObject, String path);
+
+  public CompletionStage<CdmiObject> deleteCdmiObjectByPath(String path);
+}
@@ -9,7 +9,17 @@
 
 package org.snia.cdmiserver.dao;
 
+import org.json.JSONArray;
+import org.json.JSONObject;
 import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 public interface CdmiObjectDao {
 
@@ -43,6 +53,17 @@ public interface CdmiObjectDao {
 
   public CdmiObject updateCdmiObject(CdmiObject object, String string);
 
+  /**
+   * Updates the given fields of the CDMI object, all other fields are left untouched.
+   * 
+   * @param cdmiObject the {@link CdmiObject}
+   * @param fieldNames the names of the modified top-level JSON fields
+   * @return the updated {@link CdmiObject}
+   */
+  public default CdmiObject updateCdmiObjectFields(CdmiObject cdmiObject, String... fieldNames) {
+    return updateCdmiObject(cdmiObject);
+  }
+
   /**
    * Deletes the CdmiObject identified by it's id.
    * 
@@ -53,5 +74,200 @@ public interface CdmiObjectDao {
 
   public CdmiObject getCdmiObjectByPath(String string);
 
+  /**
+   * Gets the CDMI object at the given path. A container's children may be restricted to the given
+   * range, its childrenrange then tells which children have been loaded. Objects loaded this way
+   * must not be written back.
+   * 
+   * @param path the object's path
+   * @param childrenStart the index of the first requested child
+   * @param childrenEnd the index of the last requested child, smaller than childrenStart if no
+   *        children are needed
+   * @return the {@link CdmiObject}
+   */
+  public default CdmiObject getCdmiObjectByPath(String path, int childrenStart, int childrenEnd) {
+    return getCdmiObjectByPath(path);
+  }
+
+  /**
+   * Adds a child to the given container's children.
+   * 
+   * @param container the parent {@link Container}
+   * @param path the parent's path
+   * @param childName the child's name
+   * @return the updated parent {@link CdmiObject}
+   */
+  public default CdmiObject addChild(Container container, String path, String childName) {
+    return addChildren(container, path, Collections.singletonList(childName));
+  }
+
+  /**
+   * Adds several children to the given container's children with a single update, e.g. for all
+   * objects created by a batch.
+   * 
+   * @param container the parent {@link Container}
+   * @param path the parent's path
+   * @param childNames the children's names
+   * @return the updated parent {@link CdmiObject}
+   */
+  public default CdmiObject addChildren(Container container, String path,
+      Collection<String> childNames) {
+    JSONArray children =
+        container.getChildren() != null ? container.getChildren() : new JSONArray();
+    Set<Object> existing = new HashSet<>();
+    for (int i = 0; i < children.length(); i++) {
+      existing.add(children.get(i));
+    }
+    boolean added = false;
+    for (String childName : childNames) {
+      if (existing.add(childName)) {
+        children.put(childName);
+        added = true;
+      }
+    }
+    if (!added) {
+      return container;
+    }
+    container.setChildren(children);
+    container.setChildrenrange(CdmiObject.getChildrenRange(children));
+    return updateCdmiObject(container, path);
+  }
+
   public CdmiObject deleteCdmiObjectByPath(String string);
+
+  /**
+   * Deletes the CDMI objects at the given paths in one batch, e.g. all data objects of a
+   * container whose subtree is deleted.
+   * 
+   * @param paths the objects' paths
+   * @return the number of deleted objects
+   */
+  public default int deleteCdmiObjectsByPath(List<String> paths) {
+    int deleted = 0;
+    for (String path : paths) {
+      if (deleteCdmiObjectByPath(path) != null) {
+        deleted++;
+      }
+    }
+    return deleted;
+  }
+
+  /**
+   * Moves a data object to another path, the object keeps its id. It gets the new name and parent
+   * and is taken from the source parent's children and added to the destination parent's children
+   * in one step.
+   *
+   * @param sourcePath the object's current path
+   * @param path the object's new path, its parent container must exist and the path must be free
+   * @return the moved {@link CdmiObject} or {@code null} if it couldn't be moved
+   */
+  public CdmiObject moveCdmiObject(String sourcePath, String path);
+
+  /**
+   * Moves a child between the loaded children of two containers, which may be the same.
+   *
+   * @param sourceParent the {@link Container} the child is taken from
+   * @param parent the {@link Container} the child is added to
+   * @param sourceName the child's current name
+   * @param name the child's new name
+   */
+  public static void moveChild(Container sourceParent, Container parent, String sourceName,
+      String name) {
+    JSONArray sourceChildren = new JSONArray();
+    if (sourceParent.getChildren() != null) {
+      for (int i = 0; i < sourceParent.getChildren().length(); i++) {
+        if (!sourceParent.getChildren().get(i).equals(sourceName)) {
+          sourceChildren.put(sourceParent.getChildren().get(i));
+        }
+      }
+    }
+    sourceParent.setChildren(sourceChildren);
+    sourceParent.setChildrenrange(CdmiObject.getChildrenRange(sourceChildren));
+
+    JSONArray children = parent.getChildren() != null ? parent.getChildren() : new JSONArray();
+    for (int i = 0; i < children.length(); i++) {
+      if (children.get(i).equals(name)) {
+        return;
+      }
+    }
+    children.put(name);
+    parent.setChildren(children);
+    parent.setChildrenrange(CdmiObject.getChildrenRange(children));
+  }
+
+  /**
+   * Gets the version of the CDMI object at the given path without loading the object, e.g. to
+   * answer a conditional request. The version changes whenever the object, its children or its
+   * content are updated and differs between objects which have been at the same path.
+   *
+   * @param path the object's path
+   * @return an opaque version or {@code null} if the object doesn't exist or its version isn't
+   *         known
+   */
+  public default String getVersionByPath(String path) {
+    return null;
+  }
+
+  /**
+   * Updates the given fields of the CDMI object at the given path only if the object still has
+   * the expected version. The comparison and the update are atomic, so of several updates
+   * expecting the same version at most one succeeds. A successful update always changes the
+   * version, even without any fields.
+   *
+   * @param path the object's path
+   * @param version the expected version as returned by {@link #getVersionByPath(String)}
+   * @param cdmiObject the {@link CdmiObject}
+   * @param fieldNames the names of the modified top-level JSON fields
+   * @return the updated {@link CdmiObject} or {@code null} if the object has another version
+   */
+  public CdmiObject updateCdmiObjectIfVersion(String path, String version,
+      CdmiObject cdmiObject, String... fieldNames);
+
+  /**
+   * Deletes the CDMI object at the given path only if the object still has the expected version.
+   * The comparison and the delete are atomic, so the delete fails after any update of the object
+   * and of several deletes expecting the same version at most one succeeds.
+   *
+   * @param path the object's path
+   * @param version the expected version as returned by {@link #getVersionByPath(String)}
+   * @return the deleted {@link CdmiObject} or {@code null} if the object doesn't exist or has
+   *         another version
+   */
+  public CdmiObject deleteCdmiObjectByPathIfVersion(String path, String version);
+
+  /**
+   * Gets selected fields of the CDMI objects at the given paths in one batch, e.g. to list the
+   * children of a container. The fields are returned as stored.
+   * 
+   * @param paths the objects' paths
+   * @param fieldNames the names of the requested top-level JSON fields
+   * @return the requested fields of each object in the order of the paths, {@code null} for a
+   *         missing object
+   */
+  public default List<JSONObject> getFieldsByPath(List<String> paths, String... fieldNames) {
+    List<JSONObject> objects = new ArrayList<>(paths.size());
+    for (String path : paths) {
+      objects.add(selectFields(getCdmiObjectByPath(path), fieldNames));
+    }
+    return objects;
+  }
+
+  /**
+   * Selects the given fields of a CDMI object.
+   * 
+   * @param cdmiObject the {@link CdmiObject}, may be {@code null}
+   * @param fieldNames the names of the selected top-level JSON fields
+   * @return the selected fields or {@code null} if there is no object
+   */
+  public static JSONObject selectFields(CdmiObject cdmiObject, String... fieldNames) {
+    if (cdmiObject == null) {
+      return null;
+    }
+    JSONObject json = cdmiObject.toJson();
+    JSONObject fields = new JSONObject();
+    for (String name : fieldNames) {
+      fields.putOpt(name, json.opt(name));
+    }
+    return fields;
+  }
 }
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package org.snia.cdmiserver.dao;
+
+/**
+ * A {@link CdmiObjectDao} which adds behaviour to another one, e.g. indexing or change events,
+ * installed around the back-end's DAO by a bean post-processor.
+ */
+public interface CdmiObjectDaoDecorator extends CdmiObjectDao {
+
+  /**
+   * Gets the decorated DAO.
+   *
+   * @return the {@link CdmiObjectDao} the calls are delegated to
+   */
+  public CdmiObjectDao getDelegate();
+
+  /**
+   * Gets the back-end's DAO below all decorators.
+   *
+   * @param cdmiObjectDao a {@link CdmiObjectDao}, possibly decorated
+   * @return the innermost {@link CdmiObjectDao}
+   */
+  public static CdmiObjectDao undecorated(CdmiObjectDao cdmiObjectDao) {
+    while (cdmiObjectDao instanceof CdmiObjectDaoDecorator) {
+      cdmiObjectDao = ((CdmiObjectDaoDecorator) cdmiObjectDao).getDelegate();
+    }
+    return cdmiObjectDao;
+  }
+}
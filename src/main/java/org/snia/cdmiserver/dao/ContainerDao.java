@@ -51,6 +51,15 @@ public interface ContainerDao {
    */
   public Container createByPath(String path, Container containerRequest);
 
+  /**
+   * Creates only the container's storage, e.g. its directory, without any metadata, e.g. to create
+   * the metadata of many objects at once afterwards.
+   * 
+   * @param path the container's path, the parent's storage must exist
+   * @return {@code true} if the storage exists
+   */
+  public boolean createStorageByPath(String path);
+
   /**
    * <p>
    * Delete the container at the specified path.
@@ -64,6 +73,17 @@ public interface ContainerDao {
    */
   public Container deleteByPath(String path);
 
+  /**
+   * Deletes the empty container at the specified path only if it still has the expected version,
+   * see {@link CdmiObjectDao#deleteCdmiObjectByPathIfVersion(String, String)}.
+   *
+   * @param path Path to the requested {@link Container}
+   * @param version the expected version
+   * @return the deleted {@link Container} or {@code null} if it doesn't exist, has another version
+   *         or couldn't be deleted
+   */
+  public Container deleteByPathIfVersion(String path, String version);
+
   /**
    * <p>
    * Find and return a {@link Container} by object id, if any; otherwise, return <code>null</code> .
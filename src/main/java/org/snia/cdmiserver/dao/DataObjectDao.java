@@ -54,6 +54,85 @@ public interface DataObjectDao {
 
   public DataObject updateContent(String path, byte[] content);
 
+  /**
+   * Overwrites a range of the data object's content, the content grows if the range ends beyond
+   * its current end.
+   * 
+   * @param path the data object's path
+   * @param offset the offset of the first written byte
+   * @param content the written bytes
+   * @return the {@link DataObject}
+   */
+  public DataObject updateContent(String path, long offset, byte[] content);
+
+  /**
+   * Appends to the data object's content.
+   * 
+   * @param path the data object's path
+   * @param content the appended bytes
+   * @return the {@link DataObject}
+   */
+  public DataObject appendContent(String path, byte[] content);
+
+  /**
+   * Reads a range of the data object's content.
+   * 
+   * @param path the data object's path
+   * @param offset the offset of the first read byte
+   * @param length the maximum number of read bytes, negative to read up to the end
+   * @return the read bytes, fewer than requested at the end of the content, or {@code null} if
+   *         the content can't be read
+   */
+  public byte[] readContent(String path, long offset, int length);
+
+  /**
+   * Gets the size of the data object's content without reading it.
+   * 
+   * @param path the data object's path
+   * @return the number of bytes, {@code 0} if the data object has no content or {@code -1} if
+   *         the size can't be determined
+   */
+  public long sizeByPath(String path);
+
+  /**
+   * Deletes only the data object's content, its metadata is kept, e.g. to delete the metadata of
+   * many objects at once afterwards.
+   * 
+   * @param path the data object's path
+   * @return {@code true} if the content doesn't exist anymore
+   */
+  public boolean deleteContentByPath(String path);
+
+  /**
+   * Moves a data object with its content to another path, without transferring the content
+   * through the client.
+   * 
+   * @param sourcePath the data object's current path
+   * @param path the data object's new path, its parent container must exist
+   * @return the moved {@link DataObject} or {@code null} if it couldn't be moved
+   */
+  public DataObject moveByPath(String sourcePath, String path);
+
+  /**
+   * Copies a data object's content and metadata to a new data object, without transferring the
+   * content through the client.
+   * 
+   * @param sourcePath the copied data object's path
+   * @param path the new data object's path, its parent container must exist
+   * @return the new {@link DataObject} or {@code null} if it couldn't be copied
+   */
+  public DataObject copyByPath(String sourcePath, String path);
+
+  /**
+   * Copies only the content of a data object, replacing the content of an existing data object,
+   * metadata is left untouched.
+   * 
+   * @param sourcePath the copied data object's path
+   * @param path the path of the data object receiving the content
+   * @return the number of copied bytes or {@code -1} if the content couldn't be copied
+   */
+  public long copyContentByPath(String sourcePath, String path);
+
   /**
    * <p>
    * Delete the data object at the specified path.
@@ -63,6 +142,17 @@ public interface DataObjectDao {
    */
   public DataObject deleteByPath(String path);
 
+  /**
+   * Deletes the data object at the specified path only if it still has the expected version, see
+   * {@link CdmiObjectDao#deleteCdmiObjectByPathIfVersion(String, String)}.
+   *
+   * @param path Path to the requested {@link DataObject}
+   * @param version the expected version
+   * @return the deleted {@link DataObject} or {@code null} if it doesn't exist or has another
+   *         version
+   */
+  public DataObject deleteByPathIfVersion(String path, String version);
+
   /**
    * <p>
    * Find and return a {@link DataObject} by object id, if any; otherwise, return <code>null</code>.
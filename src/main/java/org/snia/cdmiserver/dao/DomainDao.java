@@ -16,6 +16,11 @@ import org.snia.cdmiserver.model.Domain;
 
 public interface DomainDao {
 
+  /**
+   * The path of the root domain, all other domains are below it.
+   */
+  public static final String ROOT_DOMAIN = "/cdmi_domains";
+
   /**
    * <p>
    * Create a Domain at the specified path. All intermediate Domains must already exist.
@@ -73,4 +78,19 @@ public interface DomainDao {
    * @param requestedFields requested fields
    */
   public CdmiObject updateByPath(String path, Domain domain, String[] requestedFields);
+
+  /**
+   * <p>
+   * Create the root {@link Domain} unless it already exists.
+   * </p>
+   * 
+   * @return the root {@link Domain}
+   */
+  public default CdmiObject createRootDomain() {
+    CdmiObject rootDomain = findByPath(ROOT_DOMAIN);
+    if (rootDomain != null) {
+      return rootDomain;
+    }
+    return createByPath(ROOT_DOMAIN, new Domain("cdmi_domains", "/", ""));
+  }
 }
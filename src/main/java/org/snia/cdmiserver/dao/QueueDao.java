@@ -28,15 +28,48 @@
 
 package org.snia.cdmiserver.dao;
 
+import org.json.JSONArray;
 import org.snia.cdmiserver.model.Queue;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * <p>
- * DAO for manipulating CDMI <em>Container</em> instances.
+ * DAO for manipulating CDMI <em>Queue</em> instances.
  * </p>
  */
 public interface QueueDao {
 
+  /**
+   * <p>
+   * Create a queue at the specified path. The parent container must already exist.
+   * </p>
+   * 
+   * @param path Path to the new {@link Queue}
+   */
+  public Queue createByPath(String path, Queue queueRequest);
+
+  /**
+   * <p>
+   * Delete the queue at the specified path with all of its values.
+   * </p>
+   * 
+   * @param path Path to the requested {@link Queue}
+   */
+  public Queue deleteByPath(String path);
+
+  /**
+   * Deletes the queue at the specified path with all of its values only if it still has the
+   * expected version, see {@link CdmiObjectDao#deleteCdmiObjectByPathIfVersion(String, String)}.
+   *
+   * @param path Path to the requested {@link Queue}
+   * @param version the expected version
+   * @return the deleted {@link Queue} or {@code null} if it doesn't exist or has another version
+   */
+  public Queue deleteByPathIfVersion(String path, String version);
+
   /**
    * <p>
    * Find and return a {@link Queue} by object id, if any; otherwise, return <code>null</code>.
@@ -44,4 +77,74 @@ public interface QueueDao {
    */
   public Queue findByObjectId(String objectId);
 
+  /**
+   * <p>
+   * Find and return a {@link Queue} by path, if any; otherwise, return <code>null</code>.
+   * </p>
+   * 
+   * @param path Path to the requested {@link Queue}
+   */
+  public Queue findByPath(String path);
+
+  /**
+   * Checks whether the given path is a queue, without reading the queue's metadata.
+   * 
+   * @param path the path
+   * @return {@code true} if there is a queue at the path
+   */
+  public boolean isQueue(String path);
+
+  /**
+   * Appends values to the queue.
+   * 
+   * @param path the queue's path
+   * @param values the values
+   * @return the position of the first enqueued value or {@code -1} if the queue doesn't exist
+   */
+  public long enqueue(String path, List<byte[]> values);
+
+  /**
+   * Dequeues the next values for a consumer. The values stay in the queue until the consumer
+   * acknowledges them.
+   * 
+   * @param queue the {@link Queue}
+   * @param consumer the consumer's name
+   * @param count the maximum number of values
+   * @return the {@link Queue} with the dequeued values and their range
+   */
+  public Queue dequeue(Queue queue, String consumer, int count);
+
+  /**
+   * Acknowledges the oldest values delivered to a consumer, which removes them from the queue.
+   * 
+   * @param path the queue's path
+   * @param consumer the consumer's name
+   * @param count the number of values
+   * @return the number of acknowledged values or {@code -1} if the queue doesn't exist
+   */
+  public long acknowledge(String path, String consumer, long count);
+
+  /**
+   * Gets the number of values a consumer hasn't acknowledged yet.
+   * 
+   * @param path the queue's path
+   * @param consumer the consumer's name
+   * @return the number of values
+   */
+  public long getQueueValues(String path, String consumer);
+
+  /**
+   * Gets the values of an enqueue request.
+   * 
+   * @param value the values as JSON array
+   * @return the UTF-8 encoded values
+   */
+  public static List<byte[]> values(JSONArray value) {
+    List<byte[]> values = new ArrayList<>(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      values.add(value.get(i).toString().getBytes(StandardCharsets.UTF_8));
+    }
+    return values;
+  }
+
 }
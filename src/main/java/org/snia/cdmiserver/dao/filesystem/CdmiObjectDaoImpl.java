@@ -18,14 +18,20 @@ import org.snia.cdmiserver.model.CdmiObject;
 import org.snia.cdmiserver.model.Container;
 import org.snia.cdmiserver.model.DataObject;
 import org.snia.cdmiserver.model.Domain;
+import org.snia.cdmiserver.model.Queue;
 import org.snia.cdmiserver.util.MediaTypes;
 
-import java.nio.file.AccessDeniedException;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * This is a prototype implementation of CdmiObject CRUD operations for a file system storage
@@ -38,6 +44,9 @@ public class CdmiObjectDaoImpl implements CdmiObjectDao {
 
   private static final Logger log = LoggerFactory.getLogger(CdmiObjectDaoImpl.class);
 
+  private static final String VERSION_MARK = "_version";
+  private static final long LOCK_TIMEOUT_MILLIS = 60000;
+
   private String objectIdPrefix;
   private String baseDirectory;
   private String objectIdDirectory;
@@ -118,7 +127,7 @@ public class CdmiObjectDaoImpl implements CdmiObjectDao {
         log.error("File already exists");
         log.debug("remove temporary object {}", objectById.getObjectId());
         CdmiObject removedObjectId = deleteCdmiObject(objectById.getObjectId());
-        log.debug("removed temporary object {}", removedObjectId.toJson());
+        log.debug("removed temporary object {}", removedObjectId);
         log.debug("return existing object {}", getCdmiObjectByPath(path).toString());
         return getCdmiObjectByPath(path);
       } catch (Exception ex) {
@@ -138,17 +147,25 @@ public class CdmiObjectDaoImpl implements CdmiObjectDao {
 
   @Override
   public CdmiObject createCdmiObject(CdmiObject object) {
+    Path tmp = null;
     try {
+      Path objectIdFile = getObjectIdFilePath(object.getObjectId());
+      tmp = temporaryFile(objectIdFile);
 
-      Files.write(getObjectIdFilePath(object.getObjectId()), object.toJson().toString().getBytes(),
-          StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+      // the link fails if the object id exists, the file is never seen half written
+      JSONObject json = object.toJson().put(VERSION_MARK, 1L);
+      Files.write(tmp, json.toString().getBytes(), StandardOpenOption.CREATE_NEW);
+      Files.createLink(objectIdFile, tmp);
+      object.setVersion(version(json));
 
-      log.debug("create new objectId file {} {}", object.toString(), object.toJson());
+      log.debug("create new objectId file {}", object);
 
     } catch (Exception ex) {
       // ex.printStackTrace();
       log.error("{} {}", ex.getClass().getName(), ex.getMessage());
       return null;
+    } finally {
+      deleteTemporaryFile(tmp);
     }
     return object;
   }
@@ -162,56 +179,148 @@ public class CdmiObjectDaoImpl implements CdmiObjectDao {
    */
   @Override
   public CdmiObject updateCdmiObject(CdmiObject updateObject, String path) {
-    try {
+    return write(updateObject, path, null);
+  }
 
-      Files.write(getCdmiObjectFilePathByUrl(path), updateObject.toJson().toString().getBytes(),
-          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+  @Override
+  public CdmiObject updateCdmiObject(CdmiObject object) {
+    return write(object, null, null);
+  }
 
-      log.debug("update objectId file {} {}", updateObject.toString(), updateObject.toJson());
-    } catch (AccessDeniedException ex) {
-      // try to fix file modification issues
+  /**
+   * Writes an existing object. The object id file and the metadata file of the object's path are
+   * hard links to the same file. The new content is written to a temporary file, which is linked
+   * next to the metadata file and both links are renamed over the old ones, so readers and a
+   * crash never see a partly written file. All writers of an object hold its lock, see
+   * {@link #lock(String)}, so no write is lost between two others, and each write increments the
+   * version counter stored with the object.
+   * 
+   * @param cdmiObject the object
+   * @param path the CDMI URL path of the object to overwrite or {@code null} for the object with
+   *        the given object's id
+   * @param version the expected version or {@code null} for an unconditional write
+   * @return the written {@link CdmiObject} or {@code null} if the object doesn't exist, has
+   *         another version or couldn't be written
+   */
+  private CdmiObject write(CdmiObject cdmiObject, String path, String version) {
+    String objectId = cdmiObject.getObjectId();
+    Path metadataFile = getCdmiObjectFilePathByUrl(path != null ? path : pathOf(cdmiObject));
+    if (path != null) {
       try {
-        Files.deleteIfExists(getCdmiObjectFilePathByUrl(path));
-        Files.write(getCdmiObjectFilePathByUrl(path), updateObject.toJson().toString().getBytes(),
-            StandardOpenOption.WRITE);
-      } catch (Exception ex1) {
-        // ex.printStackTrace();
-        log.error("{} {}", ex1.getClass().getName(), ex1.getMessage());
+        objectId = new JSONObject(new String(Files.readAllBytes(metadataFile)))
+            .getString("objectID");
+      } catch (Exception ex) {
+        log.debug("no object at {}", path);
+        return null;
+      }
+    }
+    Path objectIdFile = getObjectIdFilePath(objectId);
+    Path lockFile = lock(objectId);
+    if (lockFile == null) {
+      return null;
+    }
+    Path tmp = temporaryFile(objectIdFile);
+    Path metadataTmp = null;
+    try {
+      long counter;
+      try {
+        counter = new JSONObject(new String(Files.readAllBytes(objectIdFile)))
+            .optLong(VERSION_MARK);
+      } catch (NoSuchFileException ex) {
+        log.debug("no object {} to update", objectId);
         return null;
       }
+      // an object without a parent URI, e.g. a capability, has no metadata file of its own
+      boolean linked = Files.exists(metadataFile) && Files.isSameFile(metadataFile, objectIdFile);
+      if (path != null && !linked) {
+        log.debug("object {} was removed from {}", objectId, path);
+        return null;
+      }
+      if (version != null && !version.equals(objectId + "." + counter)) {
+        return null;
+      }
+      JSONObject json = cdmiObject.toJson().put(VERSION_MARK, counter + 1);
+      Files.write(tmp, json.toString().getBytes(), StandardOpenOption.CREATE_NEW);
+      if (linked) {
+        metadataTmp = temporaryFile(metadataFile);
+        Files.createLink(metadataTmp, tmp);
+        Files.move(metadataTmp, metadataFile, StandardCopyOption.ATOMIC_MOVE);
+      }
+      Files.move(tmp, objectIdFile, StandardCopyOption.ATOMIC_MOVE);
+      cdmiObject.setVersion(objectId + "." + (counter + 1));
+
+      log.debug("update objectId file {}", cdmiObject);
+      return cdmiObject;
     } catch (Exception ex) {
       // ex.printStackTrace();
       log.error("{} {}", ex.getClass().getName(), ex.getMessage());
-      return null;
+    } finally {
+      deleteTemporaryFile(tmp);
+      deleteTemporaryFile(metadataTmp);
+      unlock(lockFile);
     }
-    return updateObject;
+    return null;
   }
 
-  @Override
-  public CdmiObject updateCdmiObject(CdmiObject object) {
-    try {
+  private static String pathOf(CdmiObject cdmiObject) {
+    JSONObject json = cdmiObject.toJson();
+    return Paths.get(json.optString("parentURI", "/"), json.optString("objectName", "/"))
+        .toString();
+  }
 
-      Files.write(getObjectIdFilePath(object.getObjectId()), object.toJson().toString().getBytes(),
-          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+  /**
+   * Gets a temporary file next to the given one. A temporary metadata file keeps the object id
+   * prefix and is skipped like the metadata files by anything walking the data directories.
+   */
+  private static Path temporaryFile(Path file) {
+    return file.resolveSibling(file.getFileName() + "." + UUID.randomUUID() + ".tmp");
+  }
 
-      log.debug("update objectId file {} {}", object.toString(), object.toJson());
-    } catch (AccessDeniedException ex) {
-      // try to fix file modification issues
+  private static void deleteTemporaryFile(Path tmp) {
+    try {
+      if (tmp != null) {
+        Files.deleteIfExists(tmp);
+      }
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+  }
+
+  /**
+   * Locks an object for writing. The lock is a file next to the object id file, created with
+   * {@code CREATE_NEW}, which is atomic also on shared file systems. A lock older than
+   * {@value #LOCK_TIMEOUT_MILLIS} ms is taken to be left over from a crash and removed.
+   * 
+   * @param objectId the object's id
+   * @return the lock file or {@code null} if the thread was interrupted while waiting
+   */
+  private Path lock(String objectId) {
+    Path lockFile = getObjectIdFilePath(objectId + ".lock");
+    while (true) {
       try {
-        Files.deleteIfExists(getObjectIdFilePath(object.getObjectId()));
-        Files.write(getObjectIdFilePath(object.getObjectId()),
-            object.toJson().toString().getBytes(), StandardOpenOption.WRITE);
-      } catch (Exception ex1) {
-        // ex.printStackTrace();
-        log.error("{} {}", ex1.getClass().getName(), ex1.getMessage());
+        Files.createFile(lockFile);
+        return lockFile;
+      } catch (FileAlreadyExistsException ex) {
+        removeStaleLock(lockFile);
+      } catch (Exception ex) {
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+        return null;
+      }
+      try {
+        TimeUnit.MILLISECONDS.sleep(1);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
         return null;
       }
+    }
+  }
+
+  private static void unlock(Path lockFile) {
+    try {
+      Files.deleteIfExists(lockFile);
     } catch (Exception ex) {
-      // ex.printStackTrace();
       log.error("{} {}", ex.getClass().getName(), ex.getMessage());
-      return null;
     }
-    return object;
   }
 
   /**
@@ -224,27 +333,83 @@ public class CdmiObjectDaoImpl implements CdmiObjectDao {
   public CdmiObject deleteCdmiObjectByPath(String path) {
     CdmiObject object = getCdmiObjectByPath(path);
     if (object != null) {
+      Path lockFile = lock(object.getObjectId());
+      if (lockFile == null) {
+        return null;
+      }
       try {
 
         boolean deleted = Files.deleteIfExists(getCdmiObjectFilePathByUrl(path));
 
         log.debug("delete objectId file {} success {}", path, deleted);
 
-        deleteCdmiObject(object.getObjectId());
+        deleted = Files.deleteIfExists(getObjectIdFilePath(object.getObjectId()));
+
+        log.debug("delete objectId file {} success {}", object.toString(), deleted);
 
       } catch (Exception ex) {
         // ex.printStackTrace();
         log.error("{} {}", ex.getClass().getName(), ex.getMessage());
         return null;
+      } finally {
+        unlock(lockFile);
       }
     }
     return object;
   }
 
+  /**
+   * Deletes the object at the given path if it still has the expected version. The version is
+   * compared and both links are removed while holding the object's lock.
+   * 
+   * @param path the CDMI URL path
+   * @param version the expected version
+   * @return the deleted {@link CdmiObject} or {@code null} if the object has another version
+   */
+  @Override
+  public CdmiObject deleteCdmiObjectByPathIfVersion(String path, String version) {
+    Path metadataFile = getCdmiObjectFilePathByUrl(path);
+    String objectId;
+    try {
+      objectId = new JSONObject(new String(Files.readAllBytes(metadataFile)))
+          .getString("objectID");
+    } catch (Exception ex) {
+      log.debug("no object at {}", path);
+      return null;
+    }
+    Path lockFile = lock(objectId);
+    if (lockFile == null) {
+      return null;
+    }
+    try {
+      // the path may have been deleted and taken by another object before the lock was taken
+      CdmiObject object = getCdmiObjectByPath(path);
+      if (object == null || !objectId.equals(object.getObjectId())
+          || !version.equals(object.getVersion())) {
+        log.debug("object {} is not at version {}", path, version);
+        return null;
+      }
+      Files.delete(metadataFile);
+      Files.deleteIfExists(getObjectIdFilePath(objectId));
+
+      log.debug("delete objectId file {} at version {}", path, version);
+      return object;
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    } finally {
+      unlock(lockFile);
+    }
+    return null;
+  }
+
   @Override
   public CdmiObject deleteCdmiObject(String objectId) {
     CdmiObject object = getCdmiObject(objectId);
     if (object != null) {
+      Path lockFile = lock(objectId);
+      if (lockFile == null) {
+        return null;
+      }
       try {
 
         boolean deleted = Files.deleteIfExists(getObjectIdFilePath(objectId));
@@ -255,13 +420,125 @@ public class CdmiObjectDaoImpl implements CdmiObjectDao {
         // ex.printStackTrace();
         log.error("{} {}", ex.getClass().getName(), ex.getMessage());
         return null;
+      } finally {
+        unlock(lockFile);
       }
     }
     return object;
   }
 
   /**
-   * Gets a CDMI object by path.
+   * Moves a data object by renaming its meta-data link, the object id file stays in place.
+   * 
+   * @param sourcePath the object's current CDMI URL path
+   * @param path the object's new CDMI URL path
+   * @return the moved {@link CdmiObject}
+   */
+  @Override
+  public CdmiObject moveCdmiObject(String sourcePath, String path) {
+    CdmiObject cdmiObject = getCdmiObjectByPath(sourcePath);
+    Path source = Paths.get(sourcePath.trim());
+    Path target = Paths.get(path.trim());
+    if (!(cdmiObject instanceof DataObject) || source.getParent() == null
+        || target.getParent() == null || Files.exists(getCdmiObjectFilePathByUrl(path))) {
+      return null;
+    }
+    CdmiObject sourceParent = getCdmiObjectByPath(source.getParent().toString());
+    CdmiObject parent = source.getParent().equals(target.getParent()) ? sourceParent
+        : getCdmiObjectByPath(target.getParent().toString());
+    if (!(sourceParent instanceof Container) || !(parent instanceof Container)) {
+      return null;
+    }
+
+    Path lockFile = lock(cdmiObject.getObjectId());
+    if (lockFile == null) {
+      return null;
+    }
+    try {
+      Files.move(getCdmiObjectFilePathByUrl(sourcePath), getCdmiObjectFilePathByUrl(path),
+          StandardCopyOption.ATOMIC_MOVE);
+      log.debug("move objectId link {} to {}", sourcePath, path);
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+      return null;
+    } finally {
+      unlock(lockFile);
+    }
+
+    DataObject dataObject = (DataObject) cdmiObject;
+    dataObject.setObjectName(target.getFileName().toString());
+    dataObject.setParentUri(target.getParent().toString());
+    dataObject.setParentId(parent.getObjectId());
+    updateCdmiObject(dataObject);
+
+    CdmiObjectDao.moveChild((Container) sourceParent, (Container) parent,
+        source.getFileName().toString(), target.getFileName().toString());
+    updateCdmiObject(sourceParent);
+    if (parent != sourceParent) {
+      updateCdmiObject(parent);
+    }
+    return dataObject;
+  }
+
+  /**
+   * Gets the version of the object at the given path from the counter in its metadata file, which
+   * every write of the object's metadata or content increments.
+   * 
+   * @param path the CDMI URL path
+   * @return the version or {@code null} if there is no object at the path
+   */
+  @Override
+  public String getVersionByPath(String path) {
+    try {
+      return version(new JSONObject(new String(
+          Files.readAllBytes(getCdmiObjectFilePathByUrl(path)))));
+    } catch (NoSuchFileException ex) {
+      log.debug("no object for path {}", path);
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return null;
+  }
+
+  private static String version(JSONObject json) {
+    // objects written before the counter was kept start at 0
+    return json.optString("objectID") + "." + json.optLong(VERSION_MARK);
+  }
+
+  /**
+   * Updates the object at the given path if it still has the expected version. The version is
+   * compared while holding the object's lock, which every writer takes.
+   * 
+   * @param path the CDMI URL path
+   * @param version the expected version
+   * @param cdmiObject the updated object
+   * @param fieldNames the updated fields, the whole object is written
+   * @return the updated {@link CdmiObject} or {@code null} if the object has another version
+   */
+  @Override
+  public CdmiObject updateCdmiObjectIfVersion(String path, String version,
+      CdmiObject cdmiObject, String... fieldNames) {
+    CdmiObject updated = write(cdmiObject, path, version);
+    if (updated != null) {
+      log.debug("update objectId file {} at version {}", cdmiObject, version);
+    }
+    return updated;
+  }
+
+  private static void removeStaleLock(Path lockFile) {
+    try {
+      if (System.currentTimeMillis()
+          - Files.getLastModifiedTime(lockFile).toMillis() > LOCK_TIMEOUT_MILLIS) {
+        log.warn("remove stale lock {}", lockFile);
+        Files.deleteIfExists(lockFile);
+      }
+    } catch (Exception ex) {
+      log.debug("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+  }
+
+  /**
+   * Gets a CDMI object by path. The object's version is taken from the metadata file just read.
    * 
    * @param path the CDMI URL path
    * @return the {@link CdmiObject}
@@ -275,17 +552,22 @@ public class CdmiObjectDaoImpl implements CdmiObjectDao {
 
       String objectType = json.optString("objectType");
       if (objectType != null) {
+        CdmiObject cdmiObject;
         if (objectType.equals(MediaTypes.CONTAINER)) {
-          return Container.fromJson(json);
+          cdmiObject = Container.fromJson(json);
         } else if (objectType.equals(MediaTypes.DATA_OBJECT)) {
-          return DataObject.fromJson(json);
+          cdmiObject = DataObject.fromJson(json);
+        } else if (objectType.equals(MediaTypes.QUEUE)) {
+          cdmiObject = Queue.fromJson(json);
         } else if (objectType.equals(MediaTypes.ACCOUNT)) {
-          return new Domain(json);
+          cdmiObject = new Domain(json);
         } else if (objectType.equals(MediaTypes.CAPABILITY)) {
-          return Capability.fromJson(json);
+          cdmiObject = Capability.fromJson(json);
         } else {
-          return CdmiObject.fromJson(json);
+          cdmiObject = CdmiObject.fromJson(json);
         }
+        cdmiObject.setVersion(version(json));
+        return cdmiObject;
       }
     } catch (Exception ex) {
       // ex.printStackTrace();
@@ -294,6 +576,15 @@ public class CdmiObjectDaoImpl implements CdmiObjectDao {
     return null;
   }
 
+  /**
+   * Reads the meta-data files of the given paths in parallel.
+   */
+  @Override
+  public List<JSONObject> getFieldsByPath(List<String> paths, String... fieldNames) {
+    return paths.parallelStream().map(path -> CdmiObjectDao.selectFields(
+        getCdmiObjectByPath(path), fieldNames)).collect(Collectors.toList());
+  }
+
   @Override
   public CdmiObject getCdmiObject(String objectId) {
     try {
@@ -307,6 +598,8 @@ public class CdmiObjectDaoImpl implements CdmiObjectDao {
           return Container.fromJson(json);
         } else if (objectType.equals(MediaTypes.DATA_OBJECT)) {
           return DataObject.fromJson(json);
+        } else if (objectType.equals(MediaTypes.QUEUE)) {
+          return Queue.fromJson(json);
         } else if (objectType.equals(MediaTypes.ACCOUNT)) {
           return new Domain(json);
         } else if (objectType.equals(MediaTypes.CAPABILITY)) {
@@ -51,6 +51,7 @@ import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.stream.Stream;
 
 /**
  * <p>
@@ -172,6 +173,44 @@ public class ContainerDaoImpl implements ContainerDao {
     return container;
   }
 
+  @Override
+  public Container deleteByPathIfVersion(String path, String version) {
+    try {
+      log.debug("delete container {} at version {}", path.trim(), version);
+
+      final Path containerPath = Paths.get(baseDirectoryName.trim(), path.trim());
+      try (Stream<Path> entries = Files.list(containerPath)) {
+        if (entries.findAny().isPresent()) {
+          log.debug("container {} is not empty", path.trim());
+          return null;
+        }
+      }
+      // the directory is only removed if the metadata was still at the version
+      CdmiObject deleted = cdmiObjectDao.deleteCdmiObjectByPathIfVersion(path.trim(), version);
+      if (deleted instanceof Container) {
+        log.debug("delete directory {}", containerPath.toString());
+        Files.delete(containerPath);
+        return (Container) deleted;
+      }
+    } catch (Exception ex) {
+      log.error("ERROR: {}", ex.getMessage());
+    }
+    return null;
+  }
+
+  @Override
+  public boolean createStorageByPath(String path) {
+    try {
+      Files.createDirectory(Paths.get(baseDirectoryName.trim(), path.trim()));
+      return true;
+    } catch (FileAlreadyExistsException ex) {
+      return Files.isDirectory(Paths.get(baseDirectoryName.trim(), path.trim()));
+    } catch (Exception ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return false;
+  }
+
   @Override
   public Container findByObjectId(String objectId) {
     return (Container) cdmiObjectDao.getCdmiObject(objectId);
@@ -42,12 +42,17 @@ import org.snia.cdmiserver.model.Container;
 import org.snia.cdmiserver.model.DataObject;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.AccessDeniedException;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 /**
  * <p>
@@ -149,6 +154,9 @@ public class DataObjectDaoImpl implements DataObjectDao {
 
     dataObject.setCompletionStatus("Complete");
     dataObject.setMetadata(dataObjectRequest.getMetadata());
+    if (dataObjectRequest.getDomainUri() != null) {
+      dataObject.setDomainUri(dataObjectRequest.getDomainUri());
+    }
     // dataObject.setCapabilitiesUri(dataObjectRequest.getCapabilitiesUri());
 
     dataObject = (DataObject) cdmiObjectDao.createCdmiObject(dataObject, urlPath.toString());
@@ -192,6 +200,26 @@ public class DataObjectDaoImpl implements DataObjectDao {
     return dataObject;
   }
 
+  @Override
+  public DataObject deleteByPathIfVersion(String path, String version) {
+    try {
+      log.debug("delete data object {} at version {}", path.trim(), version);
+
+      // the file is only removed if the metadata was still at the version
+      CdmiObject deleted = cdmiObjectDao.deleteCdmiObjectByPathIfVersion(path.trim(), version);
+      if (deleted instanceof DataObject) {
+        final Path objectPath = Paths.get(baseDirectoryName.trim(), path.trim());
+
+        log.debug("delete file {}", objectPath.toString());
+        Files.deleteIfExists(objectPath);
+        return (DataObject) deleted;
+      }
+    } catch (Exception ex) {
+      log.error("ERROR: {}", ex.getMessage());
+    }
+    return null;
+  }
+
   @Override
   public DataObject findByPath(String path) {
     DataObject dataObject = (DataObject) cdmiObjectDao.getCdmiObjectByPath(path.trim());
@@ -233,12 +261,14 @@ public class DataObjectDaoImpl implements DataObjectDao {
         Files.write(objectPath, content, StandardOpenOption.WRITE,
             StandardOpenOption.TRUNCATE_EXISTING);
         log.debug("writing value to data object");
+        dataObject = contentWritten(dataObject, path);
       } catch (AccessDeniedException ex) {
         // try to fix file modification issues
         try {
           Path objectPath = Paths.get(baseDirectoryName.trim(), path.trim());
           Files.deleteIfExists(objectPath);
           Files.write(objectPath, content, StandardOpenOption.WRITE);
+          dataObject = contentWritten(dataObject, path);
         } catch (Exception ex1) {
           // ex.printStackTrace();
           log.error("{} {}", ex1.getClass().getName(), ex1.getMessage());
@@ -251,4 +281,161 @@ public class DataObjectDaoImpl implements DataObjectDao {
     }
     return dataObject;
   }
+
+  @Override
+  public DataObject updateContent(String path, long offset, byte[] content) {
+    DataObject dataObject = (DataObject) cdmiObjectDao.getCdmiObjectByPath(path.trim());
+
+    if (dataObject != null) {
+      Path objectPath = Paths.get(baseDirectoryName.trim(), path.trim());
+      try (FileChannel channel = FileChannel.open(objectPath, StandardOpenOption.WRITE)) {
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        while (buffer.hasRemaining()) {
+          channel.write(buffer, offset + buffer.position());
+        }
+        log.debug("writing value range to data object");
+        dataObject = contentWritten(dataObject, path);
+      } catch (IOException ex) {
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+        return null;
+      }
+    }
+    return dataObject;
+  }
+
+  @Override
+  public DataObject appendContent(String path, byte[] content) {
+    DataObject dataObject = (DataObject) cdmiObjectDao.getCdmiObjectByPath(path.trim());
+
+    if (dataObject != null) {
+      try {
+        Path objectPath = Paths.get(baseDirectoryName.trim(), path.trim());
+        Files.write(objectPath, content, StandardOpenOption.APPEND);
+        log.debug("appending value to data object");
+        dataObject = contentWritten(dataObject, path);
+      } catch (IOException ex) {
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+        return null;
+      }
+    }
+    return dataObject;
+  }
+
+  /**
+   * Rewrites the data object's metadata after its content was written, which gives it a new
+   * version.
+   */
+  private DataObject contentWritten(DataObject dataObject, String path) {
+    return (DataObject) cdmiObjectDao.updateCdmiObject(dataObject, path.trim());
+  }
+
+  @Override
+  public long sizeByPath(String path) {
+    try {
+      return Files.size(Paths.get(baseDirectoryName.trim(), path.trim()));
+    } catch (NoSuchFileException ex) {
+      log.debug("no content for data object {}", path.trim());
+      return 0;
+    } catch (IOException ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return -1;
+  }
+
+  @Override
+  public boolean deleteContentByPath(String path) {
+    try {
+      Files.deleteIfExists(Paths.get(baseDirectoryName.trim(), path.trim()));
+      return true;
+    } catch (IOException ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return false;
+  }
+
+  @Override
+  public DataObject moveByPath(String sourcePath, String path) {
+    Path sourceFile = Paths.get(baseDirectoryName.trim(), sourcePath.trim());
+    Path targetFile = Paths.get(baseDirectoryName.trim(), path.trim());
+    if (!(cdmiObjectDao.getCdmiObjectByPath(sourcePath.trim()) instanceof DataObject)
+        || Files.exists(targetFile) || !Files.isDirectory(targetFile.getParent())) {
+      return null;
+    }
+    try {
+      // a rename, the content isn't touched
+      Files.move(sourceFile, targetFile, StandardCopyOption.ATOMIC_MOVE);
+      log.debug("move file {} to {}", sourceFile, targetFile);
+    } catch (IOException ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+      return null;
+    }
+
+    DataObject dataObject =
+        (DataObject) cdmiObjectDao.moveCdmiObject(sourcePath.trim(), path.trim());
+    if (dataObject == null) {
+      try {
+        Files.move(targetFile, sourceFile, StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException ex) {
+        log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+      }
+    }
+    return dataObject;
+  }
+
+  @Override
+  public DataObject copyByPath(String sourcePath, String path) {
+    CdmiObject source = cdmiObjectDao.getCdmiObjectByPath(sourcePath.trim());
+    Path targetFile = Paths.get(baseDirectoryName.trim(), path.trim());
+    if (!(source instanceof DataObject) || Files.exists(targetFile)) {
+      return null;
+    }
+    DataObject dataObjectRequest = DataObject.fromJson(new JSONObject());
+    dataObjectRequest.setMetadata(((DataObject) source).getMetadata());
+    DataObject dataObject = createByPath(path, dataObjectRequest);
+    if (dataObject != null && copyContentByPath(sourcePath, path) < 0) {
+      deleteByPath(path);
+      return null;
+    }
+    return dataObject;
+  }
+
+  @Override
+  public long copyContentByPath(String sourcePath, String path) {
+    Path sourceFile = Paths.get(baseDirectoryName.trim(), sourcePath.trim());
+    Path targetFile = Paths.get(baseDirectoryName.trim(), path.trim());
+    // the kernel copies the content between the channels, e.g. with copy_file_range
+    try (FileChannel in = FileChannel.open(sourceFile, StandardOpenOption.READ);
+        FileChannel out = FileChannel.open(targetFile, StandardOpenOption.WRITE,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      long size = in.size();
+      long position = 0;
+      while (position < size) {
+        position += in.transferTo(position, size - position, out);
+      }
+      log.debug("copy file {} to {}, {} bytes", sourceFile, targetFile, size);
+      return size;
+    } catch (IOException ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return -1;
+  }
+
+  @Override
+  public byte[] readContent(String path, long offset, int length) {
+    Path objectPath = Paths.get(baseDirectoryName.trim(), path.trim());
+    try (FileChannel channel = FileChannel.open(objectPath, StandardOpenOption.READ)) {
+      long available = Math.min(Math.max(0, channel.size() - offset), Integer.MAX_VALUE);
+      ByteBuffer buffer = ByteBuffer.allocate((int) (length < 0 ? available
+          : Math.min(available, length)));
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, offset + buffer.position()) < 0) {
+          break;
+        }
+      }
+      return Arrays.copyOf(buffer.array(), buffer.position());
+    } catch (IOException ex) {
+      log.error("{} {}", ex.getClass().getName(), ex.getMessage());
+    }
+    return null;
+  }
 }
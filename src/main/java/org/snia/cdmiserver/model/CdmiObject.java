@@ -24,6 +24,8 @@ public class CdmiObject {
 
   private String objectId;
 
+  private String version;
+
   /**
    * Creates a new CDMI object.
    */
@@ -52,6 +54,20 @@ public class CdmiObject {
     this.objectId = objectId;
   }
 
+  /**
+   * Gets the version the object was loaded at, if the DAO got it along with the object. The
+   * version isn't serialized.
+   * 
+   * @return the version or {@code null} if it has to be looked up
+   */
+  public String getVersion() {
+    return version;
+  }
+
+  public void setVersion(String version) {
+    this.version = version;
+  }
+
   /**
    * Calculates the childrenrange parameter.
    * 
@@ -28,11 +28,234 @@
 
 package org.snia.cdmiserver.model;
 
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.snia.cdmiserver.util.MediaTypes;
+
 /**
  * <p>
- * Representation of a CDMI <em>Queue</em>.
+ * Representation of a CDMI <em>Queue</em>. Only the queue's metadata is stored with the other
+ * CDMI objects, the enqueued values are kept by the {@link org.snia.cdmiserver.dao.QueueDao}.
  * </p>
  */
 public class Queue extends CdmiObject {
 
+  private String objectType;
+  private String objectName;
+  private String parentUri;
+  private String parentId;
+  private String domainUri;
+  private String capabilitiesUri;
+  private String completionStatus;
+
+  private JSONObject metadata;
+
+  private long queueValues;
+  private String valuerange;
+  private JSONArray value;
+
+  private Queue() {}
+
+  /**
+   * Creates a new queue with the mandatory fields.
+   * 
+   * @param objectName the queue's name
+   * @param parentUri the queue's parent URI
+   * @param parentId the queue's parent objectId
+   */
+  public Queue(String objectName, String parentUri, String parentId) {
+    super();
+    this.objectName = objectName;
+    this.parentUri = parentUri;
+    this.parentId = parentId;
+    // default values
+    this.objectType = MediaTypes.QUEUE;
+    this.domainUri = "/cdmi_domains";
+    this.capabilitiesUri = "/cdmi_capabilities/queue";
+    this.completionStatus = "Processing";
+    this.metadata = new JSONObject();
+  }
+
+  public String getObjectType() {
+    return objectType;
+  }
+
+  public String getObjectName() {
+    return objectName;
+  }
+
+  public void setObjectName(String objectName) {
+    this.objectName = objectName;
+  }
+
+  public String getParentUri() {
+    return parentUri;
+  }
+
+  public void setParentUri(String parentUri) {
+    this.parentUri = parentUri;
+  }
+
+  public String getParentId() {
+    return parentId;
+  }
+
+  public void setParentId(String parentId) {
+    this.parentId = parentId;
+  }
+
+  public String getDomainUri() {
+    return domainUri;
+  }
+
+  public void setDomainUri(String domainUri) {
+    this.domainUri = domainUri;
+  }
+
+  public String getCapabilitiesUri() {
+    return capabilitiesUri;
+  }
+
+  public void setCapabilitiesUri(String capabilitiesUri) {
+    this.capabilitiesUri = capabilitiesUri;
+  }
+
+  public String getCompletionStatus() {
+    return completionStatus;
+  }
+
+  public void setCompletionStatus(String completionStatus) {
+    this.completionStatus = completionStatus;
+  }
+
+  public JSONObject getMetadata() {
+    return metadata;
+  }
+
+  public void setMetadata(JSONObject metadata) {
+    this.metadata = metadata;
+  }
+
+  /**
+   * Gets the number of enqueued values not acknowledged yet.
+   * 
+   * @return the number of values
+   */
+  public long getQueueValues() {
+    return queueValues;
+  }
+
+  public void setQueueValues(long queueValues) {
+    this.queueValues = queueValues;
+  }
+
+  /**
+   * Gets the range of the dequeued values' positions, e.g. {@code 10-19}.
+   * 
+   * @return the range or {@code null} if no values have been dequeued
+   */
+  public String getValuerange() {
+    return valuerange;
+  }
+
+  public void setValuerange(String valuerange) {
+    this.valuerange = valuerange;
+  }
+
+  /**
+   * Gets the dequeued values, the oldest first.
+   * 
+   * @return the values or {@code null} if no values have been dequeued
+   */
+  public JSONArray getValue() {
+    return value;
+  }
+
+  public void setValue(JSONArray value) {
+    this.value = value;
+  }
+
+  /**
+   * Deserializes a queue from the given JSON object. The values of an enqueue request are kept,
+   * a single value is treated like an array with one value.
+   * 
+   * @param json a {@link JSONObject}
+   */
+  public static Queue fromJson(JSONObject json) {
+    Queue queue = new Queue();
+
+    if (json.has("objectID")) {
+      queue.setObjectId(json.optString("objectID"));
+    }
+    if (json.has("objectName")) {
+      queue.objectName = json.optString("objectName");
+    }
+    if (json.has("parentURI")) {
+      queue.parentUri = json.optString("parentURI");
+    }
+    if (json.has("parentID")) {
+      queue.parentId = json.optString("parentID");
+    }
+    // default values
+    queue.objectType = MediaTypes.QUEUE;
+
+    queue.domainUri = json.optString("domainURI", "/cdmi_domains");
+    queue.capabilitiesUri = json.optString("capabilitiesURI", "/cdmi_capabilities/queue");
+    queue.completionStatus = json.optString("completionStatus", "Processing");
+    queue.metadata = json.optJSONObject("metadata");
+    if (queue.metadata == null) {
+      queue.metadata = new JSONObject();
+    }
+    // optional values
+    if (json.has("value")) {
+      queue.value = json.optJSONArray("value");
+      if (queue.value == null) {
+        queue.value = new JSONArray().put(json.optString("value"));
+      }
+    }
+
+    return queue;
+  }
+
+  @Override
+  public JSONObject toJson() {
+    JSONObject json = super.toJson();
+
+    json.putOpt("objectType", objectType);
+    json.putOpt("objectName", objectName);
+    json.putOpt("parentURI", parentUri);
+    json.putOpt("parentID", parentId);
+    json.putOpt("domainURI", domainUri);
+    json.putOpt("capabilitiesURI", capabilitiesUri);
+    json.putOpt("completionStatus", completionStatus);
+    json.putOpt("metadata", metadata);
+
+    return json;
+  }
+
+  /**
+   * Serializes the queue for a response, with the number of enqueued values and the dequeued
+   * values, which aren't stored with the queue's metadata.
+   * 
+   * @return the {@link JSONObject}
+   */
+  public JSONObject toResponseJson() {
+    JSONObject json = toJson();
+
+    json.put("queueValues", queueValues);
+    json.putOpt("valuerange", valuerange);
+    json.putOpt("value", value);
+
+    return json;
+  }
+
+  @Override
+  public String toString() {
+    return "Queue [objectId=" + getObjectId() + ", "
+        + (objectName != null ? "objectName=" + objectName + ", " : "")
+        + (parentUri != null ? "parentUri=" + parentUri + ", " : "")
+        + (parentId != null ? "parentId=" + parentId + ", " : "")
+        + (completionStatus != null ? "completionStatus=" + completionStatus + ", " : "")
+        + "queueValues=" + queueValues + "]";
+  }
 }
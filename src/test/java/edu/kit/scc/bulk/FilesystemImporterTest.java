@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.bulk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import edu.kit.scc.CdmiServerApplication;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.snia.cdmiserver.dao.ContainerDao;
+import org.snia.cdmiserver.dao.DataObjectDao;
+import org.snia.cdmiserver.model.Container;
+import org.snia.cdmiserver.model.DataObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = CdmiServerApplication.class)
+@ActiveProfiles("filesystem-test")
+public class FilesystemImporterTest {
+
+  @Value("${cdmi.data.baseDirectory}")
+  private String baseDirectory;
+
+  @Autowired
+  private FilesystemImporter filesystemImporter;
+
+  @Autowired
+  private ContainerDao containerDao;
+
+  @Autowired
+  private DataObjectDao dataObjectDao;
+
+  @Test
+  public void testImportTree() throws IOException {
+    Path archive = Paths.get(baseDirectory, "importArchive", "nested");
+    Files.createDirectories(archive);
+    for (int i = 0; i < 5; i++) {
+      Files.write(archive.resolve("file" + i), ("content" + i).getBytes());
+    }
+    Files.write(archive.getParent().resolve("top"), "top".getBytes());
+    Files.write(archive.getParent().resolve(".hidden"), "hidden".getBytes());
+
+    BulkProgress progress = filesystemImporter.importTree("/importArchive");
+    assertEquals(BulkProgress.COMPLETE, progress.getCompletionStatus());
+    assertEquals(2, progress.getContainers());
+    assertEquals(6, progress.getDataObjects());
+    assertEquals(0, progress.getFailed());
+
+    Container container = containerDao.findByPath("/importArchive");
+    assertNotNull(container);
+    assertEquals(2, container.getChildren().length());
+
+    Container nested = containerDao.findByPath("/importArchive/nested");
+    assertNotNull(nested);
+    assertEquals(container.getObjectId(), nested.getParentId());
+    assertEquals(5, nested.getChildren().length());
+    assertEquals("0-4", nested.getChildrenrange());
+
+    DataObject dataObject = dataObjectDao.findByPath("/importArchive/nested/file3");
+    assertNotNull(dataObject);
+    assertEquals(nested.getObjectId(), dataObject.getParentId());
+
+    Container root = containerDao.findByPath("/");
+    boolean listed = false;
+    for (int i = 0; i < root.getChildren().length(); i++) {
+      listed |= root.getChildren().getString(i).equals("importArchive");
+    }
+    assertTrue(listed);
+
+    // a second import only skips the already imported objects
+    progress = filesystemImporter.importTree("/importArchive");
+    assertEquals(BulkProgress.COMPLETE, progress.getCompletionStatus());
+    assertEquals(0, progress.getContainers() + progress.getDataObjects());
+    assertEquals(7, progress.getSkipped());
+    assertEquals(progress, filesystemImporter.getProgress("importArchive"));
+  }
+
+  @Test
+  public void testImportMissingDirectory() {
+    BulkProgress progress = filesystemImporter.importTree("/missingImportArchive");
+    assertEquals(BulkProgress.ERROR, progress.getCompletionStatus());
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.bulk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import edu.kit.scc.CdmiServerApplication;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.snia.cdmiserver.dao.ContainerDao;
+import org.snia.cdmiserver.dao.DataObjectDao;
+import org.snia.cdmiserver.model.Container;
+import org.snia.cdmiserver.model.DataObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = CdmiServerApplication.class)
+@ActiveProfiles("filesystem-test")
+public class RecursiveCopierTest {
+
+  @Value("${cdmi.data.baseDirectory}")
+  private String baseDirectory;
+
+  @Autowired
+  private RecursiveCopier recursiveCopier;
+
+  @Autowired
+  private RecursiveDeleter recursiveDeleter;
+
+  @Autowired
+  private ContainerDao containerDao;
+
+  @Autowired
+  private DataObjectDao dataObjectDao;
+
+  @Test
+  public void testCopyTree() throws IOException {
+    recursiveDeleter.deleteTree("/copySource");
+    recursiveDeleter.deleteTree("/copyTarget");
+    for (String path : new String[] {"/copySource", "/copySource/a", "/copySource/b",
+        "/copySource/b/c"}) {
+      containerDao.createByPath(path, Container.fromJson(new JSONObject("{}")));
+    }
+    for (String nested : new String[] {"/copySource/a", "/copySource/b/c"}) {
+      for (int i = 0; i < 3; i++) {
+        DataObject dataObject = DataObject.fromJson(new JSONObject().put("value", "data" + i));
+        dataObjectDao.createByPath(nested + "/object" + i, dataObject);
+      }
+    }
+
+    BulkProgress progress = recursiveCopier.copyTree("/copySource", "/copyTarget");
+    assertEquals(BulkProgress.COMPLETE, progress.getCompletionStatus());
+    assertEquals(4, progress.getContainers());
+    assertEquals(6, progress.getDataObjects());
+    assertEquals(0, progress.getFailed());
+    assertEquals(30, progress.getBytes());
+    assertEquals(progress, recursiveCopier.getProgress("/copyTarget/"));
+
+    Container target = containerDao.findByPath("/copyTarget");
+    assertEquals("Complete", target.getCompletionStatus());
+    assertEquals("100", target.getPercentComplete());
+    assertEquals(2, target.getChildren().length());
+    assertEquals(1, containerDao.findByPath("/copyTarget/b").getChildren().length());
+
+    DataObject source = dataObjectDao.findByPath("/copySource/b/c/object1");
+    DataObject copied = dataObjectDao.findByPath("/copyTarget/b/c/object1");
+    assertNotNull(copied);
+    assertNotEquals(source.getObjectId(), copied.getObjectId());
+    assertEquals("data1",
+        new String(Files.readAllBytes(Paths.get(baseDirectory, "copyTarget/b/c/object1"))));
+  }
+
+  @Test
+  public void testCopyIntoItselfFails() {
+    containerDao.createByPath("/copyLoop", Container.fromJson(new JSONObject("{}")));
+
+    BulkProgress progress = recursiveCopier.copyTree("/copyLoop", "/copyLoop/inner");
+    assertEquals(BulkProgress.ERROR, progress.getCompletionStatus());
+    assertNull(containerDao.findByPath("/copyLoop/inner"));
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.bulk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import edu.kit.scc.CdmiServerApplication;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.snia.cdmiserver.dao.ContainerDao;
+import org.snia.cdmiserver.dao.DataObjectDao;
+import org.snia.cdmiserver.model.Container;
+import org.snia.cdmiserver.model.DataObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = CdmiServerApplication.class)
+@ActiveProfiles("filesystem-test")
+public class RecursiveDeleterTest {
+
+  @Value("${cdmi.data.baseDirectory}")
+  private String baseDirectory;
+
+  @Autowired
+  private RecursiveDeleter recursiveDeleter;
+
+  @Autowired
+  private ContainerDao containerDao;
+
+  @Autowired
+  private DataObjectDao dataObjectDao;
+
+  @Test
+  public void testDeleteTree() {
+    for (String path : new String[] {"/deleteTree", "/deleteTree/a", "/deleteTree/b",
+        "/deleteTree/b/c"}) {
+      containerDao.createByPath(path, Container.fromJson(new JSONObject("{}")));
+    }
+    for (String nested : new String[] {"/deleteTree/a", "/deleteTree/b/c"}) {
+      for (int i = 0; i < 3; i++) {
+        DataObject dataObject = DataObject.fromJson(new JSONObject().put("value", "data" + i));
+        dataObjectDao.createByPath(nested + "/object" + i, dataObject);
+      }
+    }
+
+    BulkProgress progress = recursiveDeleter.deleteTree("/deleteTree");
+    assertEquals(BulkProgress.COMPLETE, progress.getCompletionStatus());
+    assertEquals(4, progress.getContainers());
+    assertEquals(6, progress.getDataObjects());
+    assertEquals(0, progress.getFailed());
+
+    assertNull(containerDao.findByPath("/deleteTree"));
+    assertNull(dataObjectDao.findByPath("/deleteTree/b/c/object1"));
+    assertFalse(Files.exists(Paths.get(baseDirectory, "deleteTree")));
+    assertEquals(progress, recursiveDeleter.getProgress("/deleteTree/"));
+  }
+
+  @Test
+  public void testDeleteDataObjectFails() {
+    dataObjectDao.createByPath("/deleteNoContainer",
+        DataObject.fromJson(new JSONObject().put("value", "data")));
+
+    BulkProgress progress = recursiveDeleter.deleteTree("/deleteNoContainer");
+    assertEquals(BulkProgress.ERROR, progress.getCompletionStatus());
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import edu.kit.scc.redis.NearCacheInvalidationListener;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+
+import java.nio.charset.StandardCharsets;
+
+public class NearCacheTest {
+
+  private NearCache cache;
+
+  @Before
+  public void setUp() {
+    cache = new NearCache(2, 60000);
+  }
+
+  @Test
+  public void testLeastRecentlyUsedIsEvicted() {
+    cache.put("a", "1", cache.generation());
+    cache.put("b", "2", cache.generation());
+    cache.get("a");
+    cache.put("c", "3", cache.generation());
+
+    assertEquals("1", cache.get("a"));
+    assertNull(cache.get("b"));
+    assertEquals(2, cache.size());
+    assertEquals(1, cache.getMetrics().getLong("evictions"));
+  }
+
+  @Test
+  public void testReadRacingWithWriteIsNotCached() {
+    long readGeneration = cache.generation();
+    cache.invalidate("a");
+    cache.put("a", "stale", readGeneration);
+
+    assertNull(cache.get("a"));
+  }
+
+  @Test
+  public void testExpiredEntryIsNotServed() throws InterruptedException {
+    cache = new NearCache(2, 1);
+    cache.put("a", "1", cache.generation());
+    Thread.sleep(5);
+
+    assertNull(cache.get("a"));
+    assertEquals(1, cache.getMetrics().getLong("expirations"));
+  }
+
+  @Test
+  public void testRemoteInvalidation() {
+    NegativeLookupCache negativeLookupCache = new NegativeLookupCache();
+    negativeLookupCache.setTtlMillis(60000);
+    negativeLookupCache.setMaxSize(10);
+    negativeLookupCache.markMissing("/a", negativeLookupCache.generation());
+    cache.put("p:/a", "id", cache.generation());
+    NearCacheInvalidationListener listener =
+        new NearCacheInvalidationListener(cache, negativeLookupCache);
+
+    // own messages have already been applied
+    listener.onMessage(message(cache.getInstanceId(), "p:/a"), null);
+    assertEquals("id", cache.get("p:/a"));
+
+    listener.onMessage(message("other", "p:/a"), null);
+    assertNull(cache.get("p:/a"));
+    assertFalse(negativeLookupCache.isMissing("/a"));
+    assertEquals(1, cache.getMetrics().getLong("remoteInvalidations"));
+  }
+
+  private static DefaultMessage message(String instanceId, String... keys) {
+    return new DefaultMessage(
+        NearCacheInvalidationListener.CHANNEL.getBytes(StandardCharsets.UTF_8),
+        NearCacheInvalidationListener.message(instanceId, keys).getBytes(StandardCharsets.UTF_8));
+  }
+}
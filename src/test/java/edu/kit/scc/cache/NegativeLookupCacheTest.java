@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class NegativeLookupCacheTest {
+
+  private NegativeLookupCache cache;
+
+  @Before
+  public void setUp() {
+    cache = new NegativeLookupCache();
+    cache.setTtlMillis(60000);
+    cache.setMaxSize(10);
+  }
+
+  @Test
+  public void testMarkMissing() {
+    assertFalse(cache.isMissing("/missing"));
+    cache.markMissing("/missing", cache.generation());
+
+    assertTrue(cache.isMissing("/missing"));
+    assertEquals(1, cache.getMetrics().getLong("avoidedLookups"));
+  }
+
+  @Test
+  public void testInvalidateAncestors() {
+    cache.markMissing("/a", cache.generation());
+    cache.markMissing("/a/b", cache.generation());
+    cache.markMissing("/x", cache.generation());
+
+    cache.invalidate("/a/b/c");
+
+    assertFalse(cache.isMissing("/a"));
+    assertFalse(cache.isMissing("/a/b"));
+    assertTrue(cache.isMissing("/x"));
+  }
+
+  @Test
+  public void testInvalidateSubtree() {
+    cache.markMissing("/a/b", cache.generation());
+    cache.markMissing("/ab", cache.generation());
+
+    cache.invalidateSubtree("/a");
+
+    assertFalse(cache.isMissing("/a/b"));
+    assertTrue(cache.isMissing("/ab"));
+  }
+
+  @Test
+  public void testConcurrentCreate() {
+    long generation = cache.generation();
+    cache.invalidate("/created");
+    cache.markMissing("/created", generation);
+
+    assertFalse(cache.isMissing("/created"));
+  }
+
+  @Test
+  public void testExpiry() {
+    cache.setTtlMillis(-1);
+    cache.markMissing("/expired", cache.generation());
+    assertFalse(cache.isMissing("/expired"));
+
+    cache.setTtlMillis(1);
+    cache.markMissing("/expired", cache.generation());
+    try {
+      Thread.sleep(5);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    assertFalse(cache.isMissing("/expired"));
+  }
+
+  @Test
+  public void testMaxSize() {
+    for (int i = 0; i < 25; i++) {
+      cache.markMissing("/missing" + i, cache.generation());
+    }
+    assertTrue(cache.getMetrics().getInt("size") <= 10);
+    assertTrue(cache.isMissing("/missing24"));
+  }
+}
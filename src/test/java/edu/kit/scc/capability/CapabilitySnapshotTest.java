@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.capability;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import edu.kit.scc.CdmiServerApplication;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.snia.cdmiserver.dao.CdmiObjectDao;
+import org.snia.cdmiserver.model.Capability;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.HashMap;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = CdmiServerApplication.class)
+@ActiveProfiles("filesystem-test")
+public class CapabilitySnapshotTest {
+
+  @Value("${cdmi.data.baseDirectory}")
+  private String baseDirectory;
+
+  @Value("${cdmi.qos.backend.type}")
+  private String backendType;
+
+  @Autowired
+  private CdmiObjectDao cdmiObjectDao;
+
+  private static class CountingSnapshotStore implements CapabilitySnapshotStore {
+    String snapshot;
+    int saves;
+
+    @Override
+    public String load() {
+      return snapshot;
+    }
+
+    @Override
+    public void save(String snapshot) {
+      this.snapshot = snapshot;
+      saves++;
+    }
+  }
+
+  private CapabilitySnapshot initialize(CapabilitySnapshotStore store) {
+    HashMap<String, String> backendProperties = new HashMap<String, String>();
+    backendProperties.put("baseDirectory", baseDirectory);
+    return new CapabilityTreeInitializer(cdmiObjectDao, store).initialize(backendType,
+        backendProperties);
+  }
+
+  @Test
+  public void testSnapshotIsReused() {
+    CountingSnapshotStore store = new CountingSnapshotStore();
+    CapabilitySnapshot built = initialize(store);
+    assertEquals(1, store.saves);
+
+    CapabilitySnapshot loaded = initialize(store);
+    assertEquals(1, store.saves);
+    assertEquals(built.getCapabilities().keySet(), loaded.getCapabilities().keySet());
+
+    Capability container = loaded.getCapability(CapabilityTreeInitializer.CONTAINER_CAPABILITY);
+    assertNotNull(container);
+    assertEquals(container.getObjectId(), cdmiObjectDao
+        .getCdmiObjectByPath(CapabilityTreeInitializer.CONTAINER_CAPABILITY).getObjectId());
+  }
+
+  @Test
+  public void testSnapshotRoundTrip() {
+    CountingSnapshotStore store = new CountingSnapshotStore();
+    CapabilitySnapshot built = initialize(store);
+
+    CapabilitySnapshot loaded = CapabilitySnapshot.deserialize(built.serialize());
+    assertNotNull(loaded);
+    assertEquals(built.getRootObjectId(), loaded.getRootObjectId());
+    assertEquals(built.getBackendChecksum(), loaded.getBackendChecksum());
+    for (String path : built.getCapabilities().keySet()) {
+      assertEquals(built.getCapability(path).toJson().toString(),
+          loaded.getCapability(path).toJson().toString());
+    }
+  }
+
+  @Test
+  public void testCorruptedSnapshotIsRejected() {
+    CountingSnapshotStore store = new CountingSnapshotStore();
+    String serialized = initialize(store).serialize();
+
+    assertNull(CapabilitySnapshot.deserialize(serialized.replace("container", "kontainer")));
+    assertNull(CapabilitySnapshot.deserialize(serialized.substring(0, serialized.indexOf('\n'))));
+    assertNull(CapabilitySnapshot.deserialize("{}"));
+
+    store.snapshot = serialized.replace("container", "kontainer");
+    initialize(store);
+    assertEquals(2, store.saves);
+  }
+}
@@ -9,6 +9,7 @@
 
 package edu.kit.scc.cdmi.filesystem;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -191,6 +192,43 @@ public class CdmiObjectFilesystemTest {
     assertTrue(createdObject.getObjectId().equals(getObject.getObjectId()));
   }
 
+  @Test
+  public void testUpdateIncrementsVersion() {
+    String objectName = "testUpdateIncrementsVersion";
+
+    CdmiObject createdObject = cdmiObjectDao.createCdmiObject(new CdmiObject(), objectName);
+    assertNotNull(createdObject);
+    String objectId = createdObject.getObjectId();
+    assertEquals(objectId + ".1", cdmiObjectDao.getVersionByPath(objectName));
+
+    cdmiObjectDao.updateCdmiObject(createdObject, objectName);
+    assertEquals(objectId + ".2", cdmiObjectDao.getVersionByPath(objectName));
+
+    assertNull(cdmiObjectDao.updateCdmiObjectIfVersion(objectName, objectId + ".1", createdObject));
+    assertNotNull(
+        cdmiObjectDao.updateCdmiObjectIfVersion(objectName, objectId + ".2", createdObject));
+    assertEquals(objectId + ".3", cdmiObjectDao.getCdmiObjectByPath(objectName).getVersion());
+  }
+
+  @Test
+  public void testDeleteIfVersion() {
+    String objectName = "testDeleteIfVersion";
+
+    CdmiObject createdObject = cdmiObjectDao.createCdmiObject(new CdmiObject(), objectName);
+    assertNotNull(createdObject);
+    String version = cdmiObjectDao.getVersionByPath(objectName);
+
+    cdmiObjectDao.updateCdmiObject(createdObject, objectName);
+    assertNull(cdmiObjectDao.deleteCdmiObjectByPathIfVersion(objectName, version));
+    assertTrue(Files.exists(Paths.get(baseDirectoryName, ".cdmi_" + objectName)));
+
+    version = cdmiObjectDao.getVersionByPath(objectName);
+    assertNotNull(cdmiObjectDao.deleteCdmiObjectByPathIfVersion(objectName, version));
+    assertTrue(!Files.exists(Paths.get(baseDirectoryName, ".cdmi_" + objectName)));
+    assertTrue(
+        !Files.exists(Paths.get(baseDirectoryName, "cdmi_objectid", createdObject.getObjectId())));
+  }
+
   // @AfterClass
   public static void destroy() throws IOException {
     Path start = Paths.get(baseDirectoryName);
@@ -184,6 +184,22 @@ public class DataObjectFilesystemTest {
     assertEquals(dataObject1.toString(), dataObject2.toString());
   }
 
+  @Test
+  public void testContentRange() {
+    String path = Paths.get("/", "contentRange").toString();
+
+    DataObject dataObjectRequest =
+        DataObject.fromJson(new JSONObject().put("value", "0123456789"));
+    assertNotNull(dataObjectDao.createByPath(path, dataObjectRequest));
+
+    assertNotNull(dataObjectDao.updateContent(path, 2, "ab".getBytes()));
+    assertNotNull(dataObjectDao.appendContent(path, "xyz".getBytes()));
+
+    assertEquals("01ab456789xyz", new String(dataObjectDao.readContent(path, 0, -1)));
+    assertEquals("ab45", new String(dataObjectDao.readContent(path, 2, 4)));
+    assertEquals("yz", new String(dataObjectDao.readContent(path, 11, 10)));
+  }
+
   // @AfterClass
   public static void destroy() throws IOException {
     Path start = Paths.get(baseDirectoryName);
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmi.logstore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import edu.kit.scc.CdmiServerApplication;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.snia.cdmiserver.dao.CapabilityDao;
+import org.snia.cdmiserver.dao.CdmiObjectDao;
+import org.snia.cdmiserver.dao.ContainerDao;
+import org.snia.cdmiserver.dao.DataObjectDao;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+import org.snia.cdmiserver.model.DataObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.nio.file.Paths;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = CdmiServerApplication.class)
+@ActiveProfiles("logstore-test")
+public class CdmiObjectLogStoreTest {
+
+  @Autowired
+  private CdmiObjectDao cdmiObjectDao;
+
+  @Autowired
+  private ContainerDao containerDao;
+
+  @Autowired
+  private DataObjectDao dataObjectDao;
+
+  @Autowired
+  private CapabilityDao capabilityDao;
+
+  @Test
+  public void testCapabilitiesSetup() {
+    assertNotNull(cdmiObjectDao.getCdmiObjectByPath("/"));
+    assertNotNull(capabilityDao.findByPath("/cdmi_capabilities/container"));
+    assertNotNull(capabilityDao.findByPath("/cdmi_capabilities/dataobject"));
+  }
+
+  @Test
+  public void testCreateCdmiObjectByPath() {
+    CdmiObject createdObject = cdmiObjectDao.createCdmiObject(new CdmiObject(), "logObject");
+    assertNotNull(createdObject);
+
+    CdmiObject getObject = cdmiObjectDao.getCdmiObjectByPath("/logObject");
+    assertNotNull(getObject);
+    assertEquals(createdObject.getObjectId(), getObject.getObjectId());
+
+    CdmiObject existingObject = cdmiObjectDao.createCdmiObject(new CdmiObject(), "/logObject");
+    assertEquals(createdObject.getObjectId(), existingObject.getObjectId());
+  }
+
+  @Test
+  public void testCreateCdmiObjectByPathFails() {
+    CdmiObject cdmiObject = new CdmiObject();
+
+    assertNull(cdmiObjectDao.createCdmiObject(cdmiObject, null));
+    assertNull(cdmiObjectDao.getCdmiObject(cdmiObject.getObjectId()));
+  }
+
+  @Test
+  public void testDeleteCdmiObjectByPath() {
+    CdmiObject createdObject = cdmiObjectDao.createCdmiObject(new CdmiObject(), "/logDelete");
+    assertNotNull(createdObject);
+
+    assertNotNull(cdmiObjectDao.deleteCdmiObjectByPath("/logDelete"));
+    assertNull(cdmiObjectDao.getCdmiObjectByPath("/logDelete"));
+    assertNull(cdmiObjectDao.getCdmiObject(createdObject.getObjectId()));
+  }
+
+  @Test
+  public void testCreateContainerAndDataObject() {
+    Container container = containerDao.createByPath(Paths.get("/", "logContainer").toString(),
+        Container.fromJson(new JSONObject("{}")));
+    assertNotNull(container);
+
+    DataObject dataObject =
+        dataObjectDao.createByPath(Paths.get("/", "logContainer", "logDataObject").toString(),
+            DataObject.fromJson(new JSONObject("{\"value\":\"content\"}")));
+    assertNotNull(dataObject);
+
+    Container parentContainer = containerDao.findByObjectId(dataObject.getParentId());
+    assertNotNull(parentContainer);
+    assertTrue(parentContainer.getChildren().get(0).equals(dataObject.getObjectName()));
+    assertEquals(dataObject.getObjectId(),
+        dataObjectDao.findByPath("/logContainer/logDataObject").getObjectId());
+  }
+
+  @Test
+  public void testUpdateIfVersion() {
+    CdmiObject cdmiObject = cdmiObjectDao.createCdmiObject(new CdmiObject(), "/logVersioned");
+    String version = cdmiObjectDao.getVersionByPath("/logVersioned");
+    assertNotNull(version);
+
+    assertNotNull(cdmiObjectDao.updateCdmiObjectIfVersion("/logVersioned", version, cdmiObject));
+    // the first update has moved the version on
+    assertNull(cdmiObjectDao.updateCdmiObjectIfVersion("/logVersioned", version, cdmiObject));
+    assertNotEquals(version, cdmiObjectDao.getVersionByPath("/logVersioned"));
+  }
+
+  @Test
+  public void testDeleteIfVersion() {
+    CdmiObject cdmiObject =
+        cdmiObjectDao.createCdmiObject(new CdmiObject(), "/logDeleteVersioned");
+    String version = cdmiObjectDao.getVersionByPath("/logDeleteVersioned");
+
+    cdmiObjectDao.updateCdmiObject(cdmiObject, "/logDeleteVersioned");
+    assertNull(cdmiObjectDao.deleteCdmiObjectByPathIfVersion("/logDeleteVersioned", version));
+    assertNotNull(cdmiObjectDao.getCdmiObjectByPath("/logDeleteVersioned"));
+
+    version = cdmiObjectDao.getVersionByPath("/logDeleteVersioned");
+    assertNotNull(cdmiObjectDao.deleteCdmiObjectByPathIfVersion("/logDeleteVersioned", version));
+    assertNull(cdmiObjectDao.getCdmiObjectByPath("/logDeleteVersioned"));
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmi.logstore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import edu.kit.scc.logstore.LogStore;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+public class LogStoreTest {
+
+  private static final int SEGMENT_SIZE = 4096;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private LogStore open(Path directory) throws IOException {
+    LogStore logStore = new LogStore(directory, SEGMENT_SIZE, 0.5);
+    logStore.open();
+    return logStore;
+  }
+
+  @Test
+  public void testPutGetDelete() throws IOException {
+    try (LogStore logStore = open(folder.getRoot().toPath())) {
+      logStore.put("key", "value1");
+      assertEquals("value1", logStore.get("key"));
+
+      logStore.put("key", "value2");
+      assertEquals("value2", logStore.get("key"));
+
+      assertFalse(logStore.putIfAbsent("key", "value3"));
+      assertTrue(logStore.delete("key"));
+      assertNull(logStore.get("key"));
+      assertFalse(logStore.delete("key"));
+      assertTrue(logStore.putIfAbsent("key", "value3"));
+      assertEquals("value3", logStore.get("key"));
+    }
+  }
+
+  @Test
+  public void testRecoverIndex() throws IOException {
+    Path directory = folder.getRoot().toPath();
+    try (LogStore logStore = open(directory)) {
+      for (int i = 0; i < 500; i++) {
+        logStore.put("key" + i, "value" + i);
+      }
+      logStore.delete("key0");
+      logStore.put("key1", "updated");
+      assertTrue(logStore.getSegmentCount() > 1);
+    }
+
+    try (LogStore logStore = open(directory)) {
+      assertEquals(499, logStore.size());
+      assertNull(logStore.get("key0"));
+      assertEquals("updated", logStore.get("key1"));
+      assertEquals("value499", logStore.get("key499"));
+    }
+  }
+
+  @Test
+  public void testCompaction() throws IOException {
+    Path directory = folder.getRoot().toPath();
+    try (LogStore logStore = open(directory)) {
+      for (int round = 0; round < 20; round++) {
+        for (int i = 0; i < 20; i++) {
+          logStore.put("key" + i, "value" + round);
+        }
+      }
+      logStore.delete("key0");
+      int segments = logStore.getSegmentCount();
+
+      assertTrue(logStore.needsCompaction());
+      logStore.compact();
+
+      assertTrue(logStore.getSegmentCount() < segments);
+      assertNull(logStore.get("key0"));
+      assertEquals("value19", logStore.get("key19"));
+    }
+
+    try (LogStore logStore = open(directory)) {
+      assertEquals(19, logStore.size());
+      assertNull(logStore.get("key0"));
+      assertEquals("value19", logStore.get("key1"));
+    }
+  }
+
+  @Test
+  public void testCompactionKeepsLiveRecords() throws IOException {
+    Path directory = folder.getRoot().toPath();
+    LogStore logStore = open(directory);
+    try {
+      for (int round = 0; round < 10; round++) {
+        for (int i = 0; i < 50; i++) {
+          logStore.put("key" + i, "value" + round + "-" + i);
+        }
+      }
+      for (int i = 0; i < 50; i += 5) {
+        logStore.delete("key" + i);
+      }
+      logStore.compact();
+
+      // reopened without closing the compacted store, as after a crash
+      try (LogStore reopened = open(directory)) {
+        assertEquals(40, reopened.size());
+        for (int i = 0; i < 50; i++) {
+          if (i % 5 == 0) {
+            assertNull(reopened.get("key" + i));
+          } else {
+            assertEquals("value9-" + i, reopened.get("key" + i));
+          }
+        }
+      }
+    } finally {
+      logStore.close();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRecordTooLarge() throws IOException {
+    try (LogStore logStore = open(folder.getRoot().toPath())) {
+      logStore.put("key", new String(new char[SEGMENT_SIZE]));
+    }
+  }
+}
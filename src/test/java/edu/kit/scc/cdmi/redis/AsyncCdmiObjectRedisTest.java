@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmi.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import edu.kit.scc.CdmiServerApplication;
+import edu.kit.scc.redis.RedisCommandBatcher;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.snia.cdmiserver.dao.AsyncCdmiObjectDao;
+import org.snia.cdmiserver.dao.CdmiObjectDao;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = CdmiServerApplication.class)
+@ActiveProfiles("redis-embedded")
+public class AsyncCdmiObjectRedisTest {
+
+  @Autowired
+  AsyncCdmiObjectDao asyncCdmiObjectDao;
+
+  @Autowired
+  CdmiObjectDao cdmiObjectDao;
+
+  @Autowired
+  RedisCommandBatcher redisCommandBatcher;
+
+  @Test
+  public void testCreateGetDelete() throws Exception {
+    Container container = new Container("async", "/", "0");
+    container.setMetadata(new JSONObject().put("key", "value"));
+
+    CdmiObject created = asyncCdmiObjectDao.createCdmiObject(container, "/async")
+        .toCompletableFuture().get(10, TimeUnit.SECONDS);
+    assertNotNull(created);
+
+    Container stored = (Container) asyncCdmiObjectDao.getCdmiObjectByPath("/async")
+        .toCompletableFuture().get(10, TimeUnit.SECONDS);
+    assertEquals(container.getObjectId(), stored.getObjectId());
+    assertEquals("value", stored.getMetadata().getString("key"));
+
+    asyncCdmiObjectDao.deleteCdmiObjectByPath("/async").toCompletableFuture().get(10,
+        TimeUnit.SECONDS);
+    assertNull(asyncCdmiObjectDao.getCdmiObjectByPath("/async").toCompletableFuture().get(10,
+        TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testConcurrentReadsAreBatched() throws Exception {
+    // distinct objects, so that none of the reads is served by the near cache
+    List<String> objectIds = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      Container container = new Container("asyncConcurrent" + i, "/", "0");
+      cdmiObjectDao.createCdmiObject(container, "/asyncConcurrent" + i);
+      objectIds.add(container.getObjectId());
+    }
+
+    JSONObject before = redisCommandBatcher.getMetrics();
+    List<CompletableFuture<CdmiObject>> reads = new ArrayList<>();
+    for (int i = 0; i < objectIds.size(); i++) {
+      reads.add(asyncCdmiObjectDao.getCdmiObjectByPath("/asyncConcurrent" + i)
+          .toCompletableFuture());
+    }
+    CompletableFuture.allOf(reads.toArray(new CompletableFuture[reads.size()])).get(30,
+        TimeUnit.SECONDS);
+    for (int i = 0; i < objectIds.size(); i++) {
+      assertEquals(objectIds.get(i), reads.get(i).get().getObjectId());
+    }
+
+    JSONObject after = redisCommandBatcher.getMetrics();
+    long commands = after.getLong("commands") - before.getLong("commands");
+    long batches = after.getLong("batches") - before.getLong("batches");
+    assertTrue(commands >= 3 * objectIds.size());
+    assertTrue(batches < commands);
+  }
+}
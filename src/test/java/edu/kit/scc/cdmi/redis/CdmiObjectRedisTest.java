@@ -9,18 +9,29 @@
 
 package edu.kit.scc.cdmi.redis;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import edu.kit.scc.CdmiServerApplication;
+import edu.kit.scc.cdmiserver.dao.redis.CdmiObjectDaoImpl;
+import edu.kit.scc.query.MetadataIndex;
 
+import org.json.JSONObject;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snia.cdmiserver.dao.CdmiObjectDao;
+import org.snia.cdmiserver.dao.CdmiObjectDaoDecorator;
 import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
@@ -34,6 +45,12 @@ public class CdmiObjectRedisTest {
   @Autowired
   CdmiObjectDao cdmiObjectDao;
 
+  @Autowired
+  StringRedisTemplate redisTemplate;
+
+  @Autowired
+  MetadataIndex metadataIndex;
+
   @Test
   public void redisSetupTest() {
 
@@ -50,4 +67,110 @@ public class CdmiObjectRedisTest {
     log.debug(createdObject.toJson().toString());
   }
 
+  @Test
+  public void pathIsAliasTest() {
+    Container container = new Container("alias", "/", "0");
+    cdmiObjectDao.createCdmiObject(container, "/alias");
+
+    assertEquals(container.getObjectId(), redisTemplate.opsForValue().get("/alias"));
+    Object objectName = redisTemplate.opsForHash()
+        .get(CdmiObjectDaoImpl.objectKey(container.getObjectId()), "objectName");
+    assertEquals("alias", objectName.toString().replace("\"", ""));
+  }
+
+  @Test
+  public void updateFieldsTest() {
+    Container container = new Container("fields", "/", "0");
+    container.setMetadata(new JSONObject().put("key", "value"));
+    cdmiObjectDao.createCdmiObject(container, "/fields");
+
+    container.setMetadata(new JSONObject().put("key", "updated"));
+    container.setCapabilitiesUri("/cdmi_capabilities/container/changed");
+    cdmiObjectDao.updateCdmiObjectFields(container, "metadata");
+
+    Container stored = (Container) cdmiObjectDao.getCdmiObjectByPath("/fields");
+    assertEquals("updated", stored.getMetadata().getString("key"));
+    assertFalse(stored.getCapabilitiesUri().endsWith("changed"));
+
+    CdmiObjectDaoImpl redisDao = redisDao();
+    JSONObject fields = redisDao.getFields(container.getObjectId(), "metadata", "missing");
+    assertEquals("updated", fields.getJSONObject("metadata").getString("key"));
+    assertFalse(fields.has("missing"));
+  }
+
+  @Test
+  public void updateFieldsOfDeletedObjectTest() {
+    Container container = new Container("deletedFields", "/", "0");
+    cdmiObjectDao.createCdmiObject(container, "/deletedFields");
+    String version = cdmiObjectDao.getVersionByPath("/deletedFields");
+
+    container.setMetadata(new JSONObject().put("key", "updated"));
+    assertNotNull(cdmiObjectDao.updateCdmiObjectFields(container, "metadata"));
+    assertNotEquals(version, cdmiObjectDao.getVersionByPath("/deletedFields"));
+
+    cdmiObjectDao.deleteCdmiObjectByPath("/deletedFields");
+    assertNull(cdmiObjectDao.updateCdmiObjectFields(container, "metadata"));
+    assertFalse(redisTemplate.hasKey(CdmiObjectDaoImpl.objectKey(container.getObjectId())));
+  }
+
+  @Test
+  public void metadataIndexTest() {
+    Container container = new Container("indexed", "/", "0");
+    container.setMetadata(new JSONObject().put("color", "red").put("size", "42"));
+    cdmiObjectDao.createCdmiObject(container, "/indexed");
+
+    assertTrue(metadataIndex.equal("metadata.color", "red").contains("/indexed"));
+    assertTrue(metadataIndex.prefix("metadata.color", "re").contains("/indexed"));
+    assertTrue(metadataIndex.range("metadata.size", 40, true, 42, true).contains("/indexed"));
+    assertFalse(metadataIndex.range("metadata.size", 40, true, 42, false).contains("/indexed"));
+
+    container.setMetadata(new JSONObject().put("color", "blue"));
+    cdmiObjectDao.updateCdmiObjectFields(container, "metadata");
+    assertFalse(metadataIndex.equal("metadata.color", "red").contains("/indexed"));
+    assertTrue(metadataIndex.equal("metadata.color", "blue").contains("/indexed"));
+    assertFalse(metadataIndex.exists("metadata.size").contains("/indexed"));
+
+    cdmiObjectDao.deleteCdmiObjectByPath("/indexed");
+    assertTrue(metadataIndex.getTerms("/indexed").isEmpty());
+    assertFalse(metadataIndex.all().contains("/indexed"));
+  }
+
+  @Test
+  public void legacyObjectIsMigratedTest() {
+    Container container = new Container("legacy", "/", "0");
+    redisTemplate.opsForValue().set("/legacy", container.toJson().toString());
+    redisTemplate.opsForValue().set("objectid:" + container.getObjectId(),
+        container.toJson().toString());
+
+    CdmiObject stored = cdmiObjectDao.getCdmiObjectByPath("/legacy");
+    assertEquals(container.getObjectId(), stored.getObjectId());
+    assertEquals(container.getObjectId(), redisTemplate.opsForValue().get("/legacy"));
+  }
+
+  @Test
+  public void nearCacheIsInvalidatedOnWriteTest() {
+    Container container = new Container("near", "/", "0");
+    cdmiObjectDao.createCdmiObject(container, "/near");
+
+    CdmiObjectDaoImpl redisDao = redisDao();
+    long hits = redisDao.getNearCache().getMetrics().getLong("hits");
+    redisDao.getCdmiObject(container.getObjectId());
+
+    // written behind the DAO's back, the cached copy is served
+    redisTemplate.opsForHash().put(CdmiObjectDaoImpl.objectKey(container.getObjectId()),
+        "objectName", "\"renamed\"");
+    Container cached = (Container) redisDao.getCdmiObject(container.getObjectId());
+    assertEquals("near", cached.getObjectName());
+    assertEquals(hits + 1, redisDao.getNearCache().getMetrics().getLong("hits"));
+
+    container.setMetadata(new JSONObject().put("key", "value"));
+    redisDao.updateCdmiObjectFields(container, "metadata");
+    Container stored = (Container) redisDao.getCdmiObject(container.getObjectId());
+    assertEquals("renamed", stored.getObjectName());
+    assertEquals("value", stored.getMetadata().getString("key"));
+  }
+
+  private CdmiObjectDaoImpl redisDao() {
+    return (CdmiObjectDaoImpl) CdmiObjectDaoDecorator.undecorated(cdmiObjectDao);
+  }
 }
@@ -11,25 +11,31 @@ package edu.kit.scc.cdmi.redis;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import edu.kit.scc.CdmiServerApplication;
+import edu.kit.scc.unitofwork.UnitOfWork;
 
 import org.json.JSONObject;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.snia.cdmiserver.dao.CdmiObjectDao;
 import org.snia.cdmiserver.dao.ContainerDao;
 import org.snia.cdmiserver.model.Container;
+import org.snia.cdmiserver.util.MediaTypes;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.SpringApplicationConfiguration;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @SpringApplicationConfiguration(classes = CdmiServerApplication.class)
@@ -39,6 +45,9 @@ public class ContainerRedisTest {
   @Autowired
   ContainerDao containerDao;
 
+  @Autowired
+  CdmiObjectDao cdmiObjectDao;
+
   private static final Logger log = LoggerFactory.getLogger(ContainerRedisTest.class);
 
   @Test
@@ -175,4 +184,134 @@ public class ContainerRedisTest {
 
     assertNull(container);
   }
+
+  @Test
+  public void testChildrenRange() {
+    String containerName = "childrenRange";
+
+    Container containerRequest = Container.fromJson(new JSONObject("{}"));
+    for (int i = 9; i >= 0; i--) {
+      assertNotNull(containerDao.createByPath(
+          Paths.get("/", containerName, "child" + i).toString(), containerRequest));
+    }
+
+    Container container = (Container) cdmiObjectDao
+        .getCdmiObjectByPath(Paths.get("/", containerName).toString(), 2, 4);
+    assertEquals("2-4", container.getChildrenrange());
+    assertEquals(3, container.getChildren().length());
+    assertEquals("child2", container.getChildren().get(0));
+
+    container = (Container) cdmiObjectDao
+        .getCdmiObjectByPath(Paths.get("/", containerName).toString(), 0, -1);
+    assertEquals(0, container.getChildren().length());
+
+    container = containerDao.findByPath(Paths.get("/", containerName).toString());
+    assertEquals("0-9", container.getChildrenrange());
+  }
+
+  @Test
+  public void testGetFieldsByPath() {
+    String containerName = "expandChildren";
+
+    Container containerRequest =
+        Container.fromJson(new JSONObject().put("metadata", new JSONObject().put("key", "value")));
+    Container child = containerDao
+        .createByPath(Paths.get("/", containerName, "child").toString(), containerRequest);
+
+    List<JSONObject> fields = cdmiObjectDao.getFieldsByPath(
+        Arrays.asList(Paths.get("/", containerName, "child").toString(),
+            Paths.get("/", containerName, "missing").toString(), Paths.get("/").toString()),
+        "objectID", "objectType", "metadata");
+    assertEquals(3, fields.size());
+    assertEquals(child.getObjectId(), fields.get(0).getString("objectID"));
+    assertEquals("value", fields.get(0).getJSONObject("metadata").getString("key"));
+    assertNull(fields.get(1));
+    assertEquals(MediaTypes.CONTAINER, fields.get(2).getString("objectType"));
+  }
+
+  @Test
+  public void testDeleteRemovesChild() {
+    String containerName = "deleteChild";
+
+    Container containerRequest = Container.fromJson(new JSONObject("{}"));
+    containerDao.createByPath(Paths.get("/", containerName, "kept").toString(), containerRequest);
+    containerDao.createByPath(Paths.get("/", containerName, "deleted").toString(),
+        containerRequest);
+
+    containerDao.deleteByPath(Paths.get("/", containerName, "deleted").toString());
+
+    Container container = containerDao.findByPath(Paths.get("/", containerName).toString());
+    assertEquals("0", container.getChildrenrange());
+    assertEquals("kept", container.getChildren().get(0));
+    assertNull(containerDao.findByPath(Paths.get("/", containerName, "deleted").toString()));
+  }
+
+  @Test
+  public void testChildrenCreatedInOneUnitOfWork() {
+    String containerName = "unitOfWorkChildren";
+
+    Container containerRequest = Container.fromJson(new JSONObject("{}"));
+    UnitOfWork.execute(() -> {
+      for (int i = 0; i < 50; i++) {
+        containerDao.createByPath(Paths.get("/", containerName, "child" + i).toString(),
+            containerRequest);
+      }
+      return null;
+    });
+
+    Container container = containerDao.findByPath(Paths.get("/", containerName).toString());
+    assertEquals(50, container.getChildren().length());
+    assertEquals("0-49", container.getChildrenrange());
+  }
+
+  @Test
+  public void testVersionChangesWithChildren() {
+    Container containerRequest = Container.fromJson(new JSONObject("{}"));
+    containerDao.deleteByPath("/versionTest/child");
+    containerDao.deleteByPath("/versionTest");
+    containerDao.createByPath("/versionTest", containerRequest);
+
+    String version = cdmiObjectDao.getVersionByPath("/versionTest");
+    assertNotNull(version);
+    assertEquals(version, cdmiObjectDao.getVersionByPath("/versionTest"));
+
+    containerDao.createByPath("/versionTest/child", containerRequest);
+    assertNotEquals(version, cdmiObjectDao.getVersionByPath("/versionTest"));
+    assertNull(cdmiObjectDao.getVersionByPath("/versionTest/missing"));
+  }
+
+  @Test
+  public void testUpdateIfVersion() {
+    Container containerRequest = Container.fromJson(new JSONObject("{}"));
+    containerDao.deleteByPath("/versionedUpdate");
+    Container container = containerDao.createByPath("/versionedUpdate", containerRequest);
+    String version = cdmiObjectDao.getVersionByPath("/versionedUpdate");
+
+    container.setMetadata(new JSONObject().put("color", "red"));
+    assertNotNull(cdmiObjectDao.updateCdmiObjectIfVersion("/versionedUpdate", version,
+        container, "metadata"));
+    container.setMetadata(new JSONObject().put("color", "blue"));
+    assertNull(cdmiObjectDao.updateCdmiObjectIfVersion("/versionedUpdate", version,
+        container, "metadata"));
+
+    Container stored = containerDao.findByPath("/versionedUpdate");
+    assertEquals("red", stored.getMetadata().getString("color"));
+  }
+
+  @Test
+  public void testDeleteIfVersion() {
+    Container containerRequest = Container.fromJson(new JSONObject("{}"));
+    containerDao.deleteByPath("/versionedDelete");
+    Container container = containerDao.createByPath("/versionedDelete", containerRequest);
+    String version = cdmiObjectDao.getVersionByPath("/versionedDelete");
+
+    container.setMetadata(new JSONObject().put("color", "red"));
+    cdmiObjectDao.updateCdmiObjectFields(container, "metadata");
+    assertNull(containerDao.deleteByPathIfVersion("/versionedDelete", version));
+    assertNotNull(containerDao.findByPath("/versionedDelete"));
+
+    version = cdmiObjectDao.getVersionByPath("/versionedDelete");
+    assertNotNull(containerDao.deleteByPathIfVersion("/versionedDelete", version));
+    assertNull(containerDao.findByPath("/versionedDelete"));
+  }
 }
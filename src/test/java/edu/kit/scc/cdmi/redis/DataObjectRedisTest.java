@@ -9,23 +9,39 @@
 
 package edu.kit.scc.cdmi.redis;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import edu.kit.scc.CdmiServerApplication;
+import edu.kit.scc.cdmiserver.dao.redis.DataObjectDaoImpl;
 
 import org.json.JSONObject;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.snia.cdmiserver.dao.CdmiObjectDao;
 import org.snia.cdmiserver.dao.DataObjectDao;
+import org.snia.cdmiserver.model.Container;
 import org.snia.cdmiserver.model.DataObject;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @SpringApplicationConfiguration(classes = CdmiServerApplication.class)
@@ -35,6 +51,12 @@ public class DataObjectRedisTest {
   @Autowired
   private DataObjectDao dataObjectDao;
 
+  @Autowired
+  private CdmiObjectDao cdmiObjectDao;
+
+  @Autowired
+  private StringRedisTemplate redisTemplate;
+
   @Test
   public void testCreateDataObject() {
     String dataObjectName = "dataobject1";
@@ -141,4 +163,136 @@ public class DataObjectRedisTest {
 
     assertEquals(dataObject1.toString(), dataObject2.toString());
   }
+
+  @Test
+  public void testInlineContent() {
+    String path = Paths.get("/", "inlineContent").toString();
+    DataObject dataObjectRequest =
+        DataObject.fromJson(new JSONObject().put("value", "0123456789"));
+    DataObject dataObject = dataObjectDao.createByPath(path, dataObjectRequest);
+
+    assertNotNull(dataObjectDao.updateContent(path, 2, "ab".getBytes()));
+    assertNotNull(dataObjectDao.appendContent(path, "xyz".getBytes()));
+
+    assertEquals("01ab456789xyz", new String(dataObjectDao.readContent(path, 0, -1)));
+    assertEquals("ab45", new String(dataObjectDao.readContent(path, 2, 4)));
+    assertEquals(0, dataObjectDao.readContent(path, 20, 4).length);
+    assertFalse(redisTemplate.hasKey(DataObjectDaoImpl.chunkKey(dataObject.getObjectId(), 0)));
+  }
+
+  @Test
+  public void testChunkedContent() {
+    String path = Paths.get("/", "chunkedContent").toString();
+    DataObject dataObject =
+        dataObjectDao.createByPath(path, DataObject.fromJson(new JSONObject("{}")));
+
+    byte[] content = new byte[2 * DataObjectDaoImpl.DEFAULT_CHUNK_SIZE + 100];
+    new Random(1).nextBytes(content);
+    assertNotNull(dataObjectDao.updateContent(path, content));
+    assertTrue(redisTemplate.hasKey(DataObjectDaoImpl.chunkKey(dataObject.getObjectId(), 2)));
+
+    // a range across a chunk boundary
+    int start = DataObjectDaoImpl.DEFAULT_CHUNK_SIZE - 10;
+    assertArrayEquals(Arrays.copyOfRange(content, start, start + 20),
+        dataObjectDao.readContent(path, start, 20));
+
+    byte[] patch = new byte[30];
+    Arrays.fill(patch, (byte) 7);
+    dataObjectDao.updateContent(path, start, patch);
+    System.arraycopy(patch, 0, content, start, patch.length);
+    dataObjectDao.appendContent(path, patch);
+    byte[] expected = Arrays.copyOf(content, content.length + patch.length);
+    System.arraycopy(patch, 0, expected, content.length, patch.length);
+    assertArrayEquals(expected, dataObjectDao.readContent(path, 0, -1));
+
+    dataObjectDao.deleteByPath(path);
+    assertFalse(redisTemplate.hasKey(DataObjectDaoImpl.chunkKey(dataObject.getObjectId(), 0)));
+    assertFalse(redisTemplate.hasKey(DataObjectDaoImpl.valueKey(dataObject.getObjectId())));
+  }
+
+  @Test
+  public void testInlineContentOutgrowsInlineSize() {
+    String path = Paths.get("/", "growingContent").toString();
+    DataObject dataObjectRequest = DataObject.fromJson(new JSONObject().put("value", "head"));
+    DataObject dataObject = dataObjectDao.createByPath(path, dataObjectRequest);
+
+    // a sparse write far beyond the end, the gap reads as zeros
+    long offset = DataObjectDaoImpl.DEFAULT_CHUNK_SIZE + 5;
+    dataObjectDao.updateContent(path, offset, "tail".getBytes());
+    assertTrue(redisTemplate.hasKey(DataObjectDaoImpl.chunkKey(dataObject.getObjectId(), 0)));
+
+    assertEquals("head", new String(dataObjectDao.readContent(path, 0, 4)));
+    assertArrayEquals(new byte[3], dataObjectDao.readContent(path, 4, 3));
+    assertEquals("tail", new String(dataObjectDao.readContent(path, offset, -1)));
+  }
+
+  @Test
+  public void testConcurrentAppends() throws Exception {
+    String path = Paths.get("/", "concurrentAppends").toString();
+    dataObjectDao.createByPath(path, DataObject.fromJson(new JSONObject("{}")));
+
+    // the appends compute their offsets from the content's length, none of them may be lost
+    byte[] content = "0123456789".getBytes();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<DataObject>> appends = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      appends.add(executor.submit(() -> dataObjectDao.appendContent(path, content)));
+    }
+    for (Future<DataObject> append : appends) {
+      assertNotNull(append.get());
+    }
+    executor.shutdown();
+
+    assertEquals(400, dataObjectDao.sizeByPath(path));
+    assertEquals(String.join("", Collections.nCopies(40, "0123456789")),
+        new String(dataObjectDao.readContent(path, 0, -1)));
+  }
+
+  @Test
+  public void testMoveDataObject() {
+    DataObject dataObject = dataObjectDao.createByPath("/moveSource/object",
+        DataObject.fromJson(new JSONObject().put("value", "moved content")));
+    dataObjectDao.createByPath("/moveTarget/other", DataObject.fromJson(new JSONObject("{}")));
+
+    DataObject moved = dataObjectDao.moveByPath("/moveSource/object", "/moveTarget/moved");
+    assertNotNull(moved);
+    assertEquals(dataObject.getObjectId(), moved.getObjectId());
+    assertNull(dataObjectDao.findByPath("/moveSource/object"));
+
+    DataObject found = dataObjectDao.findByPath("/moveTarget/moved");
+    assertEquals("moved", found.getObjectName());
+    assertEquals("/moveTarget", found.getParentUri());
+    assertEquals("moved content",
+        new String(dataObjectDao.readContent("/moveTarget/moved", 0, -1)));
+
+    Container source = (Container) cdmiObjectDao.getCdmiObjectByPath("/moveSource");
+    assertFalse(source.getChildren() != null && source.getChildren().toList().contains("object"));
+    Container target = (Container) cdmiObjectDao.getCdmiObjectByPath("/moveTarget");
+    assertTrue(target.getChildren().toList().contains("moved"));
+
+    // the destination must be free
+    assertNull(dataObjectDao.moveByPath("/moveTarget/moved", "/moveTarget/other"));
+    assertNotNull(dataObjectDao.findByPath("/moveTarget/moved"));
+  }
+
+  @Test
+  public void testCopyChunkedContent() {
+    JSONObject metadata = new JSONObject().put("color", "blue");
+    DataObject source = dataObjectDao.createByPath("/copySource",
+        DataObject.fromJson(new JSONObject().put("metadata", metadata)));
+    byte[] content = new byte[DataObjectDaoImpl.DEFAULT_CHUNK_SIZE + 100];
+    new Random(2).nextBytes(content);
+    dataObjectDao.updateContent("/copySource", content);
+
+    DataObject copy = dataObjectDao.copyByPath("/copySource", "/copyTarget");
+    assertNotNull(copy);
+    assertNotEquals(source.getObjectId(), copy.getObjectId());
+    assertArrayEquals(content, dataObjectDao.readContent("/copyTarget", 0, -1));
+    assertEquals("blue", dataObjectDao.findByPath("/copyTarget").getMetadata().get("color"));
+
+    // the copies are independent
+    dataObjectDao.updateContent("/copyTarget", 0, new byte[] {1, 2, 3});
+    assertArrayEquals(content, dataObjectDao.readContent("/copySource", 0, -1));
+    assertNull(dataObjectDao.copyByPath("/copySource", "/copyTarget"));
+  }
 }
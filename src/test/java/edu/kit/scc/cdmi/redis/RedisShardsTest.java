@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmi.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import edu.kit.scc.cdmiserver.dao.redis.CdmiObjectDaoImpl;
+import edu.kit.scc.redis.RedisShards;
+
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.snia.cdmiserver.model.Container;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import redis.embedded.RedisServer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class RedisShardsTest {
+
+  private static final int[] PORTS = {63811, 63812, 63813};
+
+  private static List<RedisServer> redisServers = new ArrayList<>();
+  private static List<JedisConnectionFactory> connectionFactories = new ArrayList<>();
+  private static RedisShards redisShards;
+  private static CdmiObjectDaoImpl cdmiObjectDao;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    List<StringRedisTemplate> templates = new ArrayList<>();
+    for (int port : PORTS) {
+      RedisServer redisServer = new RedisServer(port);
+      redisServer.start();
+      redisServers.add(redisServer);
+
+      JedisConnectionFactory connectionFactory = new JedisConnectionFactory();
+      connectionFactory.setHostName("localhost");
+      connectionFactory.setPort(port);
+      connectionFactory.afterPropertiesSet();
+      connectionFactories.add(connectionFactory);
+      templates.add(new StringRedisTemplate(connectionFactory));
+    }
+    redisShards = new RedisShards(templates);
+    cdmiObjectDao = new CdmiObjectDaoImpl();
+    cdmiObjectDao.setRedisShards(redisShards);
+  }
+
+  @AfterClass
+  public static void tearDown() {
+    for (JedisConnectionFactory connectionFactory : connectionFactories) {
+      connectionFactory.destroy();
+    }
+    for (RedisServer redisServer : redisServers) {
+      redisServer.stop();
+    }
+  }
+
+  @Test
+  public void testObjectKeysAreColocated() {
+    int[] objectsPerShard = new int[PORTS.length];
+    for (int i = 0; i < 300; i++) {
+      Container container = new Container("sharded" + i, "/", "0");
+      assertNotNull(cdmiObjectDao.createCdmiObject(container, "/sharded" + i));
+      cdmiObjectDao.addChild(container, "/sharded" + i, "child");
+
+      String objectKey = CdmiObjectDaoImpl.objectKey(container.getObjectId());
+      String childrenKey = CdmiObjectDaoImpl.childrenKey(container.getObjectId());
+      int shard = redisShards.shardOf(objectKey);
+      assertEquals(shard, redisShards.shardOf(childrenKey));
+
+      StringRedisTemplate template = redisShards.getTemplates().get(shard);
+      assertTrue(template.hasKey(objectKey));
+      assertTrue(template.hasKey(childrenKey));
+      objectsPerShard[shard]++;
+    }
+    for (int objects : objectsPerShard) {
+      assertTrue(objects > 0);
+    }
+  }
+
+  @Test
+  public void testReadAndUpdateAcrossShards() {
+    for (int i = 0; i < 50; i++) {
+      String path = "/update" + i;
+      Container container = new Container("update" + i, "/", "0");
+      cdmiObjectDao.createCdmiObject(container, path);
+
+      container.setMetadata(new JSONObject().put("index", i));
+      cdmiObjectDao.updateCdmiObject(container, path);
+
+      Container stored = (Container) cdmiObjectDao.getCdmiObjectByPath(path);
+      assertEquals(container.getObjectId(), stored.getObjectId());
+      assertEquals(i, stored.getMetadata().getInt("index"));
+    }
+  }
+}
@@ -14,7 +14,7 @@ import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({CapabilityRedisTest.class, CdmiObjectRedisTest.class, ContainerRedisTest.class,
-    DataObjectRedisTest.class})
+    DataObjectRedisTest.class, RedisShardsTest.class, AsyncCdmiObjectRedisTest.class})
 public class RedisTestSuite {
 
 
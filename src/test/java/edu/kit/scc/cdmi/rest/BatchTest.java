@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmi.rest;
+
+import static com.jayway.restassured.RestAssured.given;
+import static com.jayway.restassured.config.EncoderConfig.encoderConfig;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import edu.kit.scc.CdmiServerApplication;
+
+import org.apache.commons.codec.binary.Base64;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.boot.test.WebIntegrationTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.http.ContentType;
+import com.jayway.restassured.response.Response;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = CdmiServerApplication.class)
+@WebIntegrationTest
+@ActiveProfiles("filesystem-test")
+public class BatchTest {
+
+  @Value("${rest.user}")
+  private String restUser;
+
+  @Value("${rest.pass}")
+  private String restPassword;
+
+  @Value("${server.port}")
+  private int serverPort;
+
+  @Before
+  public void setUpEach() {
+    RestAssured.baseURI = "http://localhost:" + String.valueOf(serverPort);
+  }
+
+  private String[] batch(String operations) {
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+
+    Response response = given()
+        .config(RestAssured.config().encoderConfig(
+            encoderConfig().encodeContentTypeAs("application/x-ndjson", ContentType.TEXT)))
+        .header("Authorization", "Basic " + authString).contentType("application/x-ndjson")
+        .body(operations).when().post("/cdmi_batch").then()
+        .statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+
+    return response.asString().split("\n");
+  }
+
+  @Test
+  public void testCreateManyObjects() {
+    int count = 500;
+    StringBuilder operations = new StringBuilder();
+    operations.append(new JSONObject().put("op", "create").put("path", "/batchContainer")
+        .put("type", "application/cdmi-container")).append('\n');
+    for (int i = 0; i < count; i++) {
+      operations.append(new JSONObject().put("op", "create").put("path", "/batchContainer/" + i)
+          .put("type", "application/cdmi-object")
+          .put("body", new JSONObject().put("value", "content" + i))).append('\n');
+    }
+    operations.append(new JSONObject().put("op", "get").put("path", "/batchContainer"))
+        .append('\n');
+
+    String[] results = batch(operations.toString());
+    assertEquals(count + 2, results.length);
+    for (int i = 0; i <= count; i++) {
+      JSONObject result = new JSONObject(results[i]);
+      assertEquals(i, result.getInt("index"));
+      assertEquals(201, result.getInt("status"));
+    }
+    JSONObject container = new JSONObject(results[count + 1]);
+    assertEquals(200, container.getInt("status"));
+    // the storage back-end also lists the metadata files
+    JSONArray children = container.getJSONObject("object").getJSONArray("children");
+    assertTrue(children.length() >= count);
+    assertTrue(children.toString().contains("\"" + (count - 1) + "\""));
+
+    results = batch(new JSONObject().put("op", "get").put("path", "/batchContainer/7")
+        .put("query", "value") + "\n");
+    JSONObject dataObject = new JSONObject(results[0]);
+    assertEquals(200, dataObject.getInt("status"));
+    assertEquals("content7", dataObject.getJSONObject("object").getString("value"));
+  }
+
+  @Test
+  public void testOperationErrors() {
+    String[] results = batch(new JSONObject().put("op", "update").put("path", "/batchMissing")
+        + "\n" + "not json\n"
+        + new JSONObject().put("op", "rename").put("path", "/batchMissing") + "\n"
+        + new JSONObject().put("op", "delete").put("path", "/batchMissing") + "\n");
+
+    assertEquals(4, results.length);
+    assertEquals(404, new JSONObject(results[0]).getInt("status"));
+    assertEquals(400, new JSONObject(results[1]).getInt("status"));
+    assertEquals(400, new JSONObject(results[2]).getInt("status"));
+    assertEquals(404, new JSONObject(results[3]).getInt("status"));
+  }
+}
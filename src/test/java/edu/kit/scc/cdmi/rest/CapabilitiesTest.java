@@ -10,10 +10,15 @@
 package edu.kit.scc.cdmi.rest;
 
 import static com.jayway.restassured.RestAssured.given;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
 
 import edu.kit.scc.CdmiServerApplication;
 
 import org.apache.commons.codec.binary.Base64;
+import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -85,6 +90,35 @@ public class CapabilitiesTest {
     log.debug("Response {}", response.asString());
   }
 
+  @Test
+  public void testConditionalGetCapabilities() {
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+
+    Response response = given().header("Authorization", "Basic " + authString).when()
+        .get("/cdmi_capabilities/container/").then().statusCode(org.apache.http.HttpStatus.SC_OK)
+        .extract().response();
+    String entityTag = response.getHeader("ETag");
+    assertNotNull(entityTag);
+    assertEquals("container", new JSONObject(response.asString()).getString("objectName"));
+
+    given().header("Authorization", "Basic " + authString).and()
+        .header("If-None-Match", entityTag).when().get("/cdmi_capabilities/container").then()
+        .statusCode(org.apache.http.HttpStatus.SC_NOT_MODIFIED);
+
+    // filtered responses have their own tag and are served again from the cache
+    for (int i = 0; i < 2; i++) {
+      response = given().urlEncodingEnabled(false).header("Authorization", "Basic " + authString)
+          .header("If-None-Match", entityTag).when()
+          .get("/cdmi_capabilities/container?objectName;parentURI").then()
+          .statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+      JSONObject json = new JSONObject(response.asString());
+      assertEquals(2, json.length());
+      assertEquals("container", json.getString("objectName"));
+      assertFalse(json.has("capabilities"));
+      assertNotEquals(entityTag, response.getHeader("ETag"));
+    }
+  }
+
   @Test
   public void testGetCapabilitiesNotAuthorized() {
     String authString = Base64.encodeBase64String((restUser + "1:" + restPassword).getBytes());
@@ -10,10 +10,14 @@
 package edu.kit.scc.cdmi.rest;
 
 import static com.jayway.restassured.RestAssured.given;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import edu.kit.scc.CdmiServerApplication;
 
 import org.apache.commons.codec.binary.Base64;
+import org.json.JSONArray;
+import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -96,6 +100,30 @@ public class ContainerTest {
     log.debug("Response {}", response.asString());
   }
 
+  @Test
+  public void testGetExpandedChildren() {
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+    Response response = given().urlEncodingEnabled(false)
+        .header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").when()
+        .get("/?children;expand=objectType,objectID").then()
+        .statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+
+    JSONObject json = new JSONObject(response.asString());
+    JSONArray children = json.getJSONArray("children");
+    JSONArray expandedChildren = json.getJSONArray("expandedchildren");
+    assertEquals(children.length(), expandedChildren.length());
+    boolean capabilitiesExpanded = false;
+    for (int i = 0; i < children.length(); i++) {
+      JSONObject child = expandedChildren.getJSONObject(i);
+      assertEquals(children.getString(i), child.getString("objectName"));
+      if (child.getString("objectName").equals("cdmi_capabilities")) {
+        capabilitiesExpanded = child.has("objectType") && child.has("objectID");
+      }
+    }
+    assertTrue(capabilitiesExpanded);
+  }
+
   @Test
   public void testGetContainerNotFound() {
     String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
@@ -10,6 +10,10 @@
 package edu.kit.scc.cdmi.rest;
 
 import static com.jayway.restassured.RestAssured.given;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import edu.kit.scc.CdmiServerApplication;
 
@@ -28,6 +32,9 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import com.jayway.restassured.RestAssured;
 import com.jayway.restassured.response.Response;
 
+import java.util.Collections;
+import java.util.List;
+
 @RunWith(SpringJUnit4ClassRunner.class)
 @SpringApplicationConfiguration(classes = CdmiServerApplication.class)
 @WebIntegrationTest
@@ -105,4 +112,215 @@ public class DataObjectTest {
 
     log.debug("Response {}", response.asString());
   }
+
+  @Test
+  public void testMoveAndCopyDataObject() {
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+    for (String path : new String[] {"/relocateSource", "/relocateMoved", "/relocateCopy"}) {
+      given().header("Authorization", "Basic " + authString).when().delete(path);
+    }
+
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").and()
+        .body("{\"value\":\"relocated\"}".getBytes()).when().put("/relocateSource").then()
+        .statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").and()
+        .body("{\"move\":\"/relocateSource\"}".getBytes()).when().put("/relocateMoved").then()
+        .statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").when().get("/relocateSource").then()
+        .statusCode(org.apache.http.HttpStatus.SC_NOT_FOUND);
+
+    // the source may also be given as URI
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").and()
+        .body(("{\"copy\":\"" + RestAssured.baseURI + "/relocateMoved\"}").getBytes()).when()
+        .put("/relocateCopy").then().statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+
+    Response response = given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").when().get("/relocateCopy?value")
+        .then().statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+    log.debug("Response {}", response.asString());
+    assertEquals("relocated", response.jsonPath().getString("value"));
+
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").and()
+        .body("{\"copy\":\"/relocateMoved\"}".getBytes()).when().put("/relocateCopy").then()
+        .statusCode(org.apache.http.HttpStatus.SC_CONFLICT);
+  }
+
+  @Test
+  public void testConditionalGet() {
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+    given().header("Authorization", "Basic " + authString).when().delete("/conditionalObject");
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").and()
+        .body("{\"value\":\"first\"}".getBytes()).when().put("/conditionalObject").then()
+        .statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+
+    Response response = given().header("Authorization", "Basic " + authString).when()
+        .get("/conditionalObject").then().statusCode(org.apache.http.HttpStatus.SC_OK).extract()
+        .response();
+    String entityTag = response.getHeader("ETag");
+    assertNotNull(entityTag);
+
+    given().header("Authorization", "Basic " + authString).and()
+        .header("If-None-Match", entityTag).when().get("/conditionalObject").then()
+        .statusCode(org.apache.http.HttpStatus.SC_NOT_MODIFIED);
+
+    // another representation of the same version
+    given().header("Authorization", "Basic " + authString).and()
+        .header("If-None-Match", entityTag).when().get("/conditionalObject?value").then()
+        .statusCode(org.apache.http.HttpStatus.SC_OK);
+
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").and()
+        .body("{\"metadata\":{\"color\":\"blue\"}}".getBytes()).when()
+        .put("/conditionalObject").then().statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+
+    response = given().header("Authorization", "Basic " + authString).and()
+        .header("If-None-Match", entityTag).when().get("/conditionalObject").then()
+        .statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+    assertNotEquals(entityTag, response.getHeader("ETag"));
+  }
+
+  @Test
+  public void testConditionalPutAndDelete() {
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+    given().header("Authorization", "Basic " + authString).when().delete("/versionedObject");
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").and()
+        .body("{\"value\":\"first\"}".getBytes()).when().put("/versionedObject").then()
+        .statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+    String entityTag = given().header("Authorization", "Basic " + authString).when()
+        .get("/versionedObject").then().statusCode(org.apache.http.HttpStatus.SC_OK).extract()
+        .header("ETag");
+
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").and()
+        .header("If-Match", entityTag).and()
+        .body("{\"metadata\":{\"revision\":\"2\"},\"value\":\"second\"}".getBytes()).when()
+        .put("/versionedObject").then().statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+
+    // the first update has changed the version
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").and()
+        .header("If-Match", entityTag).and().body("{\"value\":\"third\"}".getBytes()).when()
+        .put("/versionedObject").then()
+        .statusCode(org.apache.http.HttpStatus.SC_PRECONDITION_FAILED);
+    given().header("Authorization", "Basic " + authString).and().header("If-Match", entityTag)
+        .when().delete("/versionedObject").then()
+        .statusCode(org.apache.http.HttpStatus.SC_PRECONDITION_FAILED);
+
+    Response response = given().header("Authorization", "Basic " + authString).when()
+        .get("/versionedObject?value").then().statusCode(org.apache.http.HttpStatus.SC_OK)
+        .extract().response();
+    assertEquals("second", response.jsonPath().getString("value"));
+    response = given().header("Authorization", "Basic " + authString).when()
+        .get("/versionedObject").then().statusCode(org.apache.http.HttpStatus.SC_OK).extract()
+        .response();
+    assertEquals("2", response.jsonPath().getString("metadata.revision"));
+
+    given().header("Authorization", "Basic " + authString).and().header("If-Match", "*").when()
+        .delete("/versionedObject").then().statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+  }
+
+  @Test
+  public void testValueRangeUpdate() {
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+    given().header("Authorization", "Basic " + authString).when().delete("/rangeObject");
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").and()
+        .body("{\"value\":\"hello world\"}".getBytes()).when().put("/rangeObject").then()
+        .statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+
+    // a bare value replaces the whole value
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").and()
+        .body("{\"value\":\"bye\"}".getBytes()).when().put("/rangeObject?value").then()
+        .statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+    Response response = given().header("Authorization", "Basic " + authString).when()
+        .get("/rangeObject?value").then().statusCode(org.apache.http.HttpStatus.SC_OK).extract()
+        .response();
+    assertEquals("bye", response.jsonPath().getString("value"));
+
+    given().header("Authorization", "Basic " + authString).urlEncodingEnabled(false).and()
+        .header("Content-Type", "application/cdmi-object").and()
+        .body("{\"value\":\"BY\"}".getBytes()).when().put("/rangeObject?value:0-1").then()
+        .statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+    // the value must fit into the range
+    given().header("Authorization", "Basic " + authString).urlEncodingEnabled(false).and()
+        .header("Content-Type", "application/cdmi-object").and()
+        .body("{\"value\":\"BYE!\"}".getBytes()).when().put("/rangeObject?value:0-2").then()
+        .statusCode(org.apache.http.HttpStatus.SC_BAD_REQUEST);
+    response = given().header("Authorization", "Basic " + authString).when()
+        .get("/rangeObject?value").then().statusCode(org.apache.http.HttpStatus.SC_OK).extract()
+        .response();
+    assertEquals("BYe", response.jsonPath().getString("value"));
+
+    given().header("Authorization", "Basic " + authString).when().delete("/rangeObject").then()
+        .statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+  }
+
+  @Test
+  public void testCompressedGet() {
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+    String value = String.join("", Collections.nCopies(1000, "compressible"));
+    given().header("Authorization", "Basic " + authString).when().delete("/compressedObject");
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").and()
+        .body(("{\"value\":\"" + value + "\"}").getBytes()).when().put("/compressedObject")
+        .then().statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+
+    // the second request is served from the compressed bytes of the first
+    String entityTag = null;
+    for (int i = 0; i < 2; i++) {
+      Response response = given().header("Authorization", "Basic " + authString).and()
+          .header("Accept-Encoding", "gzip").when().get("/compressedObject?value").then()
+          .statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+      assertEquals("gzip", response.getHeader("Content-Encoding"));
+      assertTrue(response.getHeader("Vary").contains("Accept-Encoding"));
+      assertEquals(value, response.jsonPath().getString("value"));
+      assertTrue(response.getHeader("ETag").endsWith("-gzip\""));
+      entityTag = response.getHeader("ETag");
+    }
+
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Accept-Encoding", "gzip").and().header("If-None-Match", entityTag).when()
+        .get("/compressedObject?value").then()
+        .statusCode(org.apache.http.HttpStatus.SC_NOT_MODIFIED);
+
+    // the tag of the compressed representation carries the same version
+    given().header("Authorization", "Basic " + authString).and()
+        .header("If-Match", entityTag).when().delete("/compressedObject").then()
+        .statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+  }
+
+  @Test
+  public void testChangeEvents() {
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+    long after = given().header("Authorization", "Basic " + authString).when()
+        .get("/cdmi_events/eventObject?timeout=0").then()
+        .statusCode(org.apache.http.HttpStatus.SC_OK).extract().jsonPath().getLong("next");
+
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-object").and()
+        .body("{\"value\":\"event\"}".getBytes()).when().put("/eventObject").then()
+        .statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+    given().header("Authorization", "Basic " + authString).when().delete("/eventObject").then()
+        .statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+
+    Response response = given().header("Authorization", "Basic " + authString).when()
+        .get("/cdmi_events/eventObject?after=" + after).then()
+        .statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+    log.debug("Response {}", response.asString());
+
+    List<String> types = response.jsonPath().getList("events.type");
+    assertEquals("created", types.get(0));
+    assertEquals("deleted", types.get(types.size() - 1));
+    assertEquals("/eventObject", response.jsonPath().getString("events[0].path"));
+  }
 }
@@ -1,6 +1,8 @@
 package edu.kit.scc.cdmi.rest;
 
 import static com.jayway.restassured.RestAssured.given;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import edu.kit.scc.CdmiServerApplication;
 
@@ -19,6 +21,10 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import com.jayway.restassured.RestAssured;
 import com.jayway.restassured.response.Response;
 
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
 @RunWith(SpringJUnit4ClassRunner.class)
 @SpringApplicationConfiguration(classes = CdmiServerApplication.class)
 @WebIntegrationTest
@@ -41,17 +47,131 @@ public class DomainTest {
     RestAssured.baseURI = "http://localhost:" + String.valueOf(serverPort);
   }
 
+  private void put(String authString, String path, String contentType, String body) {
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", contentType).and().body(body.getBytes()).when().put(path).then()
+        .statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+  }
+
+  private Response get(String authString, String path) {
+    Response response = given().header("Authorization", "Basic " + authString).when().get(path)
+        .then().statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+    log.debug("Response {}", response.asString());
+    return response;
+  }
+
   @Test
-  public void testGetDomainNotFound() {
+  public void testGetRootDomain() {
     String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
 
     Response response = given().header("Authorization", "Basic " + authString).and()
         .header("Content-Type", "application/cdmi-domain").when().get("/cdmi_domains").then()
+        .statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+
+    log.debug("Response {}", response.asString());
+    assertEquals("cdmi_domains", response.jsonPath().getString("objectName"));
+    assertTrue(response.jsonPath().getList("children").contains("cdmi_domain_summary"));
+  }
+
+  @Test
+  public void testGetDomainNotFound() {
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+
+    Response response = given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-domain").when()
+        .get("/cdmi_domains/missingDomain").then()
         .statusCode(org.apache.http.HttpStatus.SC_NOT_FOUND).extract().response();
 
     log.debug("Response {}", response.asString());
   }
 
+  @Test
+  public void testDomainSummary() {
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+    // deleting the domain at the end resets its usage, the name only differs per run so that a
+    // run stopped before the delete leaves no usage behind for the next one
+    String domain = "/cdmi_domains/summaryDomain" + System.currentTimeMillis();
+    String today = LocalDate.now(ZoneOffset.UTC).toString();
+
+    given().header("Authorization", "Basic " + authString).when().delete("/summaryContainer/a");
+    given().header("Authorization", "Basic " + authString).when().delete("/summaryContainer");
+    put(authString, domain, "application/cdmi-domain", "{\"metadata\":{\"owner\":\"scc\"}}");
+    put(authString, "/summaryContainer", "application/cdmi-container", "{}");
+    put(authString, "/summaryContainer/a", "application/cdmi-object",
+        "{\"domainURI\":\"" + domain + "/\",\"value\":\"hello\"}");
+    put(authString, "/summaryContainer/a", "application/cdmi-object",
+        "{\"value\":\"hello world\"}");
+
+    Response response = get(authString, domain);
+    assertEquals("scc", response.jsonPath().getString("metadata.owner"));
+
+    response = get(authString, domain + "/cdmi_domain_summary");
+    assertEquals(1, response.jsonPath().getLong("metadata.cdmi_summary_objects"));
+    assertEquals(11, response.jsonPath().getLong("metadata.cdmi_summary_bytes"));
+
+    response = get(authString, domain + "/cdmi_domain_summary/daily");
+    assertEquals(Arrays.asList(today), response.jsonPath().getList("children"));
+
+    response = get(authString, domain + "/cdmi_domain_summary/daily/" + today);
+    assertEquals(2, response.jsonPath().getLong("metadata.cdmi_summary_puts"));
+    assertEquals(16, response.jsonPath().getLong("metadata.cdmi_summary_writes"));
+
+    given().header("Authorization", "Basic " + authString).when().delete("/summaryContainer/a")
+        .then().statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+
+    response = get(authString, domain + "/cdmi_domain_summary");
+    assertEquals(0, response.jsonPath().getLong("metadata.cdmi_summary_objects"));
+    assertEquals(0, response.jsonPath().getLong("metadata.cdmi_summary_bytes"));
+    response = get(authString, domain + "/cdmi_domain_summary/daily/" + today);
+    assertEquals(1, response.jsonPath().getLong("metadata.cdmi_summary_deletes"));
+
+    // the changes are counted for the root domain, too
+    response = get(authString, "/cdmi_domains/cdmi_domain_summary/daily/" + today);
+    assertTrue(response.jsonPath().getLong("metadata.cdmi_summary_writes") >= 16);
+
+    given().header("Authorization", "Basic " + authString).when()
+        .get(domain + "/cdmi_domain_summary/hourly").then()
+        .statusCode(org.apache.http.HttpStatus.SC_NOT_FOUND);
+
+    given().header("Authorization", "Basic " + authString).when().delete(domain).then()
+        .statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+  }
+
+  @Test
+  public void testDeleteDomain() {
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+    String domain = "/cdmi_domains/deleteDomain";
+
+    given().header("Authorization", "Basic " + authString).when().delete(domain + "/sub");
+    given().header("Authorization", "Basic " + authString).when().delete(domain);
+    put(authString, domain, "application/cdmi-domain", "{}");
+    put(authString, domain + "/sub", "application/cdmi-domain", "{}");
+    assertTrue(get(authString, domain).jsonPath().getList("children").contains("sub"));
+
+    // domains with subdomains and the root domain can't be deleted
+    given().header("Authorization", "Basic " + authString).when().delete(domain).then()
+        .statusCode(org.apache.http.HttpStatus.SC_CONFLICT);
+    given().header("Authorization", "Basic " + authString).when().delete("/cdmi_domains")
+        .then().statusCode(org.apache.http.HttpStatus.SC_CONFLICT);
+
+    given().header("Authorization", "Basic " + authString).when().delete(domain + "/sub")
+        .then().statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+    given().header("Authorization", "Basic " + authString).when().delete(domain).then()
+        .statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+    given().header("Authorization", "Basic " + authString).when().get(domain).then()
+        .statusCode(org.apache.http.HttpStatus.SC_NOT_FOUND);
+  }
+
+  @Test
+  public void testPutDomainWithoutParent() {
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-domain").and().body("{}".getBytes()).when()
+        .put("/cdmi_domains/missingParent/child").then()
+        .statusCode(org.apache.http.HttpStatus.SC_BAD_REQUEST);
+  }
+
   @Test
   public void testGetDomainNotAuthorized() {
     String authString = Base64.encodeBase64String(("invalid").getBytes());
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmi.rest;
+
+import static com.jayway.restassured.RestAssured.given;
+import static org.junit.Assert.assertTrue;
+
+import edu.kit.scc.CdmiServerApplication;
+
+import org.apache.commons.codec.binary.Base64;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.boot.test.WebIntegrationTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.response.Response;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = CdmiServerApplication.class)
+@WebIntegrationTest
+@ActiveProfiles("filesystem-test")
+public class MetricsTest {
+
+  private static final Logger log = LoggerFactory.getLogger(MetricsTest.class);
+
+  @Value("${rest.user}")
+  private String restUser;
+
+  @Value("${rest.pass}")
+  private String restPassword;
+
+  @Value("${server.port}")
+  private int serverPort;
+
+  @Before
+  public void setUpEach() {
+    RestAssured.baseURI = "http://localhost:" + String.valueOf(serverPort);
+  }
+
+  @Test
+  public void testAvoidedLookups() {
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+
+    for (int i = 0; i < 2; i++) {
+      given().header("Authorization", "Basic " + authString).when().get("/missingMetricsPath")
+          .then().statusCode(org.apache.http.HttpStatus.SC_NOT_FOUND);
+    }
+
+    Response response = given().header("Authorization", "Basic " + authString).when()
+        .get("/cdmi_metrics").then().statusCode(org.apache.http.HttpStatus.SC_OK).extract()
+        .response();
+
+    log.debug("Response {}", response.asString());
+
+    JSONObject metrics = new JSONObject(response.asString());
+    assertTrue(metrics.getJSONObject("negativeLookupCache").getLong("avoidedLookups") > 0);
+  }
+
+  @Test
+  public void testRequestExecutors() {
+    String authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+
+    given().header("Authorization", "Basic " + authString).when().get("/cdmi_capabilities")
+        .then().statusCode(org.apache.http.HttpStatus.SC_OK);
+
+    Response response = given().header("Authorization", "Basic " + authString).when()
+        .get("/cdmi_metrics").then().statusCode(org.apache.http.HttpStatus.SC_OK).extract()
+        .response();
+
+    JSONObject executors = new JSONObject(response.asString()).getJSONObject("requestExecutors");
+    for (String pool : new String[] {"storage", "metadata", "backend"}) {
+      assertTrue(executors.getJSONObject(pool).has("queued"));
+    }
+    assertTrue(executors.getJSONObject("metadata").getLong("completed") > 0);
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmi.rest;
+
+import static com.jayway.restassured.RestAssured.given;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import edu.kit.scc.CdmiServerApplication;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.boot.test.WebIntegrationTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.response.Response;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = CdmiServerApplication.class)
+@WebIntegrationTest
+@ActiveProfiles("filesystem-test")
+public class QueryTest {
+
+  private static final Logger log = LoggerFactory.getLogger(QueryTest.class);
+
+  @Value("${rest.user}")
+  private String restUser;
+
+  @Value("${rest.pass}")
+  private String restPassword;
+
+  @Value("${server.port}")
+  private int serverPort;
+
+  private String authString;
+
+  @Before
+  public void setUpEach() {
+    RestAssured.baseURI = "http://localhost:" + String.valueOf(serverPort);
+    authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+  }
+
+  private void put(String path, String contentType, String body) {
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", contentType).and().body(body.getBytes()).when().put(path).then()
+        .statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+  }
+
+  private Response query(String path, String body) {
+    Response response = given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/json").and().body(body.getBytes()).when()
+        .post(path).then().statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+    log.debug("Response {}", response.asString());
+    return response;
+  }
+
+  @Test
+  public void testQuery() {
+    given().header("Authorization", "Basic " + authString).when().delete("/queryContainer");
+    put("/queryContainer", "application/cdmi-container", "{\"metadata\":{\"project\":\"q\"}}");
+    put("/queryContainer/a", "application/cdmi-object",
+        "{\"metadata\":{\"color\":\"red\",\"rank\":\"1\"},\"value\":\"a\"}");
+    put("/queryContainer/b", "application/cdmi-object",
+        "{\"metadata\":{\"color\":\"red\",\"rank\":\"20\"},\"value\":\"b\"}");
+    put("/queryContainer/c", "application/cdmi-object",
+        "{\"metadata\":{\"color\":\"blue\",\"rank\":\"300\"},\"value\":\"c\"}");
+
+    String red = "{\"cdmi_scope_specification\":[{\"metadata\":{\"color\":\"== red\"}}]}";
+    Response response = query("/cdmi_query/queryContainer", red);
+    assertEquals(Arrays.asList("/queryContainer/a", "/queryContainer/b"),
+        response.jsonPath().getList("objectURIs"));
+
+    // the results are paged in path order
+    response = query("/cdmi_query/queryContainer?limit=1", red);
+    assertEquals(Arrays.asList("/queryContainer/a"), response.jsonPath().getList("objectURIs"));
+    String next = response.jsonPath().getString("next");
+    response = query("/cdmi_query/queryContainer?limit=1&after=" + next, red);
+    assertEquals(Arrays.asList("/queryContainer/b"), response.jsonPath().getList("objectURIs"));
+    assertNull(response.jsonPath().getString("next"));
+
+    response = query("/cdmi_query", "{\"cdmi_scope_specification\":[{\"parentURI\":"
+        + "\"starts /queryContainer\",\"metadata\":{\"rank\":\">= 20\"}}]}");
+    assertEquals(Arrays.asList("/queryContainer/b", "/queryContainer/c"),
+        response.jsonPath().getList("objectURIs"));
+
+    // metadata updates are indexed
+    put("/queryContainer/a", "application/cdmi-object", "{\"metadata\":{\"color\":\"blue\"}}");
+    response = query("/cdmi_query/queryContainer", red);
+    assertEquals(Arrays.asList("/queryContainer/b"), response.jsonPath().getList("objectURIs"));
+
+    given().header("Authorization", "Basic " + authString).when().delete("/queryContainer/b")
+        .then().statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+    response = query("/cdmi_query/queryContainer", red);
+    assertEquals(Collections.emptyList(), response.jsonPath().getList("objectURIs"));
+  }
+
+  @Test
+  public void testInvalidQuery() {
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/json").and()
+        .body("{\"cdmi_scope_specification\":[{\"metadata\":{\"color\":\"like red\"}}]}"
+            .getBytes())
+        .when().post("/cdmi_query").then().statusCode(org.apache.http.HttpStatus.SC_BAD_REQUEST);
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.cdmi.rest;
+
+import static com.jayway.restassured.RestAssured.given;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import edu.kit.scc.CdmiServerApplication;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.boot.test.WebIntegrationTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.response.Response;
+
+import java.util.Arrays;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = CdmiServerApplication.class)
+@WebIntegrationTest
+@ActiveProfiles("filesystem-test")
+public class QueueTest {
+
+  private static final Logger log = LoggerFactory.getLogger(QueueTest.class);
+
+  @Value("${rest.user}")
+  private String restUser;
+
+  @Value("${rest.pass}")
+  private String restPassword;
+
+  @Value("${server.port}")
+  private int serverPort;
+
+  private String authString;
+
+  @Before
+  public void setUpEach() {
+    RestAssured.baseURI = "http://localhost:" + String.valueOf(serverPort);
+    authString = Base64.encodeBase64String((restUser + ":" + restPassword).getBytes());
+  }
+
+  @Test
+  public void testQueue() {
+    given().header("Authorization", "Basic " + authString).when().delete("/testQueue");
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-queue").and()
+        .body("{\"metadata\":{\"pipeline\":\"ingest\"},\"value\":[\"first\"]}".getBytes()).when()
+        .put("/testQueue").then().statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+
+    given().header("Authorization", "Basic " + authString).and()
+        .header("Content-Type", "application/cdmi-queue").and()
+        .body("{\"value\":[\"second\",\"third\"]}".getBytes()).when().put("/testQueue?value")
+        .then().statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+
+    Response response = given().header("Authorization", "Basic " + authString).when()
+        .get("/testQueue").then().statusCode(org.apache.http.HttpStatus.SC_OK).extract()
+        .response();
+    log.debug("Response {}", response.asString());
+    assertTrue(response.getContentType().contains("application/cdmi-queue+json"));
+    assertEquals("ingest", response.jsonPath().getString("metadata.pipeline"));
+    assertEquals(3, response.jsonPath().getInt("queueValues"));
+
+    response = given().header("Authorization", "Basic " + authString).urlEncodingEnabled(false)
+        .when().get("/testQueue?values:2").then().statusCode(org.apache.http.HttpStatus.SC_OK)
+        .extract().response();
+    assertEquals(Arrays.asList("first", "second"), response.jsonPath().getList("value"));
+    assertEquals("0-1", response.jsonPath().getString("valuerange"));
+
+    // values are removed once they are acknowledged
+    given().header("Authorization", "Basic " + authString).urlEncodingEnabled(false).when()
+        .delete("/testQueue?values:2").then()
+        .statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+
+    response = given().header("Authorization", "Basic " + authString).urlEncodingEnabled(false)
+        .when().get("/testQueue?values:10").then().statusCode(org.apache.http.HttpStatus.SC_OK)
+        .extract().response();
+    assertEquals(Arrays.asList("third"), response.jsonPath().getList("value"));
+    assertEquals(1, response.jsonPath().getInt("queueValues"));
+
+    // another consumer still gets all values
+    response = given().header("Authorization", "Basic " + authString).urlEncodingEnabled(false)
+        .when().get("/testQueue?values:10;consumer:audit").then()
+        .statusCode(org.apache.http.HttpStatus.SC_OK).extract().response();
+    assertEquals(3, response.jsonPath().getList("value").size());
+
+    given().header("Authorization", "Basic " + authString).when().delete("/testQueue").then()
+        .statusCode(org.apache.http.HttpStatus.SC_NO_CONTENT);
+    given().header("Authorization", "Basic " + authString).when().get("/testQueue").then()
+        .statusCode(org.apache.http.HttpStatus.SC_NOT_FOUND);
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.compression;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+public class ResponseCompressorTest {
+
+  private static final MediaType CONTAINER = new MediaType("application", "cdmi-container+json");
+
+  private ResponseCompressor compressor;
+
+  private byte[] listing;
+
+  @Before
+  public void setUp() {
+    compressor = new ResponseCompressor();
+    compressor.setEnabled(true);
+    compressor.setMinSize(1024);
+    compressor.setLevel(6);
+    compressor.setMaxCacheBytes(1024 * 1024);
+
+    StringBuilder children = new StringBuilder("{\"children\":[");
+    for (int i = 0; i < 1000; i++) {
+      children.append("\"object").append(i).append("\",");
+    }
+    listing = children.append("\"last\"]}").toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testNegotiate() {
+    assertNull(compressor.negotiate(null));
+    assertNull(compressor.negotiate("identity"));
+    assertEquals(ResponseCompressor.GZIP, compressor.negotiate("deflate, gzip"));
+    assertEquals(ResponseCompressor.DEFLATE, compressor.negotiate("gzip;q=0.5, deflate"));
+    assertEquals(ResponseCompressor.DEFLATE, compressor.negotiate("gzip;q=0, deflate"));
+    assertNull(compressor.negotiate("gzip;q=0"));
+    assertEquals(ResponseCompressor.GZIP, compressor.negotiate("*"));
+  }
+
+  @Test
+  public void testEncode() throws IOException {
+    ResponseCompressor.Encoded gzip =
+        compressor.encode(listing, CONTAINER, ResponseCompressor.GZIP, null);
+    assertNotNull(gzip);
+    assertTrue(gzip.getBody().length < listing.length / 4);
+    assertArrayEquals(listing,
+        IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(gzip.getBody()))));
+
+    ResponseCompressor.Encoded deflate =
+        compressor.encode(listing, CONTAINER, ResponseCompressor.DEFLATE, null);
+    assertArrayEquals(listing,
+        IOUtils.toByteArray(new InflaterInputStream(new ByteArrayInputStream(deflate.getBody()))));
+  }
+
+  @Test
+  public void testNotCompressed() {
+    assertNull(compressor.encode(listing, CONTAINER, null, null));
+    assertNull(compressor.encode("{}".getBytes(StandardCharsets.UTF_8), CONTAINER,
+        ResponseCompressor.GZIP, null));
+    assertNull(compressor.encode(listing, MediaType.APPLICATION_OCTET_STREAM,
+        ResponseCompressor.GZIP, null));
+  }
+
+  @Test
+  public void testCacheByEntityTag() {
+    assertNull(compressor.getCached("\"id.1-0\"", ResponseCompressor.GZIP));
+    ResponseCompressor.Encoded encoded =
+        compressor.encode(listing, CONTAINER, ResponseCompressor.GZIP, "\"id.1-0\"");
+
+    assertSame(encoded, compressor.getCached("\"id.1-0\"", ResponseCompressor.GZIP));
+    assertNull(compressor.getCached("\"id.1-0\"", ResponseCompressor.DEFLATE));
+    assertNull(compressor.getCached("\"id.2-0\"", ResponseCompressor.GZIP));
+    assertEquals(1, compressor.getMetrics().getLong("cacheHits"));
+  }
+
+  @Test
+  public void testCacheEviction() {
+    ResponseCompressor.Encoded first =
+        compressor.encode(listing, CONTAINER, ResponseCompressor.GZIP, "\"first\"");
+    compressor.setMaxCacheBytes(first.getBody().length * 2);
+    compressor.encode(listing, CONTAINER, ResponseCompressor.GZIP, "\"second\"");
+    compressor.getCached("\"first\"", ResponseCompressor.GZIP);
+    compressor.encode(listing, CONTAINER, ResponseCompressor.GZIP, "\"third\"");
+
+    // the least recently used body is evicted
+    assertNotNull(compressor.getCached("\"first\"", ResponseCompressor.GZIP));
+    assertNull(compressor.getCached("\"second\"", ResponseCompressor.GZIP));
+    assertEquals(1, compressor.getMetrics().getLong("evictions"));
+  }
+
+  @Test
+  public void testEntityTags() {
+    String encoded = ResponseCompressor.encodedEntityTag("\"id.1-af\"", ResponseCompressor.GZIP);
+    assertEquals("\"id.1-af-gzip\"", encoded);
+    assertEquals("\"id.1-af\"", ResponseCompressor.identityEntityTag(encoded));
+    assertEquals("\"id.1-af\"", ResponseCompressor.identityEntityTag("\"id.1-af\""));
+  }
+}
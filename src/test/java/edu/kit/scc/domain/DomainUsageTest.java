@@ -0,0 +1,175 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.domain;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class DomainUsageTest {
+
+  private static final Clock CLOCK =
+      Clock.fixed(Instant.parse("2016-12-31T12:00:00Z"), ZoneOffset.UTC);
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private DomainUsage open(DomainUsageStore store) {
+    DomainUsage domainUsage = new DomainUsage(store, 3600, CLOCK);
+    domainUsage.open();
+    return domainUsage;
+  }
+
+  @Test
+  public void testCounters() {
+    DomainUsage domainUsage = open(new FileDomainUsageStore(
+        folder.getRoot().toPath().resolve("usage.json")));
+    try {
+      domainUsage.created("/cdmi_domains/kit/scc/", 100);
+      domainUsage.created("/cdmi_domains/kit/", 10);
+      domainUsage.written("/cdmi_domains/kit/scc", -40, 60);
+      domainUsage.deleted("/cdmi_domains/kit", 10);
+      // data objects without a domain count for the root domain
+      domainUsage.created(null, 5);
+
+      assertEquals(1, domainUsage.get("/cdmi_domains/kit/scc", DomainUsage.OBJECTS));
+      assertEquals(60, domainUsage.get("/cdmi_domains/kit/scc", DomainUsage.BYTES));
+      assertEquals(1, domainUsage.get("/cdmi_domains/kit", DomainUsage.OBJECTS));
+      assertEquals(60, domainUsage.get("/cdmi_domains/kit", DomainUsage.BYTES));
+      assertEquals(2, domainUsage.get("/cdmi_domains", DomainUsage.OBJECTS));
+      assertEquals(65, domainUsage.get("/cdmi_domains", DomainUsage.BYTES));
+
+      assertEquals(2, domainUsage.get("/cdmi_domains/kit/scc", DomainUsage.PUTS, "daily",
+          "2016-12-31"));
+      assertEquals(160, domainUsage.get("/cdmi_domains/kit/scc", DomainUsage.WRITES, "weekly",
+          "2016-W52"));
+      assertEquals(3, domainUsage.get("/cdmi_domains/kit", DomainUsage.PUTS, "monthly",
+          "2016-12"));
+      assertEquals(1, domainUsage.get("/cdmi_domains/kit", DomainUsage.DELETES, "yearly",
+          "2016"));
+      assertEquals(0, domainUsage.get("/cdmi_domains/kit", DomainUsage.DELETES, "yearly",
+          "2015"));
+
+      assertEquals(Arrays.asList("2016-12-31"),
+          Arrays.asList(domainUsage.getPeriods("/cdmi_domains", "daily").toArray()));
+      assertEquals(Arrays.asList("2016-W52"),
+          Arrays.asList(domainUsage.getPeriods("/cdmi_domains/kit", "weekly").toArray()));
+      assertEquals(0, domainUsage.getPeriods("/cdmi_domains/other", "daily").size());
+    } finally {
+      domainUsage.close();
+    }
+  }
+
+  @Test
+  public void testCheckpoint() {
+    Path checkpointFile = folder.getRoot().toPath().resolve("usage.json");
+    DomainUsageStore store = new FileDomainUsageStore(checkpointFile);
+    DomainUsage first = open(store);
+    DomainUsage second = open(store);
+
+    first.created("/cdmi_domains/kit", 100);
+    second.created("/cdmi_domains/kit", 20);
+    first.checkpoint();
+    second.checkpoint();
+    first.checkpoint();
+
+    // the instances sharing the store see each other's changes after a checkpoint
+    assertEquals(120, first.get("/cdmi_domains/kit", DomainUsage.BYTES));
+    assertEquals(120, second.get("/cdmi_domains/kit", DomainUsage.BYTES));
+
+    first.written("/cdmi_domains/kit", 5, 5);
+    first.close();
+    second.close();
+
+    DomainUsage reopened = open(new FileDomainUsageStore(checkpointFile));
+    try {
+      assertEquals(2, reopened.get("/cdmi_domains", DomainUsage.OBJECTS));
+      assertEquals(125, reopened.get("/cdmi_domains/kit", DomainUsage.BYTES));
+      assertEquals(3, reopened.get("/cdmi_domains/kit", DomainUsage.PUTS, "daily",
+          "2016-12-31"));
+    } finally {
+      reopened.close();
+    }
+  }
+
+  @Test
+  public void testClear() {
+    DomainUsage domainUsage = open(new FileDomainUsageStore(
+        folder.getRoot().toPath().resolve("usage.json")));
+    try {
+      domainUsage.created("/cdmi_domains/kit", 100);
+      domainUsage.checkpoint();
+      domainUsage.created("/cdmi_domains/kit", 20);
+      domainUsage.created("/cdmi_domains/kitten", 1);
+      domainUsage.clear("/cdmi_domains/kit");
+
+      // a domain created again at the same path starts from zero
+      assertEquals(0, domainUsage.get("/cdmi_domains/kit", DomainUsage.OBJECTS));
+      assertEquals(0, domainUsage.get("/cdmi_domains/kit", DomainUsage.BYTES));
+      assertEquals(0, domainUsage.get("/cdmi_domains/kit", DomainUsage.PUTS, "daily",
+          "2016-12-31"));
+      assertEquals(0, domainUsage.getPeriods("/cdmi_domains/kit", "daily").size());
+      assertEquals(1, domainUsage.get("/cdmi_domains/kitten", DomainUsage.OBJECTS));
+      assertEquals(121, domainUsage.get("/cdmi_domains", DomainUsage.BYTES));
+
+      domainUsage.checkpoint();
+      assertEquals(0, domainUsage.get("/cdmi_domains/kit", DomainUsage.BYTES));
+    } finally {
+      domainUsage.close();
+    }
+  }
+
+  @Test
+  public void testFailedCheckpoint() {
+    Map<String, Long> stored = new HashMap<>();
+    boolean[] failing = {true};
+    DomainUsageStore store = new DomainUsageStore() {
+      @Override
+      public Map<String, Long> load() {
+        return new HashMap<>(stored);
+      }
+
+      @Override
+      public void add(Map<String, Long> deltas) {
+        if (failing[0]) {
+          throw new UncheckedIOException(new IOException("unavailable"));
+        }
+        deltas.forEach((key, delta) -> stored.merge(key, delta, Long::sum));
+      }
+    };
+    DomainUsage domainUsage = open(store);
+    try {
+      domainUsage.created("/cdmi_domains", 7);
+      domainUsage.checkpoint();
+      assertEquals(7, domainUsage.get("/cdmi_domains", DomainUsage.BYTES));
+      assertEquals(0, stored.size());
+
+      // the changes are kept until a checkpoint succeeds
+      failing[0] = false;
+      domainUsage.checkpoint();
+      assertEquals(7, domainUsage.get("/cdmi_domains", DomainUsage.BYTES));
+      assertEquals(Long.valueOf(7), stored.get("/cdmi_domains|bytes"));
+    } finally {
+      domainUsage.close();
+    }
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ChangeFeedTest {
+
+  private ChangeFeed changeFeed;
+
+  @Before
+  public void setUp() {
+    changeFeed = new ChangeFeed();
+    changeFeed.setCapacity(4);
+    changeFeed.setMaxBatch(10);
+    changeFeed.init();
+  }
+
+  @After
+  public void tearDown() {
+    changeFeed.cleanUp();
+  }
+
+  @Test
+  public void testReadByPrefix() {
+    changeFeed.publish(ChangeEvent.Type.CREATED, "/a", "1", null);
+    changeFeed.publish(ChangeEvent.Type.CREATED, "/ab", "2", null);
+    changeFeed.publish(ChangeEvent.Type.UPDATED, "/a/b", "3", null);
+
+    ChangeFeed.Batch batch = changeFeed.read(0, "/a");
+    assertFalse(batch.isReset());
+    assertEquals(3, batch.getNext());
+    assertEquals(2, batch.getEvents().size());
+    assertEquals("/a/b", batch.getEvents().get(1).getPath());
+
+    assertEquals(3, changeFeed.read(0, "/").getEvents().size());
+    assertTrue(changeFeed.read(3, null).getEvents().isEmpty());
+  }
+
+  @Test
+  public void testResetWhenBehind() {
+    for (int i = 0; i < 6; i++) {
+      changeFeed.publish(ChangeEvent.Type.UPDATED, "/object", "1", null);
+    }
+
+    ChangeFeed.Batch batch = changeFeed.read(1, null);
+    assertTrue(batch.isReset());
+    assertEquals(4, batch.getEvents().size());
+    assertEquals(3, batch.getEvents().get(0).getSequence());
+
+    // a position from before a restart
+    assertTrue(changeFeed.read(100, null).isReset());
+    assertFalse(changeFeed.read(2, null).isReset());
+  }
+
+  @Test
+  public void testPoll() throws Exception {
+    CompletableFuture<ChangeFeed.Batch> future = changeFeed.poll(0, "/watched", 10000);
+    assertFalse(future.isDone());
+
+    changeFeed.publish(ChangeEvent.Type.CREATED, "/other", "1", null);
+    changeFeed.publish(ChangeEvent.Type.DELETED, "/watched/object", "2", null);
+
+    ChangeFeed.Batch batch = future.get(5, TimeUnit.SECONDS);
+    assertEquals(1, batch.getEvents().size());
+    assertEquals(ChangeEvent.Type.DELETED, batch.getEvents().get(0).getType());
+    assertEquals(2, batch.getNext());
+  }
+
+  @Test
+  public void testPollTimeout() throws Exception {
+    ChangeFeed.Batch batch = changeFeed.poll(0, "/watched", 50).get(5, TimeUnit.SECONDS);
+    assertTrue(batch.getEvents().isEmpty());
+    assertEquals(0, batch.getNext());
+    assertEquals(0, changeFeed.getMetrics().getInt("subscriptions"));
+  }
+
+  @Test
+  public void testSubscribe() throws Exception {
+    changeFeed.publish(ChangeEvent.Type.CREATED, "/object", "1", null);
+
+    List<ChangeEvent> received = new CopyOnWriteArrayList<>();
+    CountDownLatch latch = new CountDownLatch(3);
+    ChangeFeed.Subscription subscription = changeFeed.subscribe(null, 0, batch -> {
+      for (ChangeEvent event : batch.getEvents()) {
+        received.add(event);
+        latch.countDown();
+      }
+      return true;
+    });
+    changeFeed.publish(ChangeEvent.Type.UPDATED, "/object", "1", null);
+    changeFeed.publish(ChangeEvent.Type.QOS_COMPLETE, "/object", null, "/cdmi_capabilities/a");
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    subscription.cancel();
+    assertEquals(3, received.get(2).getSequence());
+    assertEquals("qos_complete", received.get(2).toJson().getString("type"));
+    assertEquals(0, changeFeed.getMetrics().getInt("subscriptions"));
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.snia.cdmiserver.model.Container;
+import org.snia.cdmiserver.model.DataObject;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class MetadataQueryTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private InMemoryMetadataIndex index;
+
+  @Before
+  public void setUp() {
+    index = new InMemoryMetadataIndex(null, 60);
+    index.index("/data", terms(new Container("data", "/", "0"), null));
+    index.index("/data/a", terms(new DataObject("a", "/data/", "1"),
+        new JSONObject().put("color", "red").put("cdmi_size", "100")));
+    index.index("/data/b", terms(new DataObject("b", "/data/", "1"),
+        new JSONObject().put("color", "green").put("cdmi_size", "2048")
+            .put("tags", new JSONArray().put("raw").put("large"))));
+    index.index("/other/c", terms(new DataObject("c", "/other/", "2"),
+        new JSONObject().put("color", "red").put("cdmi_size", "7.5")));
+  }
+
+  private static Map<String, Set<String>> terms(Container container, JSONObject metadata) {
+    container.setMetadata(metadata);
+    return MetadataIndexCdmiObjectDao.terms(container);
+  }
+
+  private static Map<String, Set<String>> terms(DataObject dataObject, JSONObject metadata) {
+    dataObject.setMetadata(metadata);
+    return MetadataIndexCdmiObjectDao.terms(dataObject);
+  }
+
+  private List<String> query(String scope, String path) {
+    return Arrays.asList(MetadataQuery
+        .fromJson(new JSONObject("{\"cdmi_scope_specification\":[" + scope + "]}"))
+        .execute(index, path).toArray(new String[0]));
+  }
+
+  @Test
+  public void testConditions() {
+    assertEquals(Arrays.asList("/data/a", "/other/c"),
+        query("{\"metadata\":{\"color\":\"== red\"}}", "/"));
+    assertEquals(Arrays.asList("/data/b"), query("{\"metadata\":{\"color\":\"starts gr\"}}", "/"));
+    assertEquals(Arrays.asList("/data/a", "/data/b"),
+        query("{\"metadata\":{\"cdmi_size\":\">= 100\"}}", "/"));
+    assertEquals(Arrays.asList("/other/c"),
+        query("{\"metadata\":{\"cdmi_size\":\"< 100\"}}", "/"));
+    assertEquals(Arrays.asList("/data/b"), query("{\"metadata\":{\"tags\":\"== large\"}}", "/"));
+    assertEquals(Arrays.asList("/data/b"), query("{\"metadata\":{\"color\":\"!= red\"}}", "/"));
+    assertEquals(Arrays.asList("/data"), query("{\"metadata\":{\"color\":\"!exists\"}}", "/"));
+    assertEquals(Arrays.asList("/data"),
+        query("{\"objectType\":\"== application/cdmi-container\"}", "/"));
+  }
+
+  @Test
+  public void testScopes() {
+    // conditions of a scope are combined, scopes are alternatives
+    assertEquals(Arrays.asList("/data/a"),
+        query("{\"parentURI\":\"starts /data\",\"metadata\":{\"color\":\"== red\"}}", "/"));
+    assertEquals(Arrays.asList("/data/a", "/data/b", "/other/c"),
+        query("{\"metadata\":{\"color\":\"== red\"}},{\"metadata\":{\"tags\":\"exists\"}}", "/"));
+    assertEquals(Arrays.asList("/data", "/data/a", "/data/b"), query("{}", "/data"));
+    assertEquals(Collections.emptyList(), query("{}", "/dat"));
+  }
+
+  @Test
+  public void testUpdateAndRemove() {
+    index.index("/data/a", terms(new DataObject("a", "/data/", "1"),
+        new JSONObject().put("color", "blue")));
+    assertEquals(Arrays.asList("/other/c"), query("{\"metadata\":{\"color\":\"== red\"}}", "/"));
+    assertEquals(Arrays.asList("/data/b"),
+        query("{\"metadata\":{\"cdmi_size\":\">= 100\"}}", "/"));
+
+    // the objects below a removed container are removed as well
+    index.remove("/data");
+    assertEquals(Arrays.asList("/other/c"), query("{}", "/"));
+    assertTrue(index.getTerms("/data/b").isEmpty());
+  }
+
+  @Test
+  public void testSnapshot() throws Exception {
+    Path snapshotFile = folder.getRoot().toPath().resolve("index.json");
+    InMemoryMetadataIndex snapshotIndex = new InMemoryMetadataIndex(snapshotFile, 60);
+    snapshotIndex.open();
+    snapshotIndex.index("/data/a", index.getTerms("/data/a"));
+    snapshotIndex.close();
+
+    InMemoryMetadataIndex reopened = new InMemoryMetadataIndex(snapshotFile, 60);
+    reopened.open();
+    try {
+      assertEquals(1, reopened.size());
+      assertEquals(index.getTerms("/data/a"), reopened.getTerms("/data/a"));
+      assertTrue(reopened.range("metadata.cdmi_size", 50, true, 150, true).contains("/data/a"));
+    } finally {
+      reopened.close();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnsupportedCondition() {
+    query("{\"metadata\":{\"color\":\"like red\"}}", "/");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNonNumericComparison() {
+    query("{\"metadata\":{\"cdmi_size\":\"> large\"}}", "/");
+  }
+}
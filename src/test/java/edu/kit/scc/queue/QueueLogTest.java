@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.queue;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class QueueLogTest {
+
+  private static final Logger log = LoggerFactory.getLogger(QueueLogTest.class);
+
+  private static final int SEGMENT_SIZE = 4096;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private QueueLog open(Path directory, int segmentSize) throws IOException {
+    QueueLog queueLog = new QueueLog(directory, segmentSize);
+    queueLog.open();
+    return queueLog;
+  }
+
+  private static List<byte[]> values(String... values) {
+    List<byte[]> bytes = new ArrayList<>();
+    for (String value : values) {
+      bytes.add(value.getBytes(StandardCharsets.UTF_8));
+    }
+    return bytes;
+  }
+
+  private static String string(byte[] value) {
+    return new String(value, StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testEnqueueDequeueAcknowledge() throws IOException {
+    try (QueueLog queueLog = open(folder.getRoot().toPath(), SEGMENT_SIZE)) {
+      assertEquals(0, queueLog.enqueue(values("a", "b", "c")));
+      assertEquals(3, queueLog.enqueue(values("d", "")));
+
+      QueueLog.Batch batch = queueLog.dequeue("worker", 2);
+      assertEquals(0, batch.getFirstPosition());
+      assertEquals("b", string(batch.getValues().get(1)));
+
+      // the delivered values aren't delivered twice
+      batch = queueLog.dequeue("worker", 10);
+      assertEquals(2, batch.getFirstPosition());
+      assertEquals(3, batch.getValues().size());
+      assertEquals("", string(batch.getValues().get(2)));
+      assertTrue(queueLog.dequeue("worker", 10).getValues().isEmpty());
+
+      // other consumers have their own offsets
+      assertEquals("a", string(queueLog.dequeue("audit", 1).getValues().get(0)));
+
+      assertEquals(5, queueLog.getPending("worker"));
+      assertEquals(3, queueLog.acknowledge("worker", 3));
+      assertEquals(2, queueLog.getPending("worker"));
+      // values can't be acknowledged before they are delivered
+      assertEquals(1, queueLog.acknowledge("audit", 5));
+    }
+  }
+
+  @Test
+  public void testRecover() throws IOException {
+    Path directory = folder.getRoot().toPath();
+    try (QueueLog queueLog = open(directory, SEGMENT_SIZE)) {
+      queueLog.enqueue(values("a", "b", "c", "d"));
+      queueLog.dequeue("worker", 3);
+      queueLog.acknowledge("worker", 1);
+    }
+
+    try (QueueLog queueLog = open(directory, SEGMENT_SIZE)) {
+      assertEquals(4, queueLog.getEndPosition());
+      assertEquals(3, queueLog.getPending("worker"));
+      // delivered but not acknowledged values are delivered again
+      QueueLog.Batch batch = queueLog.dequeue("worker", 10);
+      assertEquals(1, batch.getFirstPosition());
+      assertEquals(Arrays.asList("b", "c", "d"),
+          Arrays.asList(string(batch.getValues().get(0)), string(batch.getValues().get(1)),
+              string(batch.getValues().get(2))));
+      assertEquals(4, queueLog.enqueue(values("e")));
+    }
+  }
+
+  @Test
+  public void testAcknowledgedSegmentsAreDeleted() throws IOException {
+    byte[] value = new byte[1000];
+    Arrays.fill(value, (byte) 'x');
+    List<byte[]> values = Collections.nCopies(20, value);
+    try (QueueLog queueLog = open(folder.getRoot().toPath(), SEGMENT_SIZE)) {
+      queueLog.enqueue(values);
+      int segments = queueLog.getSegmentCount();
+      assertTrue(segments > 1);
+
+      QueueLog.Batch batch = queueLog.dequeue("worker", 20);
+      assertEquals(20, batch.getValues().size());
+      assertArrayEquals(value, batch.getValues().get(19));
+      queueLog.acknowledge("worker", 20);
+      assertEquals(1, queueLog.getSegmentCount());
+      assertEquals(queueLog.getStartPosition(), queueLog.dequeue("late", 1).getFirstPosition());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidConsumer() throws IOException {
+    try (QueueLog queueLog = open(folder.getRoot().toPath(), SEGMENT_SIZE)) {
+      queueLog.dequeue("../worker", 1);
+    }
+  }
+
+  @Test
+  public void testThroughput() throws IOException {
+    byte[] value = new byte[1024];
+    Arrays.fill(value, (byte) 'x');
+    List<byte[]> batch = Collections.nCopies(100, value);
+    int messages = 100000;
+    try (QueueLog queueLog = open(folder.getRoot().toPath(), 64 * 1024 * 1024)) {
+      long start = System.nanoTime();
+      for (int i = 0; i < messages; i += batch.size()) {
+        queueLog.enqueue(batch);
+      }
+      long enqueued = System.nanoTime();
+      int dequeued = 0;
+      while (dequeued < messages) {
+        dequeued += queueLog.dequeue("worker", 1000).getValues().size();
+        queueLog.acknowledge("worker", 1000);
+      }
+      long end = System.nanoTime();
+      assertEquals(0, queueLog.getPending("worker"));
+      log.info("1 KB values: {} enqueued/s, {} dequeued and acknowledged/s",
+          messages * 1000000000L / (enqueued - start), messages * 1000000000L / (end - enqueued));
+    }
+  }
+}
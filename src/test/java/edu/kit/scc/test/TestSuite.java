@@ -1,21 +1,41 @@
 package edu.kit.scc.test;
 
+import edu.kit.scc.bulk.FilesystemImporterTest;
+import edu.kit.scc.bulk.RecursiveCopierTest;
+import edu.kit.scc.bulk.RecursiveDeleterTest;
+import edu.kit.scc.cache.NearCacheTest;
+import edu.kit.scc.cache.NegativeLookupCacheTest;
+import edu.kit.scc.capability.CapabilitySnapshotTest;
 import edu.kit.scc.cdmi.filesystem.CapabilityFilesystemTest;
 import edu.kit.scc.cdmi.filesystem.CdmiObjectFilesystemTest;
 import edu.kit.scc.cdmi.filesystem.ContainerFilesystemTest;
 import edu.kit.scc.cdmi.filesystem.DataObjectFilesystemTest;
+import edu.kit.scc.cdmi.logstore.CdmiObjectLogStoreTest;
+import edu.kit.scc.cdmi.logstore.LogStoreTest;
+import edu.kit.scc.cdmi.redis.AsyncCdmiObjectRedisTest;
 import edu.kit.scc.cdmi.redis.CapabilityRedisTest;
 import edu.kit.scc.cdmi.redis.CdmiObjectRedisTest;
 import edu.kit.scc.cdmi.redis.ContainerRedisTest;
 import edu.kit.scc.cdmi.redis.DataObjectRedisTest;
+import edu.kit.scc.cdmi.redis.RedisShardsTest;
 import edu.kit.scc.cdmi.rest.AuthorizationTest;
+import edu.kit.scc.cdmi.rest.BatchTest;
 import edu.kit.scc.cdmi.rest.CapabilitiesTest;
 import edu.kit.scc.cdmi.rest.CdmiObjectTest;
 import edu.kit.scc.cdmi.rest.ContainerTest;
 import edu.kit.scc.cdmi.rest.DataObjectTest;
 import edu.kit.scc.cdmi.rest.DomainTest;
 import edu.kit.scc.cdmi.rest.FilterJsonTest;
+import edu.kit.scc.cdmi.rest.MetricsTest;
+import edu.kit.scc.cdmi.rest.QueryTest;
+import edu.kit.scc.cdmi.rest.QueueTest;
+import edu.kit.scc.compression.ResponseCompressorTest;
+import edu.kit.scc.domain.DomainUsageTest;
+import edu.kit.scc.events.ChangeFeedTest;
 import edu.kit.scc.http.client.HttpClientTest;
+import edu.kit.scc.query.MetadataQueryTest;
+import edu.kit.scc.queue.QueueLogTest;
+import edu.kit.scc.unitofwork.UnitOfWorkTest;
 import edu.kit.scc.utils.UtilsTest;
 
 import org.junit.AfterClass;
@@ -38,7 +58,13 @@ import java.util.Properties;
     CapabilitiesTest.class, CdmiObjectTest.class, ContainerTest.class, DataObjectTest.class,
     DomainTest.class, FilterJsonTest.class, HttpClientTest.class, UtilsTest.class,
     CapabilityRedisTest.class, CdmiObjectRedisTest.class, ContainerRedisTest.class,
-    DataObjectRedisTest.class})
+    DataObjectRedisTest.class, LogStoreTest.class, CdmiObjectLogStoreTest.class,
+    CapabilitySnapshotTest.class, FilesystemImporterTest.class,
+    NegativeLookupCacheTest.class, MetricsTest.class, UnitOfWorkTest.class,
+    RedisShardsTest.class, NearCacheTest.class, AsyncCdmiObjectRedisTest.class,
+    BatchTest.class, RecursiveDeleterTest.class, RecursiveCopierTest.class,
+    ResponseCompressorTest.class, ChangeFeedTest.class, QueueLogTest.class, QueueTest.class,
+    MetadataQueryTest.class, QueryTest.class, DomainUsageTest.class})
 public class TestSuite {
 
   @AfterClass
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 Karlsruhe Institute of Technology (KIT)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package edu.kit.scc.unitofwork;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import edu.kit.scc.CdmiServerApplication;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.snia.cdmiserver.dao.CdmiObjectDao;
+import org.snia.cdmiserver.model.CdmiObject;
+import org.snia.cdmiserver.model.Container;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = CdmiServerApplication.class)
+@ActiveProfiles("filesystem-test")
+public class UnitOfWorkTest {
+
+  @Autowired
+  private CdmiObjectDao cdmiObjectDao;
+
+  @Test
+  public void testDaoIsWrapped() {
+    assertTrue(cdmiObjectDao instanceof UnitOfWorkCdmiObjectDao);
+  }
+
+  @Test
+  public void testObjectIsLoadedOnce() {
+    UnitOfWork.execute(() -> {
+      CdmiObject root = cdmiObjectDao.getCdmiObjectByPath("/");
+      assertSame(root, cdmiObjectDao.getCdmiObjectByPath("/"));
+      assertSame(root, cdmiObjectDao.getCdmiObject(root.getObjectId()));
+      assertEquals(1, UnitOfWork.current().getLoads());
+      return root;
+    });
+    assertNull(UnitOfWork.current());
+  }
+
+  @Test
+  public void testUpdatesAreDeferred() {
+    Container container = new Container("unitofwork", "/", "0");
+    cdmiObjectDao.createCdmiObject(container, "/unitofwork");
+
+    UnitOfWork.execute(() -> {
+      Container loaded = (Container) cdmiObjectDao.getCdmiObjectByPath("/unitofwork");
+      loaded.setMetadata(new JSONObject().put("first", "1"));
+      cdmiObjectDao.updateCdmiObject(loaded, "/unitofwork");
+      loaded.setMetadata(new JSONObject().put("second", "2"));
+      cdmiObjectDao.updateCdmiObject(loaded, "/unitofwork");
+      assertEquals(1, UnitOfWork.current().getPendingUpdates());
+      return loaded;
+    });
+
+    Container stored = (Container) cdmiObjectDao.getCdmiObjectByPath("/unitofwork");
+    assertEquals("2", stored.getMetadata().getString("second"));
+  }
+
+  @Test
+  public void testChangesAfterTheUpdateAreNotWritten() {
+    Container container = new Container("unitofwork-snapshot", "/", "0");
+    cdmiObjectDao.createCdmiObject(container, "/unitofwork-snapshot");
+
+    UnitOfWork.execute(() -> {
+      Container loaded = (Container) cdmiObjectDao.getCdmiObjectByPath("/unitofwork-snapshot");
+      loaded.getMetadata().put("key", "value");
+      cdmiObjectDao.updateCdmiObject(loaded, "/unitofwork-snapshot");
+      // like the storage back-end's status added to a response
+      loaded.getMetadata().put("cdmi_size_provided", "1");
+      loaded.setCapabilitiesUri("/cdmi_capabilities/container/profile1");
+      return loaded;
+    });
+
+    Container stored = (Container) cdmiObjectDao.getCdmiObjectByPath("/unitofwork-snapshot");
+    assertEquals("value", stored.getMetadata().getString("key"));
+    assertFalse(stored.getMetadata().has("cdmi_size_provided"));
+    assertEquals("/cdmi_capabilities/container", stored.getCapabilitiesUri());
+  }
+
+  @Test
+  public void testFailedFlushFailsTheWork() {
+    // never created, so it can't be updated
+    Container container = new Container("unitofwork-missing", "/", "0");
+
+    try {
+      UnitOfWork.execute(() -> {
+        UnitOfWork.current().setOperation(7);
+        return cdmiObjectDao.updateCdmiObject(container, "/unitofwork-missing");
+      });
+      fail("the failed update wasn't reported");
+    } catch (FlushFailedException ex) {
+      assertEquals(1, ex.getFailedOperations().size());
+      assertTrue(ex.getFailedOperations().contains(7));
+    }
+    assertNull(UnitOfWork.current());
+  }
+
+  @Test
+  public void testUpdatesAreDiscardedOnFailure() {
+    Container container = new Container("unitofwork-failed", "/", "0");
+    cdmiObjectDao.createCdmiObject(container, "/unitofwork-failed");
+
+    try {
+      UnitOfWork.execute(() -> {
+        Container loaded = (Container) cdmiObjectDao.getCdmiObjectByPath("/unitofwork-failed");
+        loaded.setMetadata(new JSONObject().put("key", "value"));
+        cdmiObjectDao.updateCdmiObject(loaded, "/unitofwork-failed");
+        throw new IllegalStateException("failed");
+      });
+    } catch (IllegalStateException ex) {
+      assertEquals("failed", ex.getMessage());
+    }
+
+    Container stored = (Container) cdmiObjectDao.getCdmiObjectByPath("/unitofwork-failed");
+    assertTrue(stored.getMetadata() == null || !stored.getMetadata().has("key"));
+  }
+
+  @Test
+  public void testChildrenAreAddedOnce() {
+    Container container = new Container("unitofwork-children", "/", "0");
+    cdmiObjectDao.createCdmiObject(container, "/unitofwork-children");
+
+    UnitOfWork.execute(() -> {
+      for (int i = 0; i < 100; i++) {
+        cdmiObjectDao.addChild(container, "/unitofwork-children", "child" + i);
+      }
+      assertEquals(1, UnitOfWork.current().getPendingChildren());
+      return container;
+    });
+
+    Container stored = (Container) cdmiObjectDao.getCdmiObjectByPath("/unitofwork-children");
+    assertEquals(100, stored.getChildren().length());
+  }
+}
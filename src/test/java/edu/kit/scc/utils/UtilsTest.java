@@ -9,6 +9,7 @@
 
 package edu.kit.scc.utils;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import edu.kit.scc.CdmiServerApplication;
@@ -40,6 +41,17 @@ public class UtilsTest {
     assertTrue(checksum2 == 57409);
   }
 
+  @Test
+  public void testKeySlot() {
+    assertEquals(0x31C3, Utils.crc16Xmodem("123456789".getBytes()));
+    assertEquals(12739, Utils.keySlot("123456789"));
+
+    assertEquals(Utils.keySlot("user1000"), Utils.keySlot("{user1000}.following"));
+    assertEquals(Utils.keySlot("{user1000}.following"), Utils.keySlot("{user1000}.followers"));
+    assertEquals(Utils.keySlot("foo{}{bar}"), Utils.keySlot("foo{}{bar}"));
+    assertTrue(Utils.keySlot("foo{}{bar}") != Utils.keySlot("bar"));
+  }
+
   @Test
   public void testBytesToHex() {
     byte[] bytes = {0};